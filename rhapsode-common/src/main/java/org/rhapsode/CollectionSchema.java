@@ -31,19 +31,14 @@ package org.rhapsode;
 
 import java.io.File;
 import java.nio.file.Path;
-import java.util.HashSet;
 import java.util.Set;
 
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TermQuery;
-
 class CollectionSchema {
     File origDocsRoot;
-    Set<String> ignoreds = new HashSet<>();
-    Set<String> favorites = new HashSet<>();
+    //only read from collections that were saved before the ignored and favorite
+    //documents moved to their own logs; see RhapsodeCollection
+    Set<String> ignoreds;
+    Set<String> favorites;
     private String docIdField;
 
 
@@ -60,56 +55,6 @@ class CollectionSchema {
         this.origDocsRoot = origDocsRoot;
     }
 
-
-    void addIgnoreds(Set<String> vs) {
-        if (ignoreds == null) {
-            ignoreds = new HashSet<>();
-        }
-
-        for (String s : vs) {
-            this.ignoreds.add(s);
-        }
-
-    }
-
-    void addFavorites(Set<String> vs) {
-        if (favorites == null) {
-            favorites = new HashSet<>();
-        }
-        for (String s : vs) {
-            this.favorites.add(s);
-        }
-    }
-
-    //will return null if ignoreds is null or empty;
-    //this builds a SHOULD query!!!  Need to modify as MUST_NOT at top!
-    Query buildIgnoredQuery() {
-        if (ignoreds == null || ignoreds.size() == 0) {
-            return null;
-
-        }
-        BooleanQuery.Builder builder = new BooleanQuery.Builder();
-        for (String s : ignoreds) {
-            builder.add(new TermQuery(new Term(docIdField, s)),
-                    BooleanClause.Occur.SHOULD);
-        }
-        return builder.build();
-    }
-
-
-    Query buildFavoritesQuery() {
-        if (favorites == null || favorites.size() == 0) {
-            //return empty query
-            return new BooleanQuery.Builder().build();
-        }
-        BooleanQuery.Builder builder = new BooleanQuery.Builder();
-        for (String s : favorites) {
-            builder.add(new TermQuery(new Term(docIdField, s)),
-                    BooleanClause.Occur.SHOULD);
-        }
-        return builder.build();
-    }
-
     public void setDocIdField(String docIdField) {
         this.docIdField = docIdField;
     }
@@ -44,11 +44,15 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.SortedNumericSortField;
 import org.rhapsode.lucene.schema.IndexSchema;
 import org.rhapsode.lucene.search.IndexManager;
+import org.rhapsode.lucene.search.SearcherLease;
+import org.rhapsode.lucene.search.SelectedDocSet;
 import org.rhapsode.lucene.utils.DocRetriever;
 import org.rhapsode.util.PathUtils;
 import org.slf4j.Logger;
@@ -68,6 +72,14 @@ public class RhapsodeCollection {
     public static final String INDEX_SCHEMA_FILE_NAME = "index_schema.json";
     public static final String COLLECTION_SCHEMA_FILE_NAME = "collection_schema.json";
 
+    //constant names of the incremental indexing sidecar files
+    public static final String INDEX_MANIFEST_FILE_NAME = "index_manifest.json";
+    public static final String INDEX_MANIFEST_JOURNAL_FILE_NAME = "index_manifest_journal.txt";
+
+    //constant names of the ignored and favorite document logs
+    public static final String IGNORED_DOCS_FILE_NAME = "ignored_docs.bin";
+    public static final String FAVORITE_DOCS_FILE_NAME = "favorite_docs.bin";
+
     //TODO: allow configuration of some subdirs
 
 
@@ -76,8 +88,8 @@ public class RhapsodeCollection {
     CollectionSchema collectionSchema;
     private boolean loaded = false;
     private IndexManager indexManager;
-    private Query favoritesQuery = null;
-    private Query ignoredQuery = null;
+    private SelectedDocSet ignoreds;
+    private SelectedDocSet favorites;
 
     //disallow
     private RhapsodeCollection() {
@@ -120,6 +132,7 @@ public class RhapsodeCollection {
                 StandardCharsets.UTF_8)) {
             gson.toJson(rc.collectionSchema, writer);
         }
+        rc.loadSelectedDocSets();
 
         rc.loaded = true;
         return rc;
@@ -139,6 +152,19 @@ public class RhapsodeCollection {
      * @throws IOException
      */
     public static RhapsodeCollection loadExisting(Path collectionRoot) throws IOException {
+        return loadExisting(collectionRoot, null);
+    }
+
+    /**
+     * Loads an existing collection with searchers from the given factory.
+     *
+     * @param collectionRoot
+     * @param searcherFactory factory for searchers, <code>null</code> for the default
+     * @return
+     * @throws IOException
+     * @see #loadExisting(Path)
+     */
+    public static RhapsodeCollection loadExisting(Path collectionRoot, SearcherFactory searcherFactory) throws IOException {
         RhapsodeCollection rc = new RhapsodeCollection(collectionRoot);
         rc.loaded = false;
         rc.schema = IndexSchema.load(rc.getIndexSchemaPath());
@@ -149,7 +175,8 @@ public class RhapsodeCollection {
             rc.collectionSchema = gson.fromJson(reader, CollectionSchema.class);
         }
         rc.collectionSchema.setDocIdField(rc.schema.getUniqueDocField());
-        IndexManager.load(rc);
+        rc.loadSelectedDocSets();
+        IndexManager.load(rc, searcherFactory);
         rc.loaded = true;
         return rc;
     }
@@ -212,6 +239,22 @@ public class RhapsodeCollection {
         return collectionPath.resolve(COLLECTION_SCHEMA_FILE_NAME);
     }
 
+    public Path getIndexManifestPath() {
+        return collectionPath.resolve(INDEX_MANIFEST_FILE_NAME);
+    }
+
+    public Path getIndexManifestJournalPath() {
+        return collectionPath.resolve(INDEX_MANIFEST_JOURNAL_FILE_NAME);
+    }
+
+    public Path getIgnoredDocsPath() {
+        return collectionPath.resolve(IGNORED_DOCS_FILE_NAME);
+    }
+
+    public Path getFavoriteDocsPath() {
+        return collectionPath.resolve(FAVORITE_DOCS_FILE_NAME);
+    }
+
     public Path getOrigDocsRoot() {
         return Paths.get(collectionSchema.getOrigDocsRoot().toString());
     }
@@ -240,6 +283,11 @@ public class RhapsodeCollection {
     }
 
     /**
+     * Retrieves the container document and all of its attachments.  This
+     * first tries to walk the document block written by the indexer and
+     * falls back to a search on the unique file id for indices that were
+     * built without parent markers.
+     *
      * @param id
      * @param fieldsToRetrieve
      * @return
@@ -247,29 +295,92 @@ public class RhapsodeCollection {
      */
     public List<Document> getAllDocsFromAnyDocId(int id, Set<String> fieldsToRetrieve)
             throws IOException {
-
-        String fileIdField = getIndexSchema().getUniqueFileField();
-        Sort sort = new Sort(new SortedNumericSortField(getIndexSchema().getAttachmentIndexField(), SortField.Type.INT));
-        return DocRetriever.getAllDocsFromAnyDocId(id, fileIdField, sort, fieldsToRetrieve, getIndexManager().getSearcher());
+        try (SearcherLease lease = getIndexManager().acquire()) {
+            IndexSearcher searcher = lease.getSearcher();
+            String fileIdField = getIndexSchema().getUniqueFileField();
+            List<Document> docs = DocRetriever.getBlockFromAnyDocId(id,
+                    getIndexSchema().getParentMarkerField(), fileIdField, fieldsToRetrieve, searcher);
+            if (docs != null) {
+                return docs;
+            }
+            Sort sort = new Sort(new SortedNumericSortField(getIndexSchema().getAttachmentIndexField(), SortField.Type.INT));
+            return DocRetriever.getAllDocsFromAnyDocId(id, fileIdField, sort, fieldsToRetrieve, searcher);
+        }
     }
 
     public List<Document> getAllDocsByFileId(String fileId, Set<String> fieldsToRetrieve) throws IOException {
-        Sort sort = new Sort(new SortedNumericSortField(getIndexSchema().getAttachmentIndexField(), SortField.Type.INT));
-
-        return DocRetriever.getAllDocsByFileId(
-                getIndexSchema().getUniqueFileField(),
-                fileId,
-                sort, fieldsToRetrieve, getIndexManager().getSearcher());
+        try (SearcherLease lease = getIndexManager().acquire()) {
+            IndexSearcher searcher = lease.getSearcher();
+            List<Document> docs = DocRetriever.getBlockByFileId(getIndexSchema().getParentMarkerField(),
+                    getIndexSchema().getUniqueFileField(), fileId, fieldsToRetrieve, searcher);
+            if (docs != null) {
+                return docs;
+            }
+            return DocRetriever.getAllDocsByFileId(
+                    getIndexSchema().getUniqueFileField(),
+                    fileId,
+                    getAttachmentSort(), fieldsToRetrieve, searcher);
+        }
     }
 
     public List<Document> getAllDocsFromAnyDocId(String docId, Set<String> fieldsToRetrieve) throws IOException {
-        Sort sort = new Sort(new SortedNumericSortField(getIndexSchema().getAttachmentSortField(), SortField.Type.INT));
-        return DocRetriever.getAllDocsFromAnyDocId(docId,
+        try (SearcherLease lease = getIndexManager().acquire()) {
+            IndexSearcher searcher = lease.getSearcher();
+            List<Document> docs = DocRetriever.getBlockFromAnyDocId(docId,
+                    getIndexSchema().getUniqueDocField(),
+                    getIndexSchema().getParentMarkerField(),
+                    getIndexSchema().getUniqueFileField(),
+                    fieldsToRetrieve, searcher);
+            if (docs != null) {
+                return docs;
+            }
+            return DocRetriever.getAllDocsFromAnyDocId(docId,
+                    getIndexSchema().getUniqueDocField(),
+                    getIndexSchema().getUniqueFileField(),
+                    getAttachmentSort(),
+                    fieldsToRetrieve,
+                    searcher);
+        }
+    }
+
+    /**
+     * Lucene doc ids for the container file and its attachments in presentation order.
+     * The ids are only valid for the searcher that is passed in, so the caller must
+     * hold that searcher's lease while it loads the documents.
+     */
+    public List<Integer> getAllDocIdsByFileId(String fileId, IndexSearcher searcher) throws IOException {
+        List<Integer> docIds = DocRetriever.getBlockDocIdsByFileId(getIndexSchema().getParentMarkerField(),
+                getIndexSchema().getUniqueFileField(), fileId, searcher);
+        if (docIds != null) {
+            return docIds;
+        }
+        return DocRetriever.getAllDocIdsByFileId(getIndexSchema().getUniqueFileField(),
+                fileId, getAttachmentSort(), searcher);
+    }
+
+    /**
+     * @see #getAllDocIdsByFileId(String, IndexSearcher)
+     */
+    public List<Integer> getAllDocIdsFromAnyDocId(String docId, IndexSearcher searcher) throws IOException {
+        List<Integer> docIds = DocRetriever.getBlockDocIdsFromAnyDocId(docId,
+                getIndexSchema().getUniqueDocField(),
+                getIndexSchema().getParentMarkerField(),
+                getIndexSchema().getUniqueFileField(),
+                searcher);
+        if (docIds != null) {
+            return docIds;
+        }
+        return DocRetriever.getAllDocIdsFromAnyDocId(docId,
                 getIndexSchema().getUniqueDocField(),
                 getIndexSchema().getUniqueFileField(),
-                sort,
-                fieldsToRetrieve,
-                getIndexManager().getSearcher());
+                getAttachmentSort(),
+                searcher);
+    }
+
+    private Sort getAttachmentSort() {
+        SortField sortField = new SortedNumericSortField(getIndexSchema().getAttachmentSortField(), SortField.Type.INT);
+        sortField.setMissingValue(0);
+        return new Sort(sortField);
     }
 
     private void updateCollectionSchema() throws IOException {
@@ -280,85 +391,90 @@ public class RhapsodeCollection {
         }
     }
 
+    /**
+     * Loads the ignored and favorite documents, moving them out of the
+     * collection schema if the collection was saved before they had their own logs.
+     */
+    private void loadSelectedDocSets() throws IOException {
+        ignoreds = SelectedDocSet.load(getIgnoredDocsPath(), schema.getUniqueDocField());
+        favorites = SelectedDocSet.load(getFavoriteDocsPath(), schema.getUniqueDocField());
+        if (collectionSchema.ignoreds == null && collectionSchema.favorites == null) {
+            return;
+        }
+        if (collectionSchema.ignoreds != null) {
+            ignoreds.add(collectionSchema.ignoreds);
+            collectionSchema.ignoreds = null;
+        }
+        if (collectionSchema.favorites != null) {
+            favorites.add(collectionSchema.favorites);
+            collectionSchema.favorites = null;
+        }
+        LOG.info("moved ignored and favorite documents out of " + getCollectionSchemaPath());
+        updateCollectionSchema();
+    }
+
+    /**
+     * @return filter that matches the ignored documents,
+     * <code>null</code> if there are none.  This needs to be added as MUST_NOT!
+     */
     public Query getIgnoredQuery() {
-        if (ignoredQuery == null) {
-            ignoredQuery = collectionSchema.buildIgnoredQuery();
+        if (ignoreds.size() == 0) {
+            return null;
         }
-        return ignoredQuery;
+        return ignoreds.getQuery();
     }
 
-    public Query getFavoritesQuery() throws IOException {
+    /**
+     * @return version of the ignored set, which changes with every
+     * call to {@link #addIgnoreds(Set)} or {@link #removeIgnoreds(Set)}
+     * that adds or removes a document
+     */
+    public long getIgnoredVersion() {
+        return ignoreds.getVersion();
+    }
 
-        if (favoritesQuery == null) {
-            favoritesQuery = collectionSchema.buildFavoritesQuery();
-        }
-        return favoritesQuery;
+    public Query getFavoritesQuery() throws IOException {
+        return favorites.getQuery();
     }
 
     public void addFavorites(Set<String> ids) {
-        favoritesQuery = null;//must rebuild favorites query
-        collectionSchema.addFavorites(ids);
         try {
-            updateCollectionSchema();
+            favorites.add(ids);
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.warn("couldn't write to " + getFavoriteDocsPath(), e);
         }
     }
 
     public void addIgnoreds(Set<String> ids) {
-        ignoredQuery = null;//sign that query must be rebuilt
-        collectionSchema.addIgnoreds(ids);
         try {
-            updateCollectionSchema();
+            ignoreds.add(ids);
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.warn("couldn't write to " + getIgnoredDocsPath(), e);
         }
     }
 
     public int getIgnoredSize() {
-        if (collectionSchema.ignoreds != null) {
-            return collectionSchema.ignoreds.size();
-        }
-        return 0;
+        return ignoreds.size();
     }
 
     public int getFavoritesSize() {
-        if (collectionSchema.favorites != null) {
-            return collectionSchema.favorites.size();
-        }
-        return 0;
+        return favorites.size();
     }
 
-
     public void removeIgnoreds(Set<String> docIds) {
-        ignoredQuery = null;
-        if (collectionSchema.ignoreds == null) {
-            return;
-        }
-        for (String id : docIds) {
-            collectionSchema.ignoreds.remove(id);
-        }
         try {
-            updateCollectionSchema();
+            ignoreds.remove(docIds);
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.warn("couldn't write to " + getIgnoredDocsPath(), e);
         }
     }
 
     public void removeFavorites(Set<String> docIds) {
-        favoritesQuery = null;
-        if (collectionSchema.favorites == null) {
-            return;
-        }
-        for (String id : docIds) {
-            collectionSchema.favorites.remove(id);
-        }
         try {
-            updateCollectionSchema();
+            favorites.remove(docIds);
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.warn("couldn't write to " + getFavoriteDocsPath(), e);
         }
-
     }
 
     public boolean hasIndex() {
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.app;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.rhapsode.lucene.search.IndexManager;
+import org.rhapsode.lucene.search.SearcherLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches hit counts for stored queries and concepts.
+ * <p>
+ * Counts are valid for one generation: one IndexReader (identified
+ * by its cache key) and one version of the ignored documents.  When
+ * the IndexManager swaps readers on refresh or the ignored set changes,
+ * the next lookup starts a new generation and drops the old counts.
+ * <p>
+ * Within a generation, queries that were already counted are returned
+ * immediately.  The rest are recounted in the background; callers wait
+ * at most <code>maxWaitMillis</code> for them, and whatever finishes later
+ * is picked up by the next lookup.
+ */
+public class HitCountCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HitCountCache.class);
+
+    private static final long DEFAULT_MAX_RECOUNT_MILLIS = 10 * 60 * 1000;//10 minutes
+
+    private final SearchExecutor searchExecutor;
+    private final long maxRecountMillis;
+    //runs the recounts one at a time; the counting itself happens on the search pool
+    private final ThreadPoolExecutor recountPool;
+
+    private Generation generation = null;
+
+    public HitCountCache(SearchExecutor searchExecutor) {
+        this(searchExecutor, DEFAULT_MAX_RECOUNT_MILLIS);
+    }
+
+    public HitCountCache(SearchExecutor searchExecutor, long maxRecountMillis) {
+        this.searchExecutor = searchExecutor;
+        this.maxRecountMillis = maxRecountMillis;
+        recountPool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "rhapsode-count");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        recountPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param queries       map of id and the query to count
+     * @param indexManager  index manager for the current collection
+     * @param ignoredVersion version of the ignored set
+     *                      (see {@link org.rhapsode.RhapsodeCollection#getIgnoredVersion()})
+     * @param maxWaitMillis how long to wait for queries that have to be
+     *                      recounted, -1 to wait until they're done
+     * @return map of id and number of hits; queries that haven't been
+     * counted yet are left out
+     * @throws IOException
+     */
+    public Map<Integer, Integer> getCounts(Map<Integer, Query> queries, IndexManager indexManager,
+                                           long ignoredVersion, long maxWaitMillis) throws IOException {
+        try (SearcherLease lease = indexManager.acquire()) {
+            return getCounts(queries, lease.getSearcher(), ignoredVersion, maxWaitMillis);
+        }
+    }
+
+    /**
+     * Same as {@link #getCounts(Map, IndexManager, long, long)}, but the caller
+     * owns the searcher.
+     */
+    public Map<Integer, Integer> getCounts(Map<Integer, Query> queries, IndexSearcher searcher,
+                                           long ignoredVersion, long maxWaitMillis) throws IOException {
+        Generation gen = getGeneration(searcher.getIndexReader(), ignoredVersion);
+        Map<Query, Future<Map<Query, Integer>>> waitingOn = new HashMap<>();
+        Set<Query> dirty = new HashSet<>();
+        synchronized (gen) {
+            for (Query q : queries.values()) {
+                if (gen.counts.containsKey(q)) {
+                    continue;
+                }
+                Future<Map<Query, Integer>> pending = gen.pending.get(q);
+                if (pending != null) {
+                    waitingOn.put(q, pending);
+                } else {
+                    dirty.add(q);
+                }
+            }
+            if (dirty.size() > 0) {
+                //the recount holds its own reference to the reader
+                searcher.getIndexReader().incRef();
+                Future<Map<Query, Integer>> f;
+                try {
+                    f = recountPool.submit(new Recount(gen, dirty, searcher));
+                } catch (RuntimeException e) {
+                    searcher.getIndexReader().decRef();
+                    throw e;
+                }
+                for (Query q : dirty) {
+                    gen.pending.put(q, f);
+                    waitingOn.put(q, f);
+                }
+            }
+        }
+        if (waitingOn.size() > 0) {
+            LOG.debug("waiting on " + waitingOn.size() + " of " + queries.size() + " counts");
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            for (Future<Map<Query, Integer>> f : waitingOn.values()) {
+                if (f.isDone()) {
+                    continue;
+                }
+                try {
+                    if (maxWaitMillis < 0) {
+                        f.get();
+                    } else {
+                        f.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    }
+                } catch (TimeoutException e) {
+                    break;
+                } catch (InterruptedException e) {
+                    throw new IOException(e.getMessage());
+                } catch (ExecutionException e) {
+                    LOG.warn("problem recounting", e.getCause());
+                }
+            }
+        }
+        Map<Integer, Integer> results = new HashMap<>();
+        synchronized (gen) {
+            for (Map.Entry<Integer, Query> e : queries.entrySet()) {
+                Integer count = gen.counts.get(e.getValue());
+                if (count != null) {
+                    results.put(e.getKey(), count);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Drops all counts.  Lookups notice reader and ignored set changes
+     * on their own; this is for anything else that changes the counts.
+     */
+    public synchronized void clear() {
+        generation = null;
+    }
+
+    public void shutdown() {
+        recountPool.shutdownNow();
+    }
+
+    private synchronized Generation getGeneration(IndexReader reader, long ignoredVersion) {
+        Object readerKey = (reader.getReaderCacheHelper() == null) ?
+                reader : reader.getReaderCacheHelper().getKey();
+        if (generation == null || generation.readerKey != readerKey ||
+                generation.ignoredVersion != ignoredVersion) {
+            generation = new Generation(readerKey, ignoredVersion);
+        }
+        return generation;
+    }
+
+    private static class Generation {
+        private final Object readerKey;
+        private final long ignoredVersion;
+        private final Map<Query, Integer> counts = new HashMap<>();
+        private final Map<Query, Future<Map<Query, Integer>>> pending = new HashMap<>();
+
+        Generation(Object readerKey, long ignoredVersion) {
+            this.readerKey = readerKey;
+            this.ignoredVersion = ignoredVersion;
+        }
+    }
+
+    private class Recount implements Callable<Map<Query, Integer>> {
+        private final Generation gen;
+        private final Query[] queries;
+        private final IndexSearcher searcher;
+
+        Recount(Generation gen, Set<Query> queries, IndexSearcher searcher) {
+            this.gen = gen;
+            this.queries = queries.toArray(new Query[queries.size()]);
+            this.searcher = searcher;
+        }
+
+        @Override
+        public Map<Query, Integer> call() throws Exception {
+            Map<Query, Integer> counted = new HashMap<>();
+            try {
+                Map<Integer, Query> toCount = new HashMap<>();
+                for (int i = 0; i < queries.length; i++) {
+                    toCount.put(i, queries[i]);
+                }
+                Map<Integer, Integer> results = new HitCounter().count(toCount,
+                        searcher, searchExecutor, maxRecountMillis);
+                for (Map.Entry<Integer, Integer> e : results.entrySet()) {
+                    counted.put(queries[e.getKey()], e.getValue());
+                }
+            } finally {
+                synchronized (gen) {
+                    gen.counts.putAll(counted);
+                    //anything that wasn't counted is dirty again
+                    for (Query q : queries) {
+                        gen.pending.remove(q);
+                    }
+                }
+                searcher.getIndexReader().decRef();
+            }
+            return counted;
+        }
+    }
+}
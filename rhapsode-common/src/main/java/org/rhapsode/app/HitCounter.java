@@ -30,127 +30,209 @@
 package org.rhapsode.app;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import org.apache.commons.lang3.tuple.Pair;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BulkScorer;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Counts hits for many queries at once.
+ * <p>
+ * Each distinct rewritten query gets one {@link Weight}, so queries
+ * that are repeated across stored queries or concepts share their term
+ * lookups.  The work is split into tasks of one segment by a batch of
+ * queries.  Within a task, each query is counted with its own
+ * {@link BulkScorer} over the segment; merging the queries' iterators into
+ * one pass in doc id order was measured to be several times slower than
+ * the bulk scorers' tight loops.  Pure term queries on segments without
+ * deletions are counted from the term's docFreq without visiting postings.
+ */
 public class HitCounter {
 
-    private static final Integer POISON = Integer.MIN_VALUE;
+    private static final Logger LOG = LoggerFactory.getLogger(HitCounter.class);
+
+    private static final int QUERIES_PER_TASK = 100;
 
     /**
+     * Counts the hits for each query on the shared search executor.
+     * Queries that haven't completed within <code>maxMillis</code>
+     * are left out of the results.
+     *
      * @param queries
      * @param indexSearcher
-     * @param numSearchingThreads
-     * @param maxSeconds
+     * @param searchExecutor
+     * @param maxMillis
      * @return map of storedqueryId and number of hits
      * @throws IOException
      */
     public Map<Integer, Integer> count(Map<Integer, Query> queries, IndexSearcher indexSearcher,
-                                       int numSearchingThreads, long maxSeconds) throws IOException {
+                                       SearchExecutor searchExecutor, long maxMillis) throws IOException {
         Map<Integer, Integer> results = new HashMap<>();
         if (queries.size() == 0) {
             return results;
         }
-        int numThreads = Math.min(queries.size(), numSearchingThreads);
-        ArrayBlockingQueue<Pair<Integer, Query>> qq = new ArrayBlockingQueue<>(queries.size() +
-                numThreads);
+        //one weight per distinct rewritten query
+        Map<Query, Integer> weightIndices = new LinkedHashMap<>();
+        List<Weight> weights = new ArrayList<>();
+        Map<Integer, Integer> idToWeight = new HashMap<>();
         for (Map.Entry<Integer, Query> e : queries.entrySet()) {
-            if (e.getKey().equals(POISON)) {
-                //silently skip
+            Query rewritten;
+            try {
+                rewritten = indexSearcher.rewrite(e.getValue());
+            } catch (IOException | RuntimeException ex) {
+                //as before, a failed count is left out of the results
+                LOG.warn("problem rewriting query for " + e.getKey(), ex);
                 continue;
             }
-            qq.add(Pair.of(e.getKey(), e.getValue()));
-        }
-        for (int i = 0; i < numThreads; i++) {
-            qq.add(Pair.of(POISON, null));
+            Integer weightIndex = weightIndices.get(rewritten);
+            if (weightIndex == null) {
+                weightIndex = weights.size();
+                weights.add(indexSearcher.createWeight(rewritten, ScoreMode.COMPLETE_NO_SCORES, 1.0f));
+                weightIndices.put(rewritten, weightIndex);
+            }
+            idToWeight.put(e.getKey(), weightIndex);
         }
 
-        ExecutorService ex =
-                Executors.newFixedThreadPool(Math.min(queries.size(), numThreads));
-        CompletionService<Map<Integer, Integer>> completionService =
-                new ExecutorCompletionService<>(ex);
-        for (int i = 0; i < numThreads; i++) {
-            completionService.submit(new Counter(qq, indexSearcher));
+        List<LeafReaderContext> leaves = indexSearcher.getIndexReader().leaves();
+        List<LeafCounter> counters = new ArrayList<>();
+        for (LeafReaderContext leaf : leaves) {
+            for (int start = 0; start < weights.size(); start += QUERIES_PER_TASK) {
+                counters.add(new LeafCounter(leaf, weights, start,
+                        Math.min(weights.size(), start + QUERIES_PER_TASK)));
+            }
+        }
+        List<Future<int[]>> futures;
+        try {
+            futures = searchExecutor.invokeAll(counters, maxMillis);
+        } catch (InterruptedException e) {
+            throw new IOException(e.getMessage());
         }
 
-        long start = System.currentTimeMillis();
-        long elapsed = -1;
-        int completed = 0;
-        while (elapsed < maxSeconds && completed < numThreads) {
-            try {
-                Future<Map<Integer, Integer>> result = completionService.poll(100,
-                        TimeUnit.MILLISECONDS);
-                if (result != null) {
-                    Map<Integer, Integer> rr = result.get(1000, TimeUnit.MILLISECONDS);
-                    if (rr != null) {
-                        completed++;
-                        results.putAll(rr);
+        int[] counts = new int[weights.size()];
+        boolean[] incomplete = new boolean[weights.size()];
+        for (int i = 0; i < futures.size(); i++) {
+            LeafCounter counter = counters.get(i);
+            int[] leafCounts = null;
+            Future<int[]> f = futures.get(i);
+            if (f.isDone() && !f.isCancelled()) {
+                try {
+                    leafCounts = f.get();
+                } catch (InterruptedException e) {
+                    throw new IOException(e.getMessage());
+                } catch (CancellationException e) {
+                    //leave null
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof TimeoutException)) {
+                        LOG.warn("problem counting hits", e.getCause());
                     }
                 }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-                throw new IOException(e.getMessage());
-            } catch (ExecutionException e) {
-                e.printStackTrace();
-                throw new IOException(e);
-            } catch (TimeoutException e) {
-                e.printStackTrace();
-                throw new IOException(e);
             }
-            elapsed = System.currentTimeMillis() - start;
+            for (int w = counter.start; w < counter.end; w++) {
+                if (leafCounts == null || leafCounts[w - counter.start] < 0) {
+                    incomplete[w] = true;
+                } else {
+                    counts[w] += leafCounts[w - counter.start];
+                }
+            }
+        }
+        int notCounted = 0;
+        for (Map.Entry<Integer, Integer> e : idToWeight.entrySet()) {
+            if (incomplete[e.getValue()]) {
+                notCounted++;
+            } else {
+                results.put(e.getKey(), counts[e.getValue()]);
+            }
+        }
+        if (notCounted > 0) {
+            LOG.warn(notCounted + " of " + queries.size() + " counts didn't finish within " +
+                    maxMillis + " ms; " + searchExecutor);
         }
-        ex.shutdownNow();
         return results;
     }
 
-    private class Counter implements Callable<Map<Integer, Integer>> {
-        final ArrayBlockingQueue qq;
-        final IndexSearcher indexSearcher;
-        Exception exception = null;
+    /**
+     * Counts the live documents in a segment that match the weight's query.
+     *
+     * @return number of matching live documents
+     * @throws IOException
+     */
+    static int count(Weight weight, LeafReaderContext leaf) throws IOException {
+        LeafReader reader = leaf.reader();
+        Query query = weight.getQuery();
+        if (reader.numDeletedDocs() == 0) {
+            if (query instanceof TermQuery) {
+                return reader.docFreq(((TermQuery) query).getTerm());
+            } else if (query instanceof MatchAllDocsQuery) {
+                return reader.numDocs();
+            }
+        }
+        BulkScorer bulkScorer = weight.bulkScorer(leaf);
+        if (bulkScorer == null) {
+            return 0;
+        }
+        CountingLeafCollector collector = new CountingLeafCollector();
+        bulkScorer.score(collector, reader.getLiveDocs());
+        return collector.count;
+    }
 
-        public Counter(ArrayBlockingQueue<Pair<Integer, Query>> qq, IndexSearcher indexSearcher) {
-            this.qq = qq;
-            this.indexSearcher = indexSearcher;
+    private static class LeafCounter implements Callable<int[]> {
+        final LeafReaderContext leaf;
+        final List<Weight> weights;
+        final int start;
+        final int end;
+
+        LeafCounter(LeafReaderContext leaf, List<Weight> weights, int start, int end) {
+            this.leaf = leaf;
+            this.weights = weights;
+            this.start = start;
+            this.end = end;
         }
 
         @Override
-        public Map<Integer, Integer> call() throws InterruptedException {
-            Map<Integer, Integer> ret = new HashMap<>();
-            while (true) {
-                Pair<Integer, Query> p = (Pair<Integer, Query>) qq.poll(1000, TimeUnit.SECONDS);
-                if (p == null) {
-                    //something went horribly wrong;
-                    //TODO: warn somehow?
-                    return ret;
-                }
-                if (p.getKey().equals(POISON)) {
-                    return ret;
-                }
-                TotalHitCountCollector thcc = new TotalHitCountCollector();
-                //consider wrapping in a timelimitingcollector
-
+        public int[] call() {
+            int[] counts = new int[end - start];
+            for (int i = start; i < end; i++) {
                 try {
-                    indexSearcher.search(p.getValue(), thcc);
-                    ret.put(p.getKey(), thcc.getTotalHits());
-                } catch (IOException e) {
-                    exception = e;
+                    counts[i - start] = count(weights.get(i), leaf);
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("problem counting hits for " + weights.get(i).getQuery(), e);
+                    counts[i - start] = -1;
                 }
             }
+            return counts;
+        }
+    }
+
+    private static class CountingLeafCollector implements LeafCollector {
+        int count = 0;
+
+        @Override
+        public void setScorer(Scorable scorer) {
+        }
+
+        @Override
+        public void collect(int doc) {
+            count++;
         }
     }
 }
@@ -37,20 +37,20 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.SearcherFactory;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.rhapsode.RhapsodeCollection;
 import org.rhapsode.app.session.BooleanDynamicParameter;
 import org.rhapsode.app.session.SessionManager;
 import org.rhapsode.app.session.StringDynamicParameter;
+import org.rhapsode.app.tasks.ReportTaskManager;
 import org.rhapsode.app.tasks.RhapsodeTask;
 import org.rhapsode.app.tasks.RhapsodeTaskStatus;
 import org.rhapsode.geo.GeoConfig;
@@ -59,6 +59,8 @@ import org.rhapsode.lucene.queryparsers.ComplexQParserPlugin;
 import org.rhapsode.lucene.queryparsers.ParserPlugin;
 import org.rhapsode.lucene.queryparsers.SQPParserPlugin;
 import org.rhapsode.lucene.search.CommonSearchConfig;
+import org.rhapsode.lucene.search.ComplexQueryCache;
+import org.rhapsode.lucene.search.RhapsodeSearcherFactory;
 import org.rhapsode.lucene.search.basic.BasicSearchConfig;
 import org.rhapsode.lucene.search.concordance.ConcordanceSearchConfig;
 import org.rhapsode.lucene.search.cooccur.CooccurConfig;
@@ -83,8 +85,12 @@ public class RhapsodeSearcherApp {
     //need this to update the doc base if the collection changes
     ResourceHandler resourceHandler;
     RhapsodeTask task;
-    ExecutorService executorService;
-    ExecutorCompletionService executorCompletionService;
+    Future<RhapsodeTaskStatus> taskFuture;
+    SearchExecutor searchExecutor;
+    ReportTaskManager reportTaskManager;
+    HitCountCache hitCountCache;
+    ComplexQueryCache complexQueryCache;
+    SearcherFactory searcherFactory;
     //TODO: refactor these into child managers
     int maxBooleanClauses;
     boolean treatStoredQueryLineAsPhrase;
@@ -104,7 +110,28 @@ public class RhapsodeSearcherApp {
 
     public void tryToLoadRhapsodeCollection(Path p) throws IOException {
         //add locking!
-        rhapsodeCollection = RhapsodeCollection.loadExisting(p);
+        setRhapsodeCollection(RhapsodeCollection.loadExisting(p, getSearcherFactory()));
+    }
+
+    /**
+     * Makes an already open collection the current collection, e.g. one
+     * that is still being indexed through a near-real-time writer.
+     * The previous collection's index manager is closed; searches that
+     * still hold a lease on it finish against their reader.
+     *
+     * @param rhapsodeCollection
+     */
+    public void setRhapsodeCollection(RhapsodeCollection rhapsodeCollection) {
+        RhapsodeCollection old = this.rhapsodeCollection;
+        this.rhapsodeCollection = rhapsodeCollection;
+        if (old != null && old != rhapsodeCollection && old.getIndexManager() != null
+                && old.getIndexManager() != rhapsodeCollection.getIndexManager()) {
+            try {
+                old.getIndexManager().close();
+            } catch (IOException e) {
+                LOG.warn("problem closing the previous collection's index", e);
+            }
+        }
         if (resourceHandler != null) {
             resourceHandler.setResourceBase(rhapsodeCollection.getOrigDocsRoot().toAbsolutePath().toString());
         }
@@ -210,13 +237,14 @@ public class RhapsodeSearcherApp {
             }
 
             try {
-                Future<RhapsodeTaskStatus> future = executorCompletionService.poll(500, TimeUnit.MILLISECONDS);
-                if (future == null) {
-                    return task.getIntermediateResult();
-                } else {
-                    endTask(future);
-                    return lastTaskStatus;
-                }
+                taskFuture.get(500, TimeUnit.MILLISECONDS);
+                endTask();
+                return lastTaskStatus;
+            } catch (TimeoutException e) {
+                return task.getIntermediateResult();
+            } catch (ExecutionException e) {
+                endTask();
+                return lastTaskStatus;
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
@@ -230,31 +258,112 @@ public class RhapsodeSearcherApp {
                 throw new IllegalStateException("can't set a task if one is currenlty running");
             }
             this.task = task;
-            this.executorService = Executors.newSingleThreadExecutor();
-            this.executorCompletionService = new ExecutorCompletionService<RhapsodeTaskStatus>(executorService);
-            executorCompletionService.submit(task);
+            this.taskFuture = getSearchExecutor().submitTask(task);
         }
 
     }
 
-    private void endTask(Future<RhapsodeTaskStatus> future) {
+    private void endTask() {
         try {
-            lastTaskStatus = future.get();
+            lastTaskStatus = taskFuture.get();
         } catch (InterruptedException e) {
             e.printStackTrace();
         } catch (ExecutionException e) {
             e.printStackTrace();
         }
-        executorService.shutdownNow();
-        if (!executorService.isTerminated()) {
-            LOG.warn("executor service has not terminated.  Might want to restart Rhapsode");
-        }
         task = null;
-        executorCompletionService = null;
-        executorService = null;
+        taskFuture = null;
         return;
     }
 
+    /**
+     * @return the application-wide executor for concurrent searches and background tasks
+     */
+    public SearchExecutor getSearchExecutor() {
+        synchronized (lock) {
+            if (searchExecutor == null) {
+                searchExecutor = new SearchExecutor(
+                        Math.max(1, commonSearchConfig.getNumThreadsForConcurrentSearches()),
+                        commonSearchConfig.getMaxQueuedSearches(),
+                        Math.max(0, commonSearchConfig.getNumThreadsForSegmentSearch()));
+            }
+            return searchExecutor;
+        }
+    }
+
+    /**
+     * @return the application-wide manager of reports that are being generated in the background
+     */
+    public ReportTaskManager getReportTaskManager() {
+        synchronized (lock) {
+            if (reportTaskManager == null) {
+                reportTaskManager = new ReportTaskManager(
+                        Math.max(1, commonSearchConfig.getMaxConcurrentReports()),
+                        Math.max(1, commonSearchConfig.getNumThreadsForReportHighlighting()));
+            }
+            return reportTaskManager;
+        }
+    }
+
+    /**
+     * @return factory for searchers that search slices of segments on
+     * the search executor's slice threads, if configured
+     */
+    public SearcherFactory getSearcherFactory() {
+        synchronized (lock) {
+            if (searcherFactory == null) {
+                searcherFactory = new RhapsodeSearcherFactory(getSearchExecutor().getSliceExecutor(),
+                        commonSearchConfig.getMaxDocsPerSlice(),
+                        commonSearchConfig.getMaxSegmentsPerSlice());
+            }
+            return searcherFactory;
+        }
+    }
+
+    /**
+     * @return the application-wide cache of stored query and concept hit counts
+     */
+    public HitCountCache getHitCountCache() {
+        synchronized (lock) {
+            if (hitCountCache == null) {
+                hitCountCache = new HitCountCache(getSearchExecutor());
+            }
+            return hitCountCache;
+        }
+    }
+
+    /**
+     * @return the application-wide cache of built stored queries
+     */
+    public ComplexQueryCache getComplexQueryCache() {
+        synchronized (lock) {
+            if (complexQueryCache == null) {
+                complexQueryCache = new ComplexQueryCache(
+                        commonSearchConfig.getComplexQueryCacheSize());
+            }
+            return complexQueryCache;
+        }
+    }
+
+    public void shutdownSearchExecutor() {
+        synchronized (lock) {
+            if (reportTaskManager != null) {
+                reportTaskManager.shutdown();
+                reportTaskManager = null;
+            }
+            if (hitCountCache != null) {
+                hitCountCache.shutdown();
+                hitCountCache = null;
+            }
+            if (searchExecutor != null) {
+                searchExecutor.shutdown();
+                searchExecutor = null;
+                //its slice executor is gone
+                searcherFactory = null;
+            }
+        }
+    }
+
     public enum ParserType {
         COMPLEX,
         CLASSIC,
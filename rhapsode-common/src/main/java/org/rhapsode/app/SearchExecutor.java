@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.app;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application-wide executor for concurrent searches (hit counts, tagger
+ * searches) and for the single long-running background task
+ * (e.g. table indexing).  Reports have their own pool, see
+ * {@link org.rhapsode.app.tasks.ReportTaskManager}.
+ * <p>
+ * The search pool has a bounded queue.  When the queue is full, the
+ * submitting thread runs the search itself, which throttles callers
+ * rather than failing them; these are counted as rejections.
+ * <p>
+ * An optional slice pool runs the per-segment work of a single search
+ * (see {@link org.rhapsode.lucene.search.RhapsodeSearcherFactory}).  It
+ * is separate from the search pool so that a search running on a search
+ * thread never waits for slices queued behind other searches.
+ * <p>
+ * Deadlines are enforced by cancelling tasks that haven't started and
+ * by skipping tasks whose deadline passed while they were queued.
+ * Running searches are never interrupted, because an interrupt during a
+ * read closes the underlying FileChannel of an NIOFSDirectory and breaks
+ * the shared IndexReader.
+ */
+public class SearchExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchExecutor.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor searchPool;
+    //background tasks, one at a time, kept separate so that a task
+    //can itself submit searches without starving the search pool
+    private final ThreadPoolExecutor taskPool;
+    //null if searches aren't sliced
+    private final ThreadPoolExecutor slicePool;
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong sliceRejected = new AtomicLong(0);
+    private final AtomicLong expired = new AtomicLong(0);
+
+    /**
+     * @param numThreads   number of search threads
+     * @param maxQueueSize maximum number of searches waiting for a thread
+     */
+    public SearchExecutor(int numThreads, int maxQueueSize) {
+        this(numThreads, maxQueueSize, 0);
+    }
+
+    /**
+     * @param numThreads      number of search threads
+     * @param maxQueueSize    maximum number of searches (and of slices) waiting for a thread
+     * @param numSliceThreads number of threads for searching slices of segments, 0 for none
+     */
+    public SearchExecutor(int numThreads, int maxQueueSize, int numSliceThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("must have at least one search thread");
+        }
+        searchPool = new ThreadPoolExecutor(numThreads, numThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, maxQueueSize)),
+                new DaemonThreadFactory("rhapsode-search"),
+                new CountingCallerRunsPolicy(rejected));
+        searchPool.allowCoreThreadTimeOut(true);
+        if (numSliceThreads > 0) {
+            slicePool = new ThreadPoolExecutor(numSliceThreads, numSliceThreads,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(1, maxQueueSize)),
+                    new DaemonThreadFactory("rhapsode-slice"),
+                    new CountingCallerRunsPolicy(sliceRejected));
+            slicePool.allowCoreThreadTimeOut(true);
+        } else {
+            slicePool = null;
+        }
+        taskPool = new ThreadPoolExecutor(1, 1,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory("rhapsode-task"));
+        taskPool.allowCoreThreadTimeOut(true);
+    }
+
+    public <T> Future<T> submit(Callable<T> callable) {
+        return searchPool.submit(callable);
+    }
+
+    /**
+     * Submits all of the callables and waits for them to complete or for
+     * the deadline to pass, whichever comes first.  Callables that haven't
+     * started by the deadline are cancelled; callables that are running
+     * are left to finish.
+     *
+     * @param callables callables to run
+     * @param maxMillis maximum time to wait for all of the callables, -1 to wait indefinitely
+     * @return futures in the same order as the callables.  Check
+     * {@link Future#isDone()} and {@link Future#isCancelled()} before calling get.
+     * @throws InterruptedException
+     */
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> callables,
+                                         long maxMillis) throws InterruptedException {
+        long deadline = (maxMillis < 0) ? Long.MAX_VALUE : System.currentTimeMillis() + maxMillis;
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> c : callables) {
+            futures.add(searchPool.submit(new DeadlineCallable<>(c, deadline)));
+        }
+        boolean timedOut = false;
+        for (Future<T> f : futures) {
+            if (timedOut) {
+                f.cancel(false);
+                continue;
+            }
+            try {
+                if (maxMillis < 0) {
+                    f.get();
+                } else {
+                    f.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+            } catch (ExecutionException e) {
+                //left for the caller to handle via the future
+            } catch (TimeoutException e) {
+                timedOut = true;
+                f.cancel(false);
+            }
+        }
+        if (timedOut) {
+            LOG.debug("deadline exceeded: " + this);
+        }
+        return futures;
+    }
+
+    /**
+     * Runs a long-running background task.  Tasks are run one at a time.
+     */
+    public <T> Future<T> submitTask(Callable<T> task) {
+        return taskPool.submit(task);
+    }
+
+    /**
+     * @return executor for the slices of a single search, <code>null</code>
+     * if searches should run on the calling thread
+     */
+    public ExecutorService getSliceExecutor() {
+        return slicePool;
+    }
+
+    public int getNumThreads() {
+        return searchPool.getMaximumPoolSize();
+    }
+
+    /**
+     * @return number of searches waiting for a thread
+     */
+    public int getQueueDepth() {
+        return searchPool.getQueue().size();
+    }
+
+    /**
+     * @return approximate number of searches currently running
+     */
+    public int getActiveCount() {
+        return searchPool.getActiveCount();
+    }
+
+    /**
+     * @return number of searches that were run by the caller because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return number of slices that were run by the searching thread because the slice queue was full
+     */
+    public long getSliceRejectedCount() {
+        return sliceRejected.get();
+    }
+
+    /**
+     * @return number of searches skipped because their deadline passed before they started
+     */
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    /**
+     * @return approximate number of searches that have completed
+     */
+    public long getCompletedCount() {
+        return searchPool.getCompletedTaskCount();
+    }
+
+    /**
+     * @return true if a background task is running or queued
+     */
+    public boolean isTaskRunning() {
+        return taskPool.getActiveCount() > 0 || taskPool.getQueue().size() > 0;
+    }
+
+    public void shutdown() {
+        searchPool.shutdownNow();
+        taskPool.shutdownNow();
+        if (slicePool != null) {
+            slicePool.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SearchExecutor{" +
+                "threads=" + getNumThreads() +
+                ", queueDepth=" + getQueueDepth() +
+                ", active=" + getActiveCount() +
+                ", completed=" + getCompletedCount() +
+                ", rejected=" + getRejectedCount() +
+                ", sliceRejected=" + getSliceRejectedCount() +
+                ", expired=" + getExpiredCount() +
+                '}';
+    }
+
+    private class DeadlineCallable<T> implements Callable<T> {
+        private final Callable<T> callable;
+        private final long deadline;
+
+        DeadlineCallable(Callable<T> callable, long deadline) {
+            this.callable = callable;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public T call() throws Exception {
+            if (System.currentTimeMillis() > deadline) {
+                expired.incrementAndGet();
+                throw new TimeoutException("deadline passed before the search started");
+            }
+            return callable.call();
+        }
+    }
+
+    private static class CountingCallerRunsPolicy implements RejectedExecutionHandler {
+        private final ThreadPoolExecutor.CallerRunsPolicy callerRuns = new ThreadPoolExecutor.CallerRunsPolicy();
+        private final AtomicLong rejected;
+
+        CountingCallerRunsPolicy(AtomicLong rejected) {
+            this.rejected = rejected;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("search executor has been shut down");
+            }
+            rejected.incrementAndGet();
+            callerRuns.rejectedExecution(r, executor);
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -105,6 +105,9 @@ public class C {
     public static final String LOAD_STORED_QUERIES = "lsq";
     public static final String STORED_QUERIES_PATH = "sqp";
     public static final String ATTACHMENT_OFFSET = "ao";
+    public static final String ATTACHMENT_START = "ast";
+    public static final String VIEWER_ATTACHMENTS_PER_PAGE = "vapp";
+    public static final String VIEWER_MAX_CONTENT_CHARS = "vmcc";
     public static final String SHOW_LANGUAGE_DIRECTION = "sld";
     public static final String DEFAULT_LANG_DIRECTION = "dld";
     public static final String SHOW_SELECTED = "ss";
@@ -129,6 +132,7 @@ public class C {
     public static final String REPORT_TYPE_LIVE = "rptl";
     public static final String REPORT_TYPE_STATIC = "rpts";
     public static final String REPORT_TYPE_NO_LINKS = "rptn";
+    public static final String CANCEL_REPORT = "rpc";
     public static final String SETTINGS_REQUEST_UPDATE = "sru";
     public static final String SELECTED_DOC_IDS = "sids";
     public static final String ADD_SELECTED_TO_FAVORITES = "astf";
@@ -179,6 +183,7 @@ public class C {
     public static final String CLUSTER_ALGO_SELECTOR = "cl_algo";
     public static final String NO_CLUSTERING = "cl_n";
     public static final String CONC_ALLOW_CLUSTERING = "conc_cl";
+    public static final String CONC_PARALLEL = "conc_par";
     public static final String TABLE_INPUT_DIRECTORY = "ti";
     public static final String SET_TABLE_INPUT_DIRECTORY = "tsi";
     public static final String TABLE_FILE_NAME = "tfn";
@@ -35,6 +35,7 @@ import java.util.Map;
 
 import org.rhapsode.app.contants.C;
 import org.rhapsode.app.contants.H;
+import org.rhapsode.lucene.search.SearchBudget;
 import org.rhapsode.lucene.search.concordance.ConcordanceSearchRequest;
 import org.tallison.lucene.search.concordance.classic.AbstractConcordanceWindowCollector;
 import org.tallison.lucene.search.concordance.classic.ConcordanceWindow;
@@ -60,6 +61,38 @@ public class CCDecorator {
         }
     }
 
+    /**
+     * Writes a warning if the search stopped early because it used up its budget.
+     *
+     * @param budget      the search's budget
+     * @param matchingDocs number of documents the search would have visited
+     * @param xhtml
+     * @throws SAXException
+     */
+    public static void writePartial(SearchBudget budget, long matchingDocs,
+                                    RhapsodeXHTMLHandler xhtml) throws SAXException {
+        if (budget == null || !budget.isExceeded()) {
+            return;
+        }
+        DecimalFormat formatter = new DecimalFormat("###,###,###,###,###");
+        String reason = (budget.getExceeded() == SearchBudget.LIMIT.TIME) ?
+                "its time limit of " + formatter.format(budget.getMaxMillis()) + " ms" :
+                "its limit of " + formatter.format(budget.getMaxDocs()) + " documents";
+        String coverage = formatter.format(budget.getDocsVisited()) + " of " +
+                formatter.format(matchingDocs) + " matching documents";
+        if (matchingDocs > 0) {
+            coverage += " (" + Math.min(100, (100 * budget.getDocsVisited()) / matchingDocs) + "%)";
+        }
+        xhtml.br();
+        xhtml.startElement(H.FONT, H.COLOR, H.RED);
+        xhtml.startElement(H.BOLD);
+        xhtml.characters("The search stopped when it reached " + reason + ". " +
+                "The results are partial; they cover " + coverage + ".");
+        xhtml.endElement(H.BOLD);
+        xhtml.endElement(H.FONT);
+        xhtml.br();
+    }
+
     public static void includeDuplicateWindows(ConcordanceSearchRequest searchRequest,
                                                RhapsodeXHTMLHandler xhtml) throws SAXException {
 
@@ -35,6 +35,7 @@ import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.tika.sax.SafeContentHandler;
+import org.apache.tika.sax.ToTextContentHandler;
 import org.rhapsode.app.contants.H;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
@@ -92,8 +93,24 @@ public class RhapsodeXHTMLHandler extends SafeContentHandler {
      */
     private boolean headStarted = false;
     private boolean headEnded = false;
+    private final ContentHandler handler;
+
     public RhapsodeXHTMLHandler(ContentHandler handler) {
         super(handler);
+        this.handler = handler;
+    }
+
+    /**
+     * Pushes whatever the underlying writer has buffered out to its stream
+     * without ending the document.  This relies on {@link ToTextContentHandler#endDocument()}
+     * doing nothing but flushing its writer, and it is a no-op for other handlers.
+     *
+     * @throws SAXException
+     */
+    public void flush() throws SAXException {
+        if (handler instanceof ToTextContentHandler) {
+            handler.endDocument();
+        }
     }
 
     private static Set<String> unmodifiableSet(String... elements) {
@@ -63,6 +63,7 @@ import org.rhapsode.app.decorators.RhapsodeDecorator;
 import org.rhapsode.app.decorators.RhapsodeXHTMLHandler;
 import org.rhapsode.app.session.CollectionsHistory;
 import org.rhapsode.app.session.DynamicParameters;
+import org.rhapsode.lucene.search.SearcherLease;
 import org.xml.sax.SAXException;
 
 public class CollectionHandler extends AdminHandler {
@@ -155,30 +156,32 @@ public class CollectionHandler extends AdminHandler {
                 searcherApp.getRhapsodeCollection().getIndexManager().maybeRefresh();
             }
 
-            IndexReader r = searcherApp.getRhapsodeCollection().getIndexManager().getSearcher().getIndexReader();
-            xhtml.element(H.P, formatDocCount(r.numDocs(), "indexed document"));
-            xhtml.element(H.P, formatDocCount(r.numDeletedDocs(), "deleted document"));
-            xhtml.element(H.P, formatDocCount(searcherApp.getRhapsodeCollection().getIgnoredSize(), "ignored document"));
-            xhtml.element(H.P, formatDocCount(searcherApp.getRhapsodeCollection().getFavoritesSize(), "favorite document"));
             String defaultContentField =
                     searcherApp.getRhapsodeCollection().getIndexSchema().getDefaultContentField();
             boolean foundDefaultContent = false;
             Map<String, Long> m = new HashMap<>();
-            for (LeafReaderContext c : r.leaves()) {
-                LeafReader reader = c.reader();
-                FieldInfos fs = reader.getFieldInfos();
-                Iterator<FieldInfo> it = fs.iterator();
-                while (it.hasNext()) {
-                    FieldInfo info = it.next();
-                    String name = info.name;
-                    if (name.equals(defaultContentField)) {
-                        foundDefaultContent = true;
+            try (SearcherLease lease = searcherApp.getRhapsodeCollection().getIndexManager().acquire()) {
+                IndexReader r = lease.getIndexReader();
+                xhtml.element(H.P, formatDocCount(r.numDocs(), "indexed document"));
+                xhtml.element(H.P, formatDocCount(r.numDeletedDocs(), "deleted document"));
+                xhtml.element(H.P, formatDocCount(searcherApp.getRhapsodeCollection().getIgnoredSize(), "ignored document"));
+                xhtml.element(H.P, formatDocCount(searcherApp.getRhapsodeCollection().getFavoritesSize(), "favorite document"));
+                for (LeafReaderContext c : r.leaves()) {
+                    LeafReader reader = c.reader();
+                    FieldInfos fs = reader.getFieldInfos();
+                    Iterator<FieldInfo> it = fs.iterator();
+                    while (it.hasNext()) {
+                        FieldInfo info = it.next();
+                        String name = info.name;
+                        if (name.equals(defaultContentField)) {
+                            foundDefaultContent = true;
+                        }
+                        int nbr = reader.getDocCount(name);
+                        Long curr = m.get(name);
+                        curr = (curr == null) ? 0 : curr;
+                        curr += nbr;
+                        m.put(name, curr);
                     }
-                    int nbr = reader.getDocCount(name);
-                    Long curr = m.get(name);
-                    curr = (curr == null) ? 0 : curr;
-                    curr += nbr;
-                    m.put(name, curr);
                 }
             }
             xhtml.br();
@@ -49,7 +49,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.Query;
 import org.eclipse.jetty.server.Request;
-import org.rhapsode.app.HitCounter;
 import org.rhapsode.app.RhapsodeSearcherApp;
 import org.rhapsode.app.contants.C;
 import org.rhapsode.app.contants.CSS;
@@ -59,6 +58,7 @@ import org.rhapsode.app.decorators.RhapsodeDecorator;
 import org.rhapsode.app.decorators.RhapsodeXHTMLHandler;
 import org.rhapsode.app.session.DynamicParameters;
 import org.rhapsode.app.session.StoredQueryWriter;
+import org.rhapsode.app.utils.ComplexQueryUtils;
 import org.rhapsode.app.utils.StoredQCUtils;
 import org.rhapsode.lucene.search.ComplexQuery;
 import org.rhapsode.lucene.search.ComplexQueryBuilder;
@@ -283,13 +283,7 @@ public class ConceptHandler extends AdminHandler {
             storedQueryBuilder.add(SQField.MAIN_QUERY, e.getValue().getConceptQuery());
             StoredQuery sq = storedQueryBuilder.build();
             try {
-                ComplexQuery cq = ComplexQueryBuilder.buildQuery(
-                        sq,
-                        searcherApp.getParserPlugin(),
-                        searcherApp.getSessionManager().getStoredConceptManager(),
-                        searcherApp.getGeoConfig(),
-                        searcherApp.getRhapsodeCollection().getIgnoredQuery()
-                );
+                ComplexQuery cq = ComplexQueryUtils.buildQuery(sq, searcherApp);
                 if (cq != null && cq.getRetrievalQuery() != null) {
                     queries.put(id, cq.getRetrievalQuery());
                 }
@@ -297,9 +291,10 @@ public class ConceptHandler extends AdminHandler {
                 searcherApp.getSessionManager().getStoredQueryManager().updateQueryExceptions(sq, searcherApp);
             }
         }
-        HitCounter hc = new HitCounter();
-        Map<Integer, Integer> results = hc.count(queries, searcherApp.getRhapsodeCollection().getIndexManager().getSearcher(),
-                searcherApp.getCommonSearchConfig().getNumThreadsForConcurrentSearches(), MAX_WAIT_FOR_COUNTS);
+        Map<Integer, Integer> results = searcherApp.getHitCountCache().getCounts(queries,
+                searcherApp.getRhapsodeCollection().getIndexManager(),
+                searcherApp.getRhapsodeCollection().getIgnoredVersion(),
+                MAX_WAIT_FOR_COUNTS);
 
         //now map the results to the concept name
         Map<String, Integer> mappedResults = new HashMap<>();
@@ -393,6 +388,8 @@ public class ConceptHandler extends AdminHandler {
             if (e.getMessage() != null && e.getMessage().contains(SQL.ALREADY_EXISTS)) {
                 throw new SQLException("A stored query with that name already exists.");
             }
+            //e.g. the concept would create a cycle
+            throw e;
         }
         searcherApp.getSessionManager().getStoredQueryManager().validateQueries(searcherApp);
     }
@@ -39,6 +39,7 @@ import java.nio.file.Path;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.queryparser.classic.ParseException;
@@ -51,11 +52,16 @@ import org.rhapsode.app.contants.Internal;
 import org.rhapsode.app.decorators.RhapsodeDecorator;
 import org.rhapsode.app.decorators.RhapsodeXHTMLHandler;
 import org.rhapsode.app.session.DBStoredQueryManager;
-import org.rhapsode.app.tagger.Tagger;
 import org.rhapsode.app.tagger.TaggerRequest;
+import org.rhapsode.app.tasks.ReportTaskManager;
+import org.rhapsode.app.tasks.RhapsodeTaskStatus;
+import org.rhapsode.app.tasks.TaggerTask;
+import org.rhapsode.app.tasks.TaggerTaskStatus;
+import org.rhapsode.app.tasks.Tasker;
+import org.rhapsode.app.utils.ComplexQueryUtils;
 import org.rhapsode.lucene.search.ComplexQuery;
-import org.rhapsode.lucene.search.ComplexQueryBuilder;
 import org.rhapsode.lucene.search.MaxResultsQuery;
+import org.rhapsode.lucene.search.SearcherLease;
 import org.rhapsode.lucene.search.StoredQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -176,34 +182,57 @@ public class ReportHandler extends AdminHandler {
             throw new ReportException("Couldn't build a valid query?!");
         }
 
-        TaggerRequest taggerRequest = null;
+        ReportTaskManager reportTaskManager = searcherApp.getReportTaskManager();
+        for (RhapsodeTaskStatus status : reportTaskManager.getStatuses().values()) {
+            if (status.getState() != Tasker.STATE.COMPLETED &&
+                    outputFile.equals(((TaggerTaskStatus) status).getReportFile())) {
+                throw new ReportException("A report with this name is already being written.");
+            }
+        }
+        //the tagger searches with this searcher until it's done;
+        //the task releases the lease when it finishes
+        SearcherLease lease = null;
         try {
-            taggerRequest = new TaggerRequest(queries,
-                    searcherApp.getRhapsodeCollection().getIndexManager().getSearcher(),
+            lease = searcherApp.getRhapsodeCollection().getIndexManager().acquire();
+            TaggerRequest taggerRequest = new TaggerRequest(queries,
+                    lease.getSearcher(),
                     searcherApp.getRhapsodeCollection().getIndexSchema().getRelPathField(),
                     searcherApp.getReportsDirectory(),
                     rr.getReportName(),
                     rr.getReportType(),
                     rr.getTopNCombinedReportResults(),
                     rr.getNormType());
-        } catch (IOException e) {
-            throw new ReportException(e);
-        }
-        Tagger t = new Tagger(taggerRequest, searcherApp);
-        try {
-            t.execute();
+            taggerRequest.setScoreStore(searcherApp.getCommonSearchConfig().getReportScoreStore());
+            taggerRequest.setScoreStoreMemoryBudgetBytes(
+                    searcherApp.getCommonSearchConfig().getReportScoreStoreMemoryBudgetBytes());
+            reportTaskManager.submit(new TaggerTask(taggerRequest, lease, searcherApp));
+        } catch (RejectedExecutionException e) {
+            closeQuietly(lease);
+            throw new ReportException(e.getMessage());
         } catch (Exception e) {
+            closeQuietly(lease);
             throw new ReportException(e);
         }
         xhtml.br();
         xhtml.startElement(H.P);
-        xhtml.characters("Successfully wrote report to: ");
-        xhtml.href("/rhapsode/reports/" +
-                searcherApp.getReportsDirectory().relativize(outputFile).toString(), outputFile.getFileName().toString());
+        xhtml.characters("Started writing report \"" + outputFile.getFileName().toString() + "\". ");
+        xhtml.href(ReportStatusHandler.STATUS_PATH, "Follow its progress");
+        xhtml.characters(" or keep working; a link to the report will be on the status page when it has finished.");
         xhtml.endElement(H.P);
         xhtml.br();
     }
 
+    private static void closeQuietly(SearcherLease lease) {
+        if (lease == null) {
+            return;
+        }
+        try {
+            lease.close();
+        } catch (IOException e) {
+            LOG.warn("problem releasing searcher", e);
+        }
+    }
+
     private Map<Integer, MaxResultsQuery> buildQueries(Set<Integer> storedQueryIds, boolean includeFavorites,
                                                        int hardLimitMaxHits) throws IOException {
         DBStoredQueryManager sqm = searcherApp.getSessionManager().getStoredQueryManager();
@@ -232,13 +261,7 @@ public class ReportHandler extends AdminHandler {
             ComplexQuery cq = null;
 
             try {
-                cq = ComplexQueryBuilder.buildQuery(
-                        sq,
-                        searcherApp.getParserPlugin(),
-                        searcherApp.getSessionManager().getStoredConceptManager(),
-                        searcherApp.getGeoConfig(),
-                        searcherApp.getRhapsodeCollection().getIgnoredQuery()
-                );
+                cq = ComplexQueryUtils.buildQuery(sq, searcherApp);
             } catch (ParseException e) {
                 searcherApp.getSessionManager().getStoredQueryManager().updateQueryExceptions(sq, searcherApp);
                 continue;
@@ -464,6 +487,9 @@ public class ReportHandler extends AdminHandler {
                 H.VALUE, "Write Report",
                 "default", "default");
         xhtml.endElement(H.INPUT);
+        xhtml.br();
+        xhtml.br();
+        xhtml.href(ReportStatusHandler.STATUS_PATH, "Status of reports that are being written");
     }
 
     private class ReportException extends Exception {
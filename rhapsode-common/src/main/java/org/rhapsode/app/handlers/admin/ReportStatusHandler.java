@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.app.handlers.admin;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.eclipse.jetty.server.Request;
+import org.rhapsode.app.RhapsodeSearcherApp;
+import org.rhapsode.app.contants.C;
+import org.rhapsode.app.contants.H;
+import org.rhapsode.app.decorators.RhapsodeDecorator;
+import org.rhapsode.app.decorators.RhapsodeXHTMLHandler;
+import org.rhapsode.app.tasks.ReportTaskManager;
+import org.rhapsode.app.tasks.RhapsodeTaskStatus;
+import org.rhapsode.app.tasks.TaggerTaskStatus;
+import org.rhapsode.app.tasks.Tasker;
+import org.rhapsode.util.ParamUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Polling page for reports that are being written in the background.
+ * It refreshes itself while any report is running and links to each
+ * report once it has been written.
+ */
+public class ReportStatusHandler extends AdminHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReportStatusHandler.class);
+
+    static final String STATUS_PATH = "/rhapsode/admin/report_status";
+    private static final int REFRESH_SECONDS = 2;
+
+    private final RhapsodeSearcherApp searcherApp;
+
+    public ReportStatusHandler(RhapsodeSearcherApp searcherApp) {
+        super("Report Status");
+        this.searcherApp = searcherApp;
+    }
+
+    @Override
+    public void handle(String s, Request request, HttpServletRequest httpServletRequest,
+                       HttpServletResponse response) throws IOException, ServletException {
+        ReportTaskManager reportTaskManager = searcherApp.getReportTaskManager();
+        int cancelId = ParamUtil.getInt(httpServletRequest.getParameter(C.CANCEL_REPORT),
+                -1, -1, Integer.MAX_VALUE);
+        if (cancelId > -1) {
+            reportTaskManager.cancel(cancelId);
+        }
+        Map<Integer, RhapsodeTaskStatus> statuses = reportTaskManager.getStatuses();
+        boolean running = false;
+        for (RhapsodeTaskStatus status : statuses.values()) {
+            if (status.getState() != Tasker.STATE.COMPLETED) {
+                running = true;
+                break;
+            }
+        }
+        setRefresh(running ? REFRESH_SECONDS : -1);
+        try {
+            RhapsodeXHTMLHandler xhtml = initResponse(response, null);
+            if (statuses.size() == 0) {
+                xhtml.element(H.P, "No reports have been started.");
+            } else {
+                writeStatuses(statuses, xhtml);
+            }
+            xhtml.br();
+            xhtml.href("/rhapsode/admin/reports", "Write another report");
+            RhapsodeDecorator.addFooter(xhtml);
+            xhtml.endDocument();
+        } catch (SAXException e) {
+            LOG.error("problem writing report status", e);
+            throw new IOException(e);
+        }
+        response.getOutputStream().flush();
+    }
+
+    private void writeStatuses(Map<Integer, RhapsodeTaskStatus> statuses,
+                               RhapsodeXHTMLHandler xhtml) throws SAXException {
+        xhtml.startElement(H.TABLE, H.BORDER, "2");
+        xhtml.startElement(H.TR);
+        xhtml.element(H.TH, "Report");
+        xhtml.element(H.TH, "State");
+        xhtml.element(H.TH, "Status");
+        xhtml.element(H.TH, " ");
+        xhtml.endElement(H.TR);
+        for (Map.Entry<Integer, RhapsodeTaskStatus> e : statuses.entrySet()) {
+            RhapsodeTaskStatus status = e.getValue();
+            Path reportFile = ((TaggerTaskStatus) status).getReportFile();
+            xhtml.startElement(H.TR);
+            xhtml.td(reportFile.getFileName().toString());
+            xhtml.td(getStateString(status));
+            xhtml.td(status.getMessage());
+            xhtml.startElement(H.TD);
+            if (status.getState() != Tasker.STATE.COMPLETED) {
+                xhtml.href(STATUS_PATH + "?" + C.CANCEL_REPORT + "=" + e.getKey(), "Cancel");
+            } else if (status.getReasonForCompletion() == Tasker.REASON_FOR_COMPLETION.SUCCESS) {
+                xhtml.href("/rhapsode/reports/" +
+                                searcherApp.getReportsDirectory().relativize(reportFile).toString(),
+                        reportFile.getFileName().toString());
+            } else {
+                xhtml.characters(" ");
+            }
+            xhtml.endElement(H.TD);
+            xhtml.endElement(H.TR);
+        }
+        xhtml.endElement(H.TABLE);
+    }
+
+    private static String getStateString(RhapsodeTaskStatus status) {
+        switch (status.getState()) {
+            case NOT_STARTED:
+                return "Waiting";
+            case PROCESSING:
+                return "Running";
+            default:
+                break;
+        }
+        switch (status.getReasonForCompletion()) {
+            case SUCCESS:
+                return "Finished";
+            case USER_INTERRUPTION:
+                return "Cancelled";
+            default:
+                return "Failed";
+        }
+    }
+}
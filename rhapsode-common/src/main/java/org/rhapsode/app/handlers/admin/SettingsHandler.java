@@ -34,7 +34,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -339,12 +338,6 @@ public class SettingsHandler extends AdminHandler {
             }
         }
 
-        try {
-            config.commit();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-
         return sb.toString();
     }
 
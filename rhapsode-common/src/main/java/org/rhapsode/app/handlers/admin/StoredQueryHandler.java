@@ -51,7 +51,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.Query;
 import org.eclipse.jetty.server.Request;
-import org.rhapsode.app.HitCounter;
 import org.rhapsode.app.RhapsodeSearcherApp;
 import org.rhapsode.app.contants.C;
 import org.rhapsode.app.contants.CSS;
@@ -64,6 +63,7 @@ import org.rhapsode.app.session.DynamicParameterConfig;
 import org.rhapsode.app.session.DynamicParameters;
 import org.rhapsode.app.session.StoredQueryReader;
 import org.rhapsode.app.session.StoredQueryWriter;
+import org.rhapsode.app.utils.ComplexQueryUtils;
 import org.rhapsode.app.utils.StoredQCUtils;
 import org.rhapsode.lucene.search.ComplexQuery;
 import org.rhapsode.lucene.search.ComplexQueryBuilder;
@@ -395,8 +395,7 @@ public class StoredQueryHandler extends AdminHandler {
                 (DBStoredConceptManager) searcherApp.getSessionManager().getStoredConceptManager(),
                 searcherApp.getSessionManager().getStoredQueryManager(),
                 searcherApp.getParserPlugin(),
-                searcherApp.getRhapsodeCollection().getIndexSchema(),
-                searcherApp.getSessionManager().getConnection());
+                searcherApp.getRhapsodeCollection().getIndexSchema());
         try (InputStream is = Files.newInputStream(Paths.get(sqr.getFileToLoad()))) {
             reader.loadBoth(is);
         } catch (Exception e) {
@@ -412,13 +411,7 @@ public class StoredQueryHandler extends AdminHandler {
         for (Map.Entry<Integer, StoredQuery> e : c.entrySet()) {
 
             try {
-                ComplexQuery cq = ComplexQueryBuilder.buildQuery(
-                        e.getValue(),
-                        searcherApp.getParserPlugin(),
-                        searcherApp.getSessionManager().getStoredConceptManager(),
-                        searcherApp.getGeoConfig(),
-                        searcherApp.getRhapsodeCollection().getIgnoredQuery()
-                );
+                ComplexQuery cq = ComplexQueryUtils.buildQuery(e.getValue(), searcherApp);
                 if (cq.getRetrievalQuery() != null) {
                     //TODO throw exception for this one...this is bad
                     queries.put(e.getKey(), cq.getRetrievalQuery());
@@ -427,9 +420,10 @@ public class StoredQueryHandler extends AdminHandler {
                 searcherApp.getSessionManager().getStoredQueryManager().updateQueryExceptions(e.getValue(), searcherApp);
             }
         }
-        HitCounter hc = new HitCounter();
-        return hc.count(queries, searcherApp.getRhapsodeCollection().getIndexManager().getSearcher(),
-                searcherApp.getCommonSearchConfig().getNumThreadsForConcurrentSearches(), MAX_WAIT_FOR_COUNTS);
+        return searcherApp.getHitCountCache().getCounts(queries,
+                searcherApp.getRhapsodeCollection().getIndexManager(),
+                searcherApp.getRhapsodeCollection().getIgnoredVersion(),
+                MAX_WAIT_FOR_COUNTS);
     }
 
     private void deleteStoredQueries() throws Exception {
@@ -515,15 +515,27 @@ public class TableFileHandler extends AbstractSearchHandler {
         //check p
         Path tmpSchemaPath = buildTempSchema(tableFileRequest);
         RhapsodeCollection rc = RhapsodeCollection.build(Paths.get(""), collectionPath, tmpSchemaPath);
-        TableIndexerTask tableIndexerTask = new TableIndexerTask(rc, inputTableFile, tableFileRequest);
+        //the new collection searches with the app's searchers, e.g. with segment slicing
+        TableIndexerTask tableIndexerTask = new TableIndexerTask(rc, inputTableFile, tableFileRequest,
+                searcherApp.getSearcherFactory());
+        boolean started = false;
         try {
             searcherApp.startTask(tableIndexerTask);
+            //search the new collection while its rows are being indexed;
+            //this closes the previous collection's index
+            searcherApp.setRhapsodeCollection(rc);
+            started = true;
         } catch (IllegalStateException e) {
             e.printStackTrace();
+            rc.getIndexManager().close();
         } finally {
             Files.delete(tmpSchemaPath);
         }
         xhtml.element(H.P, "Indexer has been started.");
+        if (started) {
+            xhtml.element(H.P, "Collection \"" + tableFileRequest.collectionName +
+                    "\" is now the current collection; rows become searchable as they are indexed.");
+        }
         xhtml.startElement(H.P);
         xhtml.characters("Please navigate to ");
         xhtml.href("/rhapsode/tasks", "tasks");
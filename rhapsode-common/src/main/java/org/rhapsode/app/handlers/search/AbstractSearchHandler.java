@@ -30,8 +30,11 @@
 package org.rhapsode.app.handlers.search;
 
 
+import java.io.IOException;
 import java.util.Map;
 
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.sax.XHTMLContentHandler;
 import org.rhapsode.app.RhapsodeSearcherApp;
@@ -264,6 +267,18 @@ public abstract class AbstractSearchHandler extends AbstractRhapsodeHandler {
         return 1;
     }
 
+    /**
+     * @return number of documents that a search with this retrieval query
+     * visits; used to show how much of the index a partial search covered
+     * @throws IOException
+     */
+    static long countMatchingDocs(IndexSearcher searcher, Query retrievalQuery) throws IOException {
+        if (retrievalQuery == null) {
+            return searcher.getIndexReader().numDocs();
+        }
+        return searcher.count(retrievalQuery);
+    }
+
     int getFilterQueryBoxWidth(RhapsodeSearcherApp searcherApp) {
         return 80;
     }
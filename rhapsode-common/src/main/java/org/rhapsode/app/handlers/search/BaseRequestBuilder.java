@@ -42,10 +42,10 @@ import org.rhapsode.app.RhapsodeSearcherApp;
 import org.rhapsode.app.contants.C;
 import org.rhapsode.app.contants.H;
 import org.rhapsode.app.session.DynamicParameters;
+import org.rhapsode.app.utils.ComplexQueryUtils;
 import org.rhapsode.app.utils.StoredQCUtils;
 import org.rhapsode.lucene.search.BaseSearchRequest;
 import org.rhapsode.lucene.search.ComplexQuery;
-import org.rhapsode.lucene.search.ComplexQueryBuilder;
 import org.rhapsode.lucene.search.SQField;
 import org.rhapsode.lucene.search.StoredQuery;
 import org.rhapsode.lucene.search.StoredQueryBuilder;
@@ -142,11 +142,7 @@ public class BaseRequestBuilder {
         }
 
         LOG.trace("stored query: " + request.getStoredQuery());
-        ComplexQuery cq = ComplexQueryBuilder.buildQuery(request.getStoredQuery(),
-                searcherApp.getParserPlugin(),
-                searcherApp.getSessionManager().getStoredConceptManager(),
-                searcherApp.getGeoConfig(),
-                searcherApp.getRhapsodeCollection().getIgnoredQuery());
+        ComplexQuery cq = ComplexQueryUtils.buildQuery(request.getStoredQuery(), searcherApp);
         request.setComplexQuery(cq);
 
     }
@@ -160,11 +156,8 @@ public class BaseRequestBuilder {
         }
 
 
-        ComplexQuery cq = ComplexQueryBuilder.buildQuery(request.getStoredQuery(),
-                searcherApp.getParserPlugin(rewriteMethod),
-                searcherApp.getSessionManager().getStoredConceptManager(),
-                searcherApp.getGeoConfig(),
-                searcherApp.getRhapsodeCollection().getIgnoredQuery());
+        ComplexQuery cq = ComplexQueryUtils.buildQuery(request.getStoredQuery(),
+                searcherApp.getParserPlugin(rewriteMethod), searcherApp);
         request.setComplexQuery(cq);
 
     }
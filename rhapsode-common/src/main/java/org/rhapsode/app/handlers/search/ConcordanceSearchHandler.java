@@ -41,7 +41,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
 import org.carrot2.clustering.kmeans.BisectingKMeansClusteringAlgorithm;
 import org.carrot2.clustering.lingo.LingoClusteringAlgorithm;
 import org.carrot2.clustering.stc.STCClusteringAlgorithm;
@@ -59,7 +61,11 @@ import org.rhapsode.app.decorators.RhapsodeXHTMLHandler;
 import org.rhapsode.app.session.DynamicParameters;
 import org.rhapsode.lucene.search.BaseSearchRequest;
 import org.rhapsode.lucene.search.BaseSearchResult;
+import org.rhapsode.lucene.search.CommonSearchConfig;
+import org.rhapsode.lucene.search.SearchBudget;
+import org.rhapsode.lucene.search.SearcherLease;
 import org.rhapsode.lucene.search.concordance.ConcordanceSearchRequest;
+import org.rhapsode.lucene.search.concordance.ParallelConcordanceSearcher;
 import org.rhapsode.util.LanguageDirection;
 import org.rhapsode.util.UserLogger;
 import org.tallison.lucene.search.concordance.charoffsets.TargetTokenNotFoundException;
@@ -153,14 +159,34 @@ public class ConcordanceSearchHandler extends AbstractSearchHandler {
         }
         long started = System.currentTimeMillis();
         long elapsed = -1L;
+        SearchBudget budget = null;
+        long matchingDocs = -1;
         if (errorMsg == null && searchRequest.hasQuery()) {
             try {
-                searcher.search(searcherApp.getRhapsodeCollection().getIndexManager().getSearcher(),
-                        searchRequest.getContentField(),
-                        searchRequest.getComplexQuery().getHighlightingQuery(),
-                        searchRequest.getComplexQuery().getRetrievalQuery(),
-                        searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
-                        windowCollector);
+                try (SearcherLease lease = searcherApp.getRhapsodeCollection().getIndexManager().acquire()) {
+                    budget = searchRequest.newSearchBudget();
+                    try (IndexReader budgetedReader = budget.wrap(lease.getIndexReader())) {
+                        IndexSearcher budgetedSearcher = new IndexSearcher(budgetedReader);
+                        if (searcherApp.getSessionManager()
+                                .getDynamicParameterConfig()
+                                .getBoolean(DynamicParameters.CONC_PARALLEL)) {
+                            windowCollector = parallelSearch(searchRequest, budgetedSearcher);
+                        } else {
+                            searcher.search(budgetedSearcher,
+                                    searchRequest.getContentField(),
+                                    searchRequest.getComplexQuery().getHighlightingQuery(),
+                                    searchRequest.getComplexQuery().getRetrievalQuery(),
+                                    searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
+                                    windowCollector);
+                        }
+                    } catch (SearchBudget.BudgetExceededException e) {
+                        //keep the partial results
+                    }
+                    if (budget.isExceeded()) {
+                        matchingDocs = countMatchingDocs(lease.getSearcher(),
+                                searchRequest.getComplexQuery().getRetrievalQuery());
+                    }
+                }
                 elapsed = System.currentTimeMillis() - started;
                 UserLogger.log(TOOL_NAME, searchRequest.getComplexQuery(), windowCollector.getNumDocs(), elapsed);
 
@@ -205,6 +231,9 @@ public class ConcordanceSearchHandler extends AbstractSearchHandler {
             xhtml.br();
             addHiddenInputAndButtons(xhtml);
 
+            if (errorMsg == null) {
+                CCDecorator.writePartial(budget, matchingDocs, xhtml);
+            }
             if (errorMsg == null && searchRequest.hasQuery() && windowCollector.size() > 0) {
                 RhapsodeDecorator.writeElapsed(elapsed, xhtml);
                 CCDecorator.writeResultCounts(searchRequest, windowCollector, searcherApp.getRhapsodeCollection().getIgnoredSize(), xhtml);
@@ -262,6 +291,30 @@ public class ConcordanceSearchHandler extends AbstractSearchHandler {
     }
 
 
+    private AbstractConcordanceWindowCollector parallelSearch(final ConcordanceSearchRequest searchRequest,
+                                                              IndexSearcher indexSearcher)
+            throws TargetTokenNotFoundException, IOException {
+        CommonSearchConfig commonSearchConfig = searcherApp.getCommonSearchConfig();
+        ParallelConcordanceSearcher parallelSearcher = new ParallelConcordanceSearcher(
+                searcherApp.getSearchExecutor().getSliceExecutor(),
+                commonSearchConfig.getMaxDocsPerSlice(),
+                commonSearchConfig.getMaxSegmentsPerSlice());
+        ParallelConcordanceSearcher.ConcordanceSearcherBuilder builder =
+                new ParallelConcordanceSearcher.ConcordanceSearcherBuilder() {
+                    @Override
+                    public ConcordanceSearcher build() {
+                        return buildSearcher(searchRequest);
+                    }
+                };
+        return parallelSearcher.search(builder, indexSearcher,
+                searchRequest.getContentField(),
+                searchRequest.getComplexQuery().getHighlightingQuery(),
+                searchRequest.getComplexQuery().getRetrievalQuery(),
+                searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
+                searchRequest.getIgnoreDuplicateWindows(),
+                searchRequest.getMaxStoredWindows());
+    }
+
     private ConcordanceSearcher buildSearcher(ConcordanceSearchRequest searchRequest) {
         WindowBuilder windowBuilder = new WindowBuilder(
                 searchRequest.getTokensBefore(),
@@ -40,6 +40,7 @@ import java.util.List;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
 import org.eclipse.jetty.server.Request;
 import org.rhapsode.app.RhapsodeSearcherApp;
 import org.rhapsode.app.contants.C;
@@ -49,6 +50,8 @@ import org.rhapsode.app.decorators.CCDecorator;
 import org.rhapsode.app.decorators.RhapsodeDecorator;
 import org.rhapsode.app.decorators.RhapsodeXHTMLHandler;
 import org.rhapsode.app.session.DynamicParameters;
+import org.rhapsode.lucene.search.SearchBudget;
+import org.rhapsode.lucene.search.SearcherLease;
 import org.rhapsode.lucene.search.cooccur.CooccurRequest;
 import org.rhapsode.util.UserLogger;
 import org.tallison.lucene.corpus.stats.IDFIndexCalc;
@@ -126,94 +129,107 @@ public class CooccurHandler extends AbstractSearchHandler {
         }
         float idfThreshold = cooccurRequest.getMinIDF();
 
-        IndexReader reader = searcherApp.getRhapsodeCollection().
-                getIndexManager().getSearcher().getIndexReader();
-
-
-        IDFIndexCalc idfCalc = new IDFIndexCalc(reader);
-        WGrammer wGrammer = (idfThreshold <= 0) ?
-                new WGrammer(cooccurRequest.getMinXGram(), cooccurRequest.getMaxXGram(),
-                        cooccurRequest.getContentField(),
-                        new EmptyTokenBlackList(),
-                        false) :
-                new WGrammer(cooccurRequest.getMinXGram(), cooccurRequest.getMaxXGram(),
-                        cooccurRequest.getContentField(),
-                        new IDFThresholdTokenBlackList(idfCalc, idfThreshold),
-                        false);
-        CooccurVisitor visitor = new CooccurVisitor(
-                cooccurRequest.getContentField(),
-                cooccurRequest.getTokensBefore(), cooccurRequest.getTokensAfter(), wGrammer,
-                idfCalc,
-                cooccurRequest.getMaxStoredWindows(),
-                !cooccurRequest.getIgnoreDuplicateWindows());
-        visitor.setMinTermFreq(cooccurRequest.getMinTermFreq());
-        visitor.setNumResults(cooccurRequest.getMaxNumResults());
-
-
-        if (errorMsg == null &&
-                Math.max(cooccurRequest.getMinXGram(), cooccurRequest.getMaxXGram()) >
-                        Math.max(cooccurRequest.getTokensBefore(), cooccurRequest.getTokensAfter())) {
-            errorMsg = "Your context size is smaller than your maximum ngram size.";
-            UserLogger.logException(TOOL_NAME, errorMsg, httpServletRequest);
-        }
-        ConcordanceArrayWindowSearcher searcher = new ConcordanceArrayWindowSearcher();
-        if (errorMsg == null && cooccurRequest.hasQuery()) {
-            long startTime = System.currentTimeMillis();
-            try {
-                searcher.search(searcherApp.getRhapsodeCollection().getIndexManager().getSearcher(),
-                        cooccurRequest.getContentField(),
-                        cooccurRequest.getComplexQuery().getHighlightingQuery(),
-                        cooccurRequest.getComplexQuery().getRetrievalQuery(),
-                        searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
-                        visitor,
-                        new IndexIdDocIdBuilder());
-                UserLogger.log(TOOL_NAME, cooccurRequest.getComplexQuery(), -1, (System.currentTimeMillis() - startTime));
-
-            } catch (TargetTokenNotFoundException e) {
-                e.printStackTrace();
-                errorMsg = e.getMessage();
+        try (SearcherLease lease = searcherApp.getRhapsodeCollection().getIndexManager().acquire()) {
+            IndexReader reader = lease.getIndexReader();
+
+
+            IDFIndexCalc idfCalc = new IDFIndexCalc(reader);
+            WGrammer wGrammer = (idfThreshold <= 0) ?
+                    new WGrammer(cooccurRequest.getMinXGram(), cooccurRequest.getMaxXGram(),
+                            cooccurRequest.getContentField(),
+                            new EmptyTokenBlackList(),
+                            false) :
+                    new WGrammer(cooccurRequest.getMinXGram(), cooccurRequest.getMaxXGram(),
+                            cooccurRequest.getContentField(),
+                            new IDFThresholdTokenBlackList(idfCalc, idfThreshold),
+                            false);
+            CooccurVisitor visitor = new CooccurVisitor(
+                    cooccurRequest.getContentField(),
+                    cooccurRequest.getTokensBefore(), cooccurRequest.getTokensAfter(), wGrammer,
+                    idfCalc,
+                    cooccurRequest.getMaxStoredWindows(),
+                    !cooccurRequest.getIgnoreDuplicateWindows());
+            visitor.setMinTermFreq(cooccurRequest.getMinTermFreq());
+            visitor.setNumResults(cooccurRequest.getMaxNumResults());
+
+
+            if (errorMsg == null &&
+                    Math.max(cooccurRequest.getMinXGram(), cooccurRequest.getMaxXGram()) >
+                            Math.max(cooccurRequest.getTokensBefore(), cooccurRequest.getTokensAfter())) {
+                errorMsg = "Your context size is smaller than your maximum ngram size.";
                 UserLogger.logException(TOOL_NAME, errorMsg, httpServletRequest);
             }
-        }
-        List<TermIDF> results = ((CooccurVisitor) visitor).getResults();
-        try {
-            xhtml.startElement(H.FORM, H.METHOD, H.POST);
-
-            addQueryWindow(searcherApp, cooccurRequest, xhtml);
-            xhtml.br();
-            CCDecorator.addWordsBeforeAfter(cooccurRequest, xhtml);
-            xhtml.br();
-            addMaxResults(cooccurRequest, xhtml);
-            xhtml.br();
-            addMinTermFreq(cooccurRequest, xhtml);
-            xhtml.br();
-            addMinMaxXGram(cooccurRequest, xhtml);
-            xhtml.br();
-            addMinIDF(cooccurRequest, xhtml);
-            xhtml.br();
-            CCDecorator.addMaxWindows(cooccurRequest.getMaxStoredWindows(), xhtml);
-            xhtml.br();
-            CCDecorator.includeDuplicateWindows(cooccurRequest, xhtml);
-            RhapsodeDecorator.writeLanguageDirection(searcherApp.getSessionManager()
-                            .getDynamicParameterConfig()
-                            .getBoolean(
-                                    DynamicParameters.SHOW_LANGUAGE_DIRECTION),
-                    cooccurRequest.getLanguageDirection(), xhtml);
-            xhtml.br();
-            addHiddenInputAndButtons(xhtml);
-
-            if (errorMsg == null && cooccurRequest.hasQuery() && results.size() > 0) {
-                CCDecorator.writeHitMax(visitor.getHitMax(), visitor.getNumWindowsVisited(), xhtml);
-
-                writeResults(results, xhtml);
-            } else if (errorMsg != null) {
-                RhapsodeDecorator.writeErrorMessage(errorMsg, xhtml);
+            ConcordanceArrayWindowSearcher searcher = new ConcordanceArrayWindowSearcher();
+            SearchBudget budget = null;
+            long matchingDocs = -1;
+            if (errorMsg == null && cooccurRequest.hasQuery()) {
+                long startTime = System.currentTimeMillis();
+                budget = cooccurRequest.newSearchBudget();
+                try (IndexReader budgetedReader = budget.wrap(reader)) {
+                    try {
+                        searcher.search(new IndexSearcher(budgetedReader),
+                                cooccurRequest.getContentField(),
+                                cooccurRequest.getComplexQuery().getHighlightingQuery(),
+                                cooccurRequest.getComplexQuery().getRetrievalQuery(),
+                                searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
+                                visitor,
+                                new IndexIdDocIdBuilder());
+                    } catch (SearchBudget.BudgetExceededException e) {
+                        //keep the partial results
+                        matchingDocs = countMatchingDocs(lease.getSearcher(),
+                                cooccurRequest.getComplexQuery().getRetrievalQuery());
+                    }
+                    UserLogger.log(TOOL_NAME, cooccurRequest.getComplexQuery(), -1, (System.currentTimeMillis() - startTime));
+
+                } catch (TargetTokenNotFoundException e) {
+                    e.printStackTrace();
+                    errorMsg = e.getMessage();
+                    UserLogger.logException(TOOL_NAME, errorMsg, httpServletRequest);
+                }
+            }
+            List<TermIDF> results = ((CooccurVisitor) visitor).getResults();
+            try {
+                xhtml.startElement(H.FORM, H.METHOD, H.POST);
+
+                addQueryWindow(searcherApp, cooccurRequest, xhtml);
+                xhtml.br();
+                CCDecorator.addWordsBeforeAfter(cooccurRequest, xhtml);
+                xhtml.br();
+                addMaxResults(cooccurRequest, xhtml);
+                xhtml.br();
+                addMinTermFreq(cooccurRequest, xhtml);
+                xhtml.br();
+                addMinMaxXGram(cooccurRequest, xhtml);
+                xhtml.br();
+                addMinIDF(cooccurRequest, xhtml);
+                xhtml.br();
+                CCDecorator.addMaxWindows(cooccurRequest.getMaxStoredWindows(), xhtml);
+                xhtml.br();
+                CCDecorator.includeDuplicateWindows(cooccurRequest, xhtml);
+                RhapsodeDecorator.writeLanguageDirection(searcherApp.getSessionManager()
+                                .getDynamicParameterConfig()
+                                .getBoolean(
+                                        DynamicParameters.SHOW_LANGUAGE_DIRECTION),
+                        cooccurRequest.getLanguageDirection(), xhtml);
+                xhtml.br();
+                addHiddenInputAndButtons(xhtml);
+
+                if (errorMsg == null) {
+                    CCDecorator.writePartial(budget, matchingDocs, xhtml);
+                }
+                if (errorMsg == null && cooccurRequest.hasQuery() && results.size() > 0) {
+                    CCDecorator.writeHitMax(visitor.getHitMax(), visitor.getNumWindowsVisited(), xhtml);
+
+                    writeResults(results, xhtml);
+                } else if (errorMsg != null) {
+                    RhapsodeDecorator.writeErrorMessage(errorMsg, xhtml);
+                }
+                xhtml.endElement(H.FORM);
+                RhapsodeDecorator.addFooter(xhtml);
+                xhtml.endDocument();
+            } catch (SAXException e) {
+                throw new IOException(e);
             }
-            xhtml.endElement(H.FORM);
-            RhapsodeDecorator.addFooter(xhtml);
-            xhtml.endDocument();
-        } catch (SAXException e) {
-            throw new IOException(e);
         }
     }
 
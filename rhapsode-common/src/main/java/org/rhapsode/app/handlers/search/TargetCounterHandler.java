@@ -48,11 +48,10 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MultiTermQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreMode;
-import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.eclipse.jetty.server.Request;
@@ -63,6 +62,8 @@ import org.rhapsode.app.contants.H;
 import org.rhapsode.app.decorators.CCDecorator;
 import org.rhapsode.app.decorators.RhapsodeDecorator;
 import org.rhapsode.app.decorators.RhapsodeXHTMLHandler;
+import org.rhapsode.lucene.search.SearchBudget;
+import org.rhapsode.lucene.search.SearcherLease;
 import org.rhapsode.lucene.search.variant.TargetRequest;
 import org.rhapsode.lucene.search.variant.VariantTermRequest;
 import org.rhapsode.text.StringToCodePoints;
@@ -157,6 +158,9 @@ public class TargetCounterHandler extends AbstractSearchHandler {
 
             if (errorMsg == null) {
                 if (searchRequest.hasQuery()) {
+                    if (results != null) {
+                        CCDecorator.writePartial(results.budget, results.matchingDocs, xhtml);
+                    }
                     writeCodePointRequestTable(searchRequest, xhtml);
                     if (results != null && results.results.size() > 0) {
                         writeResults(searchRequest, results, xhtml);
@@ -230,56 +234,68 @@ public class TargetCounterHandler extends AbstractSearchHandler {
                 searchRequest.getMaxWindows());
 
         ConcordanceArrayWindowSearcher searcher = new ConcordanceArrayWindowSearcher();
-        if (searchRequest.hasQuery()) {
-            searcher.search(searcherConfig.getRhapsodeCollection().getIndexManager().getSearcher(),
-                    searchRequest.getContentField(),
-                    searchRequest.getComplexQuery().getHighlightingQuery(),
-                    searchRequest.getComplexQuery().getRetrievalQuery(),
-                    searcherConfig.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
-                    visitor,
-                    new IndexIdDocIdBuilder());
+        SearchBudget budget = searchRequest.newSearchBudget();
+        long matchingDocs = -1;
+        try (SearcherLease lease = searcherConfig.getRhapsodeCollection().getIndexManager().acquire()) {
+            if (searchRequest.hasQuery()) {
+                try (IndexReader budgetedReader = budget.wrap(lease.getIndexReader())) {
+                    searcher.search(new IndexSearcher(budgetedReader),
+                            searchRequest.getContentField(),
+                            searchRequest.getComplexQuery().getHighlightingQuery(),
+                            searchRequest.getComplexQuery().getRetrievalQuery(),
+                            searcherConfig.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
+                            visitor,
+                            new IndexIdDocIdBuilder());
+                } catch (SearchBudget.BudgetExceededException e) {
+                    //keep the partial results
+                    matchingDocs = countMatchingDocs(lease.getSearcher(),
+                            searchRequest.getComplexQuery().getRetrievalQuery());
+                }
+            }
+            VariantResults results = new VariantResults(visitor, lease.getIndexReader().numDocs());
+            results.budget = budget;
+            results.matchingDocs = matchingDocs;
+            return results;
         }
-        return new VariantResults(visitor, searcherConfig.getRhapsodeCollection().getIndexManager().
-                getSearcher().getIndexReader().numDocs());
     }
 
 
     private VariantResults simpleTermSearch(VariantTermRequest searchRequest)
             throws IOException, ParseException {
-        IndexReader reader = searcherConfig.getRhapsodeCollection().getIndexManager().getSearcher().getIndexReader();
-        Query q = searchRequest.getComplexQuery().getHighlightingQuery();
-        if (q instanceof SpanQuery || q instanceof BooleanQuery) {
-            throw new ParseException("Simple term search is not meant for phrasal or boolean queries.\n" +
-                    "Try unselecting the Simple Single Term check box.");
-        }
+        try (SearcherLease lease = searcherConfig.getRhapsodeCollection().getIndexManager().acquire()) {
+            IndexSearcher searcher = lease.getSearcher();
+            IndexReader reader = searcher.getIndexReader();
+            Query q = searchRequest.getComplexQuery().getHighlightingQuery();
+            if (q instanceof SpanQuery || q instanceof BooleanQuery) {
+                throw new ParseException("Simple term search is not meant for phrasal or boolean queries.\n" +
+                        "Try unselecting the Simple Single Term check box.");
+            }
 //        Query q = new PrefixQuery(new Term("content", "f"));
-        //      ((PrefixQuery)q).setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_BOOLEAN_REWRITE);
-
-        q = q.rewrite(reader);
-        Collector collector = new TotalHitCountCollector();
-        searcherConfig.getRhapsodeCollection().
-                getIndexManager().getSearcher().search(q, collector);
-        int totalHits = ((TotalHitCountCollector) collector).getTotalHits();
-        Set<Term> terms = new HashSet<>();
-        Weight weight = q.createWeight(searcherConfig.getRhapsodeCollection().
-                getIndexManager().getSearcher(), ScoreMode.COMPLETE_NO_SCORES, 1.0f);
-
-        weight.extractTerms(terms);
-        List<TermDFTF> results = new ArrayList<>();
-        long totalWindows = 0;
-        for (Term t : terms) {
-            long totalTermFreq = reader.totalTermFreq(t);
-            results.add(new TermDFTF(t.text(), reader.docFreq(t), totalTermFreq));
-            totalWindows += totalTermFreq;
-        }
-        Collections.sort(results);
-        int uniqTerms = results.size();
-        while (results.size() >= searchRequest.getNumResults()) {
-            results.remove(results.size() - 1);
-        }
+            //      ((PrefixQuery)q).setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_BOOLEAN_REWRITE);
+
+            q = q.rewrite(reader);
+            //counts slices of segments in parallel if the searcher has an executor
+            int totalHits = searcher.count(q);
+            Set<Term> terms = new HashSet<>();
+            Weight weight = q.createWeight(searcher, ScoreMode.COMPLETE_NO_SCORES, 1.0f);
+
+            weight.extractTerms(terms);
+            List<TermDFTF> results = new ArrayList<>();
+            long totalWindows = 0;
+            for (Term t : terms) {
+                long totalTermFreq = reader.totalTermFreq(t);
+                results.add(new TermDFTF(t.text(), reader.docFreq(t), totalTermFreq));
+                totalWindows += totalTermFreq;
+            }
+            Collections.sort(results);
+            int uniqTerms = results.size();
+            while (results.size() >= searchRequest.getNumResults()) {
+                results.remove(results.size() - 1);
+            }
 
-        return new VariantResults(results, uniqTerms, totalWindows, totalHits,
-                reader.numDocs(), false);
+            return new VariantResults(results, uniqTerms, totalWindows, totalHits,
+                    reader.numDocs(), false);
+        }
     }
 
     private void writeCodePointRequestTable(VariantTermRequest searchRequest, RhapsodeXHTMLHandler xhtml) throws SAXException {
@@ -408,6 +424,9 @@ public class TargetCounterHandler extends AbstractSearchHandler {
         private final long docsVisited;
         private final long totalDocs;
         private final boolean hitMax;
+        //set if the search had a budget
+        private SearchBudget budget = null;
+        private long matchingDocs = -1;
 
         private VariantResults(List<TermDFTF> results, int uniqueTerms,
                                long windowsVisited, long docsVisited,
@@ -52,5 +52,8 @@ public class TargetRequestBuilder extends BaseRequestBuilder {
         request.setNormalizeTarget(ParamUtil.getBooleanChecked(servletRequest.getParameter(C.NORMALIZE_TARGET), true));
         request.setNumResults(ParamUtil.getInt(servletRequest.getParameter(C.NUM_RESULTS), 10000));
         request.setShowCodePoints(ParamUtil.getBooleanChecked(servletRequest.getParameter(C.SHOW_CODE_POINTS), false));
+        //the target counter re-analyzes documents like the concordance does; share its budget
+        request.setMaxSearchMillis(config.getConcordanceSearchConfig().getMaxSearchMillis());
+        request.setMaxDocsVisited(config.getConcordanceSearchConfig().getMaxDocsVisited());
     }
 }
@@ -48,11 +48,10 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MultiTermQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreMode;
-import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.eclipse.jetty.server.Request;
@@ -62,6 +61,7 @@ import org.rhapsode.app.contants.CSS;
 import org.rhapsode.app.contants.H;
 import org.rhapsode.app.decorators.RhapsodeDecorator;
 import org.rhapsode.app.decorators.RhapsodeXHTMLHandler;
+import org.rhapsode.lucene.search.SearcherLease;
 import org.rhapsode.lucene.search.variant.VariantTermRequest;
 import org.rhapsode.text.StringToCodePoints;
 import org.rhapsode.text.UnicodeNormalizer;
@@ -196,40 +196,40 @@ public class VariantTermHandler extends AbstractSearchHandler {
 
     private VariantResults simpleTermSearch(VariantTermRequest searchRequest)
             throws IOException, ParseException {
-        IndexReader reader = searcherConfig.getRhapsodeCollection().getIndexManager().getSearcher().getIndexReader();
-        Query q = searchRequest.getComplexQuery().getHighlightingQuery();
-        if (q instanceof BooleanQuery || q instanceof SpanQuery) {
-            throw new ParseException("The single term variant counter is not meant for phrasal or boolean queries.\n" +
-                    "Try using the Target Counter tool.");
-        }
+        try (SearcherLease lease = searcherConfig.getRhapsodeCollection().getIndexManager().acquire()) {
+            IndexSearcher searcher = lease.getSearcher();
+            IndexReader reader = searcher.getIndexReader();
+            Query q = searchRequest.getComplexQuery().getHighlightingQuery();
+            if (q instanceof BooleanQuery || q instanceof SpanQuery) {
+                throw new ParseException("The single term variant counter is not meant for phrasal or boolean queries.\n" +
+                        "Try using the Target Counter tool.");
+            }
 //        Query q = new PrefixQuery(new Term("content", "f"));
-        //      ((PrefixQuery)q).setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_BOOLEAN_REWRITE);
-
-        q = q.rewrite(reader);
-        Collector collector = new TotalHitCountCollector();
-        searcherConfig.getRhapsodeCollection().
-                getIndexManager().getSearcher().search(q, collector);
-        int totalHits = ((TotalHitCountCollector) collector).getTotalHits();
-        Set<Term> terms = new HashSet<>();
-        Weight weight = q.createWeight(searcherConfig.getRhapsodeCollection().
-                getIndexManager().getSearcher(), ScoreMode.COMPLETE_NO_SCORES, 1.0f);
-
-        weight.extractTerms(terms);
-        List<TermDFTF> results = new ArrayList<>();
-        long totalOccurrences = 0;
-        for (Term t : terms) {
-            long totalTermFreq = reader.totalTermFreq(t);
-            results.add(new TermDFTF(t.text(), reader.docFreq(t), totalTermFreq));
-            totalOccurrences += totalTermFreq;
-        }
-        Collections.sort(results);
-        int uniqTerms = results.size();
-        while (results.size() > searchRequest.getNumResults()) {
-            results.remove(results.size() - 1);
-        }
+            //      ((PrefixQuery)q).setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_BOOLEAN_REWRITE);
+
+            q = q.rewrite(reader);
+            //counts slices of segments in parallel if the searcher has an executor
+            int totalHits = searcher.count(q);
+            Set<Term> terms = new HashSet<>();
+            Weight weight = q.createWeight(searcher, ScoreMode.COMPLETE_NO_SCORES, 1.0f);
+
+            weight.extractTerms(terms);
+            List<TermDFTF> results = new ArrayList<>();
+            long totalOccurrences = 0;
+            for (Term t : terms) {
+                long totalTermFreq = reader.totalTermFreq(t);
+                results.add(new TermDFTF(t.text(), reader.docFreq(t), totalTermFreq));
+                totalOccurrences += totalTermFreq;
+            }
+            Collections.sort(results);
+            int uniqTerms = results.size();
+            while (results.size() > searchRequest.getNumResults()) {
+                results.remove(results.size() - 1);
+            }
 
-        return new VariantResults(results, uniqTerms, totalOccurrences, totalHits,
-                reader.numDocs());
+            return new VariantResults(results, uniqTerms, totalOccurrences, totalHits,
+                    reader.numDocs());
+        }
     }
 
     private void writeCodePointRequestTable(VariantTermRequest searchRequest, RhapsodeXHTMLHandler xhtml) throws SAXException {
@@ -104,19 +104,8 @@ public class CombinedIndexedDocumentViewer extends AbstractSearchHandler {
         DocHighlighter highlighter = new DocHighlighter();
         IndexSchema schema = searcherApp.getRhapsodeCollection().getIndexSchema();
         highlighter.setTableClass(CSS.HIGHLIGHTED);
-        SortField sortField = new SortedNumericSortField(schema.getAttachmentSortField(), SortField.Type.INT);
-        sortField.setMissingValue(0);
-        Sort sort = new Sort(sortField);
-
-
-        List<Document> docs = DocRetriever.getAllDocsFromAnyDocId(
-                docKey,
-                schema.getUniqueDocField(),
-                schema.getUniqueFileField(),
-                sort,
-                getFields(searcherApp),
-                searcherApp.getRhapsodeCollection().getIndexManager().getSearcher()
-        );
+        List<Document> docs = searcherApp.getRhapsodeCollection().getAllDocsFromAnyDocId(
+                docKey, getFields(searcherApp));
 
         try {
             writeInnerHeader(Integer.toString(rank), xhtml);
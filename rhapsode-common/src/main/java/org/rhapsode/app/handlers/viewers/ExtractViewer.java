@@ -68,6 +68,7 @@ import org.rhapsode.app.utils.DocHighlighter;
 import org.rhapsode.lucene.search.BaseSearchRequest;
 import org.rhapsode.lucene.search.ComplexQuery;
 import org.rhapsode.lucene.search.DocLuceneIdPair;
+import org.rhapsode.lucene.search.SearcherLease;
 import org.rhapsode.lucene.search.SearcherUtils;
 import org.rhapsode.util.ParamUtil;
 import org.slf4j.Logger;
@@ -151,8 +152,11 @@ public class ExtractViewer extends AbstractSearchHandler {
         DocHighlighter highlighter = new DocHighlighter();
         highlighter.setTableClass(CSS.HIGHLIGHTED);
         highlighter.setTDClass(CSS.HIGHLIGHTED);
-        Document doc = SearcherUtils.getUniqueDocument(searcherApp.getRhapsodeCollection().getIndexManager().getSearcher(), docId,
-                searcherApp.getRhapsodeCollection().getIndexSchema().getUniqueDocField(), docKey, getFields(searcherApp));
+        Document doc;
+        try (SearcherLease lease = searcherApp.getRhapsodeCollection().getIndexManager().acquire()) {
+            doc = SearcherUtils.getUniqueDocument(lease.getSearcher(), docId,
+                    searcherApp.getRhapsodeCollection().getIndexSchema().getUniqueDocField(), docKey, getFields(searcherApp));
+        }
         try {
             writeInnerHeader(Integer.toString(rank), xhtml);
 
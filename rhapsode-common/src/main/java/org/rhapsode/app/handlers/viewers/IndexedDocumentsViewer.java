@@ -34,18 +34,20 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.search.Sort;
-import org.apache.lucene.search.SortField;
-import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.search.IndexSearcher;
 import org.eclipse.jetty.server.Request;
 import org.rhapsode.app.RhapsodeSearcherApp;
 import org.rhapsode.app.contants.C;
@@ -58,9 +60,10 @@ import org.rhapsode.app.handlers.search.BaseRequestBuilder;
 import org.rhapsode.app.session.DynamicParameters;
 import org.rhapsode.app.utils.ComplexQueryUtils;
 import org.rhapsode.app.utils.DocHighlighter;
+import org.rhapsode.lucene.analysis.charoffsets.IndexedSpanWeights;
 import org.rhapsode.lucene.search.BaseSearchRequest;
 import org.rhapsode.lucene.search.ComplexQuery;
-import org.rhapsode.lucene.utils.DocRetriever;
+import org.rhapsode.lucene.search.SearcherLease;
 import org.rhapsode.util.ParamUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -136,44 +139,67 @@ public class IndexedDocumentsViewer extends AbstractSearchHandler {
         }
         int rank = ParamUtil.getInt(httpServletRequest.getParameter(C.RANK), -1);
 
+        int attachmentsPerPage = Math.max(1, searcherApp.getSessionManager().getDynamicParameterConfig()
+                .getInt(DynamicParameters.VIEWER_ATTACHMENTS_PER_PAGE));
+        int maxContentChars = searcherApp.getSessionManager().getDynamicParameterConfig()
+                .getInt(DynamicParameters.VIEWER_MAX_CONTENT_CHARS);
+        //by default, start on the page that includes the target attachment
+        int attachmentStart = ParamUtil.getInt(httpServletRequest.getParameter(C.ATTACHMENT_START),
+                (attachmentOffset < attachmentsPerPage) ? 0 : attachmentOffset);
+
         DocHighlighter highlighter = new DocHighlighter();
         highlighter.setTableClass(CSS.HIGHLIGHTED);
         highlighter.setTDClass(CSS.HIGHLIGHTED);
+        highlighter.setMaxValueLength(maxContentChars);
 
-        SortField sortField = new SortedNumericSortField(
-                searcherApp.getRhapsodeCollection().getIndexSchema().getAttachmentSortField(),
-                SortField.Type.INT);
-        sortField.setMissingValue(0);
-        Sort sort = new Sort(sortField);
-
-        List<Document> docs;
-
-        if (fileId != null) {
-            docs = DocRetriever.getAllDocsByFileId(
-                    searcherApp.getRhapsodeCollection().getIndexSchema().getUniqueFileField(),
-                    fileId, sort, getFields(searcherApp),
-                    searcherApp.getRhapsodeCollection().getIndexManager().getSearcher());
-        } else {
-            docs = DocRetriever.getAllDocsFromAnyDocId(docId,
-                    searcherApp.getRhapsodeCollection().getIndexSchema().getUniqueDocField(),
-                    searcherApp.getRhapsodeCollection().getIndexSchema().getUniqueFileField(),
-                    sort, getFields(searcherApp),
-                    searcherApp.getRhapsodeCollection().getIndexManager().getSearcher());
-        }
-        try {
-            writeInnerHeader(Integer.toString(rank), xhtml);
+        Set<String> fields = getFields(searcherApp);
+        String contentField = baseRequest.getContentField();
+        //stream one attachment at a time; the doc ids are only valid while the lease is held
+        try (SearcherLease lease = searcherApp.getRhapsodeCollection().getIndexManager().acquire()) {
+            IndexSearcher searcher = lease.getSearcher();
+            List<Integer> docIds;
+            if (fileId != null) {
+                docIds = searcherApp.getRhapsodeCollection().getAllDocIdsByFileId(fileId, searcher);
+            } else {
+                docIds = searcherApp.getRhapsodeCollection().getAllDocIdsFromAnyDocId(docId, searcher);
+            }
+            attachmentStart = Math.max(0, Math.min(attachmentStart, docIds.size() - 1));
 
+            writeInnerHeader(Integer.toString(rank), xhtml);
+            if (attachmentStart > 0) {
+                xhtml.br();
+                xhtml.href(buildPageURL(httpServletRequest, Math.max(0, attachmentStart - attachmentsPerPage)),
+                        "Load previous attachments");
+            }
             xhtml.br();
             AtomicBoolean alreadyHighlighted = new AtomicBoolean(false);
-            highlighter.highlightDocs(baseRequest.getContentField(),
-                    searcherApp.getRhapsodeCollection().getIndexSchema().getEmbeddedPathField(),
-                    searcherApp.getSessionManager().getDynamicParameterConfig().getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS),
-                    docs,
-                    complexQueries,
-                    searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
-                    alreadyHighlighted,
-                    attachmentOffset,
-                    xhtml);
+            List<String> displayFields = searcherApp.getSessionManager().getDynamicParameterConfig()
+                    .getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS);
+            IndexedSpanWeights indexedWeights = new IndexedSpanWeights(searcher);
+            long contentChars = 0;
+            int i = attachmentStart;
+            //always write at least one attachment so that the viewer makes progress
+            while (i < docIds.size() && i - attachmentStart < attachmentsPerPage &&
+                    (i == attachmentStart || maxContentChars < 0 || contentChars < maxContentChars)) {
+                int luceneDocId = docIds.get(i);
+                Document doc = searcher.doc(luceneDocId, fields);
+                highlighter.highlightAttachment(i, contentField,
+                        searcherApp.getRhapsodeCollection().getIndexSchema().getEmbeddedPathField(),
+                        displayFields, doc, indexedWeights, luceneDocId,
+                        complexQueries,
+                        searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
+                        alreadyHighlighted, i == attachmentOffset, xhtml);
+                contentChars += getLength(doc, contentField);
+                i++;
+                xhtml.flush();
+                response.flushBuffer();
+            }
+            if (i < docIds.size()) {
+                xhtml.br();
+                xhtml.href(buildPageURL(httpServletRequest, i),
+                        "Load next " + Math.min(attachmentsPerPage, docIds.size() - i) +
+                                " of " + (docIds.size() - i) + " remaining attachments");
+            }
             RhapsodeDecorator.addFooter(xhtml);
             xhtml.endDocument();
 
@@ -184,6 +210,38 @@ public class IndexedDocumentsViewer extends AbstractSearchHandler {
         response.flushBuffer();
     }
 
+    private static long getLength(Document doc, String field) {
+        long length = 0;
+        for (String v : doc.getValues(field)) {
+            length += v.length();
+        }
+        return length;
+    }
+
+    //rebuilds this request's url with a new attachment start
+    private static String buildPageURL(HttpServletRequest httpServletRequest, int attachmentStart) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(httpServletRequest.getRequestURI()).append("?");
+        Map<String, String[]> params = httpServletRequest.getParameterMap();
+        try {
+            for (Map.Entry<String, String[]> e : params.entrySet()) {
+                if (C.ATTACHMENT_START.equals(e.getKey())) {
+                    continue;
+                }
+                for (String v : e.getValue()) {
+                    sb.append(URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8.name()));
+                    sb.append("=").append(URLEncoder.encode(v, StandardCharsets.UTF_8.name()));
+                    sb.append("&");
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            //this should never happen
+            throw new RuntimeException(e);
+        }
+        sb.append(C.ATTACHMENT_START).append("=").append(attachmentStart);
+        return sb.toString();
+    }
+
     private Set<String> getFields(RhapsodeSearcherApp searcherApp) {
         Set<String> fields = new HashSet<>();
         for (String k :
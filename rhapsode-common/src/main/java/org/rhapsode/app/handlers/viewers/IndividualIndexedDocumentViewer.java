@@ -63,9 +63,11 @@ import org.rhapsode.app.handlers.search.BaseRequestBuilder;
 import org.rhapsode.app.session.DynamicParameters;
 import org.rhapsode.app.utils.ComplexQueryUtils;
 import org.rhapsode.app.utils.DocHighlighter;
+import org.rhapsode.lucene.analysis.charoffsets.IndexedSpanWeights;
 import org.rhapsode.lucene.search.BaseSearchRequest;
 import org.rhapsode.lucene.search.ComplexQuery;
 import org.rhapsode.lucene.search.DocLuceneIdPair;
+import org.rhapsode.lucene.search.SearcherLease;
 import org.rhapsode.lucene.search.SearcherUtils;
 import org.rhapsode.util.ParamUtil;
 import org.slf4j.Logger;
@@ -137,34 +139,41 @@ public class IndividualIndexedDocumentViewer extends AbstractSearchHandler {
         DocHighlighter highlighter = new DocHighlighter();
         highlighter.setTableClass(CSS.HIGHLIGHTED);
         highlighter.setTDClass(CSS.HIGHLIGHTED);
-
-        Document doc = SearcherUtils.getUniqueDocument(searcherApp.getRhapsodeCollection().getIndexManager().getSearcher(), docId,
-                searcherApp.getRhapsodeCollection().getIndexSchema().getUniqueDocField(), docKey, getFields(searcherApp));
-
-        try {
-            writeInnerHeader(Integer.toString(rank), xhtml);
-
-            writePrevNextLinks(baseRequest, doc,
-                    rank, docId, docKey, xhtml);
-            xhtml.br();
-            AtomicBoolean alreadyHighlighted = new AtomicBoolean(false);
-            highlighter.highlightDoc(baseRequest.getContentField(),
-                    searcherApp
-                            .getSessionManager()
-                            .getDynamicParameterConfig()
-                            .getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS),
-                    doc,
-                    complexQueries,
-                    searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
-                    alreadyHighlighted,
-                    xhtml);
-            RhapsodeDecorator.addFooter(xhtml);
-            xhtml.endDocument();
-
-        } catch (Exception e) {
-            LOG.error("problem", e);
-            e.printStackTrace();
-            throw new RuntimeException(e);
+        highlighter.setMaxValueLength(searcherApp.getSessionManager().getDynamicParameterConfig()
+                .getInt(DynamicParameters.VIEWER_MAX_CONTENT_CHARS));
+
+        //hold the lease while highlighting so that offsets can be read from the index
+        try (SearcherLease lease = searcherApp.getRhapsodeCollection().getIndexManager().acquire()) {
+            Document doc = SearcherUtils.getUniqueDocument(lease.getSearcher(), docId,
+                    searcherApp.getRhapsodeCollection().getIndexSchema().getUniqueDocField(), docKey, getFields(searcherApp));
+
+            try {
+                writeInnerHeader(Integer.toString(rank), xhtml);
+
+                writePrevNextLinks(baseRequest, doc,
+                        rank, docId, docKey, xhtml);
+                xhtml.br();
+                AtomicBoolean alreadyHighlighted = new AtomicBoolean(false);
+                highlighter.highlightDoc(baseRequest.getContentField(),
+                        searcherApp
+                                .getSessionManager()
+                                .getDynamicParameterConfig()
+                                .getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS),
+                        doc,
+                        new IndexedSpanWeights(lease.getSearcher()),
+                        docId,
+                        complexQueries,
+                        searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
+                        alreadyHighlighted,
+                        xhtml);
+                RhapsodeDecorator.addFooter(xhtml);
+                xhtml.endDocument();
+
+            } catch (Exception e) {
+                LOG.error("problem", e);
+                e.printStackTrace();
+                throw new RuntimeException(e);
+            }
         }
         response.flushBuffer();
     }
@@ -189,14 +198,16 @@ public class IndividualIndexedDocumentViewer extends AbstractSearchHandler {
         fields.add(linkDisplayField);
         fields.add(relPathField);
         fields.add(attachmentIndexField);
-        Pair<DocLuceneIdPair, DocLuceneIdPair> pair =
-                SearcherUtils.getBeforeAndAfter(searcherApp.getRhapsodeCollection().getIndexManager().getSearcher(),
-                        request.getComplexQuery().getRetrievalQuery(),
-                        rank, docId,
-                        searcherApp.getSessionManager()
-                                .getDynamicParameterConfig()
-                                .getString(DynamicParameters.DEFAULT_CONTENT_FIELD),
-                        docKey, fields);
+        Pair<DocLuceneIdPair, DocLuceneIdPair> pair;
+        try (SearcherLease lease = searcherApp.getRhapsodeCollection().getIndexManager().acquire()) {
+            pair = SearcherUtils.getBeforeAndAfter(lease.getSearcher(),
+                    request.getComplexQuery().getRetrievalQuery(),
+                    rank, docId,
+                    searcherApp.getSessionManager()
+                            .getDynamicParameterConfig()
+                            .getString(DynamicParameters.DEFAULT_CONTENT_FIELD),
+                    docKey, fields);
+        }
 
         String previousURL = getPrePostDocUrl(pair.getLeft(), rank - 1, request);
         String nextURL = getPrePostDocUrl(pair.getRight(), rank + 1, request);
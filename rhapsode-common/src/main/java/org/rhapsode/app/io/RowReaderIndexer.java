@@ -26,29 +26,102 @@
  * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
  *
  */
-
 package org.rhapsode.app.io;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.tika.metadata.Metadata;
 import org.rhapsode.app.handlers.indexer.FieldTypePair;
 import org.rhapsode.indexer.FileIndexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Indexes each row as a document.
+ * <p>
+ * Rows are collected into batches on the parsing thread.  With indexing
+ * threads, the batches are handed off through a bounded queue, and the
+ * threads build the documents and add them through the shared IndexWriter,
+ * so that parsing and analysis don't share a core.  The bounded queue
+ * keeps the parser from reading too far ahead of the indexing threads.
+ * Without indexing threads, each batch is indexed on the parsing thread.
+ * <p>
+ * Call {@link #finish()} after the table has been parsed and {@link #close()}
+ * when done, whether or not parsing succeeded.
+ */
+public class RowReaderIndexer extends RowReader implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RowReaderIndexer.class);
+
+    private static final List<Metadata> POISON = Collections.emptyList();
+    private static final long CLOSE_WAIT_SECONDS = 60;
 
-public class RowReaderIndexer extends RowReader {
     private final Map<String, FieldTypePair> colMappings;
     private final FileIndexer fileIndexer;
-    private final List<Metadata> metadataList = new ArrayList<>();
-    private int rowsRead = 0;
+    private final int numThreads;
+    private final int batchSize;
+    //null if rows are indexed on the parsing thread
+    private final ExecutorService es;
+    private final ExecutorCompletionService<Integer> completionService;
+    private final ArrayBlockingQueue<List<Metadata>> queue;
+    private final AtomicLong rowsRead = new AtomicLong(0);
+    private final AtomicLong rowsIndexed = new AtomicLong(0);
+    private List<Metadata> batch;
     private int missingId = 0;
+    //the workers are started with the first batch
+    private boolean started = false;
+    private int finishedThreads = 0;
 
+    /**
+     * Indexes each row on the parsing thread as it is read.
+     */
     public RowReaderIndexer(Map<String, FieldTypePair> colMappings, FileIndexer fileIndexer) {
+        this(colMappings, fileIndexer, 0, 1);
+    }
+
+    /**
+     * @param colMappings column name -> field
+     * @param fileIndexer indexer
+     * @param numThreads  number of indexing threads, 0 to index on the parsing thread
+     * @param batchSize   number of rows to add to the index at a time
+     */
+    public RowReaderIndexer(Map<String, FieldTypePair> colMappings, FileIndexer fileIndexer,
+                            int numThreads, int batchSize) {
+        if (numThreads < 0) {
+            throw new IllegalArgumentException("number of threads must be >= 0");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be > 0");
+        }
         this.colMappings = colMappings;
         this.fileIndexer = fileIndexer;
+        this.numThreads = numThreads;
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+        if (numThreads > 0) {
+            queue = new ArrayBlockingQueue<>(numThreads * 2);
+            es = Executors.newFixedThreadPool(numThreads);
+            completionService = new ExecutorCompletionService<>(es);
+        } else {
+            queue = null;
+            es = null;
+            completionService = null;
+        }
     }
 
     @Override
@@ -61,18 +134,141 @@ public class RowReaderIndexer extends RowReader {
             }
             m.set(e.getValue().getLuceneFieldName(), v);
         }
-        metadataList.add(m);
-        try {
-            fileIndexer.writeDocument(metadataList);
-        } finally {
-            metadataList.clear();
+        batch.add(m);
+        rowsRead.incrementAndGet();
+        if (batch.size() >= batchSize) {
+            flushBatch();
         }
-        rowsRead++;
         return true;
     }
 
-    public int getRowsRead() {
-        return rowsRead;
+    /**
+     * Indexes the rows that haven't been handed off yet and waits
+     * for the indexing threads to finish.
+     *
+     * @throws IOException if a row couldn't be indexed
+     */
+    public void finish() throws IOException {
+        flushBatch();
+        if (!started) {
+            return;
+        }
+        for (int i = 0; i < numThreads; i++) {
+            enqueue(POISON);
+        }
+        while (finishedThreads < numThreads) {
+            checkWorkers(1);
+        }
+    }
+
+    /**
+     * Stops the indexing threads once they've finished the batches they're
+     * working on.  Batches that are still queued are dropped.  The threads
+     * aren't interrupted, because an interrupt during a write can close the
+     * index's file channels and break the IndexWriter.
+     */
+    @Override
+    public void close() {
+        if (es == null) {
+            return;
+        }
+        if (started) {
+            queue.clear();
+            for (int i = finishedThreads; i < numThreads; i++) {
+                queue.offer(POISON);
+            }
+        }
+        es.shutdown();
+        try {
+            if (!es.awaitTermination(CLOSE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("indexing threads didn't stop within " + CLOSE_WAIT_SECONDS + " seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of rows parsed so far
+     */
+    public long getRowsRead() {
+        return rowsRead.get();
     }
 
+    /**
+     * @return number of rows added to the index so far
+     */
+    public long getRowsIndexed() {
+        return rowsIndexed.get();
+    }
+
+    private void flushBatch() throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        List<Metadata> full = batch;
+        batch = new ArrayList<>(batchSize);
+        if (es == null) {
+            index(full);
+        } else {
+            enqueue(full);
+        }
+    }
+
+    private void index(List<Metadata> rows) throws IOException {
+        fileIndexer.writeRows(rows);
+        rowsIndexed.addAndGet(rows.size());
+    }
+
+    //offers the batch to the workers, checking for failed workers while waiting
+    private void enqueue(List<Metadata> rows) throws IOException {
+        if (!started) {
+            for (int i = 0; i < numThreads; i++) {
+                completionService.submit(new IndexWorker());
+            }
+            started = true;
+        }
+        try {
+            while (!queue.offer(rows, 1, TimeUnit.SECONDS)) {
+                checkWorkers(0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while indexing", e);
+        }
+        checkWorkers(0);
+    }
+
+    private void checkWorkers(long waitSeconds) throws IOException {
+        try {
+            Future<Integer> future = completionService.poll(waitSeconds, TimeUnit.SECONDS);
+            if (future == null) {
+                return;
+            }
+            future.get();
+            finishedThreads++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while indexing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private class IndexWorker implements Callable<Integer> {
+        @Override
+        public Integer call() throws Exception {
+            while (true) {
+                List<Metadata> rows = queue.take();
+                if (rows == POISON) {
+                    return 1;
+                }
+                index(rows);
+            }
+        }
+    }
 }
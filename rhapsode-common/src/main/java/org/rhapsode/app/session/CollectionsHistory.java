@@ -32,7 +32,6 @@ package org.rhapsode.app.session;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -54,73 +53,77 @@ public class CollectionsHistory {
 
     final static ColInfo LAST_LOADED =
             new ColInfo("LAST_LOADED", Types.TIMESTAMP);
-    PreparedStatement deleteRow;
-    PreparedStatement winnowOnTimeStamp;
-    PreparedStatement insert;
-    PreparedStatement selectStar;
-    private Connection connection;
-    private TableDef table;
-
-    private CollectionsHistory(Connection connection) throws SQLException {
-        this.connection = connection;
-        this.table = new TableDef(COLLECTIONS_HISTORY_TABLE, PATH, LAST_LOADED);
-        this.table.createIfNotExists(connection);
 
-        deleteRow = connection.prepareStatement("DELETE FROM " + COLLECTIONS_HISTORY_TABLE +
-                " WHERE " + PATH.getName() + " = ?");
-        insert = connection.prepareStatement("INSERT INTO " + COLLECTIONS_HISTORY_TABLE +
-                " VALUES (?, ?)");
+    private final static String DELETE_ROW = "DELETE FROM " + COLLECTIONS_HISTORY_TABLE +
+            " WHERE " + PATH.getName() + " = ?";
+    private final static String INSERT = "INSERT INTO " + COLLECTIONS_HISTORY_TABLE +
+            " VALUES (?, ?)";
+    private final static String SELECT_STAR = "SELECT " + PATH.getName() + ", " + LAST_LOADED.getName() +
+            " FROM " + COLLECTIONS_HISTORY_TABLE + " ORDER BY " + LAST_LOADED.getName() + " DESC";
+    private final static String WINNOW_ON_TIMESTAMP = "DELETE FROM " + COLLECTIONS_HISTORY_TABLE +
+            " WHERE " + LAST_LOADED.getName() + " < ?";
 
-        selectStar = connection.prepareStatement("SELECT " + PATH.getName() + ", " + LAST_LOADED.getName() +
-                " FROM " + COLLECTIONS_HISTORY_TABLE + " ORDER BY " + LAST_LOADED.getName() + " DESC");
+    private final ConnectionPool pool;
+    private final TableDef table;
 
-        winnowOnTimeStamp = connection.prepareStatement("DELETE FROM " + COLLECTIONS_HISTORY_TABLE +
-                " WHERE " + LAST_LOADED.getName() + " < ?");
+    private CollectionsHistory(ConnectionPool pool) throws SQLException {
+        this.pool = pool;
+        this.table = new TableDef(COLLECTIONS_HISTORY_TABLE, PATH, LAST_LOADED);
+        try (ConnectionLease lease = pool.borrow()) {
+            this.table.createIfNotExists(lease.getConnection());
+        }
     }
 
-    public static CollectionsHistory load(Connection connection) throws SQLException {
-        return new CollectionsHistory(connection);
+    public static CollectionsHistory load(ConnectionPool pool) throws SQLException {
+        return new CollectionsHistory(pool);
     }
 
     public void addLoaded(Path path) throws SQLException {
-        //delete it if it already exists;
-        deleteRow.setString(1, path.toAbsolutePath().toString());
-        deleteRow.execute();
-
-        insert.setString(1, path.toAbsolutePath().toString());
-        insert.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
-        insert.execute();
-        connection.commit();
-        //now delete any that are older than 10
-        String sql = "SELECT " + LAST_LOADED.getName() + " FROM " + COLLECTIONS_HISTORY_TABLE +
-                " ORDER BY " + LAST_LOADED.getName() + " DESC LIMIT 11";
-        Date last10 = null;
-        try (Statement st = connection.createStatement()) {
-            ResultSet rs = st.executeQuery(sql);
-            int i = 0;
-            while (rs.next()) {
-                if (i == 9) {
-                    last10 = rs.getTimestamp(1);
-                    break;
+        try (ConnectionLease lease = pool.borrow()) {
+            //delete it if it already exists;
+            PreparedStatement deleteRow = lease.prepareStatement(DELETE_ROW);
+            deleteRow.setString(1, path.toAbsolutePath().toString());
+            deleteRow.execute();
+
+            PreparedStatement insert = lease.prepareStatement(INSERT);
+            insert.setString(1, path.toAbsolutePath().toString());
+            insert.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+            insert.execute();
+            lease.commit();
+            //now delete any that are older than 10
+            String sql = "SELECT " + LAST_LOADED.getName() + " FROM " + COLLECTIONS_HISTORY_TABLE +
+                    " ORDER BY " + LAST_LOADED.getName() + " DESC LIMIT 11";
+            Date last10 = null;
+            try (Statement st = lease.createStatement()) {
+                ResultSet rs = st.executeQuery(sql);
+                int i = 0;
+                while (rs.next()) {
+                    if (i == 9) {
+                        last10 = rs.getTimestamp(1);
+                        break;
+                    }
+                    i++;
                 }
-                i++;
+                rs.close();
             }
-            rs.close();
-        }
-        if (last10 != null) {
-            winnowOnTimeStamp.setTimestamp(1, new Timestamp(last10.getTime()));
-            winnowOnTimeStamp.execute();
+            if (last10 != null) {
+                PreparedStatement winnowOnTimeStamp = lease.prepareStatement(WINNOW_ON_TIMESTAMP);
+                winnowOnTimeStamp.setTimestamp(1, new Timestamp(last10.getTime()));
+                winnowOnTimeStamp.execute();
+            }
+            lease.commit();
         }
-        connection.commit();
     }
 
     public List<Pair<Path, Date>> getPaths() throws SQLException {
-        ResultSet rs = selectStar.executeQuery();
         List<Pair<Path, Date>> results = new LinkedList<>();
-        while (rs.next()) {
-            results.add(Pair.of(
-                    Paths.get(rs.getString(1)),
-                    rs.getTimestamp(2)));
+        try (ConnectionLease lease = pool.borrow();
+             ResultSet rs = lease.prepareStatement(SELECT_STAR).executeQuery()) {
+            while (rs.next()) {
+                results.add(Pair.of(
+                        Paths.get(rs.getString(1)),
+                        rs.getTimestamp(2)));
+            }
         }
         return results;
     }
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.app.session;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A connection borrowed from a {@link ConnectionPool}.  Close the lease
+ * (ideally with try-with-resources) to return the connection; don't close
+ * the connection or the statements that come from {@link #prepareStatement(String)}.
+ * <p>
+ * Closing more than once is a no-op.
+ */
+public class ConnectionLease implements AutoCloseable {
+
+    private final ConnectionPool pool;
+    private final ConnectionPool.PooledConnection pooled;
+    private boolean closed = false;
+    private boolean inTransaction = false;
+
+    ConnectionLease(ConnectionPool pool, ConnectionPool.PooledConnection pooled) {
+        this.pool = pool;
+        this.pooled = pooled;
+    }
+
+    public Connection getConnection() {
+        if (closed) {
+            throw new IllegalStateException("lease has already been released");
+        }
+        return pooled.connection;
+    }
+
+    /**
+     * @param sql sql to prepare
+     * @return a statement that is cached on this lease's connection, with its
+     * parameters cleared
+     * @throws SQLException
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        PreparedStatement ps = pooled.statements.get(sql);
+        if (ps == null || ps.isClosed()) {
+            ps = getConnection().prepareStatement(sql);
+            pooled.statements.put(sql, ps);
+        } else {
+            ps.clearParameters();
+        }
+        return ps;
+    }
+
+    /**
+     * @return a new statement; the caller is responsible for closing it
+     * @throws SQLException
+     */
+    public Statement createStatement() throws SQLException {
+        return getConnection().createStatement();
+    }
+
+    /**
+     * Turns off auto-commit on this lease's connection so that the following
+     * statements are committed together by {@link #commit()}.  Anything that
+     * isn't committed when the lease is closed is rolled back, and the
+     * connection goes back to the pool with auto-commit on.
+     *
+     * @throws SQLException
+     */
+    public void beginTransaction() throws SQLException {
+        getConnection().setAutoCommit(false);
+        inTransaction = true;
+    }
+
+    public void commit() throws SQLException {
+        Connection connection = getConnection();
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            pool.release(pooled, inTransaction);
+        }
+    }
+}
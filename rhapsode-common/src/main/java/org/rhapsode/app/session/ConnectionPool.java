@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.app.session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Small pool of connections to the session db.  Borrow a
+ * {@link ConnectionLease} per operation (ideally with try-with-resources);
+ * a connection is only ever used by one thread at a time, and it keeps
+ * its prepared statements across leases.
+ * <p>
+ * Connections are opened lazily up to <code>maxConnections</code>; after that,
+ * borrowers wait up to <code>borrowTimeoutMillis</code> for one to be released.
+ * One connection is opened on construction and is kept open until
+ * {@link #close()} so that named in-memory H2 dbs stay alive.
+ */
+public class ConnectionPool implements Closeable {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+
+    //an unnamed in-memory db is private to each connection
+    private static final String PRIVATE_H2_MEM = "jdbc:h2:mem:";
+
+    private final String connectionString;
+    private final int maxConnections;
+    private final long borrowTimeoutMillis;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final List<PooledConnection> all = new ArrayList<>();
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String connectionString) throws SQLException {
+        this(connectionString, DEFAULT_MAX_CONNECTIONS, DEFAULT_BORROW_TIMEOUT_MILLIS);
+    }
+
+    public ConnectionPool(String connectionString, int maxConnections,
+                          long borrowTimeoutMillis) throws SQLException {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be > 0");
+        }
+        if (PRIVATE_H2_MEM.equals(connectionString.trim()) && maxConnections > 1) {
+            LOG.warn("unnamed in-memory db can't be shared across connections; using a single connection");
+            maxConnections = 1;
+        }
+        this.connectionString = connectionString;
+        this.maxConnections = maxConnections;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maxConnections, true);
+        idle.offer(open());
+    }
+
+    /**
+     * @return a lease on a connection; close the lease to return the connection
+     * @throws SQLException if the pool is closed, if no connection became
+     *                      available within the borrow timeout or if a new connection
+     *                      couldn't be opened
+     */
+    public ConnectionLease borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("connection pool has been closed");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis +
+                        " ms waiting for one of " + maxConnections + " session db connections");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a connection", e);
+        }
+        PooledConnection pooled = idle.pollFirst();
+        try {
+            if (pooled == null) {
+                pooled = open();
+            }
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return new ConnectionLease(this, pooled);
+    }
+
+    void release(PooledConnection pooled, boolean restoreAutoCommit) {
+        try {
+            if (closed || pooled.connection.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            if (!pooled.connection.getAutoCommit()) {
+                //don't leak an uncommitted transaction into the next lease
+                pooled.connection.rollback();
+            }
+            if (restoreAutoCommit) {
+                pooled.connection.setAutoCommit(true);
+            }
+            //most recently used first, so that idle connections stay idle
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            LOG.warn("problem returning connection to the pool; discarding it", e);
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+        if (closed) {
+            //close() may have run while this was out on lease
+            drainIdle();
+        }
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return number of connections currently open, leased or idle
+     */
+    public int getOpenConnections() {
+        synchronized (all) {
+            return all.size();
+        }
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * Closes idle connections and stops lending.  Connections that are out on
+     * lease are closed when they are released.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        drainIdle();
+    }
+
+    private void drainIdle() {
+        PooledConnection pooled = idle.pollFirst();
+        while (pooled != null) {
+            discard(pooled);
+            pooled = idle.pollFirst();
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        PooledConnection pooled = new PooledConnection(DriverManager.getConnection(connectionString));
+        synchronized (all) {
+            all.add(pooled);
+        }
+        return pooled;
+    }
+
+    private void discard(PooledConnection pooled) {
+        synchronized (all) {
+            all.remove(pooled);
+        }
+        for (PreparedStatement ps : pooled.statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                LOG.warn("couldn't close statement", e);
+            }
+        }
+        pooled.statements.clear();
+        try {
+            if (!pooled.connection.isClosed()) {
+                if (!pooled.connection.getAutoCommit()) {
+                    //same as a normal release: whatever wasn't committed is dropped
+                    pooled.connection.rollback();
+                }
+                pooled.connection.close();
+            }
+        } catch (SQLException e) {
+            LOG.warn("couldn't close connection", e);
+        }
+    }
+
+    /**
+     * A connection and the statements that have been prepared on it.
+     * Only touched by the thread that holds the lease.
+     */
+    static class PooledConnection {
+        final Connection connection;
+        final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+}
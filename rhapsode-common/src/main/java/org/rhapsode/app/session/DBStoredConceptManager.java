@@ -30,15 +30,20 @@ package org.rhapsode.app.session;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -60,7 +65,8 @@ public class DBStoredConceptManager implements StoredConceptManager, Closeable {
     //5 exception message
 
     final static ColInfo[] COL_INFO_LIST = new ColInfo[SCField.values().length];
-    private final static int MAX_REWRITES = 20;
+    //upper bound on memoized query strings per concept graph
+    private final static int MAX_CACHED_REWRITES = 10000;
 
     static {
         int i = 0;
@@ -74,56 +80,41 @@ public class DBStoredConceptManager implements StoredConceptManager, Closeable {
         }
     }
 
-    private final Matcher regexRangeMatcher = Pattern.compile("(?:^\\s*\\d+\\s*(,\\s*\\d*)?$)|(?:^\\s*,\\d+$)").matcher("");
-    private final Matcher storedMatcher = Pattern.compile("\\{\\s*([^{}]+)\\s*\\}").matcher("");
+    //patterns, not matchers; this is called concurrently
+    private static final Pattern REGEX_RANGE_PATTERN = Pattern.compile("(?:^\\s*\\d+\\s*(,\\s*\\d*)?$)|(?:^\\s*,\\d+$)");
+    private static final Pattern STORED_PATTERN = Pattern.compile("\\{\\s*([^{}]+)\\s*\\}");
     //private final Matcher priorityNameMatcher = Pattern.compile("^(?:(\\d+)_)?(.*?)\\.txt$").matcher("");
     //private final Matcher junkCleaner = Pattern.compile("-").matcher("");
-    private final Connection connection;
-    private final PreparedStatement preparedLookup;
-    private final PreparedStatement preparedInsert;
-    private final PreparedStatement preparedUpdate;
-    private final PreparedStatement preparedCopy;
-    private final PreparedStatement preparedUpdateException;
+
+    private final static String INSERT = "insert into " + STORED_CONCEPT_TABLE + " VALUES (?,?,?,?,?)";
+    private final static String UPDATE_EXCEPTION = "update " + STORED_CONCEPT_TABLE + " set " +
+            SCField.CONCEPT_EXCEPTION_MSG.getDbName() + "= ? " +
+            "where " + SCField.NAME.getDbName() + "=?";
+    private final static String UPDATE = "update " + STORED_CONCEPT_TABLE + " set " +
+            SCField.CONCEPT_QUERY.getDbName() + "=?" +
+            " where " + SCField.NAME.getDbName() + "=?";
+    private final static String COPY = "select " +
+            SCField.NAME.getDbName() + ", " +
+            SCField.CONCEPT_QUERY.getDbName() + ", " +
+            SCField.CONCEPT_TRANSLATION.getDbName() + ", " +
+            SCField.NOTES.getDbName() + ", " +
+            SCField.CONCEPT_EXCEPTION_MSG.getDbName() +
+            " from " + STORED_CONCEPT_TABLE;
+
+    private final ConnectionPool pool;
     private final TableDef conceptTable;
-    private DBStoredConceptManager(Connection connection) throws SQLException {
-        this.connection = connection;
+    //writers hold this while they change concepts and invalidate the graph
+    private final Object graphLock = new Object();
+    private volatile ConceptGraph conceptGraph = null;
+
+    private DBStoredConceptManager(ConnectionPool pool) throws SQLException {
+        this.pool = pool;
         this.conceptTable = new TableDef(STORED_CONCEPT_TABLE,
                 COL_INFO_LIST);
-        //connection.createStatement().execute("DROP TABLE IF EXISTS "+ STORED_CONCEPT_TABLE);
-
-        conceptTable.createIfNotExists(connection);
-        preparedLookup =
-                connection.prepareStatement(
-                        "select * from " + STORED_CONCEPT_TABLE + " where " +
-                                SCField.NAME.getDbName() + "= ?"
-                );
-        preparedInsert =
-                connection.prepareStatement(
-                        "insert into " + STORED_CONCEPT_TABLE + " VALUES (?,?,?,?,?)"
-                );
-        preparedUpdateException =
-                connection.prepareStatement(
-                        "update " + STORED_CONCEPT_TABLE + " set " +
-                                SCField.CONCEPT_EXCEPTION_MSG.getDbName() + "= ? " +
-                                "where " + SCField.NAME.getDbName() + "=?"
-                );
-
-        preparedUpdate =
-                connection.prepareStatement(
-                        "update " + STORED_CONCEPT_TABLE + " set " +
-                                SCField.CONCEPT_QUERY.getDbName() + "=?" +
-                                " where " + SCField.NAME.getDbName() + "=?"
-                );
-        preparedCopy =
-                connection.prepareStatement(
-                        "select " +
-                                SCField.NAME.getDbName() + ", " +
-                                SCField.CONCEPT_QUERY.getDbName() + ", " +
-                                SCField.CONCEPT_TRANSLATION.getDbName() + ", " +
-                                SCField.NOTES.getDbName() + ", " +
-                                SCField.CONCEPT_EXCEPTION_MSG.getDbName() +
-                                " from " + STORED_CONCEPT_TABLE
-                );
+        try (ConnectionLease lease = pool.borrow()) {
+            //lease.createStatement().execute("DROP TABLE IF EXISTS "+ STORED_CONCEPT_TABLE);
+            conceptTable.createIfNotExists(lease.getConnection());
+        }
     }
 
     static ColInfo build(SCField scField) {
@@ -143,113 +134,103 @@ public class DBStoredConceptManager implements StoredConceptManager, Closeable {
         );
     }
 
-    public static DBStoredConceptManager load(Connection connection) throws IOException, SQLException {
-        return new DBStoredConceptManager(connection);
+    public static DBStoredConceptManager load(ConnectionPool pool) throws IOException, SQLException {
+        return new DBStoredConceptManager(pool);
     }
 
+    /**
+     * The connection pool belongs to the {@link SessionManager}, and statements
+     * are cached by the pool, so there is nothing to release here.
+     */
     public void close() throws IOException {
-        Exception throwIO = null;
-        for (PreparedStatement p : new PreparedStatement[]{
-                preparedCopy,
-                preparedInsert,
-                preparedLookup,
-                preparedUpdate
-        }) {
-            try {
-                p.close();
-            } catch (SQLException e) {
-                throwIO = e;
-            }
-        }
-        try {
-            connection.commit();
-        } catch (SQLException e) {
-            throwIO = e;
-        }
-        try {
-            connection.close();
-        } catch (SQLException e) {
-            throwIO = e;
-        }
-        if (throwIO != null) {
-            throw new IOException(throwIO);
-        }
     }
 
+    /**
+     * Replaces each {concept} reference in the query string with its
+     * fully expanded query in parentheses.  Expansions come from an in-memory
+     * graph of the concepts that is rebuilt only after concepts change,
+     * and rewritten query strings are memoized against that graph.
+     *
+     * @param s query string
+     * @return rewritten query string
+     * @throws ParseException if a referenced concept doesn't exist
+     */
     @Override
     public String rewriteQuery(String s) throws ParseException {
         if (s == null) {
             return null;
         }
-        int rewrites = 0;
-        while (rewrites++ < MAX_REWRITES) {
-            storedMatcher.reset(s);
-            int last = 0;
-            StringBuilder sb = new StringBuilder();
-            boolean found = false;
-            while (storedMatcher.find()) {
-                String cName = storedMatcher.group(1);
-                if (regexRangeMatcher.reset(cName).find()) {
-                    last = storedMatcher.end();
-                    continue;
-                }
-                String q = null;
-                try {
-                    q = map(cName);
-                    //parse exception is thrown from here if cName can't be found
-                } catch (SQLException e) {
-                    throw new RuntimeException(e);
-                }
-
-                sb.append(s.substring(last, storedMatcher.start()));
-                sb.append("(").append(q).append(")");
-                found = true;
-                last = storedMatcher.end();
-            }
-            if (found == false) {
-                return s;
-            }
-            sb.append(s.substring(last));
-            s = sb.toString();
-        }
-        return s;
+        return getConceptGraph().rewrite(s);
     }
 
     @Override
     public void addConcept(StoredConcept storedConcept) {
         try {
-            addConceptNoCommit(storedConcept);
-            connection.commit();
+            insertConcept(storedConcept);
         } catch (SQLException e) {
             throw new IllegalArgumentException(e);
         }
     }
 
-    public void addConceptNoCommit(StoredConcept storedConcept) throws SQLException {
-        int i = 1;
-        for (SCField field : SCField.values()) {
-            preparedInsert.setString(i++, storedConcept.getString(field));
+    /**
+     * Same as {@link #addConcept(StoredConcept)}, but this throws the SQLException.
+     * Each concept is committed as it is added so that the cycle check for
+     * the next concept can see it.
+     *
+     * @param storedConcept
+     * @throws SQLException
+     * @throws IllegalArgumentException if this concept would be part of a cycle
+     */
+    public void insertConcept(StoredConcept storedConcept) throws SQLException {
+        synchronized (graphLock) {
+            getConceptGraph().checkForCycle(storedConcept.getConceptName(),
+                    storedConcept.getConceptQuery());
+            insertRow(storedConcept);
+            conceptGraph = null;
+        }
+    }
+
+    private void insertRow(StoredConcept storedConcept) throws SQLException {
+        try (ConnectionLease lease = pool.borrow()) {
+            PreparedStatement preparedInsert = lease.prepareStatement(INSERT);
+            int i = 1;
+            for (SCField field : SCField.values()) {
+                preparedInsert.setString(i++, storedConcept.getString(field));
+            }
+            preparedInsert.execute();
+            lease.commit();
         }
-        preparedInsert.execute();
     }
 
     public void updateConcept(String concept, String query) throws SQLException {
-        preparedUpdate.setString(1, DBUtils.escapeSQL(query));
-        preparedUpdate.setString(2, DBUtils.escapeSQL(concept));
-        int cnt = preparedUpdate.executeUpdate();
-        if (cnt < 1) {
-            throw new SQLException("Concept didn't exist for updating:" + concept);
+        synchronized (graphLock) {
+            getConceptGraph().checkForCycle(concept, query);
+            update(concept, query);
+            conceptGraph = null;
         }
-        if (cnt > 1) {
-            throw new SQLException("More than one concept matched: " + concept);
+    }
+
+    private void update(String concept, String query) throws SQLException {
+        try (ConnectionLease lease = pool.borrow()) {
+            PreparedStatement preparedUpdate = lease.prepareStatement(UPDATE);
+            preparedUpdate.setString(1, DBUtils.escapeSQL(query));
+            preparedUpdate.setString(2, DBUtils.escapeSQL(concept));
+            int cnt = preparedUpdate.executeUpdate();
+            if (cnt < 1) {
+                throw new SQLException("Concept didn't exist for updating:" + concept);
+            }
+            if (cnt > 1) {
+                throw new SQLException("More than one concept matched: " + concept);
+            }
+            lease.commit();
         }
-        connection.commit();
     }
 
     @Override
     public Map<String, StoredConcept> getConceptMap() {
         Map<String, StoredConcept> concepts = new LinkedHashMap<>();
-        try (ResultSet rs = preparedCopy.executeQuery()) {
+        try (ConnectionLease lease = pool.borrow();
+             ResultSet rs = lease.prepareStatement(COPY).executeQuery()) {
             while (rs.next()) {
                 String name = rs.getString(1);
                 StoredConceptBuilder storedConceptBuilder = new StoredConceptBuilder(name);
@@ -280,45 +261,194 @@ public class DBStoredConceptManager implements StoredConceptManager, Closeable {
     public void deleteConcepts() {
 
         String sql = "TRUNCATE TABLE " + STORED_CONCEPT_TABLE;
-        try (Statement st = connection.createStatement()) {
-            st.execute(sql);
-            connection.commit();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        synchronized (graphLock) {
+            try (ConnectionLease lease = pool.borrow();
+                 Statement st = lease.createStatement()) {
+                st.execute(sql);
+                lease.commit();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            } finally {
+                conceptGraph = null;
+            }
         }
     }
 
-    private String map(String cName) throws SQLException, ParseException {
-        preparedLookup.setString(1, cName);
-        ResultSet rs = preparedLookup.executeQuery();
-        String target = null;
-        int i = 0;
-        while (rs.next()) {
-            target = rs.getString(SCField.CONCEPT_QUERY.getDbName());
-            i++;
+    /**
+     * @return the current graph, building it from the db if concepts
+     * have changed since it was last built
+     */
+    private ConceptGraph getConceptGraph() {
+        ConceptGraph g = conceptGraph;
+        if (g != null) {
+            return g;
         }
-        if (i > 1) {
-            throw new RuntimeException("Shouldn't be more than one result: " + cName);
-        }
-        if (target != null) {
-            return target;
+        synchronized (graphLock) {
+            if (conceptGraph == null) {
+                Map<String, String> queries = new HashMap<>();
+                for (Map.Entry<String, StoredConcept> e : getConceptMap().entrySet()) {
+                    queries.put(e.getKey(), e.getValue().getConceptQuery());
+                }
+                conceptGraph = new ConceptGraph(queries);
+            }
+            return conceptGraph;
         }
-        throw new ParseException("Couldn't find:" + cName + " as a stored concept");
     }
 
-    //TODO just for testing ... clean up
-    Connection getConnection() {
-        return connection;
+    public void updateQueryExceptionMessage(String name, String msg) throws SQLException {
+        try (ConnectionLease lease = pool.borrow()) {
+            PreparedStatement preparedUpdateException = lease.prepareStatement(UPDATE_EXCEPTION);
+            if (msg == null) {
+                preparedUpdateException.setNull(1, Types.VARCHAR);
+            } else {
+                preparedUpdateException.setString(1, msg);
+            }
+            preparedUpdateException.setString(2, name);
+            preparedUpdateException.execute();
+            lease.commit();
+        }
     }
 
-    public void updateQueryExceptionMessage(String name, String msg) throws SQLException {
-        preparedUpdateException.clearParameters();
-        if (msg == null) {
-            preparedUpdateException.setNull(1, Types.VARCHAR);
-        } else {
-            preparedUpdateException.setString(1, msg);
+    /**
+     * Immutable snapshot of the stored concepts: which concepts each concept
+     * refers to, and each concept's fully expanded query.  A new graph is built
+     * whenever concepts are added, updated or deleted; rewritten query
+     * strings are cached for the life of the graph.
+     */
+    private static class ConceptGraph {
+
+        private final Map<String, String> queries;
+        private final Map<String, Set<String>> references = new HashMap<>();
+        //fully expanded queries; missing for concepts that can't be expanded
+        private final Map<String, String> expanded = new HashMap<>();
+        //why a concept can't be expanded
+        private final Map<String, String> errors = new HashMap<>();
+        private final ConcurrentHashMap<String, String> rewritten = new ConcurrentHashMap<>();
+
+        ConceptGraph(Map<String, String> queries) {
+            this.queries = queries;
+            for (Map.Entry<String, String> e : queries.entrySet()) {
+                references.put(e.getKey(), findReferences(e.getValue()));
+            }
+            for (String name : queries.keySet()) {
+                expand(name, new LinkedHashSet<String>());
+            }
+        }
+
+        String rewrite(String s) throws ParseException {
+            String r = rewritten.get(s);
+            if (r != null) {
+                return r;
+            }
+            r = substitute(s);
+            if (rewritten.size() < MAX_CACHED_REWRITES) {
+                rewritten.put(s, r);
+            }
+            return r;
+        }
+
+        /**
+         * @param name  concept name
+         * @param query concept query
+         * @throws IllegalArgumentException if adding or updating the concept with
+         *                                  this query would create a cycle
+         */
+        void checkForCycle(String name, String query) {
+            Set<String> seen = new HashSet<>();
+            LinkedList<String> toVisit = new LinkedList<>(findReferences(query));
+            while (toVisit.size() > 0) {
+                String ref = toVisit.removeFirst();
+                if (ref.equals(name)) {
+                    throw new IllegalArgumentException("Stored concept '" + name +
+                            "' would refer back to itself through {" + ref + "}");
+                }
+                if (seen.add(ref) && references.containsKey(ref)) {
+                    toVisit.addAll(references.get(ref));
+                }
+            }
+        }
+
+        private void expand(String name, LinkedHashSet<String> path) {
+            if (expanded.containsKey(name) || errors.containsKey(name)) {
+                return;
+            }
+            if (!path.add(name)) {
+                //cycles are rejected on insert, but the db may predate that
+                errors.put(name, "Stored concepts form a cycle: " + path + " -> " + name);
+                return;
+            }
+            for (String ref : references.get(name)) {
+                if (!queries.containsKey(ref)) {
+                    errors.put(name, couldntFind(ref));
+                } else {
+                    expand(ref, path);
+                    if (errors.containsKey(ref)) {
+                        errors.put(name, errors.get(ref));
+                    }
+                }
+                if (errors.containsKey(name)) {
+                    path.remove(name);
+                    return;
+                }
+            }
+            try {
+                expanded.put(name, substitute(queries.get(name)));
+            } catch (ParseException e) {
+                errors.put(name, e.getMessage());
+            }
+            path.remove(name);
+        }
+
+        private String substitute(String s) throws ParseException {
+            if (s == null) {
+                return null;
+            }
+            Matcher storedMatcher = STORED_PATTERN.matcher(s);
+            Matcher regexRangeMatcher = REGEX_RANGE_PATTERN.matcher("");
+            StringBuilder sb = null;
+            int last = 0;
+            while (storedMatcher.find()) {
+                String cName = storedMatcher.group(1);
+                if (regexRangeMatcher.reset(cName).find()) {
+                    continue;
+                }
+                String q = expanded.get(cName);
+                if (q == null) {
+                    String error = errors.get(cName);
+                    throw new ParseException(error == null ? couldntFind(cName) : error);
+                }
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                sb.append(s, last, storedMatcher.start());
+                sb.append("(").append(q).append(")");
+                last = storedMatcher.end();
+            }
+            if (sb == null) {
+                return s;
+            }
+            sb.append(s, last, s.length());
+            return sb.toString();
+        }
+
+        private static Set<String> findReferences(String s) {
+            Set<String> refs = new LinkedHashSet<>();
+            if (s == null) {
+                return refs;
+            }
+            Matcher storedMatcher = STORED_PATTERN.matcher(s);
+            Matcher regexRangeMatcher = REGEX_RANGE_PATTERN.matcher("");
+            while (storedMatcher.find()) {
+                String cName = storedMatcher.group(1);
+                if (!regexRangeMatcher.reset(cName).find()) {
+                    refs.add(cName);
+                }
+            }
+            return refs;
+        }
+
+        private static String couldntFind(String cName) {
+            return "Couldn't find:" + cName + " as a stored concept";
         }
-        preparedUpdateException.setString(2, name);
-        preparedUpdateException.execute();
     }
 }
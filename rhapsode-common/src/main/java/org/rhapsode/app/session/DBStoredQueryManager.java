@@ -31,7 +31,6 @@ package org.rhapsode.app.session;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -82,62 +81,41 @@ public class DBStoredQueryManager implements Closeable {
         }
     }
 
-    private final Connection connection;
-    private final PreparedStatement preparedLookup;
-    private final PreparedStatement preparedInsert;
-    private final PreparedStatement preparedUpdate;
-    private final PreparedStatement preparedCopy;
-    private final PreparedStatement prepareMainQueryExceptionMsg;
-    private final PreparedStatement prepareFilterQueryExceptionMsg;
-    private final PreparedStatement prepareDeleteSelectedQuery;
+    private final static String MAIN_QUERY_EXCEPTION_MSG = "update " + STORED_QUERY_TABLE + " set " +
+            SQField.MAIN_QUERY_EXCEPTION_MSG.getDbName() + " = ? " +
+            "where " + SQField.ID.getDbName() + "=?";
+    private final static String FILTER_QUERY_EXCEPTION_MSG = "update " + STORED_QUERY_TABLE + " set " +
+            SQField.FILTER_QUERY_EXCEPTION_MSG.getDbName() + " = ? " +
+            "where " + SQField.ID.getDbName() + "=?";
+    private final static String LOOKUP = "select " +
+            StringUtils.join(StoredQuery.getDBColNames(), ", ") +
+            " from " + STORED_QUERY_TABLE +
+            " where " + SQField.ID.getDbName() + "= ?";
+    private final static String INSERT = "insert into " + STORED_QUERY_TABLE +
+            " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    private final static String COPY = "select " +
+            StringUtils.join(StoredQuery.getDBColNames(), ", ") +
+            " from " + STORED_QUERY_TABLE +
+            " order by " + SQField.ID.getDbName();
+    private final static String DELETE_SELECTED_QUERY = "delete from " + STORED_QUERY_TABLE +
+            " where " + SQField.ID.getDbName() + "= ?";
+    private final static String UPDATE = buildUpdate();
+
+    private final ConnectionPool pool;
     private final TableDef storedQueryTable;
 
-    private DBStoredQueryManager(Connection connection) throws SQLException {
-        this.connection = connection;
+    private DBStoredQueryManager(ConnectionPool pool) throws SQLException {
+        this.pool = pool;
         this.storedQueryTable = new TableDef(STORED_QUERY_TABLE, COL_INFO_LIST);
 
-        //connection.createStatement().execute("DROP TABLE IF EXISTS "+STORED_QUERY_TABLE);
-        storedQueryTable.createIfNotExists(connection);
-        prepareMainQueryExceptionMsg =
-                connection.prepareStatement(
-                        "update " + STORED_QUERY_TABLE + " set " +
-                                SQField.MAIN_QUERY_EXCEPTION_MSG.getDbName() + " = ? " +
-                                "where " + SQField.ID.getDbName() + "=?");
-
-        prepareFilterQueryExceptionMsg =
-                connection.prepareStatement(
-                        "update " + STORED_QUERY_TABLE + " set " +
-                                SQField.FILTER_QUERY_EXCEPTION_MSG.getDbName() + " = ? " +
-                                "where " + SQField.ID.getDbName() + "=?");
-
-        preparedLookup =
-                connection.prepareStatement(
-                        "select " +
-                                StringUtils.join(
-                                        StoredQuery.getDBColNames(), ", ") +
-                                " from " + STORED_QUERY_TABLE +
-                                " where " + SQField.ID.getDbName() + "= ?"
-                );
-        preparedInsert =
-                connection.prepareStatement(
-                        "insert into " + STORED_QUERY_TABLE + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)"
-                );
-
-        preparedCopy =
-                connection.prepareStatement(
-                        "select " +
-                                StringUtils.join(
-                                        StoredQuery.getDBColNames(), ", ") +
-                                " from " + STORED_QUERY_TABLE +
-                                " order by " + SQField.ID.getDbName()
-                );
-        prepareDeleteSelectedQuery =
-                connection.prepareStatement(
-                        "delete from " + STORED_QUERY_TABLE +
-                                " where " + SQField.ID.getDbName() + "= ?"
-                );
-
+        try (ConnectionLease lease = pool.borrow()) {
+            //lease.createStatement().execute("DROP TABLE IF EXISTS "+STORED_QUERY_TABLE);
+            storedQueryTable.createIfNotExists(lease.getConnection());
+        }
+        resetMax();
+    }
 
+    private static String buildUpdate() {
         StringBuilder sb = new StringBuilder();
         sb.append("update ").append(STORED_QUERY_TABLE).append(" ");
         sb.append("set ");
@@ -152,14 +130,11 @@ public class DBStoredQueryManager implements Closeable {
             }
         }
         sb.append(" where ").append(SQField.ID.getDbName()).append("=?");
-        preparedUpdate =
-                connection.prepareStatement(sb.toString());
-
-        resetMax();
+        return sb.toString();
     }
 
-    public static DBStoredQueryManager load(Connection connection) throws IOException, SQLException {
-        return new DBStoredQueryManager(connection);
+    public static DBStoredQueryManager load(ConnectionPool pool) throws IOException, SQLException {
+        return new DBStoredQueryManager(pool);
     }
 
     static ColInfo build(SQField sqField) {
@@ -180,55 +155,78 @@ public class DBStoredQueryManager implements Closeable {
     }
 
     public synchronized void resetMax() throws SQLException {
-        NUM_RECORDS.set(-1);
         String sql = "select max(" + SQField.ID.getDbName() + ") from " + STORED_QUERY_TABLE;
-        try (Statement st = connection.createStatement()) {
-            try (ResultSet rs = st.executeQuery(sql)) {
-                while (rs.next()) {
-                    NUM_RECORDS.set(rs.getInt(1));
-                }
+        int max = -1;
+        try (ConnectionLease lease = pool.borrow();
+             Statement st = lease.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                max = rs.getInt(1);
             }
         }
+        //don't go through -1 on the way; another thread may be taking an id
+        NUM_RECORDS.set(max);
     }
 
-    public void close() throws IOException {
-        Exception throwIO = null;
-        for (PreparedStatement p : new PreparedStatement[]{
-                preparedCopy,
-                preparedInsert,
-                preparedLookup,
-                // preparedUpdate
-        }) {
-            try {
-                p.close();
-            } catch (SQLException e) {
-                throwIO = e;
-            }
-        }
-        try {
-            connection.commit();
-        } catch (SQLException e) {
-            throwIO = e;
-        }
-        try {
-            connection.close();
-        } catch (SQLException e) {
-            throwIO = e;
-        }
-        if (throwIO != null) {
-            throw new IOException(throwIO);
+    /**
+     * Makes sure that ids handed out later are higher than one
+     * that was assigned explicitly (e.g. by the {@link StoredQueryReader}).
+     *
+     * @param id
+     */
+    private static void bumpMax(int id) {
+        int curr = NUM_RECORDS.get();
+        while (curr < id && !NUM_RECORDS.compareAndSet(curr, id)) {
+            curr = NUM_RECORDS.get();
         }
     }
 
+    /**
+     * The connection pool belongs to the {@link SessionManager}, and statements
+     * are cached by the pool, so there is nothing to release here.
+     */
+    public void close() throws IOException {
+    }
+
     public void addQuery(StoredQuery q) throws SQLException {
-        addQueryNoCommit(q);
-        connection.commit();
-        resetMax();
+        try (ConnectionLease lease = pool.borrow()) {
+            addQueryNoCommit(q, lease);
+            lease.commit();
+        }
     }
 
-    public void addQueryNoCommit(StoredQuery q) throws SQLException {
+    /**
+     * Inserts the query on the caller's connection without committing so that
+     * a batch of queries can be committed (or rolled back) together.  The
+     * lease should come from {@link #beginBatch()}, and the caller must
+     * {@link ConnectionLease#commit()} before closing it; otherwise, the
+     * inserts are rolled back when the lease is returned.
+     *
+     * @param q     query to add
+     * @param lease lease to insert through; the caller owns it
+     * @throws SQLException
+     */
+    public void addQueryNoCommit(StoredQuery q, ConnectionLease lease) throws SQLException {
+        PreparedStatement preparedInsert = lease.prepareStatement(INSERT);
         updatePreparedInsert(q, preparedInsert);
         preparedInsert.execute();
+        bumpMax(q.getId());
+    }
+
+    /**
+     * @return a lease on a session db connection with a transaction started
+     * for batching calls to {@link #addQueryNoCommit(StoredQuery, ConnectionLease)}
+     * @throws SQLException
+     */
+    public ConnectionLease beginBatch() throws SQLException {
+        ConnectionLease lease = pool.borrow();
+        try {
+            lease.beginTransaction();
+        } catch (SQLException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+        return lease;
     }
 
    /* public void updateQuery(String name, StoredQuery q) throws SQLException {
@@ -277,9 +275,15 @@ public class DBStoredQueryManager implements Closeable {
     }
 
     public int update(StoredQuery q) throws SQLException {
+        try (ConnectionLease lease = pool.borrow()) {
+            int cnt = update(q, lease.prepareStatement(UPDATE));
+            lease.commit();
+            return cnt;
+        }
+    }
 
+    private int update(StoredQuery q, PreparedStatement preparedUpdate) throws SQLException {
         int i = 1;
-        preparedUpdate.clearParameters();
         for (SQField sqField : SQField.values()) {
             if (sqField.equals(SQField.NAME)) {
                 continue;
@@ -312,9 +316,10 @@ public class DBStoredQueryManager implements Closeable {
 
     public void deleteAllQueries() throws SQLException {
         String sql = "TRUNCATE TABLE " + STORED_QUERY_TABLE;
-        try (Statement st = connection.createStatement()) {
+        try (ConnectionLease lease = pool.borrow();
+             Statement st = lease.createStatement()) {
             st.execute(sql);
-            connection.commit();
+            lease.commit();
         } catch (SQLException e) {
             e.printStackTrace();
             throw e;
@@ -322,14 +327,10 @@ public class DBStoredQueryManager implements Closeable {
         resetMax();
     }
 
-    //TODO just for testing ... clean up
-    Connection getConnection() {
-        return connection;
-    }
-
     public Map<Integer, StoredQuery> getStoredQueryMap() {
         Map<Integer, StoredQuery> queries = new LinkedHashMap<>();
-        try (ResultSet rs = preparedCopy.executeQuery()) {
+        try (ConnectionLease lease = pool.borrow();
+             ResultSet rs = lease.prepareStatement(COPY).executeQuery()) {
             while (rs.next()) {
                 Integer id = rs.getInt(1);
                 String name = DBUtils.unescapeSQL(rs.getString(2));
@@ -365,8 +366,8 @@ public class DBStoredQueryManager implements Closeable {
     //will return null if sqid doesn't exist!!!
     public StoredQuery getStoredQuery(int id) throws IOException {
         StoredQuery sq = null;
-        try {
-            preparedLookup.clearParameters();
+        try (ConnectionLease lease = pool.borrow()) {
+            PreparedStatement preparedLookup = lease.prepareStatement(LOOKUP);
             preparedLookup.setInt(1, id);
             ResultSet rs = preparedLookup.executeQuery();
             int cnt = 0;
@@ -407,8 +408,8 @@ public class DBStoredQueryManager implements Closeable {
     }
 
     public void updateMainQueryExceptionMessage(Integer id, String message) {
-        try {
-            prepareMainQueryExceptionMsg.clearParameters();
+        try (ConnectionLease lease = pool.borrow()) {
+            PreparedStatement prepareMainQueryExceptionMsg = lease.prepareStatement(MAIN_QUERY_EXCEPTION_MSG);
             if (message == null) {
                 prepareMainQueryExceptionMsg.setNull(1, Types.VARCHAR);
             } else {
@@ -416,14 +417,15 @@ public class DBStoredQueryManager implements Closeable {
             }
             prepareMainQueryExceptionMsg.setInt(2, id);
             prepareMainQueryExceptionMsg.execute();
+            lease.commit();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     public void updateFilterQueryExceptionMessage(Integer id, String message) {
-        try {
-            prepareFilterQueryExceptionMsg.clearParameters();
+        try (ConnectionLease lease = pool.borrow()) {
+            PreparedStatement prepareFilterQueryExceptionMsg = lease.prepareStatement(FILTER_QUERY_EXCEPTION_MSG);
             if (message == null) {
                 prepareFilterQueryExceptionMsg.setNull(1, Types.VARCHAR);
             } else {
@@ -431,17 +433,20 @@ public class DBStoredQueryManager implements Closeable {
             }
             prepareFilterQueryExceptionMsg.setInt(2, id);
             prepareFilterQueryExceptionMsg.execute();
+            lease.commit();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     public int deleteQuery(Integer queryId) throws SQLException {
-        prepareDeleteSelectedQuery.clearParameters();
-        prepareDeleteSelectedQuery.setInt(1, queryId);
-        int modified = prepareDeleteSelectedQuery.executeUpdate();
-        resetMax();
-        return modified;
+        try (ConnectionLease lease = pool.borrow()) {
+            PreparedStatement prepareDeleteSelectedQuery = lease.prepareStatement(DELETE_SELECTED_QUERY);
+            prepareDeleteSelectedQuery.setInt(1, queryId);
+            int modified = prepareDeleteSelectedQuery.executeUpdate();
+            lease.commit();
+            return modified;
+        }
     }
 
     public void updateQueryExceptions(StoredQuery sq, RhapsodeSearcherApp searcherApp) {
@@ -466,20 +471,14 @@ public class DBStoredQueryManager implements Closeable {
             try {
                 ComplexQueryBuilder.validateMain(sq,
                         searcherApp.getParserPlugin(), searcherApp.getSessionManager().getStoredConceptManager());
-                prepareMainQueryExceptionMsg.clearParameters();
-                prepareMainQueryExceptionMsg.setNull(1, Types.VARCHAR);
-                prepareMainQueryExceptionMsg.setInt(2, sq.getId());
-                prepareMainQueryExceptionMsg.execute();
+                updateMainQueryExceptionMessage(sq.getId(), null);
             } catch (ParseException ex) {
                 updateMainQueryExceptionMessage(sq.getId(), ex.getMessage());
             }
             try {
                 ComplexQueryBuilder.validateFilter(sq,
                         searcherApp.getParserPlugin(), searcherApp.getSessionManager().getStoredConceptManager());
-                prepareFilterQueryExceptionMsg.clearParameters();
-                prepareFilterQueryExceptionMsg.setNull(1, Types.VARCHAR);
-                prepareFilterQueryExceptionMsg.setInt(2, sq.getId());
-                prepareFilterQueryExceptionMsg.execute();
+                updateFilterQueryExceptionMessage(sq.getId(), null);
             } catch (ParseException ex) {
                 updateFilterQueryExceptionMessage(sq.getId(), ex.getMessage());
             }
@@ -30,11 +30,13 @@
 package org.rhapsode.app.session;
 
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +46,12 @@ import org.rhapsode.util.LanguageDirection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Parameters are stored in H2, but reads are served from an immutable
+ * in-memory snapshot so that lookups never touch the database.  Writes go
+ * through to the database and then publish a new snapshot; readers see
+ * either the old or the new snapshot, never a partial one.
+ */
 public class DynamicParameterConfig {
 
     final static String PARAM_TABLE = "params";
@@ -52,40 +60,28 @@ public class DynamicParameterConfig {
     final static ColInfo PARAM_VALUE =
             new ColInfo("VALUE", Types.VARCHAR, 10000);
     private static final Logger LOG = LoggerFactory.getLogger(DynamicParameter.class);
-    private Connection connection;
-    private TableDef paramTable;
-    private PreparedStatement preparedLookup;
-    private PreparedStatement preparedMerge;
-    private PreparedStatement preparedCopy;
+    private final static String MERGE = "MERGE INTO " + PARAM_TABLE +
+            " KEY(" + PARAM_NAME.getName() + ")" + " VALUES (?,?)";
+    private final static String COPY = "select " + PARAM_NAME.getName() + ", " +
+            PARAM_VALUE.getName() + " FROM " + PARAM_TABLE;
+    private final ConnectionPool pool;
+    private final TableDef paramTable;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
 
 
-    private DynamicParameterConfig(Connection connection) throws SQLException {
-        this.connection = connection;
+    private DynamicParameterConfig(ConnectionPool pool) throws SQLException {
+        this.pool = pool;
         this.paramTable = new TableDef(PARAM_TABLE, PARAM_NAME, PARAM_VALUE);
-//        connection.createStatement().execute("drop table "+PARAM_TABLE);
-        this.paramTable.createIfNotExists(connection);
-        preparedLookup =
-                connection.prepareStatement(
-                        "select " + PARAM_VALUE.getName() + " from " + PARAM_TABLE +
-                                " where " + PARAM_NAME.getName() + "= ?"
-                );
-        preparedMerge =
-                connection.prepareStatement(
-                        "MERGE INTO " + PARAM_TABLE + " KEY(" + PARAM_NAME.getName() + ")" +
-                                " VALUES (?,?)"
-                );
-
-        preparedCopy =
-                connection.prepareStatement(
-                        "select " + PARAM_NAME.getName() + ", " +
-                                PARAM_VALUE.getName() + " FROM " + PARAM_TABLE
-                );
+        try (ConnectionLease lease = pool.borrow()) {
+//            lease.createStatement().execute("drop table "+PARAM_TABLE);
+            this.paramTable.createIfNotExists(lease.getConnection());
+        }
 
+        snapshot = new Snapshot(loadFromDB());
         //init if table is empty
-        Map<DynamicParameter, String> m = getParamCopy();
-        if (m.size() == 0) {
-            for (Map.Entry<String, DynamicParameter> e : DynamicParameters.params.entrySet()) {
-                update(e.getValue(), e.getValue().getDefaultValueAsString());
+        if (snapshot.values.size() == 0) {
+            for (DynamicParameter<?> p : DynamicParameters.params.values()) {
+                update(p, p.getDefaultValueAsString());
             }
         }
         int maxClauses = getInt(DynamicParameters.MAX_BOOLEAN_CLAUSES);
@@ -96,197 +92,127 @@ public class DynamicParameterConfig {
         }
     }
 
-    public static DynamicParameterConfig load(Connection connection) throws IOException, SQLException {
-        return new DynamicParameterConfig(connection);
+    public static DynamicParameterConfig load(ConnectionPool pool) throws IOException, SQLException {
+        return new DynamicParameterConfig(pool);
     }
 
     public Map<DynamicParameter, String> getParamCopy() {
-        Map<DynamicParameter, String> ret = new LinkedHashMap<>();
-        try {
-            ResultSet rs = preparedCopy.executeQuery();
+        return new LinkedHashMap<>(snapshot.values);
+    }
+
+    private Map<DynamicParameter<?>, String> loadFromDB() throws SQLException {
+        Map<DynamicParameter<?>, String> ret = new LinkedHashMap<>();
+        try (ConnectionLease lease = pool.borrow();
+             ResultSet rs = lease.prepareStatement(COPY).executeQuery()) {
             while (rs.next()) {
                 String name = rs.getString(1);
                 String val = rs.getString(2);
-                DynamicParameter p = DynamicParameters.params.get(name);
+                DynamicParameter<?> p = DynamicParameters.params.get(name);
                 if (p == null) {
                     LOG.warn("Value in db isn't a constant(?):" + name);
                 } else {
                     ret.put(p, val);
                 }
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
         }
         return ret;
     }
 
 
-    private void merge(DynamicParameter parameter, String newVal) throws SQLException {
+    private void merge(DynamicParameter<?> parameter, String newVal) throws SQLException {
         //assume the type has already been checked for parseabillity
-        preparedMerge.clearParameters();
-        preparedMerge.setString(1, parameter.getFullName());
-        preparedMerge.setString(2, newVal);
-        preparedMerge.execute();
+        try (ConnectionLease lease = pool.borrow()) {
+            PreparedStatement preparedMerge = lease.prepareStatement(MERGE);
+            preparedMerge.setString(1, parameter.getFullName());
+            preparedMerge.setString(2, newVal);
+            preparedMerge.execute();
+            lease.commit();
+        }
     }
 
 
-    public void update(DynamicParameter p, String val) throws SQLException {
+    /**
+     * Writes the value through to the database and then publishes
+     * a new snapshot with the value.  Writers are serialized; readers
+     * are never blocked.
+     *
+     * @param p   parameter to update
+     * @param val string value; must be parseable by the parameter
+     * @throws SQLException
+     */
+    public synchronized void update(DynamicParameter<?> p, String val) throws SQLException {
         //check that this value is parseable
         Object v = p.getValueFromString(val);
         merge(p, val);
+        Map<DynamicParameter<?>, String> values = new LinkedHashMap<>(snapshot.values);
+        values.put(p, val);
+        snapshot = new Snapshot(values);
     }
 
-
-    /*
-        public DisplayFields getDisplayFields(DisplayFieldsDynamicParameter<DisplayFields> parameter) {
-            String val = null;
-            int i = 0;
-            try {
-                preparedLookup.clearParameters();
-                preparedLookup.setString(1, parameter.getFullName());
-
-                ResultSet rs = preparedLookup.executeQuery();
-                while (rs.next()) {
-                    val = rs.getString(1);
-                    i++;
-                }
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
-            }
-            if (i++ > 1) {
-                throw new
-                        IllegalArgumentException(
-                        "Shouldn't have more than one value for "+parameter.getFullName());
-            }
-
-            return parameter.getValueFromString(val);
-        }
-    */
     public boolean getBoolean(BooleanDynamicParameter parameter) {
-        String val = null;
-        int i = 0;
-        try {
-            preparedLookup.clearParameters();
-            preparedLookup.setString(1, parameter.getFullName());
-
-            ResultSet rs = preparedLookup.executeQuery();
-            while (rs.next()) {
-                val = rs.getString(1);
-                i++;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        if (i++ > 1) {
-            throw new
-                    IllegalArgumentException(
-                    "Shouldn't have more than one value for " + parameter.getFullName());
-        }
-
-        return parameter.getValueFromString(val);
+        return get(parameter);
     }
 
 
     public int getInt(IntDynamicParameter parameter) {
-        String val = null;
-        int i = 0;
-        try {
-            preparedLookup.clearParameters();
-            preparedLookup.setString(1, parameter.getFullName());
-
-            ResultSet rs = preparedLookup.executeQuery();
-            while (rs.next()) {
-                val = rs.getString(1);
-                i++;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        if (i++ > 1) {
-            throw new
-                    IllegalArgumentException(
-                    "Shouldn't have more than one value for " + parameter.getFullName());
-        }
-
-        return parameter.getValueFromString(val);
+        return get(parameter);
     }
 
     public LanguageDirection getLanguageDirection(LangDirDynamicParameter parameter) {
-        String val = null;
-        int i = 0;
-        try {
-            preparedLookup.clearParameters();
-            preparedLookup.setString(1, parameter.getFullName());
-
-            ResultSet rs = preparedLookup.executeQuery();
-            while (rs.next()) {
-                val = rs.getString(1);
-                i++;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        if (i++ > 1) {
-            throw new
-                    IllegalArgumentException(
-                    "Shouldn't have more than one value for " + parameter.getFullName());
-        }
-
-        return parameter.getValueFromString(val);
+        return get(parameter);
     }
 
     public String getString(StringDynamicParameter parameter) {
-        int i = 0;
-        String val = null;
-        try {
-            preparedLookup.clearParameters();
-            preparedLookup.setString(1, parameter.getFullName());
-
-            ResultSet rs = preparedLookup.executeQuery();
-            while (rs.next()) {
-                val = rs.getString(1);
-                i++;
-            }
-            rs.close();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        if (i++ > 1) {
-            throw new
-                    IllegalArgumentException(
-                    "Shouldn't have more than one value for " + parameter.getFullName());
-        }
-
-        return parameter.getValueFromString(val);
+        return get(parameter);
     }
 
 
-    public void commit() throws SQLException {
-        connection.commit();
+    /**
+     * @param parameter
+     * @return a new modifiable copy of the list
+     */
+    public List<String> getStringList(StringListDynamicParameter parameter) {
+        List<String> list = get(parameter);
+        return (list == null) ? null : new ArrayList<>(list);
     }
 
-    public List<String> getStringList(StringListDynamicParameter parameter) {
-        int i = 0;
-        String val = null;
-        try {
-            preparedLookup.clearParameters();
-            preparedLookup.setString(1, parameter.getFullName());
+    //the snapshot parsed v with this parameter, so it is a T
+    @SuppressWarnings("unchecked")
+    private <T> T get(DynamicParameter<T> parameter) {
+        Snapshot s = snapshot;
+        Object v = s.parsed.get(parameter.getFullName());
+        if (v != null) {
+            return (T) v;
+        }
+        //not in the db or not parseable; let the parameter
+        //handle/throw on the raw value as it always has
+        return parameter.getValueFromString(s.values.get(parameter));
+    }
 
-            ResultSet rs = preparedLookup.executeQuery();
-            while (rs.next()) {
-                val = rs.getString(1);
-                i++;
+    private static class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(Collections.<DynamicParameter<?>, String>emptyMap());
+
+        private final Map<DynamicParameter<?>, String> values;
+        //keyed on full name; cheaper to hash than the parameter
+        private final Map<String, Object> parsed;
+
+        private Snapshot(Map<DynamicParameter<?>, String> values) {
+            this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+            Map<String, Object> tmp = new HashMap<>();
+            for (Map.Entry<DynamicParameter<?>, String> e : values.entrySet()) {
+                try {
+                    Object v = e.getKey().getValueFromString(e.getValue());
+                    if (v instanceof List) {
+                        v = Collections.unmodifiableList(new ArrayList<Object>((List<?>) v));
+                    }
+                    if (v != null) {
+                        tmp.put(e.getKey().getFullName(), v);
+                    }
+                } catch (RuntimeException ex) {
+                    LOG.warn("couldn't parse value for " + e.getKey().getFullName() + ": " + e.getValue());
+                }
             }
-            rs.close();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        if (i++ > 1) {
-            throw new
-                    IllegalArgumentException(
-                    "Shouldn't have more than one value for " + parameter.getFullName());
+            this.parsed = Collections.unmodifiableMap(tmp);
         }
-
-        return parameter.getValueFromString(val);
     }
 }
@@ -74,6 +74,14 @@ public class DynamicParameters {
     public final static StringListDynamicParameter FILE_VIEWER_DISPLAY_FIELDS =
             new StringListDynamicParameter("Indexed Document Viewer Fields",
                     DynamicParameter.PREFIX.COMMON, C.INDEXED_DOC_DISPLAY_FIELDS, "");
+    public final static IntDynamicParameter VIEWER_ATTACHMENTS_PER_PAGE = getInt(
+            "Indexed Document Viewer Attachments Per Page",
+            DynamicParameter.PREFIX.COMMON, C.VIEWER_ATTACHMENTS_PER_PAGE, 25
+    );
+    public final static IntDynamicParameter VIEWER_MAX_CONTENT_CHARS = getInt(
+            "Indexed Document Viewer Max. Characters Per Page",
+            DynamicParameter.PREFIX.COMMON, C.VIEWER_MAX_CONTENT_CHARS, 2000000
+    );
     public final static StringListDynamicParameter ROW_VIEWER_DISPLAY_FIELDS =
             new StringListDynamicParameter("Metadata in Row Result Fields",
                     DynamicParameter.PREFIX.COMMON, C.ROW_VIEWER_DISPLAY_FIELDS, "");
@@ -111,6 +119,9 @@ public class DynamicParameters {
     public static final BooleanDynamicParameter CONC_ALLOW_CLUSTERING = getBoolean(
             "Allow Clustering", DynamicParameter.PREFIX.CONC,
             C.CONC_ALLOW_CLUSTERING, true);
+    public static final BooleanDynamicParameter CONC_PARALLEL = getBoolean(
+            "Search Segments in Parallel", DynamicParameter.PREFIX.CONC,
+            C.CONC_PARALLEL, true);
     public final static IntDynamicParameter CONC_FILTER_QUERY_HEIGHT = getInt(
             "Filter Query Box Height",
             DynamicParameter.PREFIX.CONC, C.CONC_FILTER_QUERY_BOX_HEIGHT, 1);
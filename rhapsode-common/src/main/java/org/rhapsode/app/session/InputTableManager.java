@@ -32,10 +32,10 @@ package org.rhapsode.app.session;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 
 
@@ -50,29 +50,33 @@ public class InputTableManager {
         COL_INFO_LIST[1] = new ColInfo(VALUE, Types.VARCHAR, 10000);
     }
 
-    private final String TABLE_NAME = "input_table";
-    private final String INPUT_DIR_KEY = "input_dir";
-    private final Connection connection;
+    private final static String TABLE_NAME = "input_table";
+    private final static String INPUT_DIR_KEY = "input_dir";
+    private final static String GET_INPUT_DIRECTORY = "select " + VALUE + " from " + TABLE_NAME +
+            " where " + KEY + "='" + INPUT_DIR_KEY + "'";
+    private final static String SET_INPUT_DIRECTORY = "update " + TABLE_NAME + " set " + VALUE +
+            "= ? where " + KEY + "='" + INPUT_DIR_KEY + "'";
+    private final ConnectionPool pool;
     private final TableDef inputTableTable;
-    private final PreparedStatement getInputDirectory;
-    private final PreparedStatement setInputDirectory;
-    private InputTableManager(Connection connection) throws SQLException {
-        this.connection = connection;
-        this.inputTableTable = new TableDef(TABLE_NAME, COL_INFO_LIST);
-        connection.createStatement().execute("DROP TABLE IF EXISTS " + TABLE_NAME);
-
-        inputTableTable.createIfNotExists(connection);
 
-        getInputDirectory = connection.prepareStatement("select " + VALUE + " from " + TABLE_NAME + " where " + KEY + "='" + INPUT_DIR_KEY + "'");
-        setInputDirectory = connection.prepareStatement("update " + TABLE_NAME + " set " + VALUE + "= ? where " + KEY + "='" + INPUT_DIR_KEY + "'");
+    private InputTableManager(ConnectionPool pool) throws SQLException {
+        this.pool = pool;
+        this.inputTableTable = new TableDef(TABLE_NAME, COL_INFO_LIST);
+        try (ConnectionLease lease = pool.borrow()) {
+            try (Statement st = lease.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS " + TABLE_NAME);
+            }
+            inputTableTable.createIfNotExists(lease.getConnection());
+        }
     }
 
-    public static InputTableManager load(Connection connection) throws IOException, SQLException {
-        return new InputTableManager(connection);
+    public static InputTableManager load(ConnectionPool pool) throws IOException, SQLException {
+        return new InputTableManager(pool);
     }
 
     public Path getInputDirectory() {
-        try (ResultSet rs = getInputDirectory.executeQuery()) {
+        try (ConnectionLease lease = pool.borrow();
+             ResultSet rs = lease.prepareStatement(GET_INPUT_DIRECTORY).executeQuery()) {
             while (rs.next()) {
                 return Paths.get(rs.getString(1));
             }
@@ -83,9 +87,11 @@ public class InputTableManager {
     }
 
     public void setInputDirectory(Path p) throws SQLException {
-        setInputDirectory.clearParameters();
-        setInputDirectory.setString(1, p.toAbsolutePath().toString());
-        setInputDirectory.setString(1, INPUT_DIR_KEY);
-        setInputDirectory.executeUpdate();
+        try (ConnectionLease lease = pool.borrow()) {
+            PreparedStatement setInputDirectory = lease.prepareStatement(SET_INPUT_DIRECTORY);
+            setInputDirectory.setString(1, p.toAbsolutePath().toString());
+            setInputDirectory.setString(1, INPUT_DIR_KEY);
+            setInputDirectory.executeUpdate();
+        }
     }
 }
@@ -30,15 +30,14 @@
 package org.rhapsode.app.session;
 
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 import com.google.gson.JsonObject;
 
 public class SessionManager {
     final static String CONNECTION_STRING_KEY = "connection_string";
-    final Connection connection;
+    final static String MAX_CONNECTIONS_KEY = "max_connections";
+    final ConnectionPool connectionPool;
     CollectionsHistory collectionsHistory;
     DBStoredConceptManager storedConceptManager;
     InputTableManager inputTableManager;
@@ -46,19 +45,27 @@ public class SessionManager {
     private DBStoredQueryManager storedQueryManager;
     private DynamicParameterConfig dynamicParameterConfig;
 
-    private SessionManager(Connection connection) {
-        this.connection = connection;
+    private SessionManager(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
     }
 
     public static SessionManager load(JsonObject session_manager) throws SQLException, IOException {
         String connectionString = session_manager.get(CONNECTION_STRING_KEY).getAsString().toString();
-        Connection connection = DriverManager.getConnection(connectionString);
-        SessionManager sm = new SessionManager(connection);
-        sm.collectionsHistory = CollectionsHistory.load(connection);
-        sm.storedConceptManager = DBStoredConceptManager.load(connection);
-        sm.storedQueryManager = DBStoredQueryManager.load(connection);
-        sm.dynamicParameterConfig = DynamicParameterConfig.load(connection);
-        sm.inputTableManager = InputTableManager.load(connection);
+        int maxConnections = ConnectionPool.DEFAULT_MAX_CONNECTIONS;
+        if (session_manager.has(MAX_CONNECTIONS_KEY)) {
+            maxConnections = session_manager.get(MAX_CONNECTIONS_KEY).getAsInt();
+        }
+        return load(new ConnectionPool(connectionString, maxConnections,
+                ConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS));
+    }
+
+    public static SessionManager load(ConnectionPool connectionPool) throws SQLException, IOException {
+        SessionManager sm = new SessionManager(connectionPool);
+        sm.collectionsHistory = CollectionsHistory.load(connectionPool);
+        sm.storedConceptManager = DBStoredConceptManager.load(connectionPool);
+        sm.storedQueryManager = DBStoredQueryManager.load(connectionPool);
+        sm.dynamicParameterConfig = DynamicParameterConfig.load(connectionPool);
+        sm.inputTableManager = InputTableManager.load(connectionPool);
         return sm;
     }
 
@@ -78,11 +85,20 @@ public class SessionManager {
         return dynamicParameterConfig;
     }
 
-    public Connection getConnection() {
-        return connection;
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
     }
 
     public InputTableManager getTableManager() {
         return inputTableManager;
     }
+
+    /**
+     * Closes the connection pool.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        connectionPool.close();
+    }
 }
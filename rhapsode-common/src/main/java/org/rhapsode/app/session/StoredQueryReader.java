@@ -31,7 +31,6 @@ package org.rhapsode.app.session;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.text.DecimalFormat;
@@ -66,7 +65,6 @@ public class StoredQueryReader {
     private final DBStoredQueryManager storedQueryManager;
     private final ParserPlugin parserPlugin;
     private final IndexSchema indexSchema;
-    private final Connection connection;
     private String storedQueryWarningMsg;
     private String storedQueryErrorMsg;
     private String storedConceptErrorMsg;
@@ -74,14 +72,12 @@ public class StoredQueryReader {
 
     public StoredQueryReader(DBStoredConceptManager storedConceptManager,
                              DBStoredQueryManager storedQueryManager,
-                             ParserPlugin parserPlugin, IndexSchema indexSchema,
-                             Connection connection) {
+                             ParserPlugin parserPlugin, IndexSchema indexSchema) {
         this.storedConceptManager = storedConceptManager;
         this.storedQueryManager = storedQueryManager;
         this.parserPlugin = parserPlugin;
 
         this.indexSchema = indexSchema;
-        this.connection = connection;
     }
 
 
@@ -122,7 +118,6 @@ public class StoredQueryReader {
             loaded++;
             data = reader.readNext();
         }
-        connection.commit();
         //after loading them, then validate.
         //can't validate per row because an earlier
         //concept may contain a later concept
@@ -175,7 +170,7 @@ public class StoredQueryReader {
         }
 
         try {
-            storedConceptManager.addConceptNoCommit(scBuilder.build());
+            storedConceptManager.insertConcept(scBuilder.build());
         } catch (SQLException e) {
             LOG.error("couldn't add concept", e);
             throw new RuntimeException(e);
@@ -194,21 +189,26 @@ public class StoredQueryReader {
             headers.add(data[i]);
         }
         int loaded = 0;
-        data = reader.readNext();
-        while (data != null) {
-            cols.clear();
-            for (int i = 0; i < data.length; i++) {
-                cols.put(headers.get(i), data[i]);
-            }
-            loadStoredQuery(loaded, cols);
-            loaded++;
+        //all or nothing: the queries are committed together after the last row
+        try (ConnectionLease lease = storedQueryManager.beginBatch()) {
             data = reader.readNext();
+            while (data != null) {
+                cols.clear();
+                for (int i = 0; i < data.length; i++) {
+                    cols.put(headers.get(i), data[i]);
+                }
+                loadStoredQuery(loaded, cols, lease);
+                loaded++;
+                data = reader.readNext();
+            }
+            lease.commit();
+        } finally {
+            storedQueryManager.resetMax();
         }
-        connection.commit();
-        storedQueryManager.resetMax();
     }
 
-    private void loadStoredQuery(int rowNum, Map<String, String> cols) throws StoredQCException {
+    private void loadStoredQuery(int rowNum, Map<String, String> cols,
+                                 ConnectionLease lease) throws StoredQCException {
         String name = cols.get(SQField.NAME.getXlsxName());
         if (StringUtils.isBlank(name)) {
             throw new StoredQCException("Need to specify a name in the " +
@@ -253,7 +253,7 @@ public class StoredQueryReader {
         }
 
         try {
-            storedQueryManager.addQueryNoCommit(sq);
+            storedQueryManager.addQueryNoCommit(sq, lease);
         } catch (SQLException e) {
             LOG.error("couldn't add query", e);
             throw new RuntimeException(e);
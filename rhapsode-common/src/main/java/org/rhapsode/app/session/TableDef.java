@@ -47,7 +47,6 @@ class TableDef {
     }
 
     public void createIfNotExists(Connection conn) throws SQLException {
-        Statement st = conn.createStatement();
         //st.execute("DROP TABLE if exists "+name);
         StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS " + name);
         sql.append(" (");
@@ -63,6 +62,8 @@ class TableDef {
             i++;
         }
         sql.append(")");
-        st.execute(sql.toString());
+        try (Statement st = conn.createStatement()) {
+            st.execute(sql.toString());
+        }
     }
 }
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.app.tagger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the scores from the tables that {@link Tagger} writes to
+ * its scratch H2 database.
+ */
+class H2TaggerScores implements TaggerScores {
+
+    private final Connection conn;
+    private final List<Integer> queryIds = new ArrayList<>();
+    private final List<String> queryNames = new ArrayList<>();
+
+    H2TaggerScores(Connection conn) throws SQLException {
+        this.conn = conn;
+        String sql = "SELECT " + Tagger.QUERY_ID_COL + "," +
+                Tagger.Q_NAME_COL + " from " + Tagger.QUERY_NAME_TABLE;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                queryIds.add(rs.getInt(1));
+                queryNames.add(rs.getString(2));
+            }
+        }
+    }
+
+    @Override
+    public List<Integer> getQueryIds() {
+        return Collections.unmodifiableList(queryIds);
+    }
+
+    @Override
+    public List<String> getQueryNames() {
+        return Collections.unmodifiableList(queryNames);
+    }
+
+    @Override
+    public int getNumFiles() throws IOException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + Tagger.SCORE_SORT_TABLE)) {
+            return (rs.next()) ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public ScoredFileCursor getScoredFiles(int maxFiles) throws IOException {
+        String sql = "SELECT s." + Tagger.FILE_ID_COL + "," +
+                Tagger.DISPLAY_NAME_COL + "," +
+                Tagger.ORIG_REL_PATH + "," +
+                Tagger.QUERY_ID_COL + "," +
+                Tagger.SCORES_COL + ", " +
+                Tagger.TOTAL_SCORE_COL + " FROM " +
+                Tagger.SCORES_TABLE + " s " +
+                " left join " + Tagger.SCORE_SORT_TABLE + " t on s." + Tagger.FILE_ID_COL + "=t." + Tagger.FILE_ID_COL +
+                " left join " + Tagger.NAME_PATH_TABLE + " npt on s." + Tagger.FILE_ID_COL + "=npt." + Tagger.FILE_ID_COL +
+                " ORDER BY " + Tagger.TOTAL_SCORE_COL + " DESC, " + Tagger.FILE_ID_COL;
+        try {
+            Statement st = conn.createStatement();
+            return new H2Cursor(st, st.executeQuery(sql), maxFiles);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    //groups the (file, query) rows into one ScoredFile per file
+    private static class H2Cursor implements ScoredFileCursor {
+        private final Statement st;
+        private final ResultSet rs;
+        private final int maxFiles;
+        private int returned = 0;
+        private boolean hasRow;
+
+        H2Cursor(Statement st, ResultSet rs, int maxFiles) throws SQLException {
+            this.st = st;
+            this.rs = rs;
+            this.maxFiles = maxFiles;
+            hasRow = rs.next();
+        }
+
+        @Override
+        public ScoredFile next() throws IOException {
+            if (!hasRow || (maxFiles > -1 && returned >= maxFiles)) {
+                return null;
+            }
+            try {
+                String fileId = rs.getString(1);
+                String displayName = rs.getString(2);
+                String relPath = rs.getString(3);
+                float total = rs.getFloat(6);
+                Map<Integer, Float> scores = new HashMap<>();
+                while (hasRow && fileId.equals(rs.getString(1))) {
+                    scores.put(rs.getInt(4), rs.getFloat(5));
+                    displayName = rs.getString(2);
+                    relPath = rs.getString(3);
+                    total = rs.getFloat(6);
+                    hasRow = rs.next();
+                }
+                returned++;
+                return new ScoredFile(fileId, displayName, relPath, scores, total);
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                rs.close();
+                st.close();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
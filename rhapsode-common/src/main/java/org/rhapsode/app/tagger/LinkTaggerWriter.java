@@ -36,15 +36,26 @@ import java.net.URLEncoder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.document.Document;
@@ -71,6 +82,7 @@ import org.rhapsode.app.session.DynamicParameters;
 import org.rhapsode.app.session.StoredQueryWriter;
 import org.rhapsode.app.utils.ComplexQueryUtils;
 import org.rhapsode.app.utils.DocHighlighter;
+import org.rhapsode.lucene.analysis.charoffsets.IndexedSpanWeights;
 import org.rhapsode.lucene.search.ComplexQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -92,6 +104,9 @@ public class LinkTaggerWriter {
     private final Set<String> linkDisplayField;
     int links = 0;
     boolean alreadyCalled = false;
+    private final AtomicInteger filesHighlighted = new AtomicInteger(0);
+    private volatile int filesToHighlight = -1;
+    private volatile boolean pleaseStop = false;
 
     public LinkTaggerWriter(TaggerRequest request, RhapsodeSearcherApp searcherApp) {
         this.request = request;
@@ -128,37 +143,19 @@ public class LinkTaggerWriter {
     }
 
     public void write(Connection conn) throws IOException, SQLException {
+        write(new H2TaggerScores(conn));
+    }
+
+    void write(TaggerScores taggerScores) throws IOException {
         if (alreadyCalled) {
             throw new IllegalArgumentException("need to instantiate new writer for each write");
         }
         alreadyCalled = true;
 
         Files.createDirectories(request.reportFile.toAbsolutePath().getParent());
-        String sql = "SELECT " + Tagger.QUERY_ID_COL + "," +
-                Tagger.Q_NAME_COL + " from " + Tagger.QUERY_NAME_TABLE;
-        Statement st = conn.createStatement();
-        ResultSet rs = st.executeQuery(sql);
-        List<Integer> queryIds = new ArrayList<>();
-        List<String> queryNames = new ArrayList<>();
-        while (rs.next()) {
-            queryIds.add(rs.getInt(1));
-            queryNames.add(rs.getString(2));
-        }
-        rs.close();
-
-        sql = "SELECT s." + Tagger.FILE_ID_COL + "," +
-                Tagger.DISPLAY_NAME_COL + "," +
-                Tagger.ORIG_REL_PATH + "," +
-                Tagger.QUERY_ID_COL + "," +
-                Tagger.SCORES_COL + ", " +
-                Tagger.TOTAL_SCORE_COL + " FROM " +
-                Tagger.SCORES_TABLE + " s " +
-//                " s left join " + Tagger.QUERY_NAME_TABLE + " q ON s." + Tagger.QUERY_ID_COL + "=q." + Tagger.QUERY_ID_COL +
-                " left join " + Tagger.SCORE_SORT_TABLE + " t on s." + Tagger.FILE_ID_COL + "=t." + Tagger.FILE_ID_COL +
-                " left join " + Tagger.NAME_PATH_TABLE + " npt on s." + Tagger.FILE_ID_COL + "=npt." + Tagger.FILE_ID_COL +
-                " ORDER BY " + Tagger.TOTAL_SCORE_COL + " DESC, " + Tagger.FILE_ID_COL;
-        rs = st.executeQuery(sql);
-        Map<Integer, Float> scores = new HashMap<>();
+        List<Integer> queryIds = taggerScores.getQueryIds();
+        List<String> queryNames = taggerScores.getQueryNames();
+
         Sheet sheet = wb.createSheet("Rhapsode Tags");
         int rowCount = 0;
         Row xssfRow = sheet.createRow(rowCount);
@@ -171,34 +168,16 @@ public class LinkTaggerWriter {
         c = xssfRow.createCell(queryIds.size() + 1);
         c.setCellValue("TOTAL");
         rowCount++;
-        int cellCount = 0;
-        boolean hitMax = false;
-        String lastId = null;
-        String lastDisplay = null;
-        String lastRelPath = null;
         try {
-            float total = -1.0f;
-            while (rs.next()) {
-                String fileId = rs.getString(1);
-                if (lastId != null && !fileId.equals(lastId)) {
-                    dumpRow(lastId, lastDisplay, lastRelPath, queryIds, scores, total, sheet.createRow(rowCount));
+            try (TaggerScores.ScoredFileCursor cursor = taggerScores.getScoredFiles(request.topNCombinedResults)) {
+                ScoredFile scoredFile = cursor.next();
+                while (scoredFile != null) {
+                    checkForStop();
+                    dumpRow(scoredFile.getFileId(), scoredFile.getDisplayName(), scoredFile.getRelPath(),
+                            queryIds, scoredFile.getScores(), scoredFile.getTotal(), sheet.createRow(rowCount));
                     rowCount++;
-                    cellCount += scores.size();
-                    scores.clear();
-                }
-                if (request.topNCombinedResults > -1 && rowCount > request.topNCombinedResults) {
-                    hitMax = true;
-                    break;
+                    scoredFile = cursor.next();
                 }
-                scores.put(rs.getInt(4), rs.getFloat(5));
-                lastId = fileId;
-                lastDisplay = rs.getString(2);
-                lastRelPath = rs.getString(3);
-                total = rs.getFloat(6);
-            }
-
-            if (!hitMax) {
-                dumpRow(lastId, lastDisplay, lastRelPath, queryIds, scores, total, sheet.createRow(rowCount));
             }
             LOG.debug("finished writing scores sheet");
             StoredQueryWriter writer = new StoredQueryWriter(searcherApp);
@@ -219,22 +198,17 @@ public class LinkTaggerWriter {
                 LOG.debug("disposed");
             }
         }
-        rs.close();
         if (request.reportType.equals(ReportRequest.REPORT_TYPE.STATIC_LINKS)) {
-            highlightFiles(queryIds, st);
+            highlightFiles(queryIds, taggerScores);
         }
     }
 
-    public void highlightFiles(List<Integer> ids, Statement statement) throws IOException, SQLException {
+    void highlightFiles(List<Integer> ids, TaggerScores taggerScores) throws IOException {
         Map<Integer, ComplexQuery> parsedQueries = ComplexQueryUtils.parseAllStoredQueries(ids, searcherApp);
-        String sql = "SELECT s." + Tagger.FILE_ID_COL + "," + Tagger.QUERY_ID_COL + " FROM " +
-                Tagger.SCORES_TABLE + " s" +
-//                " left join "+Tagger.QUERY_NAME_TABLE+" q ON s."+Tagger.QUERY_ID_COL +"=q."+Tagger.QUERY_NAME_ID_COL +
-                " left join " + Tagger.SCORE_SORT_TABLE + " t on s." + Tagger.FILE_ID_COL + "=t." + Tagger.FILE_ID_COL +
-
-                " ORDER BY " + Tagger.TOTAL_SCORE_COL + " DESC, " + Tagger.FILE_ID_COL;
-        ResultSet rs = statement.executeQuery(sql);
-        Map<Integer, ComplexQuery> relevantQueries = new HashMap<>();
+        int numFiles = taggerScores.getNumFiles();
+        filesToHighlight = (request.topNCombinedResults > -1) ?
+                Math.min(numFiles, request.topNCombinedResults) : numFiles;
+
         String defaultContentField = searcherApp.getRhapsodeCollection().getIndexSchema().getDefaultContentField();
         List<String> fieldsToDisplay = searcherApp.getSessionManager().getDynamicParameterConfig().getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS);
         //if the user hasn't set the fields to display, yet, make sure to add the content field.
@@ -244,60 +218,147 @@ public class LinkTaggerWriter {
         Set<String> fieldsToRetrieve = new HashSet<>();
         fieldsToRetrieve.addAll(fieldsToDisplay);
         fieldsToRetrieve.add(searcherApp.getRhapsodeCollection().getIndexSchema().getRelPathField());
-        DocHighlighter highlighter = new DocHighlighter();
-        highlighter.setTableClass(CSS.HIGHLIGHTED);
-        highlighter.setTDClass(CSS.HIGHLIGHTED);
-
-        //TODO: make this multi-threaded!!!
-        int docCount = 0;
-        String lastId = null;
-        boolean hitMax = false;
-        while (rs.next()) {
-            String id = rs.getString(1);
-            Integer storedQueryId = rs.getInt(2);
-
-            if (lastId != null && !id.equals(lastId)) {
-                List<Document> docs = searcherApp.getRhapsodeCollection().getAllDocsFromAnyDocId(lastId, fieldsToRetrieve);
-                highlighter.highlightDocsToFile(buildPathToStaticColorizedHTMLFile(docs.get(0)),
-                        defaultContentField,
-                        searcherApp.getRhapsodeCollection().getIndexSchema().getEmbeddedPathField(),
-                        searcherApp.getSessionManager().getDynamicParameterConfig().getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS),
-                        docs,
-                        relevantQueries.values(),
-                        searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
-                        RhapsodeDecorator.generateStyleString(searcherApp.getCommonSearchConfig().getHighlightingStyles()),
-                        0
-                );
-                relevantQueries.clear();
-                docCount++;
+        //each query is rewritten and weighed once for the whole report
+        IndexedSpanWeights indexedWeights = new IndexedSpanWeights(request.searcher);
+
+        //the scores are read on this thread; fetching, highlighting and writing
+        //are done by the workers.  The bounded queue keeps this thread
+        //from reading too far ahead of the workers.
+        int numThreads = searcherApp.getCommonSearchConfig().getNumThreadsForReportHighlighting();
+        ArrayBlockingQueue<HighlightTask> queue = new ArrayBlockingQueue<>(numThreads * 2);
+        AtomicBoolean abandoned = new AtomicBoolean(false);
+        //the workers run on the report manager's pool, which is shared by all reports
+        ExecutorService es = searcherApp.getReportTaskManager().getHighlightExecutor();
+        ExecutorCompletionService<Integer> completionService = new ExecutorCompletionService<>(es);
+        List<Future<Integer>> workers = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            workers.add(completionService.submit(
+                    new HighlightWorker(queue, abandoned, defaultContentField, fieldsToRetrieve, indexedWeights)));
+        }
+        int finished = 0;
+        boolean completed = false;
+        try {
+            try (TaggerScores.ScoredFileCursor cursor = taggerScores.getScoredFiles(request.topNCombinedResults)) {
+                ScoredFile scoredFile = cursor.next();
+                while (scoredFile != null) {
+                    checkForStop();
+                    Map<Integer, ComplexQuery> relevantQueries = new HashMap<>();
+                    for (Integer storedQueryId : scoredFile.getScores().keySet()) {
+                        if (!storedQueryId.equals(Internal.MANUALLY_SELECTED_FAVORITES_QUERY_NAME)) {
+                            relevantQueries.put(storedQueryId, parsedQueries.get(storedQueryId));
+                        }
+                    }
+                    finished += enqueue(new HighlightTask(scoredFile.getFileId(), relevantQueries.values()),
+                            queue, completionService);
+                    scoredFile = cursor.next();
+                }
             }
-            if (request.topNCombinedResults > -1 && docCount >= request.topNCombinedResults) {
-                hitMax = true;
-                break;
+            for (int i = 0; i < numThreads; i++) {
+                finished += enqueue(HighlightTask.POISON, queue, completionService);
             }
-            if (!storedQueryId.equals(Internal.MANUALLY_SELECTED_FAVORITES_QUERY_NAME)) {
-                relevantQueries.put(storedQueryId, parsedQueries.get(storedQueryId));
+            while (finished < numThreads) {
+                finished += checkWorkers(completionService, 1);
+            }
+            completed = true;
+        } finally {
+            //never interrupt the workers: they read through the shared searcher,
+            //and an interrupt during an NIOFSDirectory read closes the channel
+            //for every user of the reader.  Tell them to stop after their current
+            //file and wait for them to drain.
+            if (!completed) {
+                abandoned.set(true);
+                queue.clear();
+            }
+            awaitWorkers(workers);
+        }
+    }
+
+    //waits for this report's workers only; the pool is shared
+    private static void awaitWorkers(List<Future<Integer>> workers) {
+        boolean interrupted = false;
+        for (Future<Integer> worker : workers) {
+            while (!worker.isDone()) {
+                try {
+                    worker.get(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    //keep waiting; the workers may still be reading from the index
+                    interrupted = true;
+                } catch (TimeoutException e) {
+                    LOG.debug("waiting for highlighting workers to finish");
+                } catch (ExecutionException | CancellationException e) {
+                    //reported by checkWorkers or superseded by the exception that abandoned the report
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Asks the writer to stop before the next row or the next file to highlight.
+     * The write then throws a {@link CancellationException}.
+     */
+    void pleaseStop() {
+        pleaseStop = true;
+    }
+
+    private void checkForStop() {
+        if (pleaseStop) {
+            throw new CancellationException("report was cancelled");
+        }
+    }
+
+    //offers the task to the workers, checking for failed workers while waiting
+    private int enqueue(HighlightTask task, ArrayBlockingQueue<HighlightTask> queue,
+                        ExecutorCompletionService<Integer> completionService) throws IOException {
+        int finished = 0;
+        try {
+            while (!queue.offer(task, 1, TimeUnit.SECONDS)) {
+                checkForStop();
+                finished += checkWorkers(completionService, 0);
             }
-            lastId = id;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while highlighting", e);
         }
-        List<Document> docs = searcherApp.getRhapsodeCollection().getAllDocsFromAnyDocId(lastId, fieldsToRetrieve);
-        if (!hitMax) {
-            highlighter.highlightDocsToFile(buildPathToStaticColorizedHTMLFile(docs.get(0)),
-                    defaultContentField,
-                    searcherApp.getRhapsodeCollection().getIndexSchema().getEmbeddedPathField(),
-                    searcherApp.getSessionManager().getDynamicParameterConfig().getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS),
-                    docs,
-                    relevantQueries.values(),
-                    searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
-                    RhapsodeDecorator.generateStyleString(searcherApp.getCommonSearchConfig().getHighlightingStyles()),
-                    0
-            );
-            docCount++;
+        return finished + checkWorkers(completionService, 0);
+    }
+
+    private int checkWorkers(ExecutorCompletionService<Integer> completionService,
+                             long waitSeconds) throws IOException {
+        try {
+            Future<Integer> future = completionService.poll(waitSeconds, TimeUnit.SECONDS);
+            if (future == null) {
+                return 0;
+            }
+            future.get();
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while highlighting", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
         }
+    }
 
-        rs.close();
+    /**
+     * @return number of files that have been highlighted by {@link #highlightFiles(List, TaggerScores)}
+     */
+    public int getFilesHighlighted() {
+        return filesHighlighted.get();
     }
 
+    /**
+     * @return number of files that will be highlighted or -1 if this hasn't been calculated yet
+     */
+    public int getFilesToHighlight() {
+        return filesToHighlight;
+    }
 
     private void dumpRow(String fileId, String displayName, String relPath,
                          List<Integer> queryIds, Map<Integer, Float> scores, float total,
@@ -406,4 +467,74 @@ public class LinkTaggerWriter {
         }
 
     }
+
+    private static class HighlightTask {
+        private static final HighlightTask POISON = new HighlightTask(null, Collections.emptyList());
+
+        private final String fileId;
+        private final Collection<ComplexQuery> queries;
+
+        HighlightTask(String fileId, Collection<ComplexQuery> queries) {
+            this.fileId = fileId;
+            this.queries = queries;
+        }
+    }
+
+    private class HighlightWorker implements Callable<Integer> {
+        private final ArrayBlockingQueue<HighlightTask> queue;
+        private final AtomicBoolean abandoned;
+        private final String defaultContentField;
+        private final Set<String> fieldsToRetrieve;
+        private final IndexedSpanWeights indexedWeights;
+        private final DocHighlighter highlighter = new DocHighlighter();
+
+        HighlightWorker(ArrayBlockingQueue<HighlightTask> queue, AtomicBoolean abandoned,
+                        String defaultContentField, Set<String> fieldsToRetrieve,
+                        IndexedSpanWeights indexedWeights) {
+            this.queue = queue;
+            this.abandoned = abandoned;
+            this.defaultContentField = defaultContentField;
+            this.fieldsToRetrieve = fieldsToRetrieve;
+            this.indexedWeights = indexedWeights;
+            highlighter.setTableClass(CSS.HIGHLIGHTED);
+            highlighter.setTDClass(CSS.HIGHLIGHTED);
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            while (true) {
+                if (abandoned.get() || pleaseStop) {
+                    return 1;
+                }
+                HighlightTask task = queue.poll(1, TimeUnit.SECONDS);
+                if (task == null) {
+                    continue;
+                }
+                if (task == HighlightTask.POISON) {
+                    return 1;
+                }
+                //read through the report's searcher so that the highlighter can use
+                //the offsets in the index; the lease is held until the report is done
+                List<Integer> docIds = searcherApp.getRhapsodeCollection()
+                        .getAllDocIdsFromAnyDocId(task.fileId, request.searcher);
+                List<Document> docs = new ArrayList<>(docIds.size());
+                for (Integer docId : docIds) {
+                    docs.add(request.searcher.doc(docId, fieldsToRetrieve));
+                }
+                highlighter.highlightDocsToFile(buildPathToStaticColorizedHTMLFile(docs.get(0)),
+                        defaultContentField,
+                        searcherApp.getRhapsodeCollection().getIndexSchema().getEmbeddedPathField(),
+                        searcherApp.getSessionManager().getDynamicParameterConfig().getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS),
+                        docs,
+                        indexedWeights,
+                        docIds,
+                        task.queries,
+                        searcherApp.getRhapsodeCollection().getIndexSchema().getOffsetAnalyzer(),
+                        RhapsodeDecorator.generateStyleString(searcherApp.getCommonSearchConfig().getHighlightingStyles()),
+                        0
+                );
+                filesHighlighted.incrementAndGet();
+            }
+        }
+    }
 }
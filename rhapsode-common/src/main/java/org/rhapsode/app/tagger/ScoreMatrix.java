@@ -0,0 +1,495 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.app.tagger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory alternative to the tagger's scratch H2 database.
+ * <p>
+ * Each file that is hit by any query gets a compact ordinal.  Each stored
+ * query's hits are stored as a column of file ordinals and weights.  The
+ * summed score per file is computed when the scores are read, by adding
+ * the columns in query order, so that the totals (and therefore the order
+ * of tied or nearly tied files) don't depend on the order in which the
+ * search threads finished.
+ * <p>
+ * Columns are kept on heap until they exceed the memory budget; after that,
+ * new columns are appended to a spill file and read back through a direct
+ * buffer when the report is written.
+ * <p>
+ * Columns must be added before the scores are read.
+ */
+class ScoreMatrix implements TaggerScores, Closeable {
+
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    //int ordinal + float weight
+    private static final int BYTES_PER_ENTRY = 8;
+    //scores gathered into rows at one time by a cursor, ~8MB
+    private static final int DEFAULT_MAX_ENTRIES_PER_BLOCK = 1 << 20;
+
+    private final List<Integer> queryIds;
+    private final List<String> queryNames;
+    private final Map<Integer, Integer> queryIndices = new HashMap<>();
+    private final AtomicReferenceArray<Column> columns;
+    private final long memoryBudgetBytes;
+    private final AtomicLong heapBytes = new AtomicLong(0);
+    private final Path spillFile;
+    private final Object spillLock = new Object();
+    private FileChannel spillChannel = null;
+    private long spillPosition = 0;
+
+    private final ConcurrentHashMap<String, FileInfo> files = new ConcurrentHashMap<>();
+    private final AtomicInteger nextOrdinal = new AtomicInteger(0);
+    private int maxEntriesPerBlock = DEFAULT_MAX_ENTRIES_PER_BLOCK;
+
+    /**
+     * @param queryIds          stored query ids in column order
+     * @param queryNames        names in the same order as the ids
+     * @param memoryBudgetBytes columns beyond this are spilled to disk
+     * @param spillFile         file to spill to; it is only created if needed
+     */
+    ScoreMatrix(List<Integer> queryIds, List<String> queryNames,
+                       long memoryBudgetBytes, Path spillFile) {
+        if (queryIds.size() != queryNames.size()) {
+            throw new IllegalArgumentException("must have the same number of query ids and names");
+        }
+        this.queryIds = Collections.unmodifiableList(new ArrayList<>(queryIds));
+        this.queryNames = Collections.unmodifiableList(new ArrayList<>(queryNames));
+        for (int i = 0; i < queryIds.size(); i++) {
+            queryIndices.put(queryIds.get(i), i);
+        }
+        this.columns = new AtomicReferenceArray<>(queryIds.size());
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * Looks up or assigns the ordinal for a file.  As with the MERGE into
+     * the H2 name/path table, the last display name and path win.
+     * <p>
+     * Thread safe.
+     */
+    public int getFileOrdinal(String fileId, String displayName, String relPath) {
+        FileInfo info = files.get(fileId);
+        if (info == null) {
+            FileInfo newInfo = new FileInfo(fileId);
+            info = files.putIfAbsent(fileId, newInfo);
+            if (info == null) {
+                newInfo.ordinal = nextOrdinal.getAndIncrement();
+                info = newInfo;
+            }
+        }
+        info.displayName = displayName;
+        info.relPath = relPath;
+        //wait for a racing thread to publish the ordinal
+        int ordinal = info.ordinal;
+        while (ordinal < 0) {
+            Thread.yield();
+            ordinal = info.ordinal;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Adds the hits for a query.  Each file ordinal may only appear once.
+     * <p>
+     * Thread safe; each query may only be added once.
+     *
+     * @param queryId   stored query id
+     * @param ordinals  file ordinals from {@link #getFileOrdinal(String, String, String)}
+     * @param weights   weight for each ordinal
+     * @param length    number of valid entries in the arrays
+     * @throws IOException if the column had to be spilled and writing failed
+     */
+    public void addColumn(int queryId, int[] ordinals, float[] weights, int length) throws IOException {
+        Integer index = queryIndices.get(queryId);
+        if (index == null) {
+            throw new IllegalArgumentException("unknown query id: " + queryId);
+        }
+        long bytes = (long) length * BYTES_PER_ENTRY;
+        Column column;
+        if (heapBytes.addAndGet(bytes) > memoryBudgetBytes) {
+            heapBytes.addAndGet(-bytes);
+            column = spill(ordinals, weights, length);
+        } else {
+            column = new HeapColumn(Arrays.copyOf(ordinals, length), Arrays.copyOf(weights, length));
+        }
+        if (!columns.compareAndSet(index, null, column)) {
+            throw new IllegalStateException("query " + queryId + " was already added");
+        }
+    }
+
+    @Override
+    public List<Integer> getQueryIds() {
+        return queryIds;
+    }
+
+    @Override
+    public List<String> getQueryNames() {
+        return queryNames;
+    }
+
+    @Override
+    public int getNumFiles() {
+        return nextOrdinal.get();
+    }
+
+    /**
+     * @return true if at least one column was spilled to disk
+     */
+    public boolean hasSpilled() {
+        synchronized (spillLock) {
+            return spillChannel != null;
+        }
+    }
+
+    @Override
+    public ScoredFileCursor getScoredFiles(int maxFiles) throws IOException {
+        double[] totals = getTotals();
+        List<FileInfo> top = getTopFiles(totals, maxFiles);
+        int[] ranks = new int[getNumFiles()];
+        Arrays.fill(ranks, -1);
+        for (int i = 0; i < top.size(); i++) {
+            ranks[top.get(i).ordinal] = i;
+        }
+        return new BlockCursor(top, ranks, totals);
+    }
+
+    /**
+     * @param maxEntriesPerBlock maximum number of scores that a cursor
+     *                           gathers into rows at one time
+     */
+    void setMaxEntriesPerBlock(int maxEntriesPerBlock) {
+        this.maxEntriesPerBlock = maxEntriesPerBlock;
+    }
+
+    /**
+     * Visits every entry whose file has a rank in [fromRank, toRank).
+     * If <code>queries</code> is null, this counts the entries per row in
+     * <code>rowPositions</code>; otherwise, it writes each entry at its row's
+     * next position.  Columns are visited in order so that each row's
+     * entries are in column order.
+     */
+    private ByteBuffer scanColumns(int[] ranks, int fromRank, int toRank, int[] rowPositions,
+                                   int[] queries, float[] weights, ByteBuffer buffer) throws IOException {
+        for (int q = 0; q < queryIds.size(); q++) {
+            Column column = columns.get(q);
+            if (column == null) {
+                continue;
+            }
+            if (column instanceof HeapColumn) {
+                HeapColumn heapColumn = (HeapColumn) column;
+                for (int i = 0; i < heapColumn.ordinals.length; i++) {
+                    visit(ranks[heapColumn.ordinals[i]], fromRank, toRank, rowPositions,
+                            q, heapColumn.weights[i], queries, weights);
+                }
+            } else {
+                SpilledColumn spilledColumn = (SpilledColumn) column;
+                int bytes = spilledColumn.length * BYTES_PER_ENTRY;
+                if (buffer == null || buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocateDirect(bytes);
+                }
+                buffer.clear();
+                buffer.limit(bytes);
+                readSpilled(buffer, spilledColumn.offset);
+                buffer.flip();
+                for (int i = 0; i < spilledColumn.length; i++) {
+                    int rank = ranks[buffer.getInt()];
+                    float weight = buffer.getFloat();
+                    visit(rank, fromRank, toRank, rowPositions, q, weight, queries, weights);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    private static void visit(int rank, int fromRank, int toRank, int[] rowPositions,
+                              int q, float weight, int[] queries, float[] weights) {
+        if (rank < fromRank || rank >= toRank) {
+            return;
+        }
+        if (queries == null) {
+            rowPositions[rank - fromRank]++;
+        } else {
+            int p = rowPositions[rank - fromRank]++;
+            queries[p] = q;
+            weights[p] = weight;
+        }
+    }
+
+    /**
+     * Sums each file's weights over the columns in query order, which makes
+     * the floating point sums the same from run to run.
+     *
+     * @return summed weight per file ordinal
+     * @throws IOException if a spilled column couldn't be read
+     */
+    double[] getTotals() throws IOException {
+        double[] totals = new double[getNumFiles()];
+        ByteBuffer buffer = null;
+        for (int q = 0; q < queryIds.size(); q++) {
+            Column column = columns.get(q);
+            if (column == null) {
+                continue;
+            }
+            if (column instanceof HeapColumn) {
+                HeapColumn heapColumn = (HeapColumn) column;
+                for (int i = 0; i < heapColumn.ordinals.length; i++) {
+                    totals[heapColumn.ordinals[i]] += heapColumn.weights[i];
+                }
+            } else {
+                SpilledColumn spilledColumn = (SpilledColumn) column;
+                int bytes = spilledColumn.length * BYTES_PER_ENTRY;
+                if (buffer == null || buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocateDirect(bytes);
+                }
+                buffer.clear();
+                buffer.limit(bytes);
+                readSpilled(buffer, spilledColumn.offset);
+                buffer.flip();
+                for (int i = 0; i < spilledColumn.length; i++) {
+                    int ordinal = buffer.getInt();
+                    totals[ordinal] += buffer.getFloat();
+                }
+            }
+        }
+        return totals;
+    }
+
+    //descending total, then ascending file id to match the H2 ORDER BY
+    private List<FileInfo> getTopFiles(final double[] totalsByOrdinal, int maxFiles) {
+        Comparator<FileInfo> reportOrder = new Comparator<FileInfo>() {
+            @Override
+            public int compare(FileInfo a, FileInfo b) {
+                int c = Double.compare(totalsByOrdinal[b.ordinal], totalsByOrdinal[a.ordinal]);
+                if (c != 0) {
+                    return c;
+                }
+                return a.fileId.compareTo(b.fileId);
+            }
+        };
+        List<FileInfo> ret;
+        if (maxFiles < 0 || maxFiles >= files.size()) {
+            ret = new ArrayList<>(files.values());
+        } else if (maxFiles == 0) {
+            return Collections.emptyList();
+        } else {
+            //heap with the worst of the current top n at the head
+            PriorityQueue<FileInfo> heap = new PriorityQueue<>(maxFiles,
+                    Collections.reverseOrder(reportOrder));
+            for (FileInfo info : files.values()) {
+                if (heap.size() < maxFiles) {
+                    heap.add(info);
+                } else if (reportOrder.compare(info, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(info);
+                }
+            }
+            ret = new ArrayList<>(heap);
+        }
+        Collections.sort(ret, reportOrder);
+        return ret;
+    }
+
+    private Column spill(int[] ordinals, float[] weights, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length * BYTES_PER_ENTRY);
+        for (int i = 0; i < length; i++) {
+            buffer.putInt(ordinals[i]);
+            buffer.putFloat(weights[i]);
+        }
+        buffer.flip();
+        synchronized (spillLock) {
+            if (spillChannel == null) {
+                spillChannel = FileChannel.open(spillFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            }
+            long offset = spillPosition;
+            while (buffer.hasRemaining()) {
+                spillPosition += spillChannel.write(buffer, spillPosition);
+            }
+            return new SpilledColumn(offset, length);
+        }
+    }
+
+    private void readSpilled(ByteBuffer buffer, long offset) throws IOException {
+        synchronized (spillLock) {
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                int read = spillChannel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("unexpected end of spill file");
+                }
+                position += read;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (spillLock) {
+            if (spillChannel != null) {
+                spillChannel.close();
+                spillChannel = null;
+                Files.deleteIfExists(spillFile);
+            }
+        }
+    }
+
+    /**
+     * Gathers the sparse column entries into rows a block of files at a time,
+     * so that memory is bounded by the number of scores in a block rather
+     * than by files &times; queries.  Each block costs one pass over the columns.
+     */
+    private class BlockCursor implements ScoredFileCursor {
+        private final List<FileInfo> top;
+        private final int[] ranks;
+        private final double[] totals;
+        private int[] rowCounts = null;
+        private ByteBuffer buffer = null;
+        private int blockStart = 0;
+        private int blockEnd = 0;
+        //row i of the block has entries rowStarts[i] to rowStarts[i+1]
+        private int[] rowStarts;
+        private int[] queries;
+        private float[] weights;
+        private int i = 0;
+
+        BlockCursor(List<FileInfo> top, int[] ranks, double[] totals) {
+            this.top = top;
+            this.ranks = ranks;
+            this.totals = totals;
+        }
+
+        @Override
+        public ScoredFile next() throws IOException {
+            if (i >= top.size()) {
+                return null;
+            }
+            if (i >= blockEnd) {
+                loadBlock(i);
+            }
+            FileInfo info = top.get(i);
+            int row = i - blockStart;
+            Map<Integer, Float> scores = new HashMap<>();
+            for (int p = rowStarts[row]; p < rowStarts[row + 1]; p++) {
+                scores.put(queryIds.get(queries[p]), weights[p]);
+            }
+            i++;
+            return new ScoredFile(info.fileId, info.displayName, info.relPath,
+                    scores, (float) totals[info.ordinal]);
+        }
+
+        private void loadBlock(int start) throws IOException {
+            if (rowCounts == null) {
+                rowCounts = new int[top.size()];
+                buffer = scanColumns(ranks, 0, top.size(), rowCounts, null, null, buffer);
+            }
+            int end = start;
+            int entries = 0;
+            //always take at least one row
+            while (end < top.size() &&
+                    (end == start || entries + rowCounts[end] <= maxEntriesPerBlock)) {
+                entries += rowCounts[end++];
+            }
+            rowStarts = new int[end - start + 1];
+            for (int r = start; r < end; r++) {
+                rowStarts[r - start + 1] = rowStarts[r - start] + rowCounts[r];
+            }
+            if (queries == null || queries.length < entries) {
+                queries = new int[entries];
+                weights = new float[entries];
+            }
+            int[] rowPositions = Arrays.copyOf(rowStarts, rowStarts.length - 1);
+            buffer = scanColumns(ranks, start, end, rowPositions, queries, weights, buffer);
+            blockStart = start;
+            blockEnd = end;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class FileInfo {
+        final String fileId;
+        volatile int ordinal = -1;
+        volatile String displayName;
+        volatile String relPath;
+
+        FileInfo(String fileId) {
+            this.fileId = fileId;
+        }
+    }
+
+    private interface Column {
+    }
+
+    private static class HeapColumn implements Column {
+        final int[] ordinals;
+        final float[] weights;
+
+        HeapColumn(int[] ordinals, float[] weights) {
+            this.ordinals = ordinals;
+            this.weights = weights;
+        }
+    }
+
+    private static class SpilledColumn implements Column {
+        final long offset;
+        final int length;
+
+        SpilledColumn(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
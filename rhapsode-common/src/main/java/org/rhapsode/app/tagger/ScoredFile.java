@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.app.tagger;
+
+import java.util.Map;
+
+/**
+ * One row of a tagger report: a file, the score per stored query id
+ * and the summed score.
+ */
+class ScoredFile {
+
+    private final String fileId;
+    private final String displayName;
+    private final String relPath;
+    private final Map<Integer, Float> scores;
+    private final float total;
+
+    ScoredFile(String fileId, String displayName, String relPath,
+               Map<Integer, Float> scores, float total) {
+        this.fileId = fileId;
+        this.displayName = displayName;
+        this.relPath = relPath;
+        this.scores = scores;
+        this.total = total;
+    }
+
+    String getFileId() {
+        return fileId;
+    }
+
+    String getDisplayName() {
+        return displayName;
+    }
+
+    String getRelPath() {
+        return relPath;
+    }
+
+    Map<Integer, Float> getScores() {
+        return scores;
+    }
+
+    float getTotal() {
+        return total;
+    }
+}
@@ -38,20 +38,18 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -79,9 +77,6 @@ public class Tagger {
     static final String DISPLAY_NAME_COL = "DISPLAY";
     static final String ORIG_REL_PATH = "REL_PATH";
     private static final Logger LOG = LoggerFactory.getLogger(Tagger.class);
-    private static final int POISON_KEY = -1;
-
-    private static final int NUM_THREADS = 10;
     private static final int HARD_LIMIT_MAX_RESULTS = 100000;
 
     private static final int FILE_ID_MAX_LEN = 512;
@@ -93,6 +88,9 @@ public class Tagger {
     Map<Integer, Integer> maxHits;
     private Object lock = new Object();
     private String statusMessage = "";
+    private volatile LinkTaggerWriter writer = null;
+    private volatile boolean pleaseStop = false;
+    private final AtomicInteger queriesSearched = new AtomicInteger(0);
 
     public Tagger(TaggerRequest request, RhapsodeSearcherApp searcherApp) {
         this.request = request;
@@ -106,8 +104,20 @@ public class Tagger {
         alreadyRun = true;
         calcMaxHits();
         LOG.debug("max hits: " + maxHits);
+        checkForStop();
         Path tmpDir = Files.createTempDirectory("tagger-tmp");
-        Path dbFile = tmpDir.resolve("taggerdb");
+        try {
+            if (request.scoreStore == TaggerRequest.SCORE_STORE.H2) {
+                executeH2(tmpDir.resolve("taggerdb"));
+            } else {
+                executeInMemory(tmpDir.resolve("scores.bin"));
+            }
+        } finally {
+            PathUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    private void executeH2(Path dbFile) throws Exception {
         try (Connection conn = openConnection(dbFile)) {
             long start = System.currentTimeMillis();
             try {
@@ -115,9 +125,14 @@ public class Tagger {
                 updateStatusMessage("created tables");
                 fillNamesTable(conn);
                 updateStatusMessage("filled names table");
-                int numThreads = Math.min(request.queries.size(), NUM_THREADS);
-                fillWithSearchResults(maxHits, numThreads, conn);
+                List<TagSearcher> searchers = new ArrayList<>();
+                for (Map.Entry<Integer, MaxResultsQuery> e : request.queries.entrySet()) {
+                    searchers.add(new H2TagSearcher(e.getKey(), e.getValue(), request.searcher, conn));
+                }
+                fillWithSearchResults(searchers);
+                conn.commit();
                 updateStatusMessage("filled search results");
+                checkForStop();
 
                 calculateTotalScores(conn);
 
@@ -126,17 +141,66 @@ public class Tagger {
                 DBUtils.debugDumpTable(conn, SCORES_TABLE);
                 DBUtils.debugDumpTable(conn, SCORE_SORT_TABLE);*/
                 updateStatusMessage("Calculated scores in " + (System.currentTimeMillis() - start) + "(ms)");
-                LinkTaggerWriter writer = new LinkTaggerWriter(request, searcherApp);
+                writer = new LinkTaggerWriter(request, searcherApp);
+                checkForStop();
                 writer.write(conn);
                 updateStatusMessage("finished writing table");
+            } catch (CancellationException e) {
+                throw e;
             } catch (Exception e) {
                 LOG.warn("problem loading tables", e);
                 throw (e);
             }
-        } finally {
-            PathUtils.deleteDirectory(tmpDir);
         }
+    }
+
+    private void executeInMemory(Path spillFile) throws Exception {
+        List<Integer> queryIds = new ArrayList<>();
+        List<String> queryNames = new ArrayList<>();
+        for (Map.Entry<Integer, MaxResultsQuery> e : request.queries.entrySet()) {
+            queryIds.add(e.getKey());
+            queryNames.add(e.getValue().getName());
+        }
+        try (ScoreMatrix matrix = new ScoreMatrix(queryIds, queryNames,
+                request.scoreStoreMemoryBudgetBytes, spillFile)) {
+            long start = System.currentTimeMillis();
+            List<TagSearcher> searchers = new ArrayList<>();
+            for (Map.Entry<Integer, MaxResultsQuery> e : request.queries.entrySet()) {
+                searchers.add(new MatrixTagSearcher(e.getKey(), e.getValue(), request.searcher, matrix));
+            }
+            fillWithSearchResults(searchers);
+            updateStatusMessage("filled search results");
+            checkForStop();
+            if (matrix.hasSpilled()) {
+                LOG.debug("score matrix exceeded its memory budget and spilled to disk");
+            }
+            updateStatusMessage("Calculated scores in " + (System.currentTimeMillis() - start) + "(ms)");
+            writer = new LinkTaggerWriter(request, searcherApp);
+            checkForStop();
+            writer.write(matrix);
+            updateStatusMessage("finished writing table");
+        }
+    }
+
+    /**
+     * Asks the tagger to stop at the next opportunity.  {@link #execute()}
+     * then throws a {@link CancellationException}.  Searches that are
+     * already running are left to finish.
+     */
+    public void pleaseStop() {
+        pleaseStop = true;
+        LinkTaggerWriter w = writer;
+        if (w != null) {
+            w.pleaseStop();
+        }
+    }
 
+    //the writer is set before this is called, so a stop request
+    //either reaches the writer or is caught here
+    private void checkForStop() {
+        if (pleaseStop) {
+            throw new CancellationException("report was cancelled");
+        }
     }
 
     private void updateStatusMessage(String s) {
@@ -151,8 +215,8 @@ public class Tagger {
         for (Map.Entry<Integer, MaxResultsQuery> e : request.queries.entrySet()) {
             retrievalQueries.put(e.getKey(), e.getValue().getQuery());
         }
-        //parameterize number of threads and max time!!!
-        maxHits = c.count(retrievalQueries, request.searcher, 10, 5000);
+        //parameterize max time!!!
+        maxHits = c.count(retrievalQueries, request.searcher, searcherApp.getSearchExecutor(), 5000);
     }
 
     private Connection openConnection(Path dbFile) throws SQLException {
@@ -213,52 +277,48 @@ public class Tagger {
     }
 
 
-    private void fillWithSearchResults(Map<Integer, Integer> maxHits, int numThreads, Connection conn) throws Exception {
-        ArrayBlockingQueue<Pair<Integer, MaxResultsQuery>> q = new ArrayBlockingQueue<>(request.queries.size() + numThreads);
-        for (Map.Entry<Integer, MaxResultsQuery> e : request.queries.entrySet()) {
-            q.add(Pair.of(e.getKey(), e.getValue()));
-        }
-        for (int i = 0; i < numThreads; i++) {
-            q.add(Pair.of(POISON_KEY, null));
-        }
-
-        ExecutorService es = Executors.newFixedThreadPool(numThreads);
-        ExecutorCompletionService<Integer> ex =
-                new ExecutorCompletionService<>(es);
-        for (int i = 0; i < numThreads; i++) {
-            ex.submit(new TagSearcherThread(q, request.searcher, request, conn));
-        }
-        int finished = 0;
-        while (finished < numThreads) {
+    private void fillWithSearchResults(List<TagSearcher> searchers) throws Exception {
+        List<Future<Integer>> futures = searcherApp.getSearchExecutor().invokeAll(searchers, -1);
+        for (Future<Integer> future : futures) {
             try {
-                Future<Integer> future = ex.poll(1, TimeUnit.SECONDS);
-
-                if (future != null) {
-                    future.get();
-                    finished++;
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                future.get();
             } catch (ExecutionException e) {
-                es.shutdown();
-                es.shutdownNow();
-                e.printStackTrace();
+                checkForStop();
+                LOG.warn("problem searching", e);
                 throw e;
-            } catch (Throwable t) {
-                t.printStackTrace();
-                throw t;
             }
         }
-        es.shutdown();
-        es.shutdownNow();
-        try {
-            es.awaitTermination(1L, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        LOG.debug("finished filling search results: " + searcherApp.getSearchExecutor());
+    }
 
-        LOG.debug("finished filling search results: " + es.isShutdown() + " : " + es.isTerminated());
-        conn.commit();
+    /**
+     * @return number of queries whose hits have been added to the scores so far
+     */
+    public int getQueriesSearched() {
+        return queriesSearched.get();
+    }
+
+    /**
+     * @return number of queries in the request
+     */
+    public int getQueriesToSearch() {
+        return request.queries.size();
+    }
+
+    /**
+     * @return number of static files highlighted so far
+     */
+    public int getFilesHighlighted() {
+        LinkTaggerWriter w = writer;
+        return (w == null) ? 0 : w.getFilesHighlighted();
+    }
+
+    /**
+     * @return number of static files to highlight or -1 if not yet known
+     */
+    public int getFilesToHighlight() {
+        LinkTaggerWriter w = writer;
+        return (w == null) ? -1 : w.getFilesToHighlight();
     }
 
     public String getStatusMessage() {
@@ -270,19 +330,150 @@ public class Tagger {
     }
 
 
-    class TagSearcherThread implements Callable<Integer> {
-        final ArrayBlockingQueue<Pair<Integer, MaxResultsQuery>> q;
+    /**
+     * Weight of a hit for a query.  The same weighting is used
+     * for every score store.
+     *
+     * @param normType        normalization
+     * @param rank            1-based rank of the hit, counting every document
+     * @param inversePriority inverse of the query's priority
+     * @return weight
+     */
+    static float calcWeight(TaggerRequest.NORM_TYPE normType, int rank, float inversePriority) {
+        float weight = -1.0f;
+        switch (normType) {
+            case ONE:
+                weight = 1.0f;
+                break;
+            case INVERSE_RANK:
+                weight = 1.0f / (float) rank;
+                break;
+            case WEIGHTED_INVERSE_RANK:
+                weight = (float) 1 / (float) Math.sqrt(rank);
+                break;
+            case INVERSE_PRIORITY:
+                weight = inversePriority;
+        }
+        return (weight < 0.001) ? 0.001f : weight;
+    }
+
+    abstract class TagSearcher implements Callable<Integer> {
+        final Integer qId;
+        final MaxResultsQuery mxrq;
         final IndexSearcher indexSearcher;
+        final String fileIdField = searcherApp.getRhapsodeCollection().getIndexSchema().getUniqueFileField();
+        final String displayField = searcherApp.getRhapsodeCollection().getIndexSchema().getLinkDisplayField();
+        final String relPathField = searcherApp.getRhapsodeCollection().getIndexSchema().getRelPathField();
+        final Set<String> fields = new HashSet<>();
+
+        TagSearcher(Integer qId, MaxResultsQuery mxrq, IndexSearcher searcher) {
+            this.qId = qId;
+            this.mxrq = mxrq;
+            this.indexSearcher = searcher;
+            fields.add(fileIdField);
+            fields.add(displayField);
+            fields.add(relPathField);
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            checkForStop();
+            Query retrievalQuery = mxrq.getQuery();
+            int maxResults = mxrq.getMaxResults();
+            if (maxResults < 0) {
+                maxResults = HARD_LIMIT_MAX_RESULTS;
+            }
+            int priority = mxrq.getPriority();
+            LOG.debug("ABOUT TO SEARCH: maxresults(" + maxResults + ") priority(" + priority + ")");
+            float inversePriority = (priority == 0) ? 1.0f : (float) 1 / (float) priority;
+            TopDocs topDocs = request.searcher.search(retrievalQuery, maxResults);
+            ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+            LOG.debug("hits: " + scoreDocs.length);
+            processHits(qId, scoreDocs, inversePriority);
+            queriesSearched.incrementAndGet();
+            return 1;
+        }
+
+        abstract void processHits(Integer qId, ScoreDoc[] scoreDocs, float inversePriority) throws Exception;
+
+        String truncateRelPath(String relPath) {
+            if (relPath.length() > ORIG_REL_PATH_MAX_LEN) {
+                LOG.warn("relative path length is greater than " +
+                        ORIG_REL_PATH_MAX_LEN +
+                        ". The path will be truncated, and the link might not work:\n" + relPath + "");
+                return relPath.substring(0, ORIG_REL_PATH_MAX_LEN);
+            }
+            return relPath;
+        }
+
+        String truncateFileId(String fileId, String relPath) {
+            if (fileId.length() > FILE_ID_MAX_LEN) {
+                LOG.warn("file id length is greater than " +
+                        FILE_ID_MAX_LEN +
+                        ":\n" + relPath + "");
+                return fileId.substring(0, FILE_ID_MAX_LEN);
+            }
+            return fileId;
+        }
+
+        String truncateDisplayName(String displayName, String relPath) {
+            if (displayName.length() > DISPLAY_NAME_MAX_LEN) {
+                LOG.warn("display name length is greater than " +
+                        DISPLAY_NAME_MAX_LEN +
+                        ":\n" + relPath + "");
+                return displayName.substring(0, DISPLAY_NAME_MAX_LEN);
+            }
+            return displayName;
+        }
+    }
+
+    class MatrixTagSearcher extends TagSearcher {
+        final ScoreMatrix matrix;
+
+        MatrixTagSearcher(Integer qId, MaxResultsQuery mxrq, IndexSearcher searcher, ScoreMatrix matrix) {
+            super(qId, mxrq, searcher);
+            this.matrix = matrix;
+        }
+
+        @Override
+        void processHits(Integer qId, ScoreDoc[] scoreDocs, float inversePriority) throws Exception {
+            int[] ordinals = new int[scoreDocs.length];
+            float[] weights = new float[scoreDocs.length];
+            int length = 0;
+            int r = 0;
+            Set<Integer> seen = new HashSet<>();
+            for (ScoreDoc sd : scoreDocs) {
+                Document d = indexSearcher.doc(sd.doc, fields);
+                String fileId = d.get(fileIdField);
+                String relPath = d.get(relPathField);
+                String displayName = d.get(displayField);
+                relPath = (relPath == null) ? "rel" : relPath;
+                displayName = (displayName == null) ? "display" : displayName;
+                //truncate as the H2 path must so that both paths report the same ids
+                relPath = truncateRelPath(relPath);
+                fileId = truncateFileId(fileId, relPath);
+                displayName = truncateDisplayName(displayName, relPath);
+                int ordinal = matrix.getFileOrdinal(fileId, displayName, relPath);
+                r++;
+                if (!seen.add(ordinal)) { //take the best score for each file
+                    continue;
+                }
+                ordinals[length] = ordinal;
+                weights[length] = calcWeight(request.normType, r, inversePriority);
+                length++;
+            }
+            matrix.addColumn(qId, ordinals, weights, length);
+        }
+    }
+
+    class H2TagSearcher extends TagSearcher {
         final Connection conn;
-        final TaggerRequest tr;
+        PreparedStatement insertStatement;
+        PreparedStatement mergeDisplayRelPath;
 
-        TagSearcherThread(ArrayBlockingQueue<Pair<Integer, MaxResultsQuery>> q, IndexSearcher searcher,
-                          TaggerRequest tr, Connection conn) {
-            this.q = q;
-            this.indexSearcher = searcher;
+        H2TagSearcher(Integer qId, MaxResultsQuery mxrq, IndexSearcher searcher, Connection conn) {
+            super(qId, mxrq, searcher);
             this.conn = conn;
-            this.tr = tr;
-
         }
 
         @Override
@@ -292,7 +483,9 @@ public class Tagger {
                 try (PreparedStatement mergeDisplayRelPath =
                              conn.prepareStatement(
                                      "MERGE INTO " + NAME_PATH_TABLE + " VALUES (?,?,?)")) {
-                    return _call(insertStatement, mergeDisplayRelPath);
+                    this.insertStatement = insertStatement;
+                    this.mergeDisplayRelPath = mergeDisplayRelPath;
+                    return super.call();
                 }
 
             } catch (SQLException e) {
@@ -301,107 +494,46 @@ public class Tagger {
             }
         }
 
-        private Integer _call(PreparedStatement insertStatement,
-                              PreparedStatement mergeDisplayRelPath) throws Exception {
-            final String fileIdField = searcherApp.getRhapsodeCollection().getIndexSchema().getUniqueFileField();
-            final String displayField = searcherApp.getRhapsodeCollection().getIndexSchema().getLinkDisplayField();
-            final String relPathField = searcherApp.getRhapsodeCollection().getIndexSchema().getRelPathField();
-            final Set<String> fields = new HashSet<>();
-            fields.add(fileIdField);
-            fields.add(displayField);
-            fields.add(relPathField);
-            while (true) {
-                Pair<Integer, MaxResultsQuery> p = q.poll(1, TimeUnit.SECONDS);
-                if (p == null) {
-                    //TODO: check for stopped, interrupted thread....think about stopping
-                    continue;
-                }
-                if (p.getKey().equals(POISON_KEY)) {
-                    break;
+        @Override
+        void processHits(Integer qId, ScoreDoc[] scoreDocs, float inversePriority) throws Exception {
+            int r = 0;
+            Set<String> seen = new HashSet<>();//
+            for (ScoreDoc sd : scoreDocs) {
+                Document d = indexSearcher.doc(sd.doc, fields);
+                String fileId = d.get(fileIdField);
+                String relPath = d.get(relPathField);
+                String displayName = d.get(displayField);
+                relPath = (relPath == null) ? "rel" : relPath;
+                displayName = (displayName == null) ? "display" : displayName;
+                relPath = truncateRelPath(relPath);
+                fileId = truncateFileId(fileId, relPath);
+                displayName = truncateDisplayName(displayName, relPath);
+                try {
+                    mergeDisplayRelPath.clearParameters();
+                    mergeDisplayRelPath.setString(1, fileId);
+                    mergeDisplayRelPath.setString(2, displayName);
+                    mergeDisplayRelPath.setString(3, relPath);
+                    mergeDisplayRelPath.execute();
+                } catch (Exception e) {
+                    LOG.warn("problem merging", e);
+                    throw e;
                 }
-                Integer qId = p.getLeft();
-                MaxResultsQuery mxrq = p.getValue();
-                Query retrievalQuery = mxrq.getQuery();
-                int maxResults = mxrq.getMaxResults();
-                if (maxResults < 0) {
-                    maxResults = HARD_LIMIT_MAX_RESULTS;
+                r++;
+                if (seen.contains(fileId)) { //take the best score for each file
+                    continue;
                 }
-                int priority = mxrq.getPriority();
-                LOG.debug("ABOUT TO SEARCH: maxresults(" + maxResults + ") priority(" + priority + ")");
-                float inversePriority = (priority == 0) ? 1.0f : (float) 1 / (float) priority;
-                TopDocs topDocs = request.searcher.search(retrievalQuery, maxResults);
-                ScoreDoc[] scoreDocs = topDocs.scoreDocs;
-                LOG.debug("hits: " + scoreDocs.length);
-                int r = 0;
-                Set<String> seen = new HashSet<>();//
-                for (ScoreDoc sd : scoreDocs) {
-                    Document d = indexSearcher.doc(sd.doc, fields);
-                    String fileId = d.get(fileIdField);
-                    String relPath = d.get(relPathField);
-                    String displayName = d.get(displayField);
-                    relPath = (relPath == null) ? "rel" : relPath;
-                    displayName = (displayName == null) ? "display" : displayName;
-                    if (relPath.length() > ORIG_REL_PATH_MAX_LEN) {
-                        LOG.warn("relative path length is greater than " +
-                                ORIG_REL_PATH_MAX_LEN +
-                                ". The path will be truncated, and the link might not work:\n" + relPath + "");
-                        relPath = relPath.substring(0, ORIG_REL_PATH_MAX_LEN);
-                    }
-                    if (fileId.length() > FILE_ID_MAX_LEN) {
-                        LOG.warn("file id length is greater than " +
-                                FILE_ID_MAX_LEN +
-                                ":\n" + relPath + "");
-                        fileId = fileId.substring(0, FILE_ID_MAX_LEN);
-                    }
-                    if (displayName.length() > DISPLAY_NAME_MAX_LEN) {
-                        LOG.warn("display name length is greater than " +
-                                DISPLAY_NAME_MAX_LEN +
-                                ":\n" + relPath + "");
-                        displayName = displayName.substring(0, DISPLAY_NAME_MAX_LEN);
-                    }
-                    try {
-                        mergeDisplayRelPath.clearParameters();
-                        mergeDisplayRelPath.setString(1, fileId);
-                        mergeDisplayRelPath.setString(2, displayName);
-                        mergeDisplayRelPath.setString(3, relPath);
-                        mergeDisplayRelPath.execute();
-                    } catch (Exception e) {
-                        LOG.warn("problem merging", e);
-                        throw e;
-                    }
-                    r++;
-                    if (seen.contains(fileId)) { //take the best score for each file
-                        continue;
-                    }
-                    seen.add(fileId);
-                    try {
-                        insertStatement.clearParameters();
-                        insertStatement.setString(1, fileId);
-                        insertStatement.setInt(2, qId);
-                        float weight = -1.0f;
-                        switch (request.normType) {
-                            case ONE:
-                                weight = 1.0f;
-                                break;
-                            case INVERSE_RANK:
-                                weight = 1.0f / (float) r;
-                                break;
-                            case WEIGHTED_INVERSE_RANK:
-                                weight = (float) 1 / (float) Math.sqrt(r);
-                                break;
-                            case INVERSE_PRIORITY:
-                                weight = inversePriority;
-                        }
-                        weight = (weight < 0.001) ? 0.001f : weight;
-                        insertStatement.setFloat(3, weight);
-                        insertStatement.execute();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        throw e;
-                    }
+                seen.add(fileId);
+                try {
+                    insertStatement.clearParameters();
+                    insertStatement.setString(1, fileId);
+                    insertStatement.setInt(2, qId);
+                    insertStatement.setFloat(3, calcWeight(request.normType, r, inversePriority));
+                    insertStatement.execute();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    throw e;
                 }
             }
-            return 1;
         }
     }
 
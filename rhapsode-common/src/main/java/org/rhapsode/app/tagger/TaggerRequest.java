@@ -38,6 +38,7 @@ import org.rhapsode.lucene.search.MaxResultsQuery;
 
 public class TaggerRequest {
 
+    public static final long DEFAULT_SCORE_STORE_MEMORY_BUDGET_BYTES = 256L * 1024L * 1024L;
 
     final Map<Integer, MaxResultsQuery> queries;
     final IndexSearcher searcher;
@@ -47,6 +48,9 @@ public class TaggerRequest {
     final NORM_TYPE normType;
     final int topNCombinedResults;
     final ReportRequest.REPORT_TYPE reportType;
+    SCORE_STORE scoreStore = SCORE_STORE.IN_MEMORY;
+    long scoreStoreMemoryBudgetBytes = DEFAULT_SCORE_STORE_MEMORY_BUDGET_BYTES;
+
     public TaggerRequest(Map<Integer, MaxResultsQuery> queries, IndexSearcher searcher,
                          String fileNameField, Path reportsDir, String reportName,
                          ReportRequest.REPORT_TYPE reportType,
@@ -61,6 +65,13 @@ public class TaggerRequest {
         this.normType = normType;
     }
 
+    /**
+     * @return the xlsx file that the report is written to
+     */
+    public Path getReportFile() {
+        return reportFile;
+    }
+
     public String getDocIdFieldName() {
         //TODO: parameterize this!!!!
         return "_fid";
@@ -71,6 +82,26 @@ public class TaggerRequest {
         return "rel_path";
     }
 
+    public void setScoreStore(SCORE_STORE scoreStore) {
+        this.scoreStore = scoreStore;
+    }
+
+    /**
+     * @param scoreStoreMemoryBudgetBytes bytes of scores to keep on heap before
+     *                                    the {@link SCORE_STORE#IN_MEMORY} store spills to disk
+     */
+    public void setScoreStoreMemoryBudgetBytes(long scoreStoreMemoryBudgetBytes) {
+        this.scoreStoreMemoryBudgetBytes = scoreStoreMemoryBudgetBytes;
+    }
+
+    /**
+     * Where the tagger accumulates the per query scores
+     */
+    public enum SCORE_STORE {
+        IN_MEMORY,
+        H2
+    }
+
     public enum NORM_TYPE {
         ONE("One"),
         INVERSE_PRIORITY("Inverse Priority"),
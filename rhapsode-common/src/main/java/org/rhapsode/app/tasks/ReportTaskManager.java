@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.app.tasks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs reports in the background so that they don't tie up a server
+ * thread, and keeps their status around for the report status page.
+ * <p>
+ * At most maxConcurrentReports reports may run at the same time;
+ * submitting another while that many are running is rejected rather
+ * than queued, because a report holds a searcher lease for its duration.
+ * <p>
+ * Reports are cancelled by asking the task to stop.  The task is never
+ * interrupted (see {@link org.rhapsode.app.SearchExecutor}).
+ * <p>
+ * The manager also owns the pool that highlights the files in reports,
+ * with enough threads for each running report to have its own workers.
+ * Threads are reused from report to report rather than started for each one.
+ */
+public class ReportTaskManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReportTaskManager.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    //number of finished reports to keep for the status page
+    private static final int MAX_FINISHED_REPORTS = 100;
+
+    private final Object lock = new Object();
+    private final int maxConcurrentReports;
+    private final ThreadPoolExecutor reportPool;
+    private final ThreadPoolExecutor highlightPool;
+    //report id -> report, in submission order
+    private final Map<Integer, Report> reports = new LinkedHashMap<>();
+    private int lastId = 0;
+
+    /**
+     * @param maxConcurrentReports maximum number of reports that may run at the same time
+     */
+    public ReportTaskManager(int maxConcurrentReports) {
+        this(maxConcurrentReports, 1);
+    }
+
+    /**
+     * @param maxConcurrentReports maximum number of reports that may run at the same time
+     * @param numHighlightThreads  number of highlighting threads per report
+     */
+    public ReportTaskManager(int maxConcurrentReports, int numHighlightThreads) {
+        if (maxConcurrentReports < 1) {
+            throw new IllegalArgumentException("must allow at least one report");
+        }
+        if (numHighlightThreads < 1) {
+            throw new IllegalArgumentException("must have at least one highlighting thread");
+        }
+        this.maxConcurrentReports = maxConcurrentReports;
+        reportPool = new ThreadPoolExecutor(maxConcurrentReports, maxConcurrentReports,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory("rhapsode-report"));
+        reportPool.allowCoreThreadTimeOut(true);
+        int numThreads = maxConcurrentReports * numHighlightThreads;
+        highlightPool = new ThreadPoolExecutor(numThreads, numThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory("rhapsode-highlight"));
+        highlightPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param task report to run
+     * @return id of the report for {@link #getStatus(int)} and {@link #cancel(int)}
+     * @throws RejectedExecutionException if maxConcurrentReports reports are already running
+     */
+    public int submit(TaggerTask task) throws RejectedExecutionException {
+        synchronized (lock) {
+            int running = getRunningCount();
+            if (running >= maxConcurrentReports) {
+                throw new RejectedExecutionException("There " +
+                        ((running == 1) ? "is already 1 report" : "are already " + running + " reports") +
+                        " running.  Please wait for one to finish or cancel one.");
+            }
+            Future<RhapsodeTaskStatus> future = reportPool.submit(task);
+            int id = ++lastId;
+            reports.put(id, new Report(task, future));
+            removeOldReports();
+            return id;
+        }
+    }
+
+    /**
+     * @param id report id
+     * @return current status of the report, or <code>null</code> if there is no report with that id
+     */
+    public RhapsodeTaskStatus getStatus(int id) {
+        Report report;
+        synchronized (lock) {
+            report = reports.get(id);
+        }
+        return (report == null) ? null : report.getStatus();
+    }
+
+    /**
+     * @return status of all of the reports that are running and of the
+     * most recently finished reports, keyed by report id in submission order
+     */
+    public Map<Integer, RhapsodeTaskStatus> getStatuses() {
+        Map<Integer, Report> copy;
+        synchronized (lock) {
+            copy = new LinkedHashMap<>(reports);
+        }
+        Map<Integer, RhapsodeTaskStatus> ret = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Report> e : copy.entrySet()) {
+            ret.put(e.getKey(), e.getValue().getStatus());
+        }
+        return ret;
+    }
+
+    /**
+     * Asks a report to stop.  It will stop at its next opportunity, and its
+     * status will then be completed with {@link Tasker.REASON_FOR_COMPLETION#USER_INTERRUPTION}.
+     *
+     * @param id report id
+     * @return <code>true</code> if the report was still running
+     */
+    public boolean cancel(int id) {
+        Report report;
+        synchronized (lock) {
+            report = reports.get(id);
+        }
+        if (report == null || report.future.isDone()) {
+            return false;
+        }
+        report.task.pleaseStop();
+        return true;
+    }
+
+    /**
+     * @return number of reports that haven't finished
+     */
+    public int getRunningCount() {
+        synchronized (lock) {
+            int running = 0;
+            for (Report r : reports.values()) {
+                if (!r.future.isDone()) {
+                    running++;
+                }
+            }
+            return running;
+        }
+    }
+
+    public int getMaxConcurrentReports() {
+        return maxConcurrentReports;
+    }
+
+    /**
+     * @return executor for the highlighting workers of running reports.
+     * Callers wait for their own tasks; they must not shut it down.
+     */
+    public ExecutorService getHighlightExecutor() {
+        return highlightPool;
+    }
+
+    /**
+     * Asks running reports to stop and stops accepting new reports.
+     */
+    public void shutdown() {
+        List<Report> running = new ArrayList<>();
+        synchronized (lock) {
+            for (Report r : reports.values()) {
+                if (!r.future.isDone()) {
+                    running.add(r);
+                }
+            }
+        }
+        for (Report r : running) {
+            r.task.pleaseStop();
+        }
+        reportPool.shutdown();
+        highlightPool.shutdown();
+    }
+
+    //must hold lock
+    private void removeOldReports() {
+        int finished = reports.size() - getRunningCount();
+        Iterator<Report> it = reports.values().iterator();
+        while (finished > MAX_FINISHED_REPORTS && it.hasNext()) {
+            if (it.next().future.isDone()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    private static class Report {
+        private final TaggerTask task;
+        private final Future<RhapsodeTaskStatus> future;
+
+        Report(TaggerTask task, Future<RhapsodeTaskStatus> future) {
+            this.task = task;
+            this.future = future;
+        }
+
+        RhapsodeTaskStatus getStatus() {
+            if (!future.isDone()) {
+                return task.getIntermediateResult();
+            }
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return task.getIntermediateResult();
+            } catch (CancellationException e) {
+                return new TaggerTaskStatus(Tasker.STATE.COMPLETED,
+                        Tasker.REASON_FOR_COMPLETION.USER_INTERRUPTION, new Date(),
+                        "Cancelled", task.getRequest());
+            } catch (ExecutionException e) {
+                LOG.warn("problem writing report", e.getCause());
+                return new TaggerTaskStatus(Tasker.STATE.COMPLETED,
+                        Tasker.REASON_FOR_COMPLETION.EXCEPTION, new Date(),
+                        String.valueOf(e.getCause().getMessage()), task.getRequest());
+            }
+        }
+    }
+}
@@ -64,4 +64,12 @@ public class RhapsodeTaskStatus {
     public String getMessage() {
         return message;
     }
+
+    public Tasker.REASON_FOR_COMPLETION getReasonForCompletion() {
+        return reasonForCompletion;
+    }
+
+    public Date getStatusTime() {
+        return statusTime;
+    }
 }
@@ -34,10 +34,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Date;
 
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.search.SearcherFactory;
 import org.rhapsode.RhapsodeCollection;
 import org.rhapsode.app.handlers.indexer.TableFileRequest;
 import org.rhapsode.app.io.AbstractTableReader;
@@ -48,6 +45,7 @@ import org.rhapsode.app.io.XLSTableReader;
 import org.rhapsode.app.io.XLSXStreamingTableReader;
 import org.rhapsode.indexer.FileIndexer;
 import org.rhapsode.indexer.RhapsodeIndexerConfig;
+import org.rhapsode.lucene.search.IndexManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,30 +57,38 @@ public class TableIndexerTask extends RhapsodeTask {
     private final RhapsodeCollection rc;
     private final Path inputTableFile;
     private final TableFileRequest tableFileRequest;
-    private final Directory luceneIndexDirectory;
-    private final IndexWriter indexWriter;
+    private final IndexManager indexManager;
     private final RowReaderIndexer perRowIndexer;
     private final String worksheetName;
     RhapsodeTaskStatus finishedStatus = null;
     private long started;
 
-    public TableIndexerTask(RhapsodeCollection rc, Path inputTableFile, TableFileRequest tableFileRequest)
+    /**
+     * @param rc               collection to index into
+     * @param inputTableFile   table file to read
+     * @param tableFileRequest
+     * @param searcherFactory  factory for the collection's near-real-time searchers,
+     *                         <code>null</code> for the default
+     * @throws IOException
+     */
+    public TableIndexerTask(RhapsodeCollection rc, Path inputTableFile, TableFileRequest tableFileRequest,
+                            SearcherFactory searcherFactory)
             throws IOException {
         super("Table Indexer");
         this.rc = rc;
         this.inputTableFile = inputTableFile;
         this.tableFileRequest = tableFileRequest;
         RhapsodeIndexerConfig rhapsodeIndexerConfig = RhapsodeIndexerConfig.load(rc, Paths.get("resources/config/indexer_config.json"));
-        IndexWriterConfig iwConfig = new IndexWriterConfig(rc.getIndexSchema().getIndexAnalyzer());
-        luceneIndexDirectory = FSDirectory.open(rc.getLuceneIndexPath());
-
-        indexWriter = new IndexWriter(luceneIndexDirectory, iwConfig);
+        //rows are searchable in the collection as they're indexed
+        indexManager = IndexManager.openNearRealTime(rc, rhapsodeIndexerConfig.getNrtRefreshMillis(),
+                searcherFactory);
 
         worksheetName = tableFileRequest.getWorksheetName();
-        FileIndexer fileIndexer = new FileIndexer(rhapsodeIndexerConfig, indexWriter);
+        FileIndexer fileIndexer = new FileIndexer(rhapsodeIndexerConfig, indexManager.getIndexWriter());
 
         perRowIndexer = new RowReaderIndexer(tableFileRequest.getFields(),
-                fileIndexer);
+                fileIndexer, rhapsodeIndexerConfig.getNumTableIndexingThreads(),
+                rhapsodeIndexerConfig.getTableIndexingBatchSize());
     }
 
     @Override
@@ -91,12 +97,14 @@ public class TableIndexerTask extends RhapsodeTask {
             return finishedStatus;
         }
         long elapsed = (System.currentTimeMillis() - started);
+        long indexed = perRowIndexer.getRowsIndexed();
 
         return new RhapsodeTaskStatus(
                 Tasker.STATE.PROCESSING,
                 Tasker.REASON_FOR_COMPLETION.NA,
                 new Date(),
-                "Indexed " + perRowIndexer.getRowsRead() + " rows so far " +
+                "Indexed " + indexed + " rows so far (" + getRowsPerSecond(indexed, elapsed) + " rows/sec; " +
+                        perRowIndexer.getRowsRead() + " rows read) " +
                         "in " + elapsed + " milliseconds from file \"" + inputTableFile.getFileName().toString() +
                         "\" into collection \"" +
                         rc.getCollectionPath().getFileName().toString() + "\"");
@@ -126,14 +134,15 @@ public class TableIndexerTask extends RhapsodeTask {
                 throw new RuntimeException("I'm sorry, table files must end in .xlsx, .xlsm, .xlsb, .xls, .txt or .csv");
             }
             reader.parse();
-            indexWriter.flush();
-            indexWriter.close();
-            luceneIndexDirectory.close();
+            //wait for the indexing threads to add the last of the rows
+            perRowIndexer.finish();
+            indexManager.closeWriter();
             long elapsed = System.currentTimeMillis() - started;
+            long indexed = perRowIndexer.getRowsIndexed();
             finishedStatus = new RhapsodeTaskStatus(Tasker.STATE.COMPLETED,
                     Tasker.REASON_FOR_COMPLETION.SUCCESS,
                     new Date(),
-                    "Indexed " + perRowIndexer.getRowsRead() + " rows " +
+                    "Indexed " + indexed + " rows (" + getRowsPerSecond(indexed, elapsed) + " rows/sec) " +
                             "in " + elapsed + " milliseconds from file \"" + inputTableFile.getFileName().toString() +
                             "\" into collection \"" +
                             rc.getCollectionPath().getFileName().toString() + "\"");
@@ -146,10 +155,20 @@ public class TableIndexerTask extends RhapsodeTask {
                     t.getMessage());
 
         } finally {
-            if (reader != null) {
-                reader.close();
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } finally {
+                perRowIndexer.close();
+                //commits whatever was indexed before a failure
+                indexManager.closeWriter();
             }
         }
         return finishedStatus;
     }
+
+    private static long getRowsPerSecond(long rows, long elapsedMillis) {
+        return (elapsedMillis <= 0) ? rows : (rows * 1000) / elapsedMillis;
+    }
 }
@@ -30,40 +30,103 @@
 package org.rhapsode.app.tasks;
 
 
+import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.CancellationException;
 
 import org.rhapsode.app.RhapsodeSearcherApp;
 import org.rhapsode.app.tagger.Tagger;
 import org.rhapsode.app.tagger.TaggerRequest;
+import org.rhapsode.lucene.search.SearcherLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class TaggerTask extends RhapsodeTask {
 
+    private static final Logger LOG = LoggerFactory.getLogger(TaggerTask.class);
 
     final TaggerRequest request;
     final RhapsodeSearcherApp searcherApp;
     private final Tagger tagger;
+    //lease on the request's searcher, released when the task finishes
+    private final SearcherLease lease;
+    private volatile long started = -1;
+    private volatile TaggerTaskStatus finishedStatus = null;
 
     public TaggerTask(TaggerRequest r, RhapsodeSearcherApp searcherApp) {
+        this(r, null, searcherApp);
+    }
+
+    /**
+     * @param r           request
+     * @param lease       lease on the request's searcher, closed when the task finishes; may be null
+     * @param searcherApp app
+     */
+    public TaggerTask(TaggerRequest r, SearcherLease lease, RhapsodeSearcherApp searcherApp) {
         super("Stored Query Tagger");
         this.request = r;
+        this.lease = lease;
         this.searcherApp = searcherApp;
         tagger = new Tagger(request, searcherApp);
     }
 
     @Override
     public RhapsodeTaskStatus getIntermediateResult() {
-        //should add processing step in taggertaskresult
-        String message = tagger.getStatusMessage();
-        return new TaggerTaskStatus(
-                Tasker.STATE.PROCESSING,
-                Tasker.REASON_FOR_COMPLETION.NA, new Date(), message, request);
+        TaggerTaskStatus finished = finishedStatus;
+        if (finished != null) {
+            return finished;
+        }
+        if (started < 0) {
+            return new TaggerTaskStatus(
+                    Tasker.STATE.NOT_STARTED,
+                    Tasker.REASON_FOR_COMPLETION.NA, new Date(), "waiting to start", request);
+        }
+        return buildStatus(Tasker.STATE.PROCESSING, Tasker.REASON_FOR_COMPLETION.NA,
+                tagger.getStatusMessage());
     }
 
     @Override
     public RhapsodeTaskStatus call() throws Exception {
-        tagger.execute();
-        return new TaggerTaskStatus(
-                Tasker.STATE.COMPLETED, Tasker.REASON_FOR_COMPLETION.SUCCESS, new Date(),
-                tagger.getStatusMessage(), request);
+        started = System.currentTimeMillis();
+        try {
+            if (pleaseStop) {
+                throw new CancellationException("report was cancelled before it started");
+            }
+            tagger.execute();
+            finishedStatus = buildStatus(Tasker.STATE.COMPLETED, Tasker.REASON_FOR_COMPLETION.SUCCESS,
+                    "Finished report in " + (System.currentTimeMillis() - started) + " milliseconds");
+        } catch (CancellationException e) {
+            finishedStatus = buildStatus(Tasker.STATE.COMPLETED, Tasker.REASON_FOR_COMPLETION.USER_INTERRUPTION,
+                    "Cancelled after " + (System.currentTimeMillis() - started) + " milliseconds");
+        } catch (Throwable t) {
+            LOG.warn("problem writing report", t);
+            finishedStatus = buildStatus(Tasker.STATE.COMPLETED, Tasker.REASON_FOR_COMPLETION.EXCEPTION,
+                    t.getMessage());
+        } finally {
+            if (lease != null) {
+                try {
+                    lease.close();
+                } catch (IOException e) {
+                    LOG.warn("problem releasing searcher", e);
+                }
+            }
+        }
+        return finishedStatus;
+    }
+
+    @Override
+    public void pleaseStop() {
+        super.pleaseStop();
+        tagger.pleaseStop();
+    }
+
+    public TaggerRequest getRequest() {
+        return request;
+    }
+
+    private TaggerTaskStatus buildStatus(Tasker.STATE state, Tasker.REASON_FOR_COMPLETION reason, String message) {
+        return new TaggerTaskStatus(state, reason, new Date(), message, request,
+                tagger.getQueriesSearched(), tagger.getQueriesToSearch(),
+                tagger.getFilesHighlighted(), tagger.getFilesToHighlight());
     }
 }
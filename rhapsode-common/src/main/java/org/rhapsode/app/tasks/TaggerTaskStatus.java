@@ -29,28 +29,107 @@
 
 package org.rhapsode.app.tasks;
 
+import java.nio.file.Path;
 import java.util.Date;
 
 import org.rhapsode.app.tagger.TaggerRequest;
 
 public class TaggerTaskStatus extends RhapsodeTaskStatus {
 
+    final TaggerRequest request;
+    final int queriesSearched;
+    final int queriesToSearch;
+    final int filesHighlighted;
+    final int filesToHighlight;
+
     TaggerTaskStatus(Tasker.STATE state,
                      Tasker.REASON_FOR_COMPLETION reasonForCompletion,
                      Date completed, String message,
                      TaggerRequest request) {
+        this(state, reasonForCompletion, completed, message, request, 0, -1, 0, -1);
+    }
+
+    TaggerTaskStatus(Tasker.STATE state,
+                     Tasker.REASON_FOR_COMPLETION reasonForCompletion,
+                     Date completed, String message,
+                     TaggerRequest request, int queriesSearched, int queriesToSearch,
+                     int filesHighlighted, int filesToHighlight) {
         super(state, reasonForCompletion, completed, message);
+        this.request = request;
+        this.queriesSearched = queriesSearched;
+        this.queriesToSearch = queriesToSearch;
+        this.filesHighlighted = filesHighlighted;
+        this.filesToHighlight = filesToHighlight;
+    }
+
+    /**
+     * @return the xlsx file that the report is written to
+     */
+    public Path getReportFile() {
+        return request.getReportFile();
+    }
+
+    /**
+     * @return number of queries searched so far
+     */
+    public int getQueriesSearched() {
+        return queriesSearched;
+    }
+
+    /**
+     * @return number of queries to search, -1 if unknown
+     */
+    public int getQueriesToSearch() {
+        return queriesToSearch;
+    }
+
+    /**
+     * @return number of static report files highlighted so far
+     */
+    public int getFilesHighlighted() {
+        return filesHighlighted;
+    }
+
+    /**
+     * @return number of static report files to be highlighted, -1 if unknown
+     */
+    public int getFilesToHighlight() {
+        return filesToHighlight;
+    }
+
+    @Override
+    public String getMessage() {
+        if (filesToHighlight > 0) {
+            return super.getMessage() + " (highlighted " + filesHighlighted +
+                    " of " + filesToHighlight + " files)";
+        }
+        if (state == Tasker.STATE.PROCESSING && queriesToSearch > 0 && queriesSearched < queriesToSearch) {
+            return super.getMessage() + " (searched " + queriesSearched +
+                    " of " + queriesToSearch + " queries)";
+        }
+        return super.getMessage();
     }
 
     @Override
     public String toString() {
-        return super.toString();
+        return "TaggerTaskStatus{" +
+                "state=" + state +
+                ", reasonForCompletion=" + reasonForCompletion +
+                ", statusTime=" + statusTime +
+                ", message='" + message + '\'' +
+                ", reportFile=" + getReportFile() +
+                ", queriesSearched=" + queriesSearched +
+                ", queriesToSearch=" + queriesToSearch +
+                ", filesHighlighted=" + filesHighlighted +
+                ", filesToHighlight=" + filesToHighlight +
+                '}';
     }
 
     enum TAGGER_STATES {
         CREATED_TABLES,
         CALCULATED_MAX_HITS,
         COMPLETED_SEARCHES,
-        WRITING_OUTPUT
+        WRITING_OUTPUT,
+        HIGHLIGHTING_FILES
     }
 }
@@ -29,11 +29,13 @@
 package org.rhapsode.app.tasks;
 
 import java.util.Date;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.rhapsode.app.SearchExecutor;
 
 public class Tasker {
 
@@ -45,33 +47,34 @@ public class Tasker {
     REASON_FOR_COMPLETION reasonForCompletion = null;
     Date completed = null;
     volatile boolean pleaseStop = false;
-    ExecutorService executor = null;
-    ExecutorCompletionService<RhapsodeTaskStatus> completionService;
+    final SearchExecutor executor;
+    Future<RhapsodeTaskStatus> resultFuture = null;
     RhapsodeTaskStatus result = null;
-    public Tasker(RhapsodeTask task, long maxMillis) {
+
+    /**
+     * @param task      task to run
+     * @param maxMillis maximum time to let the task run, -1 for no limit
+     * @param executor  the application's executor, see {@link org.rhapsode.app.RhapsodeSearcherApp#getSearchExecutor()}
+     */
+    public Tasker(RhapsodeTask task, long maxMillis, SearchExecutor executor) {
         this.task = task;
         this.maxMillis = maxMillis;
+        this.executor = executor;
     }
 
     public void start() {
         currentState = STATE.PROCESSING;
-        executor = Executors.newSingleThreadExecutor();
-        completionService =
-                new ExecutorCompletionService<>(executor);
-        completionService.submit(task);
+        resultFuture = executor.submitTask(task);
         long start = System.currentTimeMillis();
         long elapsed = -1;
 
-        Future<RhapsodeTaskStatus> resultFuture = null;
-
         while (reasonForCompletion == null) {
             try {
-                resultFuture = completionService.poll(1, TimeUnit.SECONDS);
-                if (resultFuture != null) {
-                    result = resultFuture.get();
-                    reasonForCompletion = REASON_FOR_COMPLETION.SUCCESS;
-                    break;
-                }
+                result = resultFuture.get(1, TimeUnit.SECONDS);
+                reasonForCompletion = REASON_FOR_COMPLETION.SUCCESS;
+                break;
+            } catch (TimeoutException e) {
+                //keep waiting
             } catch (InterruptedException e) {
                 reasonForCompletion = REASON_FOR_COMPLETION.INTERRUPTION_EXCEPTION;
                 e.printStackTrace();
@@ -96,14 +99,13 @@ public class Tasker {
             } catch (InterruptedException e) {
             }
         }
-        executor.shutdown();
-        executor.shutdownNow();
+        //don't interrupt; the task has been asked to stop
+        resultFuture.cancel(false);
 
         synchronized (lock) {
             currentState = STATE.COMPLETED;
             completed = new Date();
         }
-        //thread leak can happen...executor might not be terminated yet!!!
     }
 
     public STATE getState() {
@@ -126,7 +128,17 @@ public class Tasker {
     }
 
     public boolean hasTerminated() throws InterruptedException {
-        return executor.awaitTermination(500, TimeUnit.MILLISECONDS);
+        if (resultFuture == null) {
+            return false;
+        }
+        try {
+            resultFuture.get(500, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | CancellationException e) {
+            //completed, just not successfully
+        } catch (TimeoutException e) {
+            return false;
+        }
+        return true;
     }
 
     public REASON_FOR_COMPLETION getReasonForCompletion() {
@@ -36,9 +36,10 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.queryparser.classic.ParseException;
+import org.rhapsode.RhapsodeCollection;
 import org.rhapsode.app.RhapsodeSearcherApp;
+import org.rhapsode.lucene.queryparsers.ParserPlugin;
 import org.rhapsode.lucene.search.ComplexQuery;
-import org.rhapsode.lucene.search.ComplexQueryBuilder;
 import org.rhapsode.lucene.search.StoredQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +48,27 @@ public class ComplexQueryUtils {
 
     private static final Logger LOG = LoggerFactory.getLogger(ComplexQueryUtils.class);
 
+    /**
+     * Builds the stored query with the app's default parser via
+     * the app's {@link org.rhapsode.lucene.search.ComplexQueryCache}.
+     */
+    public static ComplexQuery buildQuery(StoredQuery sq, RhapsodeSearcherApp searcherApp)
+            throws ParseException {
+        return buildQuery(sq, searcherApp.getParserPlugin(), searcherApp);
+    }
+
+    public static ComplexQuery buildQuery(StoredQuery sq, ParserPlugin parser,
+                                          RhapsodeSearcherApp searcherApp) throws ParseException {
+        RhapsodeCollection collection = searcherApp.getRhapsodeCollection();
+        //get the version before the query
+        long ignoredVersion = collection.getIgnoredVersion();
+        return searcherApp.getComplexQueryCache().get(sq, parser,
+                searcherApp.getSessionManager().getStoredConceptManager(),
+                searcherApp.getGeoConfig(),
+                collection.getIgnoredQuery(),
+                ignoredVersion);
+    }
+
     public static Map<Integer, ComplexQuery> parseAllStoredQueries(String commaSeparatedStoredQueryNames,
                                                                    RhapsodeSearcherApp searcherConfig) throws IOException {
         String[] ids = commaSeparatedStoredQueryNames.split(",");
@@ -70,12 +92,7 @@ public class ComplexQueryUtils {
 
             ComplexQuery cq = null;
             try {
-                cq = ComplexQueryBuilder.buildQuery(
-                        sq,
-                        searcherApp.getParserPlugin(),
-                        searcherApp.getSessionManager().getStoredConceptManager(),
-                        searcherApp.getGeoConfig(),
-                        searcherApp.getRhapsodeCollection().getIgnoredQuery());
+                cq = buildQuery(sq, searcherApp);
 
                 ret.put(id, cq);
             } catch (ParseException e) {
@@ -46,9 +46,8 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.tokenattributes.OffsetAttributeImpl;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.memory.MemoryIndex;
@@ -64,11 +63,13 @@ import org.apache.tika.sax.ToHTMLContentHandler;
 import org.apache.tika.sax.ToXMLContentHandler;
 import org.rhapsode.app.contants.H;
 import org.rhapsode.app.decorators.RhapsodeXHTMLHandler;
+import org.rhapsode.lucene.analysis.charoffsets.IndexedSpanOffsetsReader;
+import org.rhapsode.lucene.analysis.charoffsets.IndexedSpanWeights;
 import org.rhapsode.lucene.search.ComplexQuery;
 import org.rhapsode.lucene.search.HighlightingQuery;
-import org.rhapsode.text.Offset;
 import org.rhapsode.text.PriorityOffset;
 import org.rhapsode.text.PriorityOffsetUtil;
+import org.rhapsode.text.TokenCharOffsets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
@@ -79,9 +80,17 @@ public class DocHighlighter {
     private static final Logger LOG = LoggerFactory.getLogger(DocHighlighter.class);
 
     private static final Pattern NEWLINE_PATTERN = Pattern.compile("(?:\r\n|[\n\r])");
+
+    private static final ThreadLocal<HighlightingBuffers> BUFFERS = new ThreadLocal<HighlightingBuffers>() {
+        @Override
+        protected HighlightingBuffers initialValue() {
+            return new HighlightingBuffers();
+        }
+    };
     private String tableClass = null;
     private String thClass = null;
     private String tdClass = null;
+    private int maxValueLength = -1;
 
     private static void initHandler(RhapsodeXHTMLHandler xhtml, String optionalStyleString) throws SAXException {
         xhtml.startDocument();
@@ -147,6 +156,28 @@ public class DocHighlighter {
                                     List<String> fields, List<Document> docs,
                                     Collection<ComplexQuery> queries,
                                     Analyzer analyzer, String optionalStyleString, int targetAttachmentOffset) throws IOException {
+        highlightDocsToFile(p, defaultContentField, embeddedPathField, fields, docs, null, null,
+                queries, analyzer, optionalStyleString, targetAttachmentOffset);
+    }
+
+    /**
+     * Same as {@link #highlightDocsToFile(Path, String, String, List, List, Collection, Analyzer, String, int)},
+     * but this reads the highlight offsets from the index for fields that were
+     * indexed with offsets.  The analyzer is only used for the fields that weren't,
+     * and it must be the analyzer that the index was built with or the highlights
+     * will differ between those fields and the others.
+     *
+     * @param indexedWeights span weights over the searcher that the docs were retrieved
+     *                       from; may be null
+     * @param docIds         lucene doc ids of the docs within the searcher, in the same
+     *                       order as docs; may be null
+     */
+    public void highlightDocsToFile(Path p, String defaultContentField,
+                                    String embeddedPathField,
+                                    List<String> fields, List<Document> docs,
+                                    IndexedSpanWeights indexedWeights, List<Integer> docIds,
+                                    Collection<ComplexQuery> queries,
+                                    Analyzer analyzer, String optionalStyleString, int targetAttachmentOffset) throws IOException {
         if (p == null || p.getParent() == null) {
             throw new IOException("path " + p + " must not be null and its parent must not be null");
         }
@@ -157,8 +188,8 @@ public class DocHighlighter {
             RhapsodeXHTMLHandler xhtml = new RhapsodeXHTMLHandler(new ToHTMLContentHandler(os,
                     IOUtils.UTF_8.name()));
             initHandler(xhtml, optionalStyleString);
-            highlightDocs(defaultContentField, embeddedPathField, fields, docs, queries,
-                    analyzer, anythingHighlighted, targetAttachmentOffset, xhtml);
+            highlightDocs(defaultContentField, embeddedPathField, fields, docs, indexedWeights, docIds,
+                    queries, analyzer, anythingHighlighted, targetAttachmentOffset, xhtml);
             xhtml.endElement(H.BODY);
             xhtml.endElement(H.HTML);
             xhtml.endDocument();
@@ -195,37 +226,87 @@ public class DocHighlighter {
                               List<Document> docs, Collection<ComplexQuery> queries,
                               Analyzer analyzer, AtomicBoolean anythingHighlighted, int targetOffset,
                               RhapsodeXHTMLHandler xhtml) throws IOException, SAXException {
+        highlightDocs(defaultContentField, embeddedPathField, fields, docs, null, null,
+                queries, analyzer, anythingHighlighted, targetOffset, xhtml);
+    }
+
+    public void highlightDocs(String defaultContentField, String embeddedPathField, List<String> fields,
+                              List<Document> docs, IndexedSpanWeights indexedWeights, List<Integer> docIds,
+                              Collection<ComplexQuery> queries,
+                              Analyzer analyzer, AtomicBoolean anythingHighlighted, int targetOffset,
+                              RhapsodeXHTMLHandler xhtml) throws IOException, SAXException {
+        if (docIds != null && docIds.size() != docs.size()) {
+            throw new IllegalArgumentException("docIds (" + docIds.size() +
+                    ") must be parallel to docs (" + docs.size() + ")");
+        }
         int i = 0;
         targetOffset = (targetOffset < 0) ? targetOffset = 0 : targetOffset;
         for (Document doc : docs) {
-            if (i == 0) {
-                if (docs.size() > 0) {
-                    xhtml.element(H.H2, "Parent Document");
-                }
-            } else {
-                xhtml.br();
-                xhtml.startElement(H.H2);
-                xhtml.characters("Embedded Document " + i);
-                String embeddedDocPath = doc.get(embeddedPathField);
-                if (!StringUtils.isBlank(embeddedDocPath)) {
-                    xhtml.characters(": " + embeddedDocPath);
-                }
-                xhtml.endElement(H.H2);
-            }
-            if (i == targetOffset) {
-                xhtml.startElement(H.SPAN, H.ID, H.JUMP_TO_TARGET);
-                xhtml.endElement(H.SPAN);
-            }
-
-            highlightDoc(defaultContentField, fields, doc, queries, analyzer,
-                    anythingHighlighted, xhtml);
+            IndexedSpanWeights weights = (docIds == null) ? null : indexedWeights;
+            int docId = (docIds == null) ? -1 : docIds.get(i);
+            highlightAttachment(i, defaultContentField, embeddedPathField, fields, doc, weights, docId,
+                    queries, analyzer, anythingHighlighted, i == targetOffset, xhtml);
             i++;
         }
 
     }
 
+    /**
+     * Writes the heading for a single document in a container file and then highlights it.
+     *
+     * @param attachmentIndex index of this document within the container; 0 is the parent
+     * @param indexedWeights  span weights over the searcher that the doc was retrieved
+     *                        from; may be null
+     * @param docId           lucene doc id of doc within the searcher; may be -1
+     * @param isTarget        whether to add the jump-to-target anchor before this document
+     */
+    public void highlightAttachment(int attachmentIndex, String defaultContentField, String embeddedPathField,
+                                    List<String> fields, Document doc,
+                                    IndexedSpanWeights indexedWeights, int docId,
+                                    Collection<ComplexQuery> queries,
+                                    Analyzer analyzer, AtomicBoolean anythingHighlighted,
+                                    boolean isTarget,
+                                    RhapsodeXHTMLHandler xhtml) throws IOException, SAXException {
+        if (attachmentIndex == 0) {
+            xhtml.element(H.H2, "Parent Document");
+        } else {
+            xhtml.br();
+            xhtml.startElement(H.H2);
+            xhtml.characters("Embedded Document " + attachmentIndex);
+            String embeddedDocPath = doc.get(embeddedPathField);
+            if (!StringUtils.isBlank(embeddedDocPath)) {
+                xhtml.characters(": " + embeddedDocPath);
+            }
+            xhtml.endElement(H.H2);
+        }
+        if (isTarget) {
+            xhtml.startElement(H.SPAN, H.ID, H.JUMP_TO_TARGET);
+            xhtml.endElement(H.SPAN);
+        }
+
+        highlightDoc(defaultContentField, fields, doc, indexedWeights, docId, queries, analyzer,
+                anythingHighlighted, xhtml);
+    }
+
+    public void highlightDoc(String contentField,
+                             List<String> fields, Document doc,
+                             Collection<ComplexQuery> queries,
+                             Analyzer analyzer, AtomicBoolean anythingHighlighted,
+                             RhapsodeXHTMLHandler xhtml) throws IOException, SAXException {
+        highlightDoc(contentField, fields, doc, null, -1, queries, analyzer, anythingHighlighted, xhtml);
+    }
+
+    /**
+     * If the searcher and docId are specified and a field was indexed with offsets,
+     * the offsets are read from the index instead of re-analyzing the stored value.
+     *
+     * @param indexedWeights span weights over the searcher that the doc was retrieved
+     *                       from; may be null
+     * @param docId          lucene doc id of doc within the searcher; may be -1
+     */
     public void highlightDoc(String contentField,
                              List<String> fields, Document doc,
+                             IndexedSpanWeights indexedWeights, int docId,
                              Collection<ComplexQuery> queries,
                              Analyzer analyzer, AtomicBoolean anythingHighlighted,
                              RhapsodeXHTMLHandler xhtml) throws IOException, SAXException {
@@ -251,7 +332,7 @@ public class DocHighlighter {
             xhtml.characters(f);
             xhtml.endElement(H.TD);
             xhtml.startElement(H.TD, H.CLASS, tdClass);
-            highlightFieldValues(f, highlightingQueries.get(f), doc, analyzer,
+            highlightFieldValues(f, highlightingQueries.get(f), doc, indexedWeights, docId, analyzer,
                     anythingHighlighted, xhtml);
             xhtml.endElement(H.TD);
             xhtml.endElement(H.TR);
@@ -262,8 +343,8 @@ public class DocHighlighter {
             xhtml.characters("CONTENT");
             xhtml.endElement(H.TD);
             xhtml.startElement(H.TD, H.CLASS, tdClass);
-            highlightFieldValues(contentField, highlightingQueries.get(contentField), doc, analyzer,
-                    anythingHighlighted, xhtml);
+            highlightFieldValues(contentField, highlightingQueries.get(contentField), doc,
+                    indexedWeights, docId, analyzer, anythingHighlighted, xhtml);
             xhtml.endElement(H.TD);
             xhtml.endElement(H.TR);
         }
@@ -284,17 +365,74 @@ public class DocHighlighter {
     }
 
     private void highlightFieldValues(String field, Set<HighlightingQuery> highlightingQueries,
-                                      Document doc, Analyzer analyzer,
+                                      Document doc, IndexedSpanWeights indexedWeights, int docId,
+                                      Analyzer analyzer,
                                       AtomicBoolean anythingHighlighted,
                                       RhapsodeXHTMLHandler xhtml) throws SAXException, IOException {
-        for (String s : doc.getValues(field)) {
+        String[] values = doc.getValues(field);
+        for (String s : values) {
             xhtml.startElement(H.DIV);
-            highlightSingleFieldValue(field, s, highlightingQueries, analyzer,
-                    anythingHighlighted, xhtml);
+            boolean truncated = false;
+            if (maxValueLength > -1 && s.length() > maxValueLength) {
+                s = s.substring(0, maxValueLength);
+                truncated = true;
+            }
+            //indexed offsets run across all values of a field, only use them for a single, complete value
+            if (values.length != 1 || truncated ||
+                    !highlightSingleFieldValueFromIndex(field, s, highlightingQueries,
+                            indexedWeights, docId, anythingHighlighted, xhtml)) {
+                highlightSingleFieldValue(field, s, highlightingQueries, analyzer,
+                        anythingHighlighted, xhtml);
+            }
+            if (truncated) {
+                xhtml.br();
+                xhtml.element(H.BOLD, "[truncated after " + maxValueLength + " characters]");
+            }
             xhtml.endElement(H.DIV);
         }
     }
 
+    /**
+     * The fallback re-analyzes the value, so the analyzer passed in to the
+     * highlighter must match the one the field was indexed with; otherwise,
+     * the same query can highlight different terms depending on whether or
+     * not a field was indexed with offsets.
+     *
+     * @return false if the offsets weren't available in the index and nothing
+     * was written; the caller must then fall back to {@link #highlightSingleFieldValue}
+     */
+    protected boolean highlightSingleFieldValueFromIndex(String field, String s,
+                                                         Set<HighlightingQuery> highlightingQueries,
+                                                         IndexedSpanWeights indexedWeights, int docId,
+                                                         AtomicBoolean anythingHighlighted,
+                                                         RhapsodeXHTMLHandler xhtml) throws IOException, SAXException {
+        if (highlightingQueries == null || highlightingQueries.size() == 0) {
+            return false;
+        }
+        IndexedSpanOffsetsReader offsetsReader = IndexedSpanOffsetsReader.open(indexedWeights, docId, field);
+        if (offsetsReader == null) {
+            return false;
+        }
+        HighlightingBuffers buffers = BUFFERS.get();
+        try {
+            for (HighlightingQuery hq : highlightingQueries) {
+                if (!offsetsReader.addOffsets(hq.getSpanQuery(), hq.getPriority(), hq.getSpanClass(),
+                        buffers.tokenOffsets, buffers.charOffsets)) {
+                    return false;
+                }
+            }
+            List<PriorityOffset> winnowed = PriorityOffsetUtil.removeOverlapsAndSort(buffers.tokenOffsets);
+            highlight(winnowed, buffers.charOffsets, s, anythingHighlighted, xhtml);
+            return true;
+        } finally {
+            buffers.clear();
+        }
+    }
+
+    /**
+     * Analyzes the value once into this thread's reusable {@link MemoryIndex}
+     * and runs all of the highlighting queries against that single analysis.
+     */
     protected void highlightSingleFieldValue(String field, String s,
                                              Set<HighlightingQuery> highlightingQueries,
                                              Analyzer analyzer,
@@ -304,46 +442,45 @@ public class DocHighlighter {
             xhtml.characters(s);
             return;
         }
-        List<PriorityOffset> tokenOffsets = new ArrayList<>();//token offsets
-        Map<Integer, Offset> charOffsets = new HashMap<>();//char offsets, indexed by token position
-        MemoryIndex index = new MemoryIndex(true);
-        index.addField(field, s, analyzer);
-        index.freeze();
-
-        IndexSearcher searcher = index.createSearcher();
-        for (HighlightingQuery hq : highlightingQueries) {
-            addPriorityOffsets(searcher, hq, tokenOffsets, charOffsets);
+        HighlightingBuffers buffers = BUFFERS.get();
+        try {
+            MemoryIndex index = buffers.memoryIndex;
+            index.addField(field, s, analyzer);
+            index.freeze();
+
+            IndexSearcher searcher = index.createSearcher();
+            LeafReaderContext leaf = searcher.getIndexReader().leaves().get(0);
+            for (HighlightingQuery hq : highlightingQueries) {
+                addPriorityOffsets(searcher, leaf, hq, buffers);
+            }
+            List<PriorityOffset> winnowed = PriorityOffsetUtil.removeOverlapsAndSort(buffers.tokenOffsets);
+            highlight(winnowed, buffers.charOffsets, s, anythingHighlighted, xhtml);
+        } finally {
+            buffers.clear();
         }
-        List<PriorityOffset> winnowed = PriorityOffsetUtil.removeOverlapsAndSort(tokenOffsets);
-        highlight(winnowed, charOffsets, s, anythingHighlighted, xhtml);
     }
 
-    private void addPriorityOffsets(IndexSearcher indexSearcher, HighlightingQuery highlightingQuery,
-                                    List<PriorityOffset> tokenOffsets, Map<Integer, Offset> charOffsets) throws IOException {
-        IndexReader reader = indexSearcher.getIndexReader();
+    private void addPriorityOffsets(IndexSearcher indexSearcher, LeafReaderContext leaf,
+                                    HighlightingQuery highlightingQuery,
+                                    HighlightingBuffers buffers) throws IOException {
         SpanQuery sq = highlightingQuery.getSpanQuery();
 
-        sq = (SpanQuery) sq.rewrite(reader);
+        sq = (SpanQuery) sq.rewrite(indexSearcher.getIndexReader());
 
         SpanWeight weight = sq.createWeight(indexSearcher, ScoreMode.COMPLETE_NO_SCORES, 1.0f);
-        Spans spans = weight.getSpans(reader.leaves().get(0),
-                SpanWeight.Postings.OFFSETS);
+        Spans spans = weight.getSpans(leaf, SpanWeight.Postings.OFFSETS);
 
         if (spans == null) {
             return;
         }
 
-        OffsetSpanCollector offsetSpanCollector = new OffsetSpanCollector();
         while (spans.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
             while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
-                OffsetAttributeImpl offsetAttribute = new OffsetAttributeImpl();
-                offsetAttribute.setOffset(spans.startPosition(), spans.endPosition());
-                tokenOffsets.add(new PriorityOffset(spans.startPosition(), spans.endPosition(),
+                buffers.tokenOffsets.add(new PriorityOffset(spans.startPosition(), spans.endPosition(),
                         highlightingQuery.getPriority(), highlightingQuery.getSpanClass()));
-                spans.collect(offsetSpanCollector);
+                spans.collect(buffers.collector);
             }
         }
-        charOffsets.putAll(offsetSpanCollector.getOffsets());
     }
 
     /**
@@ -353,11 +490,13 @@ public class DocHighlighter {
      * @param xhtml
      * @throws SAXException
      */
-    private void highlight(List<PriorityOffset> winnowed, Map<Integer, Offset> charOffsets, String s,
+    private void highlight(List<PriorityOffset> winnowed, TokenCharOffsets charOffsets, String s,
                            AtomicBoolean anythingHighlighted, RhapsodeXHTMLHandler xhtml) throws SAXException {
         int last = 0;
         for (PriorityOffset offset : winnowed) {
-            writeCharactersWithNewLine(s.substring(last, charOffsets.get(offset.startOffset()).startOffset()), xhtml);
+            int start = charOffsets.getStart(offset.startOffset());
+            int end = charOffsets.getEnd(offset.endOffset() - 1);
+            writeCharactersWithNewLine(s.substring(last, start), xhtml);
             if (anythingHighlighted.get() == false) {
                 xhtml.startElement(H.SPAN,
                         H.ID, H.JUMP_TO_FIRST,
@@ -369,10 +508,9 @@ public class DocHighlighter {
                         H.CLASS, offset.getLabel()
                 );
             }
-            writeCharactersWithNewLine(s.substring(charOffsets.get(offset.startOffset()).startOffset(),
-                    charOffsets.get(offset.endOffset() - 1).endOffset()), xhtml);
+            writeCharactersWithNewLine(s.substring(start, end), xhtml);
             xhtml.endElement(H.SPAN);
-            last = charOffsets.get(offset.endOffset() - 1).endOffset();
+            last = end;
         }
         writeCharactersWithNewLine(s.substring(last), xhtml);
     }
@@ -396,20 +534,52 @@ public class DocHighlighter {
         this.tdClass = tdClass;
     }
 
-    private class OffsetSpanCollector implements SpanCollector {
-        Map<Integer, Offset> charOffsets = new HashMap<>();
+    /**
+     * @param maxValueLength maximum number of characters of a single field value to highlight and
+     *                       write; longer values are truncated.  -1 (the default) means no limit.
+     */
+    public void setMaxValueLength(int maxValueLength) {
+        this.maxValueLength = maxValueLength;
+    }
+
+    /**
+     * Per thread scratch space.  This is cleared after every value, and
+     * anything that grew past {@link #MAX_RETAINED_OFFSETS} for one large
+     * value is dropped rather than kept for the life of the (pooled) thread.
+     */
+    private static class HighlightingBuffers {
+        private static final int MAX_RETAINED_OFFSETS = 1 << 14;
+
+        private final MemoryIndex memoryIndex = new MemoryIndex(true);
+        private final TokenCharOffsets charOffsets = new TokenCharOffsets(64, MAX_RETAINED_OFFSETS);
+        private final OffsetSpanCollector collector = new OffsetSpanCollector(charOffsets);
+        private ArrayList<PriorityOffset> tokenOffsets = new ArrayList<>();
+
+        void clear() {
+            memoryIndex.reset();
+            if (tokenOffsets.size() > MAX_RETAINED_OFFSETS) {
+                tokenOffsets = new ArrayList<>();
+            } else {
+                tokenOffsets.clear();
+            }
+            charOffsets.clear();
+        }
+    }
+
+    private static class OffsetSpanCollector implements SpanCollector {
+        private final TokenCharOffsets charOffsets;
+
+        OffsetSpanCollector(TokenCharOffsets charOffsets) {
+            this.charOffsets = charOffsets;
+        }
 
         @Override
         public void collectLeaf(PostingsEnum postingsEnum, int i, Term term) throws IOException {
-            charOffsets.put(i, new Offset(postingsEnum.startOffset(), postingsEnum.endOffset()));
+            charOffsets.set(i, postingsEnum.startOffset(), postingsEnum.endOffset());
         }
 
         @Override
         public void reset() {
         }
-
-        public Map<Integer, Offset> getOffsets() {
-            return charOffsets;
-        }
     }
 }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.indexer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.tika.batch.FileResource;
+import org.apache.tika.batch.FileResourceConsumer;
+import org.apache.tika.batch.fs.FSProperties;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.metadata.serialization.JsonMetadataList;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.ContentHandlerFactory;
+import org.apache.tika.sax.RecursiveParserWrapperHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Parses the original file with Tika and hands the resulting
+ * list of metadata objects directly to the indexing workers
+ * via a bounded queue.  This skips writing the extract to
+ * extracted_text/ and then re-reading it in a second process.
+ * <p>
+ * If <code>extractsRoot</code> is not null, the extract is also
+ * written there so that the collection can be re-indexed later
+ * with the two-pass pipeline.
+ */
+public class ExtractIndexConsumer extends FileResourceConsumer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExtractIndexConsumer.class);
+    private static final String JSON_SUFFIX = ".json";
+    private static final String RUNTIME_EXCEPTION_KEY =
+            TikaCoreProperties.TIKA_META_EXCEPTION_PREFIX + "runtime";
+
+    private final Parser parser;
+    private final ContentHandlerFactory contentHandlerFactory;
+    private final IndexingQueue indexingQueue;
+    private final Path extractsRoot;
+
+    public ExtractIndexConsumer(ArrayBlockingQueue<FileResource> fileQueue,
+                                Parser parser, ContentHandlerFactory contentHandlerFactory,
+                                IndexingQueue indexingQueue,
+                                Path extractsRoot) {
+        super(fileQueue);
+        this.parser = parser;
+        this.contentHandlerFactory = contentHandlerFactory;
+        this.indexingQueue = indexingQueue;
+        this.extractsRoot = extractsRoot;
+    }
+
+    @Override
+    public boolean processFileResource(FileResource fileResource) {
+        LOG.debug("Extracting and indexing: " + fileResource.getResourceId());
+        Metadata containerMetadata = fileResource.getMetadata();
+        RecursiveParserWrapperHandler handler =
+                new RecursiveParserWrapperHandler(contentHandlerFactory, -1);
+        String stackTrace = null;
+        try (TikaInputStream tis = TikaInputStream.get(fileResource.openInputStream())) {
+            parser.parse(tis, handler, containerMetadata, new ParseContext());
+        } catch (IOException | SAXException | TikaException e) {
+            //same as the two-pass pipeline: keep whatever was
+            //extracted and record the exception in the container document
+            LOG.warn(getXMLifiedLogMsg("Exception parsing",
+                    fileResource.getResourceId(), e));
+            stackTrace = ExceptionUtils.getStackTrace(e);
+            incrementHandledExceptions();
+        }
+
+        List<Metadata> metadataList = handler.getMetadataList();
+        if (metadataList == null || metadataList.size() == 0) {
+            return false;
+        }
+        if (stackTrace != null) {
+            metadataList.get(0).add(RUNTIME_EXCEPTION_KEY, stackTrace);
+        }
+
+        if (extractsRoot != null) {
+            writeExtract(fileResource, metadataList);
+        }
+
+        try {
+            //blocks if the indexers have fallen behind
+            if (!indexingQueue.put(metadataList)) {
+                LOG.error("no indexing workers left; couldn't index: " +
+                        fileResource.getResourceId());
+                return false;
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("interrupted while waiting to add to the indexing queue: " +
+                    fileResource.getResourceId());
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private void writeExtract(FileResource fileResource, List<Metadata> metadataList) {
+        String rel = fileResource.getMetadata().get(FSProperties.FS_REL_PATH);
+        if (rel == null) {
+            rel = fileResource.getResourceId();
+        }
+        Path extract = extractsRoot.resolve(rel + JSON_SUFFIX);
+        try {
+            Files.createDirectories(extract.getParent());
+            try (Writer w = Files.newBufferedWriter(extract, StandardCharsets.UTF_8)) {
+                JsonMetadataList.toJson(metadataList, w);
+            }
+        } catch (IOException | TikaException e) {
+            //don't stop indexing because of a problem with the side output
+            LOG.warn(getXMLifiedLogMsg("Exception writing extract",
+                    fileResource.getResourceId(), e));
+        }
+    }
+}
@@ -30,25 +30,32 @@
 package org.rhapsode.indexer;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
 import org.apache.tika.batch.fs.FSProperties;
 import org.apache.tika.metadata.Metadata;
 import org.rhapsode.lucene.schema.FieldDef;
 import org.rhapsode.lucene.schema.FieldMapper;
 import org.rhapsode.lucene.schema.IndexSchema;
 import org.rhapsode.lucene.schema.IndivFieldMapper;
+import org.rhapsode.lucene.utils.DocRetriever;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,13 +65,24 @@ public class FileIndexer {
     final RhapsodeIndexerConfig config;
     final IndexWriter writer;
     final IndexSchema indexSchema;
+    final ManifestJournal manifestJournal;
     private final Object lock = new Object();
     private boolean committing = false;
 
     public FileIndexer(RhapsodeIndexerConfig config, IndexWriter writer) {
+        this(config, writer, null);
+    }
+
+    /**
+     * @param config
+     * @param writer
+     * @param manifestJournal if not null, each file written to the index is recorded here
+     */
+    public FileIndexer(RhapsodeIndexerConfig config, IndexWriter writer, ManifestJournal manifestJournal) {
         this.config = config;
         this.indexSchema = config.getRhapsodeCollection().getIndexSchema();
         this.writer = writer;
+        this.manifestJournal = manifestJournal;
     }
 
     public void writeDocument(List<Metadata> metadataList) throws IOException {
@@ -93,10 +111,14 @@ public class FileIndexer {
 
         String parentPath = parent.get(FSProperties.FS_REL_PATH);
         List<Document> documents = new ArrayList<>();
-        String uniqFileValue = UUID.randomUUID().toString();//this is the unique key for the initial input document
+        String uniqFileValue = buildFileId(parent);//this is the unique key for the initial input document
+        boolean deterministicIds = uniqFileValue != null;
+        if (uniqFileValue == null) {
+            uniqFileValue = randomId();
+        }
         Document parentDocument = buildDocument(parent, uniqFileValue, uniqFileValue);
         if (parentDocument != null) {
-            parentDocument.add(new SortedNumericDocValuesField(indexSchema.getAttachmentSortField(), 0));
+            addParentFields(parentDocument);
             documents.add(parentDocument);
         }
         String indexerOverwriteValue = null;
@@ -111,7 +133,8 @@ public class FileIndexer {
 
             //add the parent path into the child's
             child.set(FSProperties.FS_REL_PATH, parentPath);
-            Document d = buildDocument(metadataList.get(i), uniqFileValue);
+            Document d = buildDocument(metadataList.get(i), uniqFileValue,
+                    deterministicIds ? buildAttachmentId(uniqFileValue, i) : randomId());
             //need to overwrite child document's overwrite field.
             //the value has already been mapped in the parent's
             if (indexerOverwriteField != null) {
@@ -124,11 +147,92 @@ public class FileIndexer {
                 documents.add(d);
             }
         }
-        writer.addDocuments(documents);
+        if (deterministicIds && writer.getConfig().getOpenMode() != IndexWriterConfig.OpenMode.CREATE) {
+            //replace the file's block if it is already in the index
+            writer.updateDocuments(new Term(indexSchema.getUniqueFileField(), uniqFileValue), documents);
+        } else {
+            writer.addDocuments(documents);
+        }
+        if (manifestJournal != null) {
+            manifestJournal.record(parentPath, uniqFileValue, parent.get(TIKA_MD5_KEY));
+        }
+    }
+
+    /**
+     * Writes each row as a file of its own with no attachments.  Rows
+     * that get random ids are added with a single call to
+     * {@link IndexWriter#addDocuments(Iterable)}, which is much cheaper per
+     * row than a call per row when many threads share the writer.  Rows
+     * aren't recorded in the manifest journal.
+     *
+     * @param rows one metadata object per row
+     * @throws IOException
+     */
+    public void writeRows(List<Metadata> rows) throws IOException {
+        List<Document> documents = new ArrayList<>(rows.size());
+        for (Metadata row : rows) {
+            if (buildFileId(row) != null) {
+                //deterministic ids may replace a block that's already in the index
+                writeDocument(Collections.singletonList(row));
+                continue;
+            }
+            String id = randomId();
+            Document d = buildDocument(row, id, id);
+            addParentFields(d);
+            documents.add(d);
+        }
+        if (documents.size() > 0) {
+            writer.addDocuments(documents);
+        }
+    }
+
+    private void addParentFields(Document parentDocument) {
+        parentDocument.add(new SortedNumericDocValuesField(indexSchema.getAttachmentSortField(), 0));
+        //the parent must be the first document in the block
+        parentDocument.add(new StringField(indexSchema.getParentMarkerField(),
+                DocRetriever.PARENT_MARKER_VALUE, Field.Store.NO));
+    }
+
+    //UUID.randomUUID() draws on a shared SecureRandom, which indexing
+    //threads contend for; these ids only need to be unique
+    private static String randomId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long msb = (random.nextLong() & ~0xf000L) | 0x4000L;//version 4
+        long lsb = (random.nextLong() & ~(0xcL << 60)) | (0x8L << 60);//IETF variant
+        return new UUID(msb, lsb).toString();
+    }
+
+    /**
+     * @param parent
+     * @return the id for the file based on the {@link RhapsodeIndexerConfig.ID_STRATEGY}
+     * or null if a random id should be used
+     */
+    private String buildFileId(Metadata parent) {
+        String key = null;
+        switch (config.getIdStrategy()) {
+            case PATH:
+                String rel = parent.get(FSProperties.FS_REL_PATH);
+                key = (rel == null) ? null : "path:" + rel;
+                break;
+            case DIGEST:
+                //include the path so that identical copies of a file
+                //at different paths don't share an id
+                String md5 = parent.get(TIKA_MD5_KEY);
+                String path = parent.get(FSProperties.FS_REL_PATH);
+                key = (md5 == null || path == null) ? null : "md5:" + md5 + ":path:" + path;
+                break;
+            default:
+                break;
+        }
+        if (key == null) {
+            return null;
+        }
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
     }
 
-    private Document buildDocument(Metadata m, String uniqFileId) throws IOException {
-        return buildDocument(m, uniqFileId, UUID.randomUUID().toString());
+    private String buildAttachmentId(String uniqFileId, int attachmentIndex) {
+        return UUID.nameUUIDFromBytes((uniqFileId + "/" + attachmentIndex)
+                .getBytes(StandardCharsets.UTF_8)).toString();
     }
 
     private Document buildDocument(Metadata m, String uniqFileId,
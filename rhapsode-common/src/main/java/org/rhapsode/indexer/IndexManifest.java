@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.indexer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sidecar record of what is in the index: for each original file
+ * (keyed by its unix-style path relative to the original docs root),
+ * the modification time when it was crawled, its MD5 and the value
+ * of the unique file field for its block of Lucene documents.
+ * <p>
+ * This is what allows an incremental run to re-extract and re-index
+ * only new or changed files and to delete the blocks of removed files.
+ */
+public class IndexManifest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexManifest.class);
+
+    private static final Type ENTRIES_TYPE = new TypeToken<HashMap<String, Entry>>() {
+    }.getType();
+
+    private final Map<String, Entry> entries;
+
+    public IndexManifest() {
+        this(new HashMap<>());
+    }
+
+    private IndexManifest(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static IndexManifest load(Path manifestPath) throws IOException {
+        try (Reader r = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+            Map<String, Entry> entries = new Gson().fromJson(r, ENTRIES_TYPE);
+            return new IndexManifest(entries == null ? new HashMap<>() : entries);
+        }
+    }
+
+    /**
+     * Writes to a temporary file and then moves it into place so that
+     * a crash can't leave a truncated manifest.
+     */
+    public void save(Path manifestPath) throws IOException {
+        Path tmp = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            new Gson().toJson(entries, ENTRIES_TYPE, w);
+        }
+        Files.move(tmp, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Entry get(String relPath) {
+        return entries.get(relPath);
+    }
+
+    public Entry remove(String relPath) {
+        return entries.remove(relPath);
+    }
+
+    /**
+     * Crawls origDocsRoot and compares what is there with this manifest.
+     * <p>
+     * A file whose modification time has changed but whose MD5 has not
+     * is treated as unchanged; its modification time is updated in this
+     * manifest.
+     *
+     * @param origDocsRoot
+     * @return
+     * @throws IOException
+     */
+    public Changes findChanges(Path origDocsRoot) throws IOException {
+        Changes changes = new Changes();
+        Files.walkFileTree(origDocsRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String rel = FilenameUtils.separatorsToUnix(origDocsRoot.relativize(file).toString());
+                long mtime = attrs.lastModifiedTime().toMillis();
+                changes.mtimes.put(rel, mtime);
+                Entry entry = entries.get(rel);
+                if (entry == null) {
+                    changes.added.add(rel);
+                } else if (entry.mtime != mtime) {
+                    if (entry.md5 != null && entry.md5.equals(md5(file))) {
+                        entry.mtime = mtime;
+                    } else {
+                        changes.changed.add(rel);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                LOG.warn("couldn't visit: " + file, exc);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (String rel : entries.keySet()) {
+            if (!changes.mtimes.containsKey(rel)) {
+                changes.removed.add(rel);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Adds an entry for each file that the indexer recorded in the journal.
+     * Files that failed to be extracted or indexed aren't in the journal,
+     * so they are picked up again as new on the next incremental run.
+     *
+     * @param journal
+     * @param origDocsRoot used to look up modification times not in <code>mtimes</code>
+     * @param mtimes       modification times observed before extraction, may be empty
+     * @throws IOException
+     */
+    public void applyJournal(Path journal, Path origDocsRoot, Map<String, Long> mtimes) throws IOException {
+        if (!Files.isRegularFile(journal)) {
+            return;
+        }
+        Gson gson = new Gson();
+        try (BufferedReader r = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line = r.readLine();
+            while (line != null) {
+                ManifestJournal.Record record = gson.fromJson(line, ManifestJournal.Record.class);
+                if (record != null && record.relPath != null) {
+                    Long mtime = mtimes.get(record.relPath);
+                    if (mtime == null) {
+                        Path orig = origDocsRoot.resolve(record.relPath);
+                        mtime = Files.isRegularFile(orig) ?
+                                Files.getLastModifiedTime(orig).toMillis() : -1L;
+                    }
+                    entries.put(record.relPath, new Entry(mtime, record.md5, record.fileId));
+                }
+                line = r.readLine();
+            }
+        }
+    }
+
+    static String md5(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[8192];
+        try (InputStream is = Files.newInputStream(file)) {
+            int read = is.read(buffer);
+            while (read > -1) {
+                digest.update(buffer, 0, read);
+                read = is.read(buffer);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public static class Entry {
+        long mtime;
+        String md5;
+        String fileId;
+
+        Entry(long mtime, String md5, String fileId) {
+            this.mtime = mtime;
+            this.md5 = md5;
+            this.fileId = fileId;
+        }
+
+        public String getFileId() {
+            return fileId;
+        }
+    }
+
+    public static class Changes {
+        private final List<String> added = new ArrayList<>();
+        private final List<String> changed = new ArrayList<>();
+        private final List<String> removed = new ArrayList<>();
+        private final Map<String, Long> mtimes = new HashMap<>();
+
+        public List<String> getAdded() {
+            return added;
+        }
+
+        public List<String> getChanged() {
+            return changed;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return all files that have to be extracted and indexed
+         */
+        public Set<String> getToIndex() {
+            Set<String> toIndex = new HashSet<>(added);
+            toIndex.addAll(changed);
+            return toIndex;
+        }
+
+        /**
+         * @return modification times of every file seen during the crawl
+         */
+        public Map<String, Long> getMtimes() {
+            return mtimes;
+        }
+
+        public boolean isEmpty() {
+            return added.size() == 0 && changed.size() == 0 && removed.size() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "added: " + added.size() + ", changed: " + changed.size() +
+                    ", removed: " + removed.size();
+        }
+    }
+}
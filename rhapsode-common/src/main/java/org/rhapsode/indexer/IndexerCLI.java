@@ -30,12 +30,18 @@
 
 package org.rhapsode.indexer;
 
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -45,9 +51,12 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.tika.batch.BatchProcessDriverCLI;
 import org.apache.tika.utils.ProcessUtils;
 import org.rhapsode.RhapsodeCollection;
+import org.rhapsode.indexer.builders.ExtractIndexConsumerBuilder;
+import org.rhapsode.indexer.builders.IndexerConsumerBuilder;
 import org.rhapsode.lucene.search.IndexManager;
 import org.rhapsode.util.ParamUtil;
 import org.slf4j.Logger;
@@ -60,12 +69,24 @@ public class IndexerCLI {
 
     private final static Path DEFAULT_SCHEMA_PATH = Paths.get("resources/config/default_index_schema.json");
 
+    //files to (re-)extract/index on an update, relative to the input
+    //directory and to the extracted text directory respectively
+    private final static String UPDATE_FILE_LIST = "update_file_list.txt";
+    private final static String UPDATE_EXTRACT_FILE_LIST = "update_extract_file_list.txt";
+    private final static String EXTRACT_SUFFIX = ".json";
+
     public static Options getOptions() {
         Options opts = new Options();
         opts.addOption("i", "input", true, "Path to the original documents' root directory");
         opts.addOption("s", "defaultSchema", true, "Schema to use for first load of a collection");
         opts.addOption("c", "collection", true, "Path to the collection");
         opts.addOption("e", "extractOnly", false, "Run the extraction process only");
+        opts.addOption("stream", false, "Extract and index in a single process, passing parsed " +
+                "documents straight to the indexer instead of through extracted_text/. " +
+                "Tika can't be restarted in this mode.");
+        opts.addOption("keepExtracts", false, "With -stream, also write the json extracts to extracted_text/");
+        opts.addOption("u", "update", false, "Incrementally update an existing collection: " +
+                "only extract and index new or changed files and delete removed files from the index");
         opts.addOption("l", "indexOnly", false, "Run the (L)ucene indexer only");
         opts.addOption("m", "mergeOnly", false, "Merge the Lucene index only");
         opts.addOption("o", "overwriteIndex", true, "Delete index before running the indexer");
@@ -77,7 +98,7 @@ public class IndexerCLI {
         opts.addOption("merge", true, "number of index segments to merge to");
         opts.addOption("tArgs", true, "jvm args for the Tika extraction process; no dash, semicolon delimited, e.g. " +
                 "'Xmx4g;Xss512m'");
-        opts.addOption("lArgs", true, "jvm args for the Lucene indexing process; no dash, semicolon delimited, e.g. " +
+        opts.addOption("lArgs", true, "jvm args for the Lucene indexing (or stream) process; no dash, semicolon delimited, e.g. " +
                 "'Xmx4g;Xss512m'");
         return opts;
     }
@@ -102,8 +123,20 @@ public class IndexerCLI {
         if (cl.hasOption('e') && cl.hasOption('l')) {
             usage("Can't specify both extract only and index only");
         }
-        boolean shouldExtract = cl.hasOption('e') || (!cl.hasOption('l') && !cl.hasOption('m'));
-        boolean shouldIndex = cl.hasOption('l') || (!cl.hasOption('e') && !cl.hasOption('m'));
+        if (cl.hasOption("stream") && (cl.hasOption('e') || cl.hasOption('l'))) {
+            usage("Can't specify stream with extract only or index only");
+        }
+        if (cl.hasOption("keepExtracts") && !cl.hasOption("stream")) {
+            usage("keepExtracts only applies with stream");
+        }
+        if (cl.hasOption('u') && (cl.hasOption('e') || cl.hasOption('l') || cl.hasOption('m'))) {
+            usage("Can't specify update with extract only, index only or merge only");
+        }
+        boolean shouldStream = cl.hasOption("stream");
+        boolean shouldExtract = !shouldStream &&
+                (cl.hasOption('e') || (!cl.hasOption('l') && !cl.hasOption('m')));
+        boolean shouldIndex = !shouldStream &&
+                (cl.hasOption('l') || (!cl.hasOption('e') && !cl.hasOption('m')));
         boolean shouldDeleteDupes = cl.hasOption("df");
         boolean shouldMerge = cl.hasOption('m') || cl.hasOption("merge");
 
@@ -152,14 +185,68 @@ public class IndexerCLI {
             rc = RhapsodeCollection.loadExisting(collectionPath);
         }
 
+        Files.deleteIfExists(rc.getIndexManifestJournalPath());
+        Files.deleteIfExists(ManifestJournal.getTmpPath(rc.getIndexManifestJournalPath()));
+        IndexManifest manifest = null;
+        IndexManifest.Changes changes = null;
+        if (cl.hasOption('u')) {
+            if (Files.isRegularFile(rc.getIndexManifestPath())) {
+                manifest = IndexManifest.load(rc.getIndexManifestPath());
+                changes = manifest.findChanges(rc.getOrigDocsRoot());
+                System.out.println("updating: " + changes);
+                deleteChangedAndRemoved(rc, manifest, changes);
+                manifest.save(rc.getIndexManifestPath());
+            } else {
+                System.err.println("Couldn't find " + rc.getIndexManifestPath() +
+                        "; running a full build instead of an update");
+            }
+        }
+
+        Path fileList = null;
+        Path extractFileList = null;
+        if (changes != null) {
+            if (changes.getToIndex().size() == 0) {
+                System.out.println("no new or changed files to index");
+                shouldExtract = false;
+                shouldIndex = false;
+                shouldStream = false;
+            } else {
+                fileList = writeFileList(rc.getCollectionPath().resolve(UPDATE_FILE_LIST),
+                        changes.getToIndex(), "");
+                extractFileList = writeFileList(rc.getCollectionPath().resolve(UPDATE_EXTRACT_FILE_LIST),
+                        changes.getToIndex(), EXTRACT_SUFFIX);
+            }
+        }
+        boolean append = changes != null;
+
         if (shouldExtract) {
             System.out.println("extracting");
-            runExtraction(rc, cl, numConsumers);
+            runExtraction(rc, cl, numConsumers, fileList);
         }
 
         if (shouldIndex) {
             System.out.println("indexing");
-            runIndexer(rc, cl, numConsumers);
+            runIndexer(rc, cl, numConsumers, extractFileList, append);
+        }
+
+        if (shouldStream) {
+            System.out.println("extracting and indexing");
+            runStreaming(rc, cl, numConsumers, fileList, append);
+        }
+
+        if (shouldIndex || shouldStream) {
+            //the journal is only published after the index has been committed
+            if (Files.isRegularFile(rc.getIndexManifestJournalPath())) {
+                updateManifest(rc, manifest, changes);
+            } else {
+                System.err.println("Indexing didn't complete; not updating the index manifest");
+                LOG.warn("no manifest journal at " + rc.getIndexManifestJournalPath() +
+                        "; indexing failed or was stopped before the commit");
+            }
+        }
+        if (fileList != null) {
+            Files.deleteIfExists(fileList);
+            Files.deleteIfExists(extractFileList);
         }
         if (shouldDeleteDupes) {
             System.out.println("deleting duplicates");
@@ -184,7 +271,67 @@ public class IndexerCLI {
     }
 
 
-    private void runIndexer(RhapsodeCollection rc, CommandLine cl, int numConsumers) throws Exception {
+    /**
+     * Deletes the Lucene blocks and the extracts of files that have changed or
+     * been removed since the last run, and removes them from the manifest.
+     */
+    private void deleteChangedAndRemoved(RhapsodeCollection rc, IndexManifest manifest,
+                                         IndexManifest.Changes changes) throws IOException {
+        List<String> fileIds = new ArrayList<>();
+        List<String> relPaths = new ArrayList<>(changes.getChanged());
+        relPaths.addAll(changes.getRemoved());
+        for (String relPath : relPaths) {
+            IndexManifest.Entry entry = manifest.remove(relPath);
+            if (entry != null && entry.getFileId() != null) {
+                fileIds.add(entry.getFileId());
+            }
+            Files.deleteIfExists(rc.getExtractedTextRoot().resolve(relPath + EXTRACT_SUFFIX));
+        }
+        if (fileIds.size() == 0) {
+            return;
+        }
+        if (rc.getIndexManager() == null) {
+            IndexManager.load(rc);
+        }
+        rc.getIndexManager().deleteFiles(rc, fileIds);
+    }
+
+    /**
+     * Adds what the indexer recorded in the journal to the manifest.
+     * After a full build, this starts a new manifest.
+     */
+    private void updateManifest(RhapsodeCollection rc, IndexManifest manifest,
+                                IndexManifest.Changes changes) throws IOException {
+        if (manifest == null) {
+            manifest = new IndexManifest();
+        }
+        Map<String, Long> mtimes = (changes == null) ? Collections.emptyMap() : changes.getMtimes();
+        manifest.applyJournal(rc.getIndexManifestJournalPath(), rc.getOrigDocsRoot(), mtimes);
+        manifest.save(rc.getIndexManifestPath());
+        Files.deleteIfExists(rc.getIndexManifestJournalPath());
+        LOG.info("index manifest now has " + manifest.size() + " files");
+    }
+
+    private Path writeFileList(Path fileList, Collection<String> relPaths, String suffix) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(fileList, StandardCharsets.UTF_8)) {
+            for (String relPath : relPaths) {
+                w.write(relPath + suffix);
+                w.newLine();
+            }
+        }
+        return fileList;
+    }
+
+    private void addFileList(Path fileList, List<String> args) {
+        if (fileList == null) {
+            return;
+        }
+        args.add("-fileList");
+        args.add(ProcessUtils.escapeCommandLine(fileList.toAbsolutePath().toString()));
+    }
+
+    private void runIndexer(RhapsodeCollection rc, CommandLine cl, int numConsumers,
+                            Path fileList, boolean append) throws Exception {
         List<String> args = new ArrayList<>();
         //make most of this more configurable!!!, jars, etc
         //java -Xmx128m -cp "%CP%" org.apache.tika.batch.fs.FSBatchProcessCLI -bc resources/config/batch-indexer-config.xml -inputDir resources/collection1
@@ -208,6 +355,11 @@ public class IndexerCLI {
         args.add(ProcessUtils.escapeCommandLine(rc.getExtractedTextRoot().toAbsolutePath().toString()));
         args.add("-collectionPath");
         args.add(ProcessUtils.escapeCommandLine(rc.getCollectionPath().toAbsolutePath().toString()));
+        addFileList(fileList, args);
+        if (append) {
+            args.add("-" + IndexerConsumerBuilder.OPEN_MODE_KEY);
+            args.add(IndexWriterConfig.OpenMode.CREATE_OR_APPEND.name());
+        }
         if (numConsumers > 0) {
             args.add("-numConsumers");
             args.add(Integer.toString(numConsumers));
@@ -217,6 +369,44 @@ public class IndexerCLI {
         driverCLI.execute();
     }
 
+    private void runStreaming(RhapsodeCollection rc, CommandLine cl, int numConsumers,
+                              Path fileList, boolean append) throws Exception {
+        List<String> args = new ArrayList<>();
+        args.add("java");
+        //the index is opened with OpenMode.CREATE; a restart would wipe it
+        args.add("-maxRestarts");
+        args.add("0");
+        if (cl.hasOption('x')) {
+            args.add("-Xmx" + cl.getOptionValue('x'));
+        }
+        addJVMArgs(cl.getOptionValue("lArgs"), args, "-");
+        args.add("-cp");
+        args.add("resources/jars/rhapsode/*" + File.pathSeparator + "resources/jars/tika/*");
+        args.add("org.apache.tika.batch.fs.FSBatchProcessCLI");
+        args.add("-bc");
+        args.add("resources/config/batch-stream-config.xml");
+        args.add("-inputDir");
+        args.add(ProcessUtils.escapeCommandLine(rc.getOrigDocsRoot().toAbsolutePath().toString()));
+        args.add("-collectionPath");
+        args.add(ProcessUtils.escapeCommandLine(rc.getCollectionPath().toAbsolutePath().toString()));
+        if (cl.hasOption("keepExtracts")) {
+            args.add("-" + ExtractIndexConsumerBuilder.OUTPUT_DIR_KEY);
+            args.add(ProcessUtils.escapeCommandLine(rc.getExtractedTextRoot().toAbsolutePath().toString()));
+        }
+        addFileList(fileList, args);
+        if (append) {
+            args.add("-" + IndexerConsumerBuilder.OPEN_MODE_KEY);
+            args.add(IndexWriterConfig.OpenMode.CREATE_OR_APPEND.name());
+        }
+        if (numConsumers > 0) {
+            args.add("-numConsumers");
+            args.add(Integer.toString(numConsumers));
+        }
+        logCommandLine("stream", args);
+        BatchProcessDriverCLI driverCLI = new BatchProcessDriverCLI(args.toArray(new String[args.size()]));
+        driverCLI.execute();
+    }
+
     private void logCommandLine(String processName, List<String> args) {
         LOG.info("commandline for " + processName + ": " + StringUtils.join(args, "\n"));
     }
@@ -232,7 +422,8 @@ public class IndexerCLI {
         }
     }
 
-    private void runExtraction(RhapsodeCollection rc, CommandLine userOptions, int numConsumers) throws Exception {
+    private void runExtraction(RhapsodeCollection rc, CommandLine userOptions, int numConsumers,
+                               Path fileList) throws Exception {
         List<String> commandLine = new ArrayList<>();
         commandLine.add("java");
         if (userOptions.hasOption("rt")) {
@@ -249,6 +440,7 @@ public class IndexerCLI {
         commandLine.add(ProcessUtils.escapeCommandLine(rc.getOrigDocsRoot().toAbsolutePath().toString()));
         commandLine.add("-outputDir");
         commandLine.add(ProcessUtils.escapeCommandLine(rc.getExtractedTextRoot().toAbsolutePath().toString()));
+        addFileList(fileList, commandLine);
         //make this configurable
 
         if (numConsumers > 0) {
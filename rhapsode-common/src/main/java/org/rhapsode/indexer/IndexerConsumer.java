@@ -54,8 +54,14 @@ public class IndexerConsumer extends FileResourceConsumer {
 
     public IndexerConsumer(ArrayBlockingQueue<FileResource> fileQueue,
                            RhapsodeIndexerConfig config, IndexWriter writer) {
+        this(fileQueue, config, writer, null);
+    }
+
+    public IndexerConsumer(ArrayBlockingQueue<FileResource> fileQueue,
+                           RhapsodeIndexerConfig config, IndexWriter writer,
+                           ManifestJournal manifestJournal) {
         super(fileQueue);
-        fileIndexer = new FileIndexer(config, writer);
+        fileIndexer = new FileIndexer(config, writer, manifestJournal);
     }
 
     @Override
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+package org.rhapsode.indexer;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tika.metadata.Metadata;
+
+/**
+ * Bounded queue between the {@link ExtractIndexConsumer}s and the indexing
+ * workers of the streaming pipeline.
+ * <p>
+ * The workers register themselves, and puts give up once every worker
+ * that was started has stopped, so that the extractors can't block forever
+ * on a full queue that nobody is draining.
+ */
+public class IndexingQueue {
+
+    private static final long OFFER_WAIT_MILLIS = 1000;
+
+    private final ArrayBlockingQueue<List<Metadata>> queue;
+    private final AtomicInteger started = new AtomicInteger(0);
+    private final AtomicInteger live = new AtomicInteger(0);
+
+    public IndexingQueue(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Blocks until there is room on the queue or until there are no
+     * workers left to take from it.
+     *
+     * @param metadataList
+     * @return <code>false</code> if all of the workers have stopped
+     * @throws InterruptedException
+     */
+    public boolean put(List<Metadata> metadataList) throws InterruptedException {
+        while (true) {
+            if (queue.offer(metadataList, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            if (!hasLiveWorkers()) {
+                return false;
+            }
+        }
+    }
+
+    public List<Metadata> take() throws InterruptedException {
+        return queue.take();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Must be called before the worker is submitted
+     */
+    public void workerStarted() {
+        started.incrementAndGet();
+        live.incrementAndGet();
+    }
+
+    /**
+     * Must be called when a worker stops for any reason
+     */
+    public void workerStopped() {
+        live.decrementAndGet();
+    }
+
+    /**
+     * @return <code>true</code> until all of the workers that were started have stopped
+     */
+    public boolean hasLiveWorkers() {
+        return started.get() == 0 || live.get() > 0;
+    }
+}
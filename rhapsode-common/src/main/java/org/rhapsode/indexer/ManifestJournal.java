@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.indexer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import com.google.gson.Gson;
+
+/**
+ * Thread-safe log of the files that were written to the index
+ * during a batch run.  The parent process merges this into the
+ * {@link IndexManifest} once indexing has finished.
+ * <p>
+ * Records are written to a temporary file and only moved to the journal
+ * path by {@link #publish()}, which must be called after the index writer
+ * has committed.  If the run fails before that, there is no journal, and the
+ * parent knows not to update the manifest.
+ */
+public class ManifestJournal implements Closeable {
+
+    private final Gson gson = new Gson();
+    private final Path journalPath;
+    private final Path tmpPath;
+    private final BufferedWriter writer;
+    private boolean published = false;
+    private boolean closed = false;
+
+    public ManifestJournal(Path journalPath) throws IOException {
+        this.journalPath = journalPath;
+        this.tmpPath = getTmpPath(journalPath);
+        writer = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8);
+    }
+
+    public static Path getTmpPath(Path journalPath) {
+        return journalPath.resolveSibling(journalPath.getFileName().toString() + ".tmp");
+    }
+
+    public synchronized void record(String relPath, String fileId, String md5) throws IOException {
+        writer.write(gson.toJson(new Record(relPath, fileId, md5)));
+        writer.newLine();
+    }
+
+    /**
+     * Moves the records to the journal path.  Call this only after the
+     * files that were recorded have been committed to the index.
+     *
+     * @throws IOException
+     */
+    public synchronized void publish() throws IOException {
+        if (closed) {
+            throw new IOException("journal has already been closed");
+        }
+        writer.close();
+        closed = true;
+        Files.move(tmpPath, journalPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        published = true;
+    }
+
+    /**
+     * Discards the records if they haven't been published.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            writer.close();
+            closed = true;
+        }
+        if (!published) {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    static class Record {
+        String relPath;
+        String fileId;
+        String md5;
+
+        Record(String relPath, String fileId, String md5) {
+            this.relPath = relPath;
+            this.fileId = fileId;
+            this.md5 = md5;
+        }
+    }
+}
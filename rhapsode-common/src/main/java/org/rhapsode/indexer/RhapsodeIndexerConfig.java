@@ -42,6 +42,13 @@ import org.rhapsode.RhapsodeCollection;
 public class RhapsodeIndexerConfig {
     RhapsodeCollection rc;
     IndexerSettings indexerSettings;
+    ID_STRATEGY idStrategy = ID_STRATEGY.RANDOM;
+    //how often newly indexed documents are made searchable while indexing into a live collection
+    long nrtRefreshMillis = 1000;
+    //threads that build and add table rows while the table is parsed; 0 to index on the parsing thread
+    int numTableIndexingThreads = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors() - 1));
+    //rows handed to an indexing thread and added to the index at a time
+    int tableIndexingBatchSize = 100;
     private int numDocsBetweenCommits;
 
     public static RhapsodeIndexerConfig load(RhapsodeCollection rc, Path searchConfigFile) throws IOException {
@@ -67,4 +74,54 @@ public class RhapsodeIndexerConfig {
     public void setNumDocsBetweenCommits(int numDocsBetweenCommits) {
         this.numDocsBetweenCommits = numDocsBetweenCommits;
     }
+
+    public long getNrtRefreshMillis() {
+        return nrtRefreshMillis;
+    }
+
+    public void setNrtRefreshMillis(long nrtRefreshMillis) {
+        this.nrtRefreshMillis = nrtRefreshMillis;
+    }
+
+    public int getNumTableIndexingThreads() {
+        return numTableIndexingThreads;
+    }
+
+    public void setNumTableIndexingThreads(int numTableIndexingThreads) {
+        this.numTableIndexingThreads = numTableIndexingThreads;
+    }
+
+    public int getTableIndexingBatchSize() {
+        return tableIndexingBatchSize;
+    }
+
+    public void setTableIndexingBatchSize(int tableIndexingBatchSize) {
+        this.tableIndexingBatchSize = tableIndexingBatchSize;
+    }
+
+    public ID_STRATEGY getIdStrategy() {
+        return idStrategy;
+    }
+
+    public void setIdStrategy(ID_STRATEGY idStrategy) {
+        this.idStrategy = idStrategy;
+    }
+
+    /**
+     * How the values for the unique file field and the unique doc field are built.
+     * <p>
+     * With PATH and DIGEST, the same file gets the same ids every time it is
+     * indexed, so favorites, ignoreds and report links survive a rebuild, and
+     * a file's block can be replaced in place with updateDocuments.  If the
+     * relative path (or digest) isn't available, e.g. for table rows, the
+     * indexer falls back to RANDOM.
+     * <p>
+     * DIGEST ids also change when a file's content changes, so favorites and
+     * links stay with the version of the file that was selected.
+     */
+    public enum ID_STRATEGY {
+        RANDOM, //new random UUIDs each time a file is indexed
+        PATH, //hash of the relative path, plus the attachment index for attachments
+        DIGEST //hash of the container file's MD5 and relative path
+    }
 }
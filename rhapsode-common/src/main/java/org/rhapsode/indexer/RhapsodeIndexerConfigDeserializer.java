@@ -30,6 +30,8 @@
 package org.rhapsode.indexer;
 
 import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Locale;
 
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
@@ -39,6 +41,11 @@ import com.google.gson.JsonParseException;
 
 class RhapsodeIndexerConfigDeserializer implements JsonDeserializer<RhapsodeIndexerConfig> {
 
+    static final String ID_STRATEGY_KEY = "id_strategy";
+    static final String NRT_REFRESH_MILLIS_KEY = "nrt_refresh_millis";
+    static final String TABLE_INDEXING_THREADS_KEY = "table_indexing_threads";
+    static final String TABLE_INDEXING_BATCH_SIZE_KEY = "table_indexing_batch_size";
+
     @Override
     public RhapsodeIndexerConfig deserialize(JsonElement jsonElement, Type type,
                                              JsonDeserializationContext jsonDeserializationContext) throws JsonParseException {
@@ -49,6 +56,37 @@ class RhapsodeIndexerConfigDeserializer implements JsonDeserializer<RhapsodeInde
         JsonObject root = (JsonObject) jsonElement;
 
         config.indexerSettings = IndexerSettings.load(root.get(IndexerSettings.NAME));
+        JsonElement idStrategy = root.get(ID_STRATEGY_KEY);
+        if (idStrategy != null && !idStrategy.isJsonNull()) {
+            try {
+                config.idStrategy = RhapsodeIndexerConfig.ID_STRATEGY.valueOf(
+                        idStrategy.getAsString().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("\"" + ID_STRATEGY_KEY + "\" must be one of: " +
+                        Arrays.toString(RhapsodeIndexerConfig.ID_STRATEGY.values()));
+            }
+        }
+        JsonElement nrtRefreshMillis = root.get(NRT_REFRESH_MILLIS_KEY);
+        if (nrtRefreshMillis != null && !nrtRefreshMillis.isJsonNull()) {
+            config.nrtRefreshMillis = nrtRefreshMillis.getAsLong();
+            if (config.nrtRefreshMillis <= 0) {
+                throw new IllegalArgumentException("\"" + NRT_REFRESH_MILLIS_KEY + "\" must be > 0");
+            }
+        }
+        JsonElement tableThreads = root.get(TABLE_INDEXING_THREADS_KEY);
+        if (tableThreads != null && !tableThreads.isJsonNull()) {
+            config.numTableIndexingThreads = tableThreads.getAsInt();
+            if (config.numTableIndexingThreads < 0) {
+                throw new IllegalArgumentException("\"" + TABLE_INDEXING_THREADS_KEY + "\" must be >= 0");
+            }
+        }
+        JsonElement tableBatchSize = root.get(TABLE_INDEXING_BATCH_SIZE_KEY);
+        if (tableBatchSize != null && !tableBatchSize.isJsonNull()) {
+            config.tableIndexingBatchSize = tableBatchSize.getAsInt();
+            if (config.tableIndexingBatchSize <= 0) {
+                throw new IllegalArgumentException("\"" + TABLE_INDEXING_BATCH_SIZE_KEY + "\" must be > 0");
+            }
+        }
         return config;
     }
 
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.indexer.builders;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.tika.batch.ConsumersManager;
+import org.apache.tika.batch.FileResource;
+import org.apache.tika.batch.FileResourceConsumer;
+import org.apache.tika.batch.builders.BatchProcessBuilder;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.DigestingParser;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.RecursiveParserWrapper;
+import org.apache.tika.parser.digest.InputStreamDigester;
+import org.apache.tika.sax.BasicContentHandlerFactory;
+import org.apache.tika.sax.ContentHandlerFactory;
+import org.apache.tika.util.XMLDOMUtil;
+import org.rhapsode.RhapsodeCollection;
+import org.rhapsode.indexer.ExtractIndexConsumer;
+import org.rhapsode.indexer.FileIndexer;
+import org.rhapsode.indexer.IndexingQueue;
+import org.rhapsode.indexer.ManifestJournal;
+import org.rhapsode.indexer.RhapsodeIndexerConfig;
+import org.rhapsode.util.ParamUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Builds the consumers for the single-pass extract and index pipeline.
+ * <p>
+ * In addition to the attributes that {@link IndexerConsumerBuilder} reads,
+ * this reads:
+ * <ul>
+ * <li>outputDir -- if specified, json extracts are also written here</li>
+ * <li>numIndexers -- number of indexing workers (default: numConsumers)</li>
+ * <li>metadataQueueSize -- max number of parsed files waiting to be indexed</li>
+ * <li>tikaConfig -- optional path to a tika config file</li>
+ * <li>basicHandlerType -- text, html, xml... (default: text)</li>
+ * <li>writeLimit -- max characters to extract per document (default: -1, no limit)</li>
+ * </ul>
+ */
+public class ExtractIndexConsumerBuilder extends IndexerConsumerBuilder {
+
+    public final static String OUTPUT_DIR_KEY = "outputDir";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExtractIndexConsumerBuilder.class);
+
+    private static final int DEFAULT_METADATA_QUEUE_SIZE = 100;
+    private static final int DIGEST_MARK_LIMIT = 1000000;
+    private static final String DIGEST_ALGORITHM = "MD5";
+
+    @Override
+    public ConsumersManager build(Node node, Map<String, String> runtimeAttributes,
+                                  ArrayBlockingQueue<FileResource> queue) {
+
+        RhapsodeIndexerConfig rhapsodeIndexerConfig = null;
+        RhapsodeCollection rhapsodeCollection;
+        IndexWriter indexWriter = null;
+        TikaConfig tikaConfig = null;
+        ManifestJournal manifestJournal = null;
+        Map<String, String> localAttrs = XMLDOMUtil.mapifyAttrs(node, runtimeAttributes);
+
+        try {
+            rhapsodeCollection = getRhapsodeCollection(node, runtimeAttributes);
+            rhapsodeIndexerConfig = getIndexerConfig(rhapsodeCollection, node, runtimeAttributes);
+            indexWriter = buildIndexWriter(localAttrs, rhapsodeCollection);
+            tikaConfig = getTikaConfig(localAttrs);
+            manifestJournal = new ManifestJournal(rhapsodeCollection.getIndexManifestJournalPath());
+        } catch (IOException | TikaException | SAXException e) {
+            throw new RuntimeException(e);
+        }
+
+        Long consumersManagerMaxMillis = getConsumersManagerMaxMillis(node, runtimeAttributes);
+
+        int numConsumers = BatchProcessBuilder.getNumConsumers(runtimeAttributes);
+        int numIndexers = ParamUtil.getInt(localAttrs.get("numIndexers"), numConsumers);
+        int queueSize = ParamUtil.getInt(localAttrs.get("metadataQueueSize"),
+                DEFAULT_METADATA_QUEUE_SIZE);
+        Path extractsRoot = null;
+        if (localAttrs.containsKey(OUTPUT_DIR_KEY)) {
+            extractsRoot = Paths.get(localAttrs.get(OUTPUT_DIR_KEY));
+        }
+        LOG.info("streaming with " + numConsumers + " extractors and " + numIndexers +
+                " indexers; writing extracts to: " + extractsRoot);
+
+        ContentHandlerFactory contentHandlerFactory = new BasicContentHandlerFactory(
+                BasicContentHandlerFactory.parseHandlerType(localAttrs.get("basicHandlerType"),
+                        BasicContentHandlerFactory.HANDLER_TYPE.TEXT),
+                ParamUtil.getInt(localAttrs.get("writeLimit"), -1));
+
+        IndexingQueue indexingQueue = new IndexingQueue(queueSize);
+        List<FileResourceConsumer> consumers = new LinkedList<>();
+        for (int i = 0; i < numConsumers; i++) {
+            FileResourceConsumer c = new ExtractIndexConsumer(queue, buildParser(tikaConfig),
+                    contentHandlerFactory, indexingQueue, extractsRoot);
+            consumers.add(c);
+        }
+        FileIndexer fileIndexer = new FileIndexer(rhapsodeIndexerConfig, indexWriter, manifestJournal);
+        ConsumersManager manager = new ExtractIndexConsumersManager(rhapsodeCollection,
+                consumers, indexWriter, manifestJournal, indexingQueue, fileIndexer, numIndexers);
+        if (consumersManagerMaxMillis != null) {
+            manager.setConsumersManagerMaxMillis(consumersManagerMaxMillis);
+        }
+        return manager;
+    }
+
+    private TikaConfig getTikaConfig(Map<String, String> attrs)
+            throws IOException, TikaException, SAXException {
+        if (attrs.containsKey("tikaConfig")) {
+            return new TikaConfig(Paths.get(attrs.get("tikaConfig")));
+        }
+        return TikaConfig.getDefaultConfig();
+    }
+
+    //the digest is needed for the contains digest field
+    private Parser buildParser(TikaConfig tikaConfig) {
+        Parser digesting = new DigestingParser(new AutoDetectParser(tikaConfig),
+                new InputStreamDigester(DIGEST_MARK_LIMIT, DIGEST_ALGORITHM,
+                        ExtractIndexConsumerBuilder::toHex));
+        return new RecursiveParserWrapper(digesting, true);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.indexer.builders;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.tika.batch.FileResourceConsumer;
+import org.apache.tika.batch.fs.FSProperties;
+import org.apache.tika.metadata.Metadata;
+import org.rhapsode.RhapsodeCollection;
+import org.rhapsode.indexer.FileIndexer;
+import org.rhapsode.indexer.IndexingQueue;
+import org.rhapsode.indexer.ManifestJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages the indexing workers for the streaming pipeline.
+ * The {@link org.rhapsode.indexer.ExtractIndexConsumer}s parse files
+ * and add the results to a bounded queue; the workers started here
+ * drain that queue and write to the shared {@link IndexWriter}.
+ */
+public class ExtractIndexConsumersManager extends IndexerConsumersManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExtractIndexConsumersManager.class);
+
+    //identity check only
+    private static final List<Metadata> POISON = Collections.emptyList();
+
+    private static final long MAX_WAIT_FOR_INDEXERS_SECONDS = 600;
+
+    private final IndexingQueue indexingQueue;
+    private final FileIndexer fileIndexer;
+    private final int numIndexers;
+    private ExecutorService executorService;
+
+    public ExtractIndexConsumersManager(RhapsodeCollection collection,
+                                        List<FileResourceConsumer> consumers,
+                                        IndexWriter indexWriter,
+                                        ManifestJournal manifestJournal,
+                                        IndexingQueue indexingQueue,
+                                        FileIndexer fileIndexer, int numIndexers) {
+        super(collection, consumers, indexWriter, manifestJournal);
+        this.indexingQueue = indexingQueue;
+        this.fileIndexer = fileIndexer;
+        this.numIndexers = numIndexers;
+    }
+
+    @Override
+    public void init() {
+        super.init();
+        executorService = Executors.newFixedThreadPool(numIndexers);
+        for (int i = 0; i < numIndexers; i++) {
+            indexingQueue.workerStarted();
+            executorService.submit(new IndexingWorker());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        LOG.info("ConsumersManager about to stop " + numIndexers + " indexing workers.");
+        //the extracting consumers are done by now; let the workers
+        //drain what is left on the queue before committing
+        boolean terminated = false;
+        try {
+            for (int i = 0; i < numIndexers; i++) {
+                if (!indexingQueue.put(POISON)) {
+                    //no workers left to poison
+                    break;
+                }
+            }
+            executorService.shutdown();
+            terminated = executorService.awaitTermination(MAX_WAIT_FOR_INDEXERS_SECONDS, TimeUnit.SECONDS);
+            if (!terminated) {
+                LOG.error("indexing workers didn't finish in time; " +
+                        indexingQueue.size() + " files left on the queue");
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("interrupted while waiting for indexing workers", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            //never interrupt the workers; an interrupt inside the
+            //IndexWriter can leave it unusable
+            executorService.shutdown();
+        }
+        if (terminated) {
+            super.shutdown();
+        } else {
+            //a worker may still be in the middle of a file's block
+            rollback();
+        }
+    }
+
+    private class IndexingWorker implements Callable<Integer> {
+
+        @Override
+        public Integer call() throws InterruptedException {
+            int indexed = 0;
+            try {
+                while (true) {
+                    List<Metadata> metadataList = indexingQueue.take();
+                    if (metadataList == POISON) {
+                        return indexed;
+                    }
+                    try {
+                        fileIndexer.writeDocument(metadataList);
+                        indexed++;
+                    } catch (AlreadyClosedException e) {
+                        LOG.error("index writer was closed; stopping indexing worker", e);
+                        return indexed;
+                    } catch (IOException | RuntimeException e) {
+                        String path = metadataList.size() > 0 ?
+                                metadataList.get(0).get(FSProperties.FS_REL_PATH) : "";
+                        LOG.warn("Exception writing to index: " + path, e);
+                    }
+                }
+            } catch (Error e) {
+                LOG.error("indexing worker died", e);
+                throw e;
+            } finally {
+                indexingQueue.workerStopped();
+            }
+        }
+    }
+}
@@ -34,6 +34,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 
@@ -51,6 +52,7 @@ import org.apache.tika.util.XMLDOMUtil;
 import org.rhapsode.RhapsodeCollection;
 import org.rhapsode.app.handlers.search.BasicSearchHandler;
 import org.rhapsode.indexer.IndexerConsumer;
+import org.rhapsode.indexer.ManifestJournal;
 import org.rhapsode.indexer.RhapsodeIndexerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +62,8 @@ public class IndexerConsumerBuilder extends AbstractConsumersBuilder {
 
     public final static String RHAPSODE_INDEXER_CONFIG_PATH = "indexerConfigPath";
     public final static String RHAPSODE_COLLECTION_PATH_KEY = "collectionPath";
+    //CREATE (default), APPEND or CREATE_OR_APPEND
+    public final static String OPEN_MODE_KEY = "openMode";
     private static final Logger LOG = LoggerFactory.getLogger(BasicSearchHandler.class);
 
     @Override
@@ -69,6 +73,7 @@ public class IndexerConsumerBuilder extends AbstractConsumersBuilder {
         RhapsodeIndexerConfig rhapsodeIndexerConfig = null;
         RhapsodeCollection rhapsodeCollection;
         IndexWriter indexWriter = null;
+        ManifestJournal manifestJournal = null;
         Map<String, String> localAttrs = XMLDOMUtil.mapifyAttrs(node, runtimeAttributes);
 
         try {
@@ -76,38 +81,46 @@ public class IndexerConsumerBuilder extends AbstractConsumersBuilder {
             rhapsodeIndexerConfig = getIndexerConfig(rhapsodeCollection, node, runtimeAttributes);
 
             indexWriter = buildIndexWriter(localAttrs, rhapsodeCollection);
+            manifestJournal = new ManifestJournal(rhapsodeCollection.getIndexManifestJournalPath());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        //how long to let the consumersManager run on init() and shutdown()
-        Long consumersManagerMaxMillis = null;
-        String consumersManagerMaxMillisString = runtimeAttributes.get("consumersManagerMaxMillis");
-        if (consumersManagerMaxMillisString != null) {
-            consumersManagerMaxMillis = PropsUtil.getLong(consumersManagerMaxMillisString, null);
-        } else {
-            Node consumersManagerMaxMillisNode = node.getAttributes().getNamedItem("consumersManagerMaxMillis");
-            if (consumersManagerMaxMillis == null && consumersManagerMaxMillisNode != null) {
-                consumersManagerMaxMillis = PropsUtil.getLong(consumersManagerMaxMillisNode.getNodeValue(),
-                        null);
-            }
-        }
+        Long consumersManagerMaxMillis = getConsumersManagerMaxMillis(node, runtimeAttributes);
 
         List<FileResourceConsumer> consumers = new LinkedList<>();
         int numConsumers = BatchProcessBuilder.getNumConsumers(runtimeAttributes);
 
         for (int i = 0; i < numConsumers; i++) {
-            FileResourceConsumer c = new IndexerConsumer(queue, rhapsodeIndexerConfig, indexWriter);
+            FileResourceConsumer c = new IndexerConsumer(queue, rhapsodeIndexerConfig, indexWriter,
+                    manifestJournal);
             consumers.add(c);
         }
-        ConsumersManager manager = new IndexerConsumersManager(rhapsodeCollection, consumers, indexWriter);
+        ConsumersManager manager = new IndexerConsumersManager(rhapsodeCollection, consumers,
+                indexWriter, manifestJournal);
         if (consumersManagerMaxMillis != null) {
             manager.setConsumersManagerMaxMillis(consumersManagerMaxMillis);
         }
         return manager;
     }
 
-    private RhapsodeCollection getRhapsodeCollection(Node node,
+    //how long to let the consumersManager run on init() and shutdown()
+    protected Long getConsumersManagerMaxMillis(Node node, Map<String, String> runtimeAttributes) {
+        Long consumersManagerMaxMillis = null;
+        String consumersManagerMaxMillisString = runtimeAttributes.get("consumersManagerMaxMillis");
+        if (consumersManagerMaxMillisString != null) {
+            consumersManagerMaxMillis = PropsUtil.getLong(consumersManagerMaxMillisString, null);
+        } else {
+            Node consumersManagerMaxMillisNode = node.getAttributes().getNamedItem("consumersManagerMaxMillis");
+            if (consumersManagerMaxMillisNode != null) {
+                consumersManagerMaxMillis = PropsUtil.getLong(consumersManagerMaxMillisNode.getNodeValue(),
+                        null);
+            }
+        }
+        return consumersManagerMaxMillis;
+    }
+
+    protected RhapsodeCollection getRhapsodeCollection(Node node,
                                                      Map<String, String> runtimeAttributes) throws IOException {
         Map<String, String> attrs = XMLDOMUtil.mapifyAttrs(node, runtimeAttributes);
         for (String k : attrs.keySet()) {
@@ -116,17 +129,23 @@ public class IndexerConsumerBuilder extends AbstractConsumersBuilder {
         return RhapsodeCollection.loadExisting(Paths.get(attrs.get(RHAPSODE_COLLECTION_PATH_KEY)));
     }
 
-    private RhapsodeIndexerConfig getIndexerConfig(RhapsodeCollection rc, Node node, Map<String, String> runtimeAttributes) throws IOException {
+    protected RhapsodeIndexerConfig getIndexerConfig(RhapsodeCollection rc, Node node, Map<String, String> runtimeAttributes) throws IOException {
         Map<String, String> attrs = XMLDOMUtil.mapifyAttrs(node, runtimeAttributes);
         Path path = Paths.get(attrs.get(RHAPSODE_INDEXER_CONFIG_PATH));
         return RhapsodeIndexerConfig.load(rc, path);
     }
 
-    private IndexWriter buildIndexWriter(Map<String, String> attrs, RhapsodeCollection rc) throws IOException {
+    protected IndexWriter buildIndexWriter(Map<String, String> attrs, RhapsodeCollection rc) throws IOException {
         IndexWriterConfig iwConfig = new IndexWriterConfig(rc.getIndexSchema().getIndexAnalyzer());
         LOG.info("building indexwriter with codec: " + iwConfig.getCodec());
         //TODO: update iwConfig based on other info in RhapsodeIndexerConfig
         iwConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        if (attrs.containsKey(OPEN_MODE_KEY)) {
+            IndexWriterConfig.OpenMode openMode = IndexWriterConfig.OpenMode.valueOf(
+                    attrs.get(OPEN_MODE_KEY).toUpperCase(Locale.ROOT));
+            LOG.info("setting openMode: " + openMode);
+            iwConfig.setOpenMode(openMode);
+        }
         if (attrs.containsKey("ramBufferSizeMB")) {
             int sz = Integer.parseInt(attrs.get("ramBufferSizeMB"));
             LOG.debug("setting rambuffer:" + sz);
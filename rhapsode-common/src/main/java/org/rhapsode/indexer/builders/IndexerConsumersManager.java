@@ -31,11 +31,13 @@ package org.rhapsode.indexer.builders;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.lucene.index.IndexWriter;
 import org.apache.tika.batch.ConsumersManager;
 import org.apache.tika.batch.FileResourceConsumer;
 import org.rhapsode.RhapsodeCollection;
+import org.rhapsode.indexer.ManifestJournal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,27 +48,43 @@ public class IndexerConsumersManager extends ConsumersManager {
 
     final IndexWriter indexWriter;
     final RhapsodeCollection rhapsodeCollection;
+    final ManifestJournal manifestJournal;
+    long started = -1;
 
     public IndexerConsumersManager(RhapsodeCollection collection,
                                    List<FileResourceConsumer> consumers, IndexWriter indexWriter) {
+        this(collection, consumers, indexWriter, null);
+    }
+
+    public IndexerConsumersManager(RhapsodeCollection collection,
+                                   List<FileResourceConsumer> consumers, IndexWriter indexWriter,
+                                   ManifestJournal manifestJournal) {
         super(consumers);
         this.indexWriter = indexWriter;
         this.rhapsodeCollection = collection;
+        this.manifestJournal = manifestJournal;
     }
 
     @Override
     public void init() {
-        //noop
+        started = System.currentTimeMillis();
     }
 
     @Override
     public void shutdown() {
+        commitAndClose();
+    }
+
+    void commitAndClose() {
         LOG.info("ConsumersManager about to shut down.");
+        boolean committed = false;
         try {
             LOG.info("ConsumersManager about to delete unused files");
             indexWriter.deleteUnusedFiles();
             LOG.info("ConsumersManager about to commit");
             indexWriter.commit();
+            committed = true;
+            logThroughput();
         } catch (IOException e) {
             LOG.warn("io exception closing", e);
         }
@@ -76,8 +94,67 @@ public class IndexerConsumersManager extends ConsumersManager {
         } catch (IOException e) {
             LOG.warn("io exception closing indexwriter", e);
         }
+        //publish only after the commit so that the journal never
+        //records files that aren't in the index
+        if (manifestJournal != null) {
+            try {
+                if (committed) {
+                    manifestJournal.publish();
+                }
+            } catch (IOException e) {
+                LOG.warn("io exception publishing manifest journal", e);
+            }
+            try {
+                manifestJournal.close();
+            } catch (IOException e) {
+                LOG.warn("io exception closing manifest journal", e);
+            }
+        }
         LOG.info("ConsumersManager has shutdown.");
     }
 
+    /**
+     * Drops everything that was added since the index writer was opened.
+     * This is for when writes may still be in flight, so that a commit
+     * couldn't be trusted to hold whole files.
+     */
+    void rollback() {
+        LOG.warn("ConsumersManager about to roll back the index writer");
+        try {
+            indexWriter.rollback();
+        } catch (IOException e) {
+            LOG.warn("io exception rolling back indexwriter", e);
+        }
+        if (manifestJournal != null) {
+            try {
+                manifestJournal.close();
+            } catch (IOException e) {
+                LOG.warn("io exception closing manifest journal", e);
+            }
+        }
+        LOG.info("ConsumersManager has shutdown without committing.");
+    }
+
+    /**
+     * Logs files and Lucene documents per second so that the
+     * two-pass and the streaming pipelines can be compared.
+     */
+    void logThroughput() {
+        if (started < 0) {
+            return;
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        int files = 0;
+        for (FileResourceConsumer consumer : getConsumers()) {
+            files += consumer.getNumResourcesConsumed();
+        }
+        int luceneDocs = indexWriter.getDocStats().maxDoc;
+        double seconds = Math.max(elapsed, 1) / 1000.0;
+        LOG.info(String.format(Locale.US,
+                "%s processed %d files (%d Lucene documents) in %d ms: %.2f files/sec, %.2f docs/sec",
+                getClass().getSimpleName(), files, luceneDocs, elapsed,
+                files / seconds, luceneDocs / seconds));
+    }
+
 
 }
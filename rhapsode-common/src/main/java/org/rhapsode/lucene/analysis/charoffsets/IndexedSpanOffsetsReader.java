@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.analysis.charoffsets;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.highlight.TermVectorLeafReader;
+import org.apache.lucene.search.spans.SpanCollector;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.rhapsode.lucene.schema.FieldDef;
+import org.rhapsode.text.PriorityOffset;
+import org.rhapsode.text.TokenCharOffsets;
+
+/**
+ * Reads span token positions and character offsets for a single document
+ * straight from the index.  This only works if the field was indexed with
+ * offsets in the postings or in the term vectors (see {@link FieldDef#getOffsets()});
+ * if neither is available, {@link #open(IndexedSpanWeights, int, String)} returns null
+ * and the caller has to fall back to re-analyzing the stored value.
+ * <p>
+ * For multivalued fields, offsets are relative to the concatenation
+ * of the values with the analyzer's offset gap, as they were indexed.
+ */
+public class IndexedSpanOffsetsReader {
+
+    private final IndexedSpanWeights weights;
+    private final LeafReaderContext leaf;
+    private final int leafDocId;
+    private final FieldDef.OFFSETS source;
+
+    private IndexedSpanOffsetsReader(IndexedSpanWeights weights, LeafReaderContext leaf,
+                                     int leafDocId, FieldDef.OFFSETS source) {
+        this.weights = weights;
+        this.leaf = leaf;
+        this.leafDocId = leafDocId;
+        this.source = source;
+    }
+
+    /**
+     * @param weights span weights over the main index's searcher
+     * @param docId   lucene doc id relative to the searcher's top level reader
+     * @param field   field to read offsets from
+     * @return reader or null if the document's field doesn't have offsets in the index
+     * @throws IOException
+     */
+    public static IndexedSpanOffsetsReader open(IndexedSpanWeights weights, int docId, String field) throws IOException {
+        if (weights == null || docId < 0 || docId >= weights.getSearcher().getIndexReader().maxDoc()) {
+            return null;
+        }
+        List<LeafReaderContext> leaves = weights.getSearcher().getIndexReader().leaves();
+        LeafReaderContext ctx = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        int leafDocId = docId - ctx.docBase;
+        FieldInfo fieldInfo = ctx.reader().getFieldInfos().fieldInfo(field);
+        if (fieldInfo == null) {
+            return null;
+        }
+        if (fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0) {
+            return new IndexedSpanOffsetsReader(weights, ctx, leafDocId, FieldDef.OFFSETS.POSTINGS);
+        }
+        if (fieldInfo.hasVectors()) {
+            Terms terms = ctx.reader().getTermVector(leafDocId, field);
+            if (terms != null && terms.hasPositions() && terms.hasOffsets()) {
+                //the term vectors are a one document index of their own, so
+                //their weights can't be shared with other documents
+                IndexSearcher tvSearcher = new IndexSearcher(new TermVectorLeafReader(field, terms));
+                tvSearcher.setQueryCache(null);
+                return new IndexedSpanOffsetsReader(new IndexedSpanWeights(tvSearcher),
+                        tvSearcher.getIndexReader().leaves().get(0), 0, FieldDef.OFFSETS.TERM_VECTORS);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the token offsets of the query's spans in this document to tokenOffsets and
+     * the character offsets of each matching token, keyed by token position, to charOffsets.
+     *
+     * @return false if the query couldn't be run against the index (e.g. a multiterm query
+     * that expands to too many terms across the whole index); the caller should fall back
+     * to re-analysis
+     * @throws IOException
+     */
+    public boolean addOffsets(SpanQuery query, int priority, String label,
+                              List<PriorityOffset> tokenOffsets,
+                              TokenCharOffsets charOffsets) throws IOException {
+        SpanWeight weight = weights.getWeight(query);
+        if (weight == null) {
+            return false;
+        }
+        Spans spans = weight.getSpans(leaf, SpanWeight.Postings.OFFSETS);
+        if (spans == null || spans.advance(leafDocId) != leafDocId) {
+            return true;
+        }
+        CharOffsetCollector collector = new CharOffsetCollector(charOffsets);
+        while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+            tokenOffsets.add(new PriorityOffset(spans.startPosition(), spans.endPosition(),
+                    priority, label));
+            spans.collect(collector);
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the offsets are read from the postings or from the term vectors
+     */
+    public FieldDef.OFFSETS getSource() {
+        return source;
+    }
+
+    private static class CharOffsetCollector implements SpanCollector {
+        private final TokenCharOffsets charOffsets;
+
+        CharOffsetCollector(TokenCharOffsets charOffsets) {
+            this.charOffsets = charOffsets;
+        }
+
+        @Override
+        public void collectLeaf(PostingsEnum postingsEnum, int position, Term term) throws IOException {
+            charOffsets.set(position, postingsEnum.startOffset(), postingsEnum.endOffset());
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.analysis.charoffsets;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanWeight;
+
+/**
+ * Rewritten span queries and their weights over a single searcher.
+ * <p>
+ * Rewriting a multiterm query and building its weight both walk the whole
+ * index, so when many documents are highlighted from the same searcher
+ * (e.g. a report), this should be created once and shared so that each
+ * query is rewritten and weighed once instead of once per document.
+ * This is thread safe.
+ */
+public class IndexedSpanWeights {
+
+    private final IndexSearcher searcher;
+    private final ConcurrentHashMap<SpanQuery, SpanWeight> weights = new ConcurrentHashMap<>();
+    //queries that expand to too many terms across the index
+    private final Set<SpanQuery> tooManyClauses = ConcurrentHashMap.newKeySet();
+
+    public IndexedSpanWeights(IndexSearcher searcher) {
+        this.searcher = searcher;
+    }
+
+    public IndexSearcher getSearcher() {
+        return searcher;
+    }
+
+    /**
+     * @param query span query to weigh
+     * @return weight of the rewritten query or null if the query expands to
+     * too many clauses across the index
+     * @throws IOException
+     */
+    public SpanWeight getWeight(SpanQuery query) throws IOException {
+        SpanWeight weight = weights.get(query);
+        if (weight != null) {
+            return weight;
+        }
+        if (tooManyClauses.contains(query)) {
+            return null;
+        }
+        SpanQuery rewritten;
+        try {
+            rewritten = (SpanQuery) searcher.rewrite(query);
+        } catch (BooleanQuery.TooManyClauses e) {
+            tooManyClauses.add(query);
+            return null;
+        }
+        weight = rewritten.createWeight(searcher, ScoreMode.COMPLETE_NO_SCORES, 1.0f);
+        SpanWeight prev = weights.putIfAbsent(query, weight);
+        return (prev == null) ? weight : prev;
+    }
+}
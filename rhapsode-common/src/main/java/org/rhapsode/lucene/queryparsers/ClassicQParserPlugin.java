@@ -28,6 +28,8 @@
  */
 package org.rhapsode.lucene.queryparsers;
 
+import java.util.Objects;
+
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.MultiTermQuery;
@@ -66,4 +68,23 @@ public class ClassicQParserPlugin implements ParserPlugin {
             throw new ParseException("illegal state exception: " + e.getMessage() + " : for :" + qString);
         }
     }
+
+    @Override
+    public long getSchemaVersion() {
+        return indexSchema.getVersion();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ClassicQParserPlugin that = (ClassicQParserPlugin) o;
+        return indexSchema == that.indexSchema &&
+                Objects.equals(rewriteMethod, that.rewriteMethod);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(System.identityHashCode(indexSchema), rewriteMethod);
+    }
 }
@@ -39,6 +39,12 @@ public interface ParserPlugin {
 
     Query parse(String defaultField, String qString) throws ParseException;
 
+    /**
+     * @return version of the index schema whose analyzers the parser uses
+     * (see {@link org.rhapsode.lucene.schema.IndexSchema#getVersion()})
+     */
+    long getSchemaVersion();
+
     //TODO -- make this extensible at some point
     enum PARSERS {
         CLASSIC,
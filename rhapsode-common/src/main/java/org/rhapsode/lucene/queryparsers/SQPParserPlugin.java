@@ -28,6 +28,8 @@
  */
 package org.rhapsode.lucene.queryparsers;
 
+import java.util.Objects;
+
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.MultiTermQuery;
@@ -73,4 +75,23 @@ public class SQPParserPlugin implements ParserPlugin {
         }
 
     }
+
+    @Override
+    public long getSchemaVersion() {
+        return indexSchema.getVersion();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SQPParserPlugin that = (SQPParserPlugin) o;
+        return indexSchema == that.indexSchema &&
+                Objects.equals(rewriteMethod, that.rewriteMethod);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(System.identityHashCode(indexSchema), rewriteMethod);
+    }
 }
@@ -32,10 +32,20 @@ package org.rhapsode.lucene.schema;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexableField;
 
 public class FieldDef extends AnalyzingFieldDefBase {
 
+    /**
+     * Where, if anywhere, character offsets are stored at index time
+     */
+    public enum OFFSETS {
+        NONE,
+        POSTINGS,
+        TERM_VECTORS
+    }
+
     final boolean allowMulti;
     final String fieldName;
     final FieldType fieldType;
@@ -56,6 +66,19 @@ public class FieldDef extends AnalyzingFieldDefBase {
         return fieldType;
     }
 
+    /**
+     * @return where character offsets are stored for this field; if {@link OFFSETS#NONE},
+     * highlighters have to re-analyze the stored value
+     */
+    public OFFSETS getOffsets() {
+        if (fieldType.indexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0) {
+            return OFFSETS.POSTINGS;
+        } else if (fieldType.storeTermVectorOffsets()) {
+            return OFFSETS.TERM_VECTORS;
+        }
+        return OFFSETS.NONE;
+    }
+
     private void addField(String value, Document document) {
         if (!allowMulti) {
             IndexableField[] args = document.getFields(fieldName);
@@ -39,10 +39,12 @@ import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -67,6 +69,9 @@ public class IndexSchema {
     static String ATTACHMENT_OFFSET_KEY = "attachment_offset_field";
     static String ATTACHMENT_INDEX_SORT_FIELD_KEY = "attachment_offset_sort_field";
     static String EMBEDDED_PATH_FIELD_KEY = "embedded_path_field";
+    static String PARENT_MARKER_FIELD_KEY = "parent_marker_field";//optional
+
+    static String DEFAULT_PARENT_MARKER_FIELD = "_parent";
 
 
     Map<String, FieldDef> fields = new HashMap<>();
@@ -76,6 +81,14 @@ public class IndexSchema {
     FieldMapper fieldMapper = new FieldMapper();
     String indexerOverwriteField = null;//should move this into indexer config!
 
+    //incremented whenever the fields change
+    private final AtomicLong version = new AtomicLong(0);
+
+    //built on first use and shared; reset whenever the fields change
+    private volatile Analyzer indexAnalyzer = null;
+    private volatile Analyzer offsetAnalyzer = null;
+    private volatile Analyzer queryAnalyzer = null;
+
     public static IndexSchema load(InputStream is) throws IOException {
         GsonBuilder builder = new GsonBuilder();
         builder.registerTypeHierarchyAdapter(IndexSchema.class, new IndexSchemaDeserializer());
@@ -99,19 +112,22 @@ public class IndexSchema {
         writer.flush();
     }
 
+    /**
+     * @return per field index analyzer; this is built once and shared
+     * until the fields change
+     */
     public Analyzer getIndexAnalyzer() {
-        Map<String, Analyzer> map = new HashMap<>();
-        for (Map.Entry<String, FieldDef> e : fields.entrySet()) {
-            String fieldName = e.getKey();
-            if (e.getValue().fieldType.tokenized()) {
-                map.put(fieldName, e.getValue().getIndexAnalyzer());
-            }
+        Analyzer analyzer = indexAnalyzer;
+        if (analyzer == null) {
+            analyzer = buildPerFieldAnalyzer(ANALYZER_TYPE.INDEX);
+            indexAnalyzer = analyzer;
         }
-        return new PerFieldAnalyzerWrapper(null, map);
+        return analyzer;
     }
 
     public void addField(String fieldName, org.rhapsode.lucene.schema.FieldDef fieldDef) {
         fields.put(fieldName, fieldDef);
+        resetAnalyzers();
     }
 
     protected void addAnalyzer(String analyzerName, Analyzer analyzer) {
@@ -130,30 +146,73 @@ public class IndexSchema {
         return analyzers.get(analyzerName);
     }
 
+    /**
+     * @return per field offset analyzer; this is built once and shared
+     * until the fields change
+     */
     public Analyzer getOffsetAnalyzer() {
-        Map<String, Analyzer> map = new HashMap<>();
-        for (Map.Entry<String, FieldDef> e : fields.entrySet()) {
-            String fieldName = e.getKey();
-            if (e.getValue().fieldType.tokenized()) {
-                map.put(fieldName, e.getValue().getOffsetAnalyzer());
-            }
+        Analyzer analyzer = offsetAnalyzer;
+        if (analyzer == null) {
+            analyzer = buildPerFieldAnalyzer(ANALYZER_TYPE.OFFSET);
+            offsetAnalyzer = analyzer;
         }
-        return new PerFieldAnalyzerWrapper(null, map);
+        return analyzer;
     }
 
     public Analyzer getOffsetAnalyzer(String field) {
         return fields.get(field).getOffsetAnalyzer();
     }
 
+    /**
+     * @return per field query analyzer; this is built once and shared
+     * until the fields change
+     */
     public Analyzer getQueryAnalyzer() {
+        Analyzer analyzer = queryAnalyzer;
+        if (analyzer == null) {
+            analyzer = buildPerFieldAnalyzer(ANALYZER_TYPE.QUERY);
+            queryAnalyzer = analyzer;
+        }
+        return analyzer;
+    }
+
+    private Analyzer buildPerFieldAnalyzer(ANALYZER_TYPE type) {
         Map<String, Analyzer> map = new HashMap<>();
         for (Map.Entry<String, FieldDef> e : fields.entrySet()) {
             String fieldName = e.getKey();
             if (e.getValue().fieldType.tokenized()) {
-                map.put(fieldName, e.getValue().getQueryAnalyzer());
+                switch (type) {
+                    case INDEX:
+                        map.put(fieldName, e.getValue().getIndexAnalyzer());
+                        break;
+                    case OFFSET:
+                        map.put(fieldName, e.getValue().getOffsetAnalyzer());
+                        break;
+                    case QUERY:
+                        map.put(fieldName, e.getValue().getQueryAnalyzer());
+                        break;
+                }
             }
         }
-        return new PerFieldAnalyzerWrapper(null, map);
+        return new PerFieldAnalyzerWrapper(null, Collections.unmodifiableMap(map));
+    }
+
+    private void resetAnalyzers() {
+        indexAnalyzer = null;
+        offsetAnalyzer = null;
+        queryAnalyzer = null;
+        version.incrementAndGet();
+    }
+
+    /**
+     * The schema is edited in place, so anything built from it (such as a
+     * parsed query) should be keyed on this as well as on the schema.
+     *
+     * @return version of the schema, which changes with every call to
+     * {@link #addField(String, FieldDef)} or {@link #clearUserFields()}
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     /**
@@ -238,6 +297,19 @@ public class IndexSchema {
         return systemFields.get(ATTACHMENT_INDEX_SORT_FIELD_KEY);
     }
 
+    /**
+     * The indexer marks the first document (the container file) of each
+     * block of documents written for an input file with this field.
+     * This allows the retrieval of a file and its attachments as a
+     * contiguous range of Lucene doc ids.
+     *
+     * @return
+     */
+    public String getParentMarkerField() {
+        String f = systemFields.get(PARENT_MARKER_FIELD_KEY);
+        return (f == null) ? DEFAULT_PARENT_MARKER_FIELD : f;
+    }
+
     public void clearUserFields() {
         Set<String> toRemove = new HashSet<>();
         for (String k : fields.keySet()) {
@@ -248,5 +320,12 @@ public class IndexSchema {
         for (String r : toRemove) {
             fields.remove(r);
         }
+        resetAnalyzers();
+    }
+
+    private enum ANALYZER_TYPE {
+        INDEX,
+        OFFSET,
+        QUERY
     }
 }
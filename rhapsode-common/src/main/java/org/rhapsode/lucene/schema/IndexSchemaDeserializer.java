@@ -180,6 +180,15 @@ class IndexSchemaDeserializer implements JsonDeserializer<org.rhapsode.lucene.sc
                     IndexSchemaSerializer.INDEX_ANALYZER +
                     " for this tokenized field:" + fieldDef.fieldName);
         }
+        //highlighting reads the indexed offsets when it can and re-analyzes with the
+        //offset analyzer when it can't; those have to agree
+        if (fieldDef.getOffsets() != FieldDef.OFFSETS.NONE && offsetAnalyzer != null &&
+                !offsetAnalyzer.name.equals(indexAnalyzer.name)) {
+            throw new IllegalArgumentException("The " + IndexSchemaSerializer.OFFSET_ANALYZER +
+                    " must be the same as the " + IndexSchemaSerializer.INDEX_ANALYZER +
+                    " for a field that stores \"" + IndexSchemaSerializer.OFFSETS + "\": " +
+                    fieldDef.fieldName);
+        }
         fieldDef.setAnalyzers(indexAnalyzer, queryAnalyzer, mtQueryAnalyzer, offsetAnalyzer);
     }
 
@@ -232,9 +241,14 @@ class IndexSchemaDeserializer implements JsonDeserializer<org.rhapsode.lucene.sc
             type.setTokenized(true);
             //TODO: make this configurable..do we need this for keyword tokenizer?
             type.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+            setOffsets(type, figureOffsets(value));
         } else if (typeString.equals(IndexSchemaSerializer.STRING)) {
             type.setTokenized(false);
             type.setIndexOptions(IndexOptions.NONE);
+            if (figureOffsets(value) != FieldDef.OFFSETS.NONE) {
+                throw new IllegalArgumentException("Can only specify \"" +
+                        IndexSchemaSerializer.OFFSETS + "\" for \"text\" fields");
+            }
         } else {
             throw new IllegalArgumentException("Can only support \"text\" or \"string\" field types so far");
         }
@@ -245,6 +259,34 @@ class IndexSchemaDeserializer implements JsonDeserializer<org.rhapsode.lucene.sc
         return type;
     }
 
+    private FieldDef.OFFSETS figureOffsets(JsonObject value) {
+        JsonElement el = value.getAsJsonPrimitive(IndexSchemaSerializer.OFFSETS);
+        if (el == null || StringUtils.isEmpty(el.getAsString())) {
+            return FieldDef.OFFSETS.NONE;
+        }
+        try {
+            return FieldDef.OFFSETS.valueOf(el.getAsString().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(IndexSchemaSerializer.OFFSETS +
+                    " must have value of \"none\", \"postings\" or \"term_vectors\"");
+        }
+    }
+
+    private void setOffsets(FieldType type, FieldDef.OFFSETS offsets) {
+        switch (offsets) {
+            case POSTINGS:
+                type.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+                break;
+            case TERM_VECTORS:
+                type.setStoreTermVectors(true);
+                type.setStoreTermVectorPositions(true);
+                type.setStoreTermVectorOffsets(true);
+                break;
+            case NONE:
+                break;
+        }
+    }
+
     private void testMissingField(IndexSchema indexSchema) {
         FieldMapper m = indexSchema.getFieldMapper();
         for (String from : m.getTikaFields()) {
@@ -81,6 +81,7 @@ class IndexSchemaSerializer implements JsonSerializer<IndexSchema> {
     static String QUERY_ANALYZER = "query_analyzer";
     static String MT_QUERY_ANALYZER = "mt_query_analyzer";
     static String OFFSET_ANALYZER = "offset_analyzer";
+    static String OFFSETS = "offsets";
 
 
     @Override
@@ -112,6 +113,10 @@ class IndexSchemaSerializer implements JsonSerializer<IndexSchema> {
         } else {
             jsonFieldDef.add(FIELD_TYPE, new JsonPrimitive(STRING));
         }
+        if (fieldDef.getOffsets() != FieldDef.OFFSETS.NONE) {
+            jsonFieldDef.add(OFFSETS,
+                    new JsonPrimitive(fieldDef.getOffsets().toString().toLowerCase(Locale.ENGLISH)));
+        }
 
         if (fieldDef.getIndexAnalyzerName() != null) {
             jsonFieldDef.add(INDEX_ANALYZER, new JsonPrimitive(fieldDef.getIndexAnalyzerName()));
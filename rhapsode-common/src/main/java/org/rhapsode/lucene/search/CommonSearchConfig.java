@@ -31,17 +31,35 @@ package org.rhapsode.lucene.search;
 
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.apache.commons.lang3.StringUtils;
+import org.rhapsode.app.tagger.TaggerRequest;
 import org.rhapsode.lucene.utils.JsonUtil;
 
 
 public class CommonSearchConfig {
 
+    private static final int DEFAULT_MAX_QUEUED_SEARCHES = 1000;
+    private static final int DEFAULT_MAX_CONCURRENT_REPORTS = 2;
+    private static final int DEFAULT_NUM_THREADS_FOR_REPORT_HIGHLIGHTING =
+            Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
     private int numThreadsForConcurrentSearches;
+    private int maxQueuedSearches = DEFAULT_MAX_QUEUED_SEARCHES;
+    //threads that search slices of segments within a single search; 0 to search on the calling thread
+    private int numThreadsForSegmentSearch = Runtime.getRuntime().availableProcessors();
+    private int maxDocsPerSlice = RhapsodeSearcherFactory.DEFAULT_MAX_DOCS_PER_SLICE;
+    private int maxSegmentsPerSlice = RhapsodeSearcherFactory.DEFAULT_MAX_SEGMENTS_PER_SLICE;
+    private int maxConcurrentReports = DEFAULT_MAX_CONCURRENT_REPORTS;
+    private TaggerRequest.SCORE_STORE reportScoreStore = TaggerRequest.SCORE_STORE.IN_MEMORY;
+    private long reportScoreStoreMemoryBudgetBytes = TaggerRequest.DEFAULT_SCORE_STORE_MEMORY_BUDGET_BYTES;
+    //threads per static links report that highlight the tagged files
+    private int numThreadsForReportHighlighting = DEFAULT_NUM_THREADS_FOR_REPORT_HIGHLIGHTING;
+    private int complexQueryCacheSize = ComplexQueryCache.DEFAULT_MAX_SIZE;
     //maps queryName of style to literal css
     private Map<String, String> highlightingStyles = new LinkedHashMap<>();
 
@@ -49,6 +67,25 @@ public class CommonSearchConfig {
     public static CommonSearchConfig build(JsonElement el) {
         CommonSearchConfig config = new CommonSearchConfig();
         config.numThreadsForConcurrentSearches = JsonUtil.getInt(el, "numThreadsForConcurrentSearches");
+        config.maxQueuedSearches = JsonUtil.getInt(el, "maxQueuedSearches", DEFAULT_MAX_QUEUED_SEARCHES);
+        config.numThreadsForSegmentSearch = JsonUtil.getInt(el, "numThreadsForSegmentSearch",
+                config.numThreadsForSegmentSearch);
+        config.maxDocsPerSlice = JsonUtil.getInt(el, "maxDocsPerSlice", config.maxDocsPerSlice);
+        config.maxSegmentsPerSlice = JsonUtil.getInt(el, "maxSegmentsPerSlice", config.maxSegmentsPerSlice);
+        config.maxConcurrentReports = JsonUtil.getInt(el, "maxConcurrentReports", DEFAULT_MAX_CONCURRENT_REPORTS);
+        JsonElement scoreStore = ((JsonObject) el).get("reportScoreStore");
+        if (scoreStore != null) {
+            config.reportScoreStore = TaggerRequest.SCORE_STORE.valueOf(
+                    scoreStore.getAsString().trim().toUpperCase(Locale.US));
+        }
+        JsonElement budgetMB = ((JsonObject) el).get("reportScoreStoreMemoryBudgetMB");
+        if (budgetMB != null) {
+            config.reportScoreStoreMemoryBudgetBytes = budgetMB.getAsLong() * 1024L * 1024L;
+        }
+        config.numThreadsForReportHighlighting = Math.max(1, JsonUtil.getInt(el, "numThreadsForReportHighlighting",
+                DEFAULT_NUM_THREADS_FOR_REPORT_HIGHLIGHTING));
+        config.complexQueryCacheSize = JsonUtil.getInt(el, "complexQueryCacheSize",
+                config.complexQueryCacheSize);
 
         JsonObject styles = ((JsonObject) el).getAsJsonObject("styles");
         for (Map.Entry<String, JsonElement> e : styles.entrySet()) {
@@ -66,6 +103,65 @@ public class CommonSearchConfig {
         return numThreadsForConcurrentSearches;
     }
 
+    /**
+     * @return maximum number of searches that may wait for a search thread
+     * before the submitting thread runs the search itself
+     */
+    public int getMaxQueuedSearches() {
+        return maxQueuedSearches;
+    }
+
+    /**
+     * @return number of threads that search slices of an index's segments
+     * in parallel within a single search, 0 if a search runs on the calling thread
+     */
+    public int getNumThreadsForSegmentSearch() {
+        return numThreadsForSegmentSearch;
+    }
+
+    public int getMaxDocsPerSlice() {
+        return maxDocsPerSlice;
+    }
+
+    public int getMaxSegmentsPerSlice() {
+        return maxSegmentsPerSlice;
+    }
+
+    /**
+     * @return maximum number of reports that may be generated at the same time
+     */
+    public int getMaxConcurrentReports() {
+        return maxConcurrentReports;
+    }
+
+    /**
+     * @return where reports accumulate their per query scores
+     */
+    public TaggerRequest.SCORE_STORE getReportScoreStore() {
+        return reportScoreStore;
+    }
+
+    /**
+     * @return bytes of scores that the in-memory score store keeps on heap before spilling to disk
+     */
+    public long getReportScoreStoreMemoryBudgetBytes() {
+        return reportScoreStoreMemoryBudgetBytes;
+    }
+
+    /**
+     * @return number of threads that highlight files for each static links report
+     */
+    public int getNumThreadsForReportHighlighting() {
+        return numThreadsForReportHighlighting;
+    }
+
+    /**
+     * @return maximum number of built stored queries to keep in the {@link ComplexQueryCache}
+     */
+    public int getComplexQueryCacheSize() {
+        return complexQueryCacheSize;
+    }
+
     public Map<String, String> getHighlightingStyles() {
         return highlightingStyles;
     }
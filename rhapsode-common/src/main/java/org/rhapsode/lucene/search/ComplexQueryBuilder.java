@@ -84,6 +84,18 @@ public class ComplexQueryBuilder {
 
         String rewrittenMainQuery = scm.rewriteQuery(storedQuery.getMainQueryString());
         String rewrittenFilterQuery = scm.rewriteQuery(storedQuery.getFilterQueryString());
+        return buildRewrittenQuery(storedQuery, parser, rewrittenMainQuery, rewrittenFilterQuery,
+                geoConfig, ignoreQuery);
+    }
+
+    /**
+     * Same as {@link #buildQuery(StoredQuery, ParserPlugin, StoredConceptManager, GeoConfig, Query)},
+     * but stored concepts have already been expanded in the main and filter queries.
+     */
+    public static ComplexQuery buildRewrittenQuery(StoredQuery storedQuery, ParserPlugin parser,
+                                                   String rewrittenMainQuery, String rewrittenFilterQuery,
+                                                   GeoConfig geoConfig, Query ignoreQuery)
+            throws ParseException {
 
         Query highlightingQuery = buildQuery(parser, storedQuery.getDefaultField(),
                 rewrittenMainQuery);
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+package org.rhapsode.lucene.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.locationtech.spatial4j.shape.Shape;
+import org.rhapsode.geo.GeoConfig;
+import org.rhapsode.lucene.queryparsers.ParserPlugin;
+import org.rhapsode.lucene.utils.StoredConceptManager;
+
+/**
+ * LRU cache of the queries that {@link ComplexQueryBuilder} builds for
+ * stored queries.
+ * <p>
+ * Entries are keyed on everything that goes into the built queries: the
+ * main and filter queries after stored concepts have been expanded (so a
+ * change to a concept that a query refers to is a different key), the default
+ * field, the geo query, the parser plugin and the version of its index schema
+ * (fields are added to and cleared from the schema in place), the maximum
+ * number of boolean clauses and the version of the ignored set.
+ * <p>
+ * The Lucene queries are shared, but each lookup returns a new {@link ComplexQuery}
+ * for the caller's stored query, because a ComplexQuery caches highlighting
+ * queries that depend on the stored query's priority and style.
+ * <p>
+ * Parse failures are not cached.
+ */
+public class ComplexQueryCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, Entry> cache;
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    public ComplexQueryCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ComplexQueryCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be > 0");
+        }
+        this.maxSize = maxSize;
+        this.cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Cached equivalent of
+     * {@link ComplexQueryBuilder#buildQuery(StoredQuery, ParserPlugin, StoredConceptManager, GeoConfig, Query)}.
+     *
+     * @param ignoredVersion version of the ignored set that <code>ignoreQuery</code> was built from
+     *                       (see {@link org.rhapsode.RhapsodeCollection#getIgnoredVersion()})
+     */
+    public ComplexQuery get(StoredQuery storedQuery, ParserPlugin parser,
+                            StoredConceptManager scm, GeoConfig geoConfig,
+                            Query ignoreQuery, long ignoredVersion) throws ParseException {
+        String rewrittenMainQuery = scm.rewriteQuery(storedQuery.getMainQueryString());
+        String rewrittenFilterQuery = scm.rewriteQuery(storedQuery.getFilterQueryString());
+        Key key = new Key(storedQuery, parser, rewrittenMainQuery, rewrittenFilterQuery, ignoredVersion);
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        //the version should cover this, but make sure
+        if (entry != null && entry.ignoreQuery == ignoreQuery && entry.geoConfig == geoConfig) {
+            hits.incrementAndGet();
+            return new ComplexQuery(storedQuery, entry.retrievalQuery,
+                    entry.highlightingQuery, entry.geoClause, entry.queryShape);
+        }
+        misses.incrementAndGet();
+        ComplexQuery cq = ComplexQueryBuilder.buildRewrittenQuery(storedQuery, parser,
+                rewrittenMainQuery, rewrittenFilterQuery, geoConfig, ignoreQuery);
+        synchronized (cache) {
+            cache.put(key, new Entry(cq, ignoreQuery, geoConfig));
+        }
+        return cq;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ComplexQueryCache{" +
+                "size=" + size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hits.get() +
+                ", misses=" + misses.get() +
+                ", evictions=" + evictions.get() +
+                '}';
+    }
+
+    private static class Entry {
+        private final Query retrievalQuery;
+        private final Query highlightingQuery;
+        private final BooleanClause geoClause;
+        private final Shape queryShape;
+        private final Query ignoreQuery;
+        private final GeoConfig geoConfig;
+
+        private Entry(ComplexQuery complexQuery, Query ignoreQuery, GeoConfig geoConfig) {
+            this.retrievalQuery = complexQuery.getRetrievalQuery();
+            this.highlightingQuery = complexQuery.getHighlightingQuery();
+            this.geoClause = complexQuery.getGeoClause();
+            this.queryShape = complexQuery.getQueryShape();
+            this.ignoreQuery = ignoreQuery;
+            this.geoConfig = geoConfig;
+        }
+    }
+
+    private static class Key {
+        private final ParserPlugin parser;
+        private final long schemaVersion;
+        private final int maxClauseCount;
+        private final String defaultField;
+        private final String mainQuery;
+        private final String filterQuery;
+        private final String geoQuery;
+        private final String geoRadius;
+        private final long ignoredVersion;
+        private final int hashCode;
+
+        private Key(StoredQuery storedQuery, ParserPlugin parser, String mainQuery,
+                    String filterQuery, long ignoredVersion) {
+            this.parser = parser;
+            this.schemaVersion = parser.getSchemaVersion();
+            //wildcard expansion depends on this
+            this.maxClauseCount = BooleanQuery.getMaxClauseCount();
+            this.defaultField = storedQuery.getDefaultField();
+            this.mainQuery = mainQuery;
+            this.filterQuery = filterQuery;
+            this.geoQuery = storedQuery.getGeoQueryString();
+            this.geoRadius = storedQuery.getGeoQueryRadiusString();
+            this.ignoredVersion = ignoredVersion;
+            this.hashCode = Objects.hash(parser, schemaVersion, maxClauseCount, defaultField, mainQuery,
+                    filterQuery, geoQuery, geoRadius, ignoredVersion);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hashCode == key.hashCode &&
+                    schemaVersion == key.schemaVersion &&
+                    maxClauseCount == key.maxClauseCount &&
+                    ignoredVersion == key.ignoredVersion &&
+                    Objects.equals(parser, key.parser) &&
+                    Objects.equals(defaultField, key.defaultField) &&
+                    Objects.equals(mainQuery, key.mainQuery) &&
+                    Objects.equals(filterQuery, key.filterQuery) &&
+                    Objects.equals(geoQuery, key.geoQuery) &&
+                    Objects.equals(geoRadius, key.geoRadius);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -31,6 +31,11 @@ package org.rhapsode.lucene.search;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.index.IndexNotFoundException;
 import org.apache.lucene.index.IndexReader;
@@ -41,6 +46,7 @@ import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
@@ -57,16 +63,35 @@ public class IndexManager {
     private static final Logger LOG = LoggerFactory.getLogger(IndexManager.class);
 
     //    IndexSearcher searcher = null;
-    SearcherManager searcherManager = null;
+    volatile SearcherManager searcherManager = null;
+    private final Set<SearcherLease> outstandingLeases = ConcurrentHashMap.newKeySet();
+    //only set while a writer is open for near-real-time indexing
+    private IndexWriter indexWriter = null;
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread = null;
+    private volatile SearcherFactory searcherFactory = new SearcherFactory();
 
-    private IndexManager() {
+    //package-private for testing
+    IndexManager() {
     }
 
     public static void load(RhapsodeCollection collection) throws IOException {
+        load(collection, null);
+    }
+
+    /**
+     * @param collection
+     * @param searcherFactory factory for new searchers, <code>null</code> to keep
+     *                        the collection's current factory (or the default)
+     * @throws IOException
+     */
+    public static void load(RhapsodeCollection collection, SearcherFactory searcherFactory) throws IOException {
         IndexManager indexManager = collection.getIndexManager();
         if (indexManager == null) {
             indexManager = new IndexManager();
         }
+        if (searcherFactory != null) {
+            indexManager.setSearcherFactory(searcherFactory);
+        }
 
         try {
             indexManager.loadNewIndex(collection.getLuceneIndexPath());
@@ -78,33 +103,208 @@ public class IndexManager {
     }
 
 
+    /**
+     * Opens a long-lived IndexWriter on the collection's index and switches
+     * searching to near-real-time readers from that writer.  Documents added
+     * through {@link #getIndexWriter()} become searchable within
+     * <code>refreshMillis</code>, without a commit or reopening the index.
+     * <p>
+     * Call {@link #closeWriter()} when done writing.  While the writer is open,
+     * this manager holds the index's write lock.
+     *
+     * @param collection
+     * @param refreshMillis maximum time before added documents are searchable
+     * @return the collection's index manager, created if necessary
+     * @throws IOException
+     */
+    public static IndexManager openNearRealTime(RhapsodeCollection collection, long refreshMillis) throws IOException {
+        return openNearRealTime(collection, refreshMillis, null);
+    }
+
+    /**
+     * @param collection
+     * @param refreshMillis   maximum time before added documents are searchable
+     * @param searcherFactory factory for near-real-time searchers, <code>null</code> to keep
+     *                        the collection's current factory (or the default)
+     * @return the collection's index manager, created if necessary
+     * @throws IOException
+     * @see #openNearRealTime(RhapsodeCollection, long)
+     */
+    public static IndexManager openNearRealTime(RhapsodeCollection collection, long refreshMillis,
+                                                SearcherFactory searcherFactory) throws IOException {
+        IndexManager indexManager = collection.getIndexManager();
+        if (indexManager == null) {
+            indexManager = new IndexManager();
+        }
+        if (searcherFactory != null) {
+            indexManager.setSearcherFactory(searcherFactory);
+        }
+        indexManager.openWriter(collection.getLuceneIndexPath(),
+                new IndexWriterConfig(collection.getIndexSchema().getIndexAnalyzer()), refreshMillis);
+        collection.setIndexManager(indexManager);
+        return indexManager;
+    }
+
+    /**
+     * Sets the factory used for searchers, e.g. one that searches segments
+     * in parallel.  This takes effect the next time an index or writer
+     * is opened.
+     *
+     * @param searcherFactory
+     */
+    public void setSearcherFactory(SearcherFactory searcherFactory) {
+        this.searcherFactory = searcherFactory;
+    }
+
     public boolean hasSearcher() {
         return searcherManager != null;
     }
 
     public void close() throws IOException {
-        searcherManager.close();
+        closeWriter();
+        reportOutstandingLeases();
+        if (searcherManager != null) {
+            searcherManager.close();
+        }
     }
 
-    public IndexSearcher getSearcher() throws IOException {
-        return searcherManager.acquire();
+    public synchronized void openWriter(Path luceneIndexPath, IndexWriterConfig config,
+                                        long refreshMillis) throws IOException {
+        if (indexWriter != null) {
+            throw new IllegalStateException("writer is already open");
+        }
+        Directory luceneDirectory = FSDirectory.open(luceneIndexPath);
+        IndexWriter writer = new IndexWriter(luceneDirectory, config);
+        SearcherManager nrtSearcherManager;
+        try {
+            nrtSearcherManager = new SearcherManager(writer, searcherFactory);
+        } catch (IOException | RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+        if (searcherManager != null) {
+            searcherManager.close();
+        }
+        searcherManager = nrtSearcherManager;
+        indexWriter = writer;
+        double maxStaleSecs = refreshMillis / 1000.0;
+        reopenThread = new ControlledRealTimeReopenThread<>(writer, nrtSearcherManager,
+                maxStaleSecs, Math.min(0.1, maxStaleSecs));
+        reopenThread.setName("rhapsode-nrt-reopen");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+        LOG.debug("opened near-real-time writer on " + luceneIndexPath);
+    }
+
+    public synchronized boolean hasWriter() {
+        return indexWriter != null;
+    }
+
+    /**
+     * @return the writer opened by {@link #openWriter(Path, IndexWriterConfig, long)}
+     * @throws IllegalStateException if there is no open writer
+     */
+    public synchronized IndexWriter getIndexWriter() {
+        if (indexWriter == null) {
+            throw new IllegalStateException("no writer is open; call openWriter first");
+        }
+        return indexWriter;
+    }
+
+    /**
+     * Commits the writer, stops near-real-time refreshes and closes the writer.
+     * Searching switches back to readers opened from the committed index.
+     * Does nothing if there is no open writer.
+     *
+     * @throws IOException
+     */
+    public synchronized void closeWriter() throws IOException {
+        if (indexWriter == null) {
+            return;
+        }
+        reopenThread.close();
+        reopenThread = null;
+        Directory luceneDirectory = indexWriter.getDirectory();
+        try {
+            indexWriter.commit();
+        } finally {
+            indexWriter.close();
+            indexWriter = null;
+        }
+        SearcherManager nrtSearcherManager = searcherManager;
+        searcherManager = new SearcherManager(luceneDirectory, searcherFactory);
+        nrtSearcherManager.close();
+    }
+
+    /**
+     * Acquires the current searcher.  The caller must close the lease,
+     * preferably with try-with-resources:
+     * <pre>
+     * try (SearcherLease lease = indexManager.acquire()) {
+     *     lease.getSearcher().search(...);
+     * }
+     * </pre>
+     * With debug logging on, each lease records where it was acquired so
+     * that {@link #reportOutstandingLeases()} can point at leaks.
+     *
+     * @return lease on the current searcher
+     * @throws IOException
+     */
+    public SearcherLease acquire() throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        SearcherLease lease = new SearcherLease(this, searcher,
+                LOG.isDebugEnabled() ? new Throwable("searcher lease acquired here") : null);
+        outstandingLeases.add(lease);
+        return lease;
+    }
+
+    void release(SearcherLease lease, IndexSearcher searcher) throws IOException {
+        outstandingLeases.remove(lease);
+        //same as SearcherManager.release(); this also works for a searcher
+        //acquired from a manager that has since been swapped out by loadNewIndex
+        searcher.getIndexReader().decRef();
     }
 
     public void maybeRefresh() throws IOException {
         searcherManager.maybeRefresh();
     }
 
-    public void release(IndexSearcher searcher) throws IOException {
-        searcherManager.release(searcher);
+    /**
+     * @return leases that have been acquired but not yet closed
+     */
+    public List<SearcherLease> getOutstandingLeases() {
+        return new ArrayList<>(outstandingLeases);
     }
 
-    public void loadNewIndex(Path luceneIndexPath) throws IOException {
+    /**
+     * Logs a warning for each lease that hasn't been closed, including
+     * where it was acquired if debug logging was on at the time.
+     *
+     * @return number of outstanding leases
+     */
+    public int reportOutstandingLeases() {
+        List<SearcherLease> leases = getOutstandingLeases();
+        long now = System.currentTimeMillis();
+        for (SearcherLease lease : leases) {
+            String msg = "searcher lease outstanding for " + (now - lease.getAcquiredMillis()) + " ms";
+            if (lease.getAcquiredAt() != null) {
+                LOG.warn(msg, lease.getAcquiredAt());
+            } else {
+                LOG.warn(msg + "; turn on debug logging to see where it was acquired");
+            }
+        }
+        return leases.size();
+    }
+
+    public synchronized void loadNewIndex(Path luceneIndexPath) throws IOException {
+        closeWriter();
         if (searcherManager != null) {
+            reportOutstandingLeases();
             searcherManager.close();
         }
         LOG.debug("luceneIndexPath: " + luceneIndexPath + " : " + luceneIndexPath.toAbsolutePath());
         Directory luceneDirectory = FSDirectory.open(luceneIndexPath);
-        SearcherManager searcherManager = new SearcherManager(luceneDirectory, new SearcherFactory());
+        SearcherManager searcherManager = new SearcherManager(luceneDirectory, searcherFactory);
         this.searcherManager = searcherManager;
     }
 
@@ -113,41 +313,86 @@ public class IndexManager {
         IndexWriterConfig config = new IndexWriterConfig(collection.getIndexSchema().getIndexAnalyzer());
         Directory luceneDirectory = FSDirectory.open(collection.getLuceneIndexPath());
         IndexWriter writer = new IndexWriter(luceneDirectory, config);
-        IndexSearcher searcher = getSearcher();
-        IndexReader reader = searcher.getIndexReader();
-        LeafReader wrapper = SlowCompositeReaderWrapper.wrap(reader);
-        Terms terms = wrapper.terms(df);
-        TermsEnum te = terms.iterator();
-        BytesRef t = te.next();
-        while (t != null) {
-            Term term = new Term(df, t);
-            if (wrapper.docFreq(term) > 1) {
-
-                PostingsEnum postings = wrapper.postings(term);
-                postings.nextPosition();
-                postings.docID();
+        try (SearcherLease lease = acquire()) {
+            IndexReader reader = lease.getIndexReader();
+            LeafReader wrapper = SlowCompositeReaderWrapper.wrap(reader);
+            Terms terms = wrapper.terms(df);
+            TermsEnum te = terms.iterator();
+            BytesRef t = te.next();
+            while (t != null) {
+                Term term = new Term(df, t);
+                if (wrapper.docFreq(term) > 1) {
+
+                    PostingsEnum postings = wrapper.postings(term);
+                    postings.nextPosition();
+                    postings.docID();
+                }
+                t = te.next();
             }
-            t = te.next();
         }
 
         writer.forceMergeDeletes();
 
     }
 
-    public void merge(RhapsodeCollection collection, int segs) throws IOException {
+    /**
+     * Deletes every document (container file and attachments) with one of
+     * these values in the unique file field.
+     *
+     * @param collection
+     * @param fileIds
+     * @throws IOException
+     */
+    public void deleteFiles(RhapsodeCollection collection, Collection<String> fileIds) throws IOException {
+        String fileIdField = collection.getIndexSchema().getUniqueFileField();
+        synchronized (this) {
+            if (indexWriter != null) {
+                LOG.info("about to delete " + fileIds.size() + " files");
+                for (String fileId : fileIds) {
+                    indexWriter.deleteDocuments(new Term(fileIdField, fileId));
+                }
+                indexWriter.commit();
+                searcherManager.maybeRefresh();
+                return;
+            }
+        }
         IndexWriterConfig config = new IndexWriterConfig(collection.getIndexSchema().getIndexAnalyzer());
-        Directory luceneDirectory = FSDirectory.open(collection.getLuceneIndexPath());
-        IndexWriter writer = new IndexWriter(luceneDirectory, config);
-        LOG.info("about to merge");
-        writer.forceMerge(segs);
-        LOG.info("about to force merge deletes");
-        writer.forceMergeDeletes();
-        LOG.info("about to remove unused files");
-        writer.deleteUnusedFiles();
-        LOG.info("about to commit");
-        writer.commit();
-        LOG.info("about to close");
-        writer.close();
+        try (Directory luceneDirectory = FSDirectory.open(collection.getLuceneIndexPath());
+             IndexWriter writer = new IndexWriter(luceneDirectory, config)) {
+            LOG.info("about to delete " + fileIds.size() + " files");
+            for (String fileId : fileIds) {
+                writer.deleteDocuments(new Term(fileIdField, fileId));
+            }
+            writer.commit();
+        }
+        if (searcherManager != null) {
+            searcherManager.maybeRefresh();
+        }
+    }
 
+    public void merge(RhapsodeCollection collection, int segs) throws IOException {
+        synchronized (this) {
+            if (indexWriter != null) {
+                LOG.info("about to merge");
+                indexWriter.forceMerge(segs);
+                indexWriter.forceMergeDeletes();
+                indexWriter.commit();
+                searcherManager.maybeRefresh();
+                return;
+            }
+        }
+        IndexWriterConfig config = new IndexWriterConfig(collection.getIndexSchema().getIndexAnalyzer());
+        try (Directory luceneDirectory = FSDirectory.open(collection.getLuceneIndexPath());
+             IndexWriter writer = new IndexWriter(luceneDirectory, config)) {
+            LOG.info("about to merge");
+            writer.forceMerge(segs);
+            LOG.info("about to force merge deletes");
+            writer.forceMergeDeletes();
+            LOG.info("about to remove unused files");
+            writer.deleteUnusedFiles();
+            LOG.info("about to commit");
+            writer.commit();
+            LOG.info("about to close");
+        }
     }
 }
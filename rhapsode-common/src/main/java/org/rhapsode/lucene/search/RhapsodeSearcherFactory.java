@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+
+/**
+ * SearcherFactory for searchers that search groups of segments ("slices")
+ * in parallel on an executor.  Searches that go through a CollectorManager
+ * (e.g. {@link IndexSearcher#search(org.apache.lucene.search.Query, int)}
+ * and {@link IndexSearcher#count(org.apache.lucene.search.Query)}) fan out
+ * across the slices; searches with a plain Collector still run on the
+ * calling thread.
+ * <p>
+ * Adjacent segments are grouped so that a slice has at most
+ * <code>maxSegmentsPerSlice</code> segments and, unless a single segment
+ * is larger, at most <code>maxDocsPerSlice</code> documents.
+ * <p>
+ * The executor must not be one whose threads wait on searches submitted
+ * to the same executor, or it can deadlock.
+ */
+public class RhapsodeSearcherFactory extends SearcherFactory {
+
+    public static final int DEFAULT_MAX_DOCS_PER_SLICE = 250000;
+    public static final int DEFAULT_MAX_SEGMENTS_PER_SLICE = 5;
+
+    private final ExecutorService executor;
+    private final int maxDocsPerSlice;
+    private final int maxSegmentsPerSlice;
+
+    public RhapsodeSearcherFactory(ExecutorService executor) {
+        this(executor, DEFAULT_MAX_DOCS_PER_SLICE, DEFAULT_MAX_SEGMENTS_PER_SLICE);
+    }
+
+    /**
+     * @param executor            executor for slices, <code>null</code> to search on the calling thread
+     * @param maxDocsPerSlice
+     * @param maxSegmentsPerSlice
+     */
+    public RhapsodeSearcherFactory(ExecutorService executor, int maxDocsPerSlice, int maxSegmentsPerSlice) {
+        if (maxDocsPerSlice < 1 || maxSegmentsPerSlice < 1) {
+            throw new IllegalArgumentException("maxDocsPerSlice and maxSegmentsPerSlice must be > 0");
+        }
+        this.executor = executor;
+        this.maxDocsPerSlice = maxDocsPerSlice;
+        this.maxSegmentsPerSlice = maxSegmentsPerSlice;
+    }
+
+    @Override
+    public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+        if (executor == null) {
+            return new IndexSearcher(reader);
+        }
+        return new SlicingIndexSearcher(reader);
+    }
+
+    /**
+     * Groups adjacent leaves into slices.  Slices and the leaves within them
+     * stay in docBase order, so that when per-slice results are merged, ties
+     * are broken by doc id just as they are in a single-threaded search.
+     *
+     * @return slices of leaves
+     */
+    public static List<List<LeafReaderContext>> groupLeaves(List<LeafReaderContext> leaves,
+                                                            int maxDocsPerSlice, int maxSegmentsPerSlice) {
+        List<List<LeafReaderContext>> groups = new ArrayList<>();
+        List<LeafReaderContext> group = null;
+        long docsInGroup = 0;
+        for (LeafReaderContext ctx : leaves) {
+            int maxDoc = ctx.reader().maxDoc();
+            if (group != null && (docsInGroup + maxDoc > maxDocsPerSlice
+                    || group.size() >= maxSegmentsPerSlice)) {
+                group = null;
+            }
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.add(group);
+                docsInGroup = 0;
+            }
+            group.add(ctx);
+            docsInGroup += maxDoc;
+        }
+        return groups;
+    }
+
+    //not static: IndexSearcher's constructor calls slices(), and javac sets
+    //the reference to the enclosing factory before the super constructor runs,
+    //so the factory's settings are available there while this class's own
+    //fields would not be.
+    private class SlicingIndexSearcher extends IndexSearcher {
+
+        SlicingIndexSearcher(IndexReader reader) {
+            super(reader, executor);
+        }
+
+        @Override
+        protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+            List<List<LeafReaderContext>> groups = groupLeaves(leaves, maxDocsPerSlice, maxSegmentsPerSlice);
+            LeafSlice[] slices = new LeafSlice[groups.size()];
+            for (int i = 0; i < slices.length; i++) {
+                List<LeafReaderContext> group = groups.get(i);
+                slices[i] = new LeafSlice(group.toArray(new LeafReaderContext[group.size()]));
+            }
+            return slices;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.search;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.Impacts;
+import org.apache.lucene.index.ImpactsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+
+/**
+ * Time and work budget for a search that loads and re-analyzes each
+ * matching document (concordance, co-occurrence, target counts).
+ * <p>
+ * The budget is enforced by a reader from {@link #wrap(IndexReader)}: each
+ * time a stored document is loaded, the number of documents visited and
+ * the elapsed time are checked, and {@link BudgetExceededException} is thrown
+ * once either is over budget.  If there is a time limit, the clock is also
+ * checked every {@link #TIME_CHECK_INTERVAL} steps through the terms and
+ * postings, so that a query that runs long before it loads any documents
+ * is stopped too.  Whatever the search collected before
+ * then is still valid; it just doesn't cover the whole index.
+ * <p>
+ * The clock starts when the budget is created.  This is thread safe, so
+ * one budget may be shared by the slices of a parallel search.
+ */
+public class SearchBudget {
+
+    public enum LIMIT {
+        TIME,
+        DOCS
+    }
+
+    /**
+     * Number of term or postings steps between checks of the clock
+     */
+    static final int TIME_CHECK_INTERVAL = 1024;
+
+    private final long maxMillis;
+    private final long maxDocs;
+    private final long started;
+    private final AtomicLong docsVisited = new AtomicLong(0);
+    private volatile LIMIT exceeded = null;
+
+    /**
+     * @param maxMillis maximum elapsed time, &lt;= 0 for no limit
+     * @param maxDocs   maximum number of documents to visit, &lt;= 0 for no limit
+     */
+    public SearchBudget(long maxMillis, long maxDocs) {
+        this.maxMillis = maxMillis;
+        this.maxDocs = maxDocs;
+        this.started = System.currentTimeMillis();
+    }
+
+    /**
+     * Wraps the reader's leaves so that loading stored documents counts against
+     * this budget.  The caller must close the returned reader; that does not
+     * close the original reader.
+     *
+     * @param reader reader to wrap
+     * @return reader that enforces this budget
+     * @throws IOException
+     */
+    public IndexReader wrap(IndexReader reader) throws IOException {
+        List<LeafReaderContext> leaves = reader.leaves();
+        IndexReader[] budgeted = new IndexReader[leaves.size()];
+        for (int i = 0; i < budgeted.length; i++) {
+            budgeted[i] = new BudgetedLeafReader(leaves.get(i).reader(), this);
+        }
+        return new MultiReader(budgeted, false);
+    }
+
+    /**
+     * Records a visit to a document and checks the budget.
+     *
+     * @throws BudgetExceededException if the budget has been used up
+     */
+    void visit() {
+        if (exceeded != null) {
+            throw new BudgetExceededException(exceeded);
+        }
+        if (maxDocs > 0 && docsVisited.get() >= maxDocs) {
+            exceeded = LIMIT.DOCS;
+            throw new BudgetExceededException(exceeded);
+        }
+        if (maxMillis > 0 && getElapsedMillis() > maxMillis) {
+            exceeded = LIMIT.TIME;
+            throw new BudgetExceededException(exceeded);
+        }
+        docsVisited.incrementAndGet();
+    }
+
+    /**
+     * Checks the elapsed time only; does not count a visit.
+     *
+     * @throws BudgetExceededException if the budget has been used up
+     */
+    void checkTime() {
+        if (exceeded != null) {
+            throw new BudgetExceededException(exceeded);
+        }
+        if (maxMillis > 0 && getElapsedMillis() > maxMillis) {
+            exceeded = LIMIT.TIME;
+            throw new BudgetExceededException(exceeded);
+        }
+    }
+
+    /**
+     * @return the limit that stopped the search, <code>null</code> if the search wasn't stopped
+     */
+    public LIMIT getExceeded() {
+        return exceeded;
+    }
+
+    public boolean isExceeded() {
+        return exceeded != null;
+    }
+
+    public long getDocsVisited() {
+        return docsVisited.get();
+    }
+
+    public long getElapsedMillis() {
+        return System.currentTimeMillis() - started;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getMaxDocs() {
+        return maxDocs;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchBudget{" +
+                "maxMillis=" + maxMillis +
+                ", maxDocs=" + maxDocs +
+                ", docsVisited=" + getDocsVisited() +
+                ", elapsedMillis=" + getElapsedMillis() +
+                ", exceeded=" + exceeded +
+                '}';
+    }
+
+    /**
+     * Thrown out of the search when the budget is used up.
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = -2960436578297372437L;
+
+        private final LIMIT limit;
+
+        BudgetExceededException(LIMIT limit) {
+            super("search budget exceeded: " + limit);
+            this.limit = limit;
+        }
+
+        public LIMIT getLimit() {
+            return limit;
+        }
+    }
+
+    private static class BudgetedLeafReader extends FilterLeafReader {
+        private final SearchBudget budget;
+        //searchers load a document's stored fields more than once
+        //(content, metadata); count each document once.  A leaf is only
+        //searched by one thread at a time.
+        private int lastDoc = -1;
+        private final Ticker ticker;
+
+        BudgetedLeafReader(LeafReader in, SearchBudget budget) {
+            super(in);
+            this.budget = budget;
+            this.ticker = new Ticker(budget);
+        }
+
+        @Override
+        public void document(int docID, StoredFieldVisitor visitor) throws IOException {
+            if (docID != lastDoc) {
+                budget.visit();
+                lastDoc = docID;
+            }
+            super.document(docID, visitor);
+        }
+
+        @Override
+        public Terms terms(String field) throws IOException {
+            Terms terms = super.terms(field);
+            if (terms == null || budget.getMaxMillis() <= 0) {
+                return terms;
+            }
+            return new BudgetedTerms(terms, ticker);
+        }
+
+        @Override
+        public CacheHelper getCoreCacheHelper() {
+            return in.getCoreCacheHelper();
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return in.getReaderCacheHelper();
+        }
+    }
+
+    /**
+     * Counts steps through a leaf's terms and postings and checks the clock
+     * every {@link #TIME_CHECK_INTERVAL} steps.  Shared by all the enums of
+     * one leaf, which is only searched by one thread at a time.
+     */
+    private static class Ticker {
+        private final SearchBudget budget;
+        private int steps = 0;
+
+        Ticker(SearchBudget budget) {
+            this.budget = budget;
+        }
+
+        void tick() {
+            if (++steps == TIME_CHECK_INTERVAL) {
+                steps = 0;
+                budget.checkTime();
+            }
+        }
+    }
+
+    private static class BudgetedTerms extends FilterLeafReader.FilterTerms {
+        private final Ticker ticker;
+
+        BudgetedTerms(Terms in, Ticker ticker) {
+            super(in);
+            this.ticker = ticker;
+        }
+
+        @Override
+        public TermsEnum iterator() throws IOException {
+            return new BudgetedTermsEnum(in.iterator(), ticker);
+        }
+
+        @Override
+        public TermsEnum intersect(CompiledAutomaton compiled, BytesRef startTerm) throws IOException {
+            return new BudgetedTermsEnum(in.intersect(compiled, startTerm), ticker);
+        }
+    }
+
+    private static class BudgetedTermsEnum extends FilterLeafReader.FilterTermsEnum {
+        private final Ticker ticker;
+
+        BudgetedTermsEnum(TermsEnum in, Ticker ticker) {
+            super(in);
+            this.ticker = ticker;
+        }
+
+        @Override
+        public BytesRef next() throws IOException {
+            ticker.tick();
+            return in.next();
+        }
+
+        @Override
+        public PostingsEnum postings(PostingsEnum reuse, int flags) throws IOException {
+            PostingsEnum inReuse = null;
+            if (reuse instanceof BudgetedPostingsEnum) {
+                inReuse = ((BudgetedPostingsEnum) reuse).getDelegate();
+            }
+            return new BudgetedPostingsEnum(in.postings(inReuse, flags), ticker);
+        }
+
+        @Override
+        public ImpactsEnum impacts(int flags) throws IOException {
+            return new BudgetedImpactsEnum(in.impacts(flags), ticker);
+        }
+    }
+
+    private static class BudgetedPostingsEnum extends FilterLeafReader.FilterPostingsEnum {
+        private final Ticker ticker;
+
+        BudgetedPostingsEnum(PostingsEnum in, Ticker ticker) {
+            super(in);
+            this.ticker = ticker;
+        }
+
+        PostingsEnum getDelegate() {
+            return in;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            ticker.tick();
+            return in.nextDoc();
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            ticker.tick();
+            return in.advance(target);
+        }
+    }
+
+    private static class BudgetedImpactsEnum extends ImpactsEnum {
+        private final ImpactsEnum in;
+        private final Ticker ticker;
+
+        BudgetedImpactsEnum(ImpactsEnum in, Ticker ticker) {
+            this.in = in;
+            this.ticker = ticker;
+        }
+
+        @Override
+        public void advanceShallow(int target) throws IOException {
+            in.advanceShallow(target);
+        }
+
+        @Override
+        public Impacts getImpacts() throws IOException {
+            return in.getImpacts();
+        }
+
+        @Override
+        public int freq() throws IOException {
+            return in.freq();
+        }
+
+        @Override
+        public int nextPosition() throws IOException {
+            return in.nextPosition();
+        }
+
+        @Override
+        public int startOffset() throws IOException {
+            return in.startOffset();
+        }
+
+        @Override
+        public int endOffset() throws IOException {
+            return in.endOffset();
+        }
+
+        @Override
+        public BytesRef getPayload() throws IOException {
+            return in.getPayload();
+        }
+
+        @Override
+        public int docID() {
+            return in.docID();
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            ticker.tick();
+            return in.nextDoc();
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            ticker.tick();
+            return in.advance(target);
+        }
+
+        @Override
+        public long cost() {
+            return in.cost();
+        }
+    }
+}
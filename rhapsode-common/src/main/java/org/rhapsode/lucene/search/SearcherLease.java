@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.search;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * A searcher acquired from an {@link IndexManager}.  Close the lease
+ * (ideally with try-with-resources) to release the searcher; until then,
+ * the reader behind it and its files stay open even after a refresh.
+ * <p>
+ * Closing more than once is a no-op.
+ */
+public class SearcherLease implements AutoCloseable {
+
+    private final IndexManager indexManager;
+    private final IndexSearcher searcher;
+    //where this was acquired, only when leak detection is on
+    private final Throwable acquiredAt;
+    private final long acquiredMillis;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    SearcherLease(IndexManager indexManager, IndexSearcher searcher, Throwable acquiredAt) {
+        this.indexManager = indexManager;
+        this.searcher = searcher;
+        this.acquiredAt = acquiredAt;
+        this.acquiredMillis = System.currentTimeMillis();
+    }
+
+    public IndexSearcher getSearcher() {
+        if (closed.get()) {
+            throw new IllegalStateException("lease has already been released");
+        }
+        return searcher;
+    }
+
+    public IndexReader getIndexReader() {
+        return getSearcher().getIndexReader();
+    }
+
+    /**
+     * @return stack trace from where the lease was acquired, or
+     * <code>null</code> if leak detection wasn't on at the time
+     */
+    public Throwable getAcquiredAt() {
+        return acquiredAt;
+    }
+
+    public long getAcquiredMillis() {
+        return acquiredMillis;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            indexManager.release(this, searcher);
+        }
+    }
+}
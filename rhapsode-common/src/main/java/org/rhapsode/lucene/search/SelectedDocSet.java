@@ -0,0 +1,445 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+package org.rhapsode.lucene.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Set of unique document keys that the user has selected, e.g. the
+ * ignored or favorite documents of a collection.
+ * <p>
+ * The set is materialized as a {@link FixedBitSet} per segment, which is built
+ * the first time a segment is searched, cached on the segment's core and then
+ * rolled forward with the adds and removes that happened since.  {@link #getQuery()}
+ * wraps the bitsets as a constant score filter that is pinned to the version
+ * of the set it was created for.  The query keeps a sorted snapshot of the
+ * keys at that version, which is shared until the set changes, so that its
+ * bits can always be rebuilt no matter how far the set has moved on.
+ * <p>
+ * Changes are appended to a binary log so that adding a handful of documents
+ * doesn't rewrite the whole set.  The log is compacted when it is mostly
+ * dead records.
+ */
+public class SelectedDocSet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SelectedDocSet.class);
+
+    private static final int MAGIC = 0x52534453;
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    //number of change batches that are kept to roll cached bitsets forward;
+    //bitsets that are further behind are rebuilt
+    private static final int MAX_CHANGES = 100;
+    //don't bother compacting logs with fewer records than this
+    private static final int MIN_RECORDS_TO_COMPACT = 10000;
+
+    private final Path path;
+    private final String idField;
+    private final Set<String> ids = new HashSet<>();
+    private final LinkedList<Change> changes = new LinkedList<>();
+    private final ConcurrentHashMap<IndexReader.CacheKey, SegmentBits> segmentBits = new ConcurrentHashMap<>();
+    private final IndexReader.ClosedListener closedListener = new IndexReader.ClosedListener() {
+        @Override
+        public void onClose(IndexReader.CacheKey key) {
+            segmentBits.remove(key);
+        }
+    };
+    private long version = 0;
+    private int records = 0;
+    private SelectedDocSetQuery query = null;
+    //sorted copy of ids at the current version, null until it is needed
+    private String[] snapshot = null;
+
+    private SelectedDocSet(Path path, String idField) {
+        this.path = path;
+        this.idField = idField;
+    }
+
+    /**
+     * Loads the set from its log, creating an empty set if the log doesn't exist.
+     *
+     * @param path    log file, <code>null</code> if the set should only be held in memory
+     * @param idField field that holds the unique document keys
+     * @return
+     * @throws IOException
+     */
+    public static SelectedDocSet load(Path path, String idField) throws IOException {
+        SelectedDocSet set = new SelectedDocSet(path, idField);
+        if (path != null && Files.isRegularFile(path)) {
+            set.replay();
+        }
+        return set;
+    }
+
+    /**
+     * @param ids unique document keys to add
+     * @throws IOException if the change couldn't be written to the log; the
+     *                     in-memory set is updated anyway
+     */
+    public void add(Set<String> ids) throws IOException {
+        update(ids, true);
+    }
+
+    /**
+     * @param ids unique document keys to remove
+     * @throws IOException if the change couldn't be written to the log; the
+     *                     in-memory set is updated anyway
+     */
+    public void remove(Set<String> ids) throws IOException {
+        update(ids, false);
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    public synchronized boolean contains(String id) {
+        return ids.contains(id);
+    }
+
+    /**
+     * @return version of the set, which changes every time a document is added or removed
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return constant score query that matches the documents in this set.  The query
+     * is the same object until the set changes.
+     */
+    public synchronized Query getQuery() {
+        if (query == null) {
+            query = new SelectedDocSetQuery(this, version, getSnapshot());
+        }
+        return query;
+    }
+
+    public String getIdField() {
+        return idField;
+    }
+
+    /**
+     * @param reader segment reader
+     * @return bits of the documents in the segment that are in this set, as
+     * of the current version.  This is shared and must not be modified.
+     * @throws IOException
+     */
+    public FixedBitSet getBits(LeafReader reader) throws IOException {
+        long currentVersion;
+        String[] currentIds;
+        synchronized (this) {
+            currentVersion = version;
+            currentIds = getSnapshot();
+        }
+        return getBits(reader, currentVersion, currentIds);
+    }
+
+    /**
+     * Bits for the set as it was at <code>targetVersion</code>, so that a query
+     * that was created before a change keeps matching what it matched when it
+     * was created.  Only the current version's bits are cached; older versions
+     * are rolled back from the cached bits if the changes since then are still
+     * kept, and are otherwise rebuilt from <code>targetIds</code>.
+     *
+     * @param reader        segment reader
+     * @param targetVersion version of the set; must not be newer than the current version
+     * @param targetIds     sorted keys of the set as of targetVersion
+     * @return bits of the documents in the segment that were in this set as of
+     * targetVersion.  This may be shared and must not be modified.
+     * @throws IOException
+     */
+    FixedBitSet getBits(LeafReader reader, long targetVersion, String[] targetIds) throws IOException {
+        IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        IndexReader.CacheKey key = (cacheHelper == null) ? null : cacheHelper.getKey();
+        SegmentBits cached = (key == null) ? null : segmentBits.get(key);
+
+        long currentVersion;
+        List<Change> toApply = null;
+        synchronized (this) {
+            currentVersion = version;
+            if (targetVersion > currentVersion || targetVersion < 0) {
+                throw new IllegalArgumentException("No version " + targetVersion +
+                        "; the current version is " + currentVersion);
+            }
+            if (cached != null && cached.version == targetVersion) {
+                return cached.bits;
+            }
+            if (cached != null && hasChangesSince(Math.min(cached.version, targetVersion))) {
+                toApply = getChanges(cached.version, targetVersion);
+            }
+        }
+
+        FixedBitSet bits;
+        if (toApply == null) {
+            bits = new FixedBitSet(reader.maxDoc());
+            apply(reader, targetIds, true, bits);
+        } else {
+            //copy so that searches that have the old bits aren't affected
+            bits = cached.bits.clone();
+            boolean forward = targetVersion > cached.version;
+            for (Change c : toApply) {
+                //rolling back undoes the change
+                apply(reader, c.ids, forward == c.add, bits);
+            }
+        }
+        if (key != null && targetVersion == currentVersion) {
+            SegmentBits updated = new SegmentBits(currentVersion, bits);
+            SegmentBits prev = segmentBits.put(key, updated);
+            if (prev == null) {
+                cacheHelper.addClosedListener(closedListener);
+            } else if (prev.version > currentVersion) {
+                //lost a race with a newer version
+                segmentBits.replace(key, updated, prev);
+            }
+        }
+        return bits;
+    }
+
+    //whether every change after fromVersion is still kept
+    private boolean hasChangesSince(long fromVersion) {
+        return fromVersion == version ||
+                (!changes.isEmpty() && changes.getFirst().version <= fromVersion + 1);
+    }
+
+    //the changes between the two versions, in the order they have to be applied
+    //to get from fromVersion to toVersion
+    private List<Change> getChanges(long fromVersion, long toVersion) {
+        List<Change> ret = new ArrayList<>();
+        if (toVersion > fromVersion) {
+            for (Change c : changes) {
+                if (c.version > fromVersion && c.version <= toVersion) {
+                    ret.add(c);
+                }
+            }
+        } else {
+            Iterator<Change> it = changes.descendingIterator();
+            while (it.hasNext()) {
+                Change c = it.next();
+                if (c.version > toVersion && c.version <= fromVersion) {
+                    ret.add(c);
+                }
+            }
+        }
+        return ret;
+    }
+
+    //must be called while holding the lock
+    private String[] getSnapshot() {
+        if (snapshot == null) {
+            String[] sorted = ids.toArray(new String[ids.size()]);
+            //sorting makes the seeks cheaper
+            Arrays.sort(sorted);
+            snapshot = sorted;
+        }
+        return snapshot;
+    }
+
+    private void apply(LeafReader reader, String[] ids, boolean add, FixedBitSet bits) throws IOException {
+        Terms terms = reader.terms(idField);
+        if (terms == null) {
+            return;
+        }
+        TermsEnum termsEnum = terms.iterator();
+        PostingsEnum postings = null;
+        for (String id : ids) {
+            if (!termsEnum.seekExact(new BytesRef(id))) {
+                continue;
+            }
+            postings = termsEnum.postings(postings, PostingsEnum.NONE);
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                if (add) {
+                    bits.set(doc);
+                } else {
+                    bits.clear(doc);
+                }
+            }
+        }
+    }
+
+    private synchronized void update(Set<String> updates, boolean add) throws IOException {
+        List<String> changed = new ArrayList<>();
+        for (String id : updates) {
+            if (add ? ids.add(id) : ids.remove(id)) {
+                changed.add(id);
+            }
+        }
+        if (changed.size() == 0) {
+            return;
+        }
+        version++;
+        query = null;
+        snapshot = null;
+        changes.add(new Change(version, changed.toArray(new String[changed.size()]), add));
+        if (changes.size() > MAX_CHANGES) {
+            changes.removeFirst();
+        }
+        if (path == null) {
+            return;
+        }
+        if (records + changed.size() > MIN_RECORDS_TO_COMPACT &&
+                records + changed.size() > 2 * ids.size()) {
+            compact();
+        } else {
+            append(changed, add);
+        }
+    }
+
+    private void append(List<String> changed, boolean add) throws IOException {
+        boolean isNew = !Files.isRegularFile(path) || Files.size(path) == 0;
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+            if (isNew) {
+                writeHeader(os);
+            }
+            for (String id : changed) {
+                os.writeByte(add ? ADD : REMOVE);
+                os.writeUTF(id);
+            }
+        }
+        records += changed.size();
+    }
+
+    private void compact() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName().toString() + ".tmp");
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmp)))) {
+            writeHeader(os);
+            for (String id : ids) {
+                os.writeByte(ADD);
+                os.writeUTF(id);
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = ids.size();
+    }
+
+    private void replay() throws IOException {
+        if (Files.size(path) == 0) {
+            return;
+        }
+        boolean truncated = false;
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(path)))) {
+            if (is.readInt() != MAGIC) {
+                throw new IOException("Not a selected document log: " + path);
+            }
+            byte formatVersion = is.readByte();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported selected document log version (" +
+                        formatVersion + "): " + path);
+            }
+            while (true) {
+                int op = is.read();
+                if (op == -1) {
+                    break;
+                }
+                String id;
+                try {
+                    id = is.readUTF();
+                } catch (EOFException e) {
+                    //the last write was cut short
+                    LOG.warn("Ignoring truncated record at the end of " + path);
+                    truncated = true;
+                    break;
+                }
+                if (op == ADD) {
+                    ids.add(id);
+                } else if (op == REMOVE) {
+                    ids.remove(id);
+                } else {
+                    throw new IOException("Unexpected record type (" + op + ") in " + path);
+                }
+                records++;
+            }
+        }
+        //the next append has to start on a clean record
+        if (truncated || (records > MIN_RECORDS_TO_COMPACT && records > 2 * ids.size())) {
+            compact();
+        }
+    }
+
+    private static void writeHeader(DataOutputStream os) throws IOException {
+        os.writeInt(MAGIC);
+        os.writeByte(FORMAT_VERSION);
+    }
+
+    private static class Change {
+        private final long version;
+        private final String[] ids;
+        private final boolean add;
+
+        private Change(long version, String[] ids, boolean add) {
+            this.version = version;
+            this.ids = ids;
+            this.add = add;
+        }
+    }
+
+    private static class SegmentBits {
+        private final long version;
+        private final FixedBitSet bits;
+
+        private SegmentBits(long version, FixedBitSet bits) {
+            this.version = version;
+            this.bits = bits;
+        }
+    }
+}
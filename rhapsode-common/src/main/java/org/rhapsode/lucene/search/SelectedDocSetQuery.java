@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+package org.rhapsode.lucene.search;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Constant score query over the cached bitsets of a {@link SelectedDocSet}.
+ * <p>
+ * Two of these are equal if they are for the same set at the same version,
+ * and the query matches the set as of that version even if the set has
+ * changed since, so that results cached under the query stay correct.
+ */
+public class SelectedDocSetQuery extends Query {
+
+    private final SelectedDocSet selectedDocSet;
+    private final long version;
+    //sorted keys as of version; shared with the set, never modified
+    private final String[] ids;
+
+    SelectedDocSetQuery(SelectedDocSet selectedDocSet, long version, String[] ids) {
+        this.selectedDocSet = selectedDocSet;
+        this.version = version;
+        this.ids = ids;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+        return new ConstantScoreWeight(this, boost) {
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+                FixedBitSet bits = selectedDocSet.getBits(context.reader(), version, ids);
+                int cardinality = bits.cardinality();
+                if (cardinality == 0) {
+                    return null;
+                }
+                return new ConstantScoreScorer(this, score(), scoreMode,
+                        new BitSetIterator(bits, cardinality));
+            }
+
+            @Override
+            public boolean isCacheable(LeafReaderContext ctx) {
+                //the bits are already cached per segment
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        visitor.visitLeaf(this);
+    }
+
+    @Override
+    public String toString(String field) {
+        return "SelectedDocSetQuery(" + selectedDocSet.getIdField() + ", version=" + version + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return sameClassAs(o) &&
+                selectedDocSet == ((SelectedDocSetQuery) o).selectedDocSet &&
+                version == ((SelectedDocSetQuery) o).version;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * classHash() + System.identityHashCode(selectedDocSet)) + Long.hashCode(version);
+    }
+}
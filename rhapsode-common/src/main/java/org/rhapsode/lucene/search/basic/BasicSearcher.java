@@ -30,6 +30,7 @@ package org.rhapsode.lucene.search.basic;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -38,6 +39,7 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
@@ -52,6 +54,7 @@ import org.apache.lucene.search.highlight.SimpleFragmenter;
 import org.apache.lucene.search.highlight.SpanGradientFormatter;
 import org.rhapsode.lucene.schema.IndexSchema;
 import org.rhapsode.lucene.search.IndexManager;
+import org.rhapsode.lucene.search.SearcherLease;
 
 public class BasicSearcher {
     protected final static String ELLIPSE = "...";
@@ -77,16 +80,16 @@ public class BasicSearcher {
         int end = searchRequest.getLastEnd();
         int howMany = calcHowMany(searchRequest);
         Sort sort = searchRequest.getSort();
-        IndexSearcher searcher = indexManager.getSearcher();
+        SearcherLease lease = indexManager.acquire();
+        IndexSearcher searcher = lease.getSearcher();
 
         ScoreDoc[] sds = null;
         long totalHits = -1;
         try {
             //according to the javadocs (v4.5.1, including Sort() slightly increases overhead)
             if (sort == null) {
-                TopScoreDocCollector collector = TopScoreDocCollector.create(howMany, Integer.MAX_VALUE);
-                searcher.search(searchRequest.getComplexQuery().getRetrievalQuery(), collector);
-                TopDocs topDocs = collector.topDocs();
+                TopDocs topDocs = searcher.search(searchRequest.getComplexQuery().getRetrievalQuery(),
+                        new TopScoreDocCollectorManager(howMany));
                 sds = topDocs.scoreDocs;
                 totalHits = topDocs.totalHits.value;
             } else {
@@ -98,7 +101,35 @@ public class BasicSearcher {
         } catch (BooleanQuery.TooManyClauses e) {
             throw new ParseException("Too many clauses in boolean query");
         } finally {
-            indexManager.release(searcher);
+            lease.close();
+        }
+    }
+
+    /**
+     * Like {@link IndexSearcher#search(org.apache.lucene.search.Query, int)},
+     * this can search slices of segments in parallel, but it counts
+     * all hits rather than stopping at a threshold.
+     */
+    private static class TopScoreDocCollectorManager implements CollectorManager<TopScoreDocCollector, TopDocs> {
+        private final int howMany;
+
+        TopScoreDocCollectorManager(int howMany) {
+            this.howMany = howMany;
+        }
+
+        @Override
+        public TopScoreDocCollector newCollector() {
+            return TopScoreDocCollector.create(howMany, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public TopDocs reduce(Collection<TopScoreDocCollector> collectors) {
+            TopDocs[] topDocs = new TopDocs[collectors.size()];
+            int i = 0;
+            for (TopScoreDocCollector collector : collectors) {
+                topDocs[i++] = collector.topDocs();
+            }
+            return TopDocs.merge(0, howMany, topDocs, true);
         }
     }
 
@@ -29,22 +29,61 @@
 package org.rhapsode.lucene.search.concordance;
 
 import com.google.gson.JsonElement;
+import org.rhapsode.lucene.utils.JsonUtil;
 import org.tallison.lucene.search.concordance.classic.DocMetadataExtractor;
 import org.tallison.lucene.search.concordance.classic.impl.SimpleDocMetadataExtractor;
 
 public class ConcordanceSearchConfig {
+
+    public static final int DEFAULT_MAX_SEARCH_MILLIS = -1;
+    public static final int DEFAULT_MAX_DOCS_VISITED = -1;
+
     private DocMetadataExtractor docMetadataExtractor;
+    //budget for each search, <= 0 for no limit
+    private int maxSearchMillis = DEFAULT_MAX_SEARCH_MILLIS;
+    private int maxDocsVisited = DEFAULT_MAX_DOCS_VISITED;
 
     public DocMetadataExtractor getDocMetadataExtractor() {
         //TODO: fix
         return new SimpleDocMetadataExtractor("_id", "display_name");
     }
 
+    /**
+     * @return default maximum time for a search before it stops with
+     * partial results, &lt;= 0 for no limit
+     */
+    public int getMaxSearchMillis() {
+        return maxSearchMillis;
+    }
+
+    /**
+     * @return default maximum number of documents a search may load and
+     * re-analyze before it stops with partial results, &lt;= 0 for no limit
+     */
+    public int getMaxDocsVisited() {
+        return maxDocsVisited;
+    }
+
+    /**
+     * Reads the optional search budget; keeps the defaults if <code>el</code> is missing.
+     *
+     * @param el
+     */
+    protected void readBudget(JsonElement el) {
+        if (el == null || !el.isJsonObject()) {
+            return;
+        }
+        maxSearchMillis = JsonUtil.getInt(el, "maxSearchMillis", maxSearchMillis);
+        maxDocsVisited = JsonUtil.getInt(el, "maxDocsVisited", maxDocsVisited);
+    }
+
     public static class Builder {
         public static ConcordanceSearchConfig build(JsonElement concordance_search) {
 
             //TODO: fill in!!!
-            return new ConcordanceSearchConfig();
+            ConcordanceSearchConfig config = new ConcordanceSearchConfig();
+            config.readBudget(concordance_search);
+            return config;
         }
     }
 }
@@ -31,6 +31,7 @@ package org.rhapsode.lucene.search.concordance;
 import java.util.Map;
 
 import org.rhapsode.lucene.search.BaseSearchRequest;
+import org.rhapsode.lucene.search.SearchBudget;
 import org.tallison.lucene.search.concordance.classic.ConcordanceSortOrder;
 
 public class ConcordanceSearchRequest extends BaseSearchRequest {
@@ -43,9 +44,13 @@ public class ConcordanceSearchRequest extends BaseSearchRequest {
     private ConcordanceSortOrder sortOrder = ConcordanceSortOrder.PRE;
     private Class clusteringAlgo;
     private Map<String, Object> clusteringAttrs;
+    private int maxSearchMillis;
+    private int maxDocsVisited;
 
     public ConcordanceSearchRequest(ConcordanceSearchConfig concordanceSearchConfig) {
         this.config = concordanceSearchConfig;
+        this.maxSearchMillis = concordanceSearchConfig.getMaxSearchMillis();
+        this.maxDocsVisited = concordanceSearchConfig.getMaxDocsVisited();
     }
 
     public boolean getIgnoreDuplicateWindows() {
@@ -103,4 +108,27 @@ public class ConcordanceSearchRequest extends BaseSearchRequest {
     public void setClusteringAttrs(Map<String, Object> clusteringAttrs) {
         this.clusteringAttrs = clusteringAttrs;
     }
+
+    public int getMaxSearchMillis() {
+        return maxSearchMillis;
+    }
+
+    public void setMaxSearchMillis(int maxSearchMillis) {
+        this.maxSearchMillis = maxSearchMillis;
+    }
+
+    public int getMaxDocsVisited() {
+        return maxDocsVisited;
+    }
+
+    public void setMaxDocsVisited(int maxDocsVisited) {
+        this.maxDocsVisited = maxDocsVisited;
+    }
+
+    /**
+     * @return a new budget for this request; its clock starts now
+     */
+    public SearchBudget newSearchBudget() {
+        return new SearchBudget(maxSearchMillis, maxDocsVisited);
+    }
 }
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.search.concordance;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.rhapsode.lucene.search.RhapsodeSearcherFactory;
+import org.rhapsode.lucene.search.SearchBudget;
+import org.tallison.lucene.search.concordance.charoffsets.TargetTokenNotFoundException;
+import org.tallison.lucene.search.concordance.classic.AbstractConcordanceWindowCollector;
+import org.tallison.lucene.search.concordance.classic.ConcordanceSearcher;
+import org.tallison.lucene.search.concordance.classic.ConcordanceWindow;
+import org.tallison.lucene.search.concordance.classic.impl.ConcordanceWindowCollector;
+import org.tallison.lucene.search.concordance.classic.impl.DedupingConcordanceWindowCollector;
+
+/**
+ * Runs a concordance search over slices of an index's segments in parallel
+ * and merges the results so that they are the same as those of a single
+ * {@link ConcordanceSearcher} run over the whole index.
+ * <p>
+ * Each slice gets its own ConcordanceSearcher and collector, and it records
+ * the windows in the order it collects them.  No slice needs more than
+ * <code>maxWindows</code> windows, so each slice collector is capped just as
+ * the serial collector is.  The recorded windows are then replayed, slice by
+ * slice in docBase order, into a fresh collector until it hits its maximum,
+ * which leaves that collector (windows, duplicate counts, document counts)
+ * in the same state as if it had collected the windows itself.
+ * <p>
+ * If the searcher's reader enforces a {@link SearchBudget}, a slice that
+ * runs out of budget keeps what it collected, and the merged results are partial.
+ * <p>
+ * The slices run on the slice executor, not on the search executor that the
+ * calling search is already running on; otherwise concurrent searches could
+ * fill the search pool while waiting on their own slices.
+ */
+public class ParallelConcordanceSearcher {
+
+    /**
+     * Builds a ConcordanceSearcher for each slice, so that
+     * searchers and their window builders aren't shared across threads.
+     */
+    public interface ConcordanceSearcherBuilder {
+        ConcordanceSearcher build();
+    }
+
+    private final ExecutorService sliceExecutor;
+    private final int maxDocsPerSlice;
+    private final int maxSegmentsPerSlice;
+
+    /**
+     * @param sliceExecutor       executor for the slices, e.g. {@link org.rhapsode.app.SearchExecutor#getSliceExecutor()};
+     *                            <code>null</code> to search on the calling thread
+     * @param maxDocsPerSlice     maximum documents per slice
+     * @param maxSegmentsPerSlice maximum segments per slice
+     */
+    public ParallelConcordanceSearcher(ExecutorService sliceExecutor, int maxDocsPerSlice,
+                                       int maxSegmentsPerSlice) {
+        this.sliceExecutor = sliceExecutor;
+        this.maxDocsPerSlice = maxDocsPerSlice;
+        this.maxSegmentsPerSlice = maxSegmentsPerSlice;
+    }
+
+    /**
+     * @param builder             builds a concordance searcher per slice
+     * @param searcher            searcher for the whole index
+     * @param field               content field
+     * @param mainQuery           query for the targets of the windows
+     * @param filterQuery         query for the documents to search, may be <code>null</code>
+     * @param analyzer            offset analyzer
+     * @param ignoreDuplicates    whether to dedupe windows as
+     *                            {@link DedupingConcordanceWindowCollector} does
+     * @param maxWindows          maximum number of windows to store
+     * @return collector with the merged windows
+     * @throws TargetTokenNotFoundException
+     * @throws IOException
+     */
+    public AbstractConcordanceWindowCollector search(final ConcordanceSearcherBuilder builder,
+                                                     IndexSearcher searcher,
+                                                     final String field, final Query mainQuery,
+                                                     final Query filterQuery, final Analyzer analyzer,
+                                                     final boolean ignoreDuplicates,
+                                                     final int maxWindows)
+            throws TargetTokenNotFoundException, IOException {
+
+        List<List<LeafReaderContext>> slices = RhapsodeSearcherFactory.groupLeaves(
+                searcher.getIndexReader().leaves(), maxDocsPerSlice, maxSegmentsPerSlice);
+        if (sliceExecutor == null || slices.size() < 2) {
+            AbstractConcordanceWindowCollector collector = newCollector(ignoreDuplicates, maxWindows, false);
+            builder.build().search(searcher, field, mainQuery, filterQuery, analyzer, collector);
+            return collector;
+        }
+
+        List<Callable<AbstractConcordanceWindowCollector>> tasks = new ArrayList<>();
+        for (final List<LeafReaderContext> slice : slices) {
+            tasks.add(new Callable<AbstractConcordanceWindowCollector>() {
+                @Override
+                public AbstractConcordanceWindowCollector call() throws Exception {
+                    return searchSlice(builder.build(), slice, field, mainQuery, filterQuery,
+                            analyzer, ignoreDuplicates, maxWindows);
+                }
+            });
+        }
+        List<Future<AbstractConcordanceWindowCollector>> futures;
+        try {
+            futures = sliceExecutor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+
+        AbstractConcordanceWindowCollector merged = newCollector(ignoreDuplicates, maxWindows, false);
+        long totalDocs = 0;
+        for (Future<AbstractConcordanceWindowCollector> future : futures) {
+            AbstractConcordanceWindowCollector sliceCollector = get(future);
+            if (merged.getHitMax()) {
+                //keep waiting on the rest to surface their exceptions
+                continue;
+            }
+            Recording recording = ((Recorder) sliceCollector).getRecording();
+            long totalDocsInSlice = sliceCollector.getTotalDocs();
+            for (int i = 0; i < recording.windows.size(); i++) {
+                merged.collect(recording.windows.get(i));
+                if (merged.getHitMax()) {
+                    //the serial search would have stopped here
+                    totalDocsInSlice = recording.totalDocs.get(i);
+                    break;
+                }
+            }
+            totalDocs += totalDocsInSlice;
+        }
+        ((Recorder) merged).getRecording().totalDocsOffset = totalDocs;
+        return merged;
+    }
+
+    private static AbstractConcordanceWindowCollector searchSlice(ConcordanceSearcher concordanceSearcher,
+                                                                  List<LeafReaderContext> slice,
+                                                                  String field, Query mainQuery,
+                                                                  Query filterQuery, Analyzer analyzer,
+                                                                  boolean ignoreDuplicates,
+                                                                  int maxWindows) throws Exception {
+        IndexReader[] leafReaders = new IndexReader[slice.size()];
+        for (int i = 0; i < leafReaders.length; i++) {
+            leafReaders[i] = slice.get(i).reader();
+        }
+        AbstractConcordanceWindowCollector collector = newCollector(ignoreDuplicates, maxWindows, true);
+        //does not close the leaves, only releases its references to them
+        try (MultiReader sliceReader = new MultiReader(leafReaders, false)) {
+            concordanceSearcher.search(new IndexSearcher(sliceReader),
+                    field, mainQuery, filterQuery, analyzer, collector);
+        } catch (SearchBudget.BudgetExceededException e) {
+            //keep what this slice collected; the caller checks the budget
+        }
+        return collector;
+    }
+
+    private static AbstractConcordanceWindowCollector get(Future<AbstractConcordanceWindowCollector> future)
+            throws TargetTokenNotFoundException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TargetTokenNotFoundException) {
+                throw (TargetTokenNotFoundException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static AbstractConcordanceWindowCollector newCollector(boolean ignoreDuplicates,
+                                                                   int maxWindows, boolean record) {
+        if (ignoreDuplicates && record) {
+            return new RecordingSliceDedupingCollector(maxWindows);
+        }
+        if (ignoreDuplicates) {
+            return new RecordingDedupingCollector(maxWindows, record);
+        }
+        return new RecordingCollector(maxWindows, record);
+    }
+
+    private interface Recorder {
+        Recording getRecording();
+    }
+
+    private static class Recording {
+        private final boolean record;
+        private final List<ConcordanceWindow> windows = new ArrayList<>();
+        //collector's total docs when each window was collected
+        private final List<Long> totalDocs = new ArrayList<>();
+        //total docs from the slices, set on the merged collector
+        private long totalDocsOffset = 0;
+
+        Recording(boolean record) {
+            this.record = record;
+        }
+
+        void record(ConcordanceWindow w, long totalDocsSoFar) {
+            if (record) {
+                windows.add(w);
+                totalDocs.add(totalDocsSoFar);
+            }
+        }
+    }
+
+    private static class RecordingCollector extends ConcordanceWindowCollector implements Recorder {
+        private final Recording recording;
+
+        RecordingCollector(int maxWindows, boolean record) {
+            super(maxWindows);
+            recording = new Recording(record);
+        }
+
+        @Override
+        public void collect(ConcordanceWindow w) {
+            if (!getHitMax()) {
+                recording.record(w, super.getTotalDocs());
+            }
+            super.collect(w);
+        }
+
+        @Override
+        public long getTotalDocs() {
+            return super.getTotalDocs() + recording.totalDocsOffset;
+        }
+
+        @Override
+        public Recording getRecording() {
+            return recording;
+        }
+    }
+
+    private static class RecordingDedupingCollector extends DedupingConcordanceWindowCollector implements Recorder {
+        private final Recording recording;
+
+        RecordingDedupingCollector(int maxWindows, boolean record) {
+            super(maxWindows);
+            recording = new Recording(record);
+        }
+
+        @Override
+        public void collect(ConcordanceWindow w) {
+            if (!getHitMax()) {
+                recording.record(w, super.getTotalDocs());
+            }
+            super.collect(w);
+        }
+
+        @Override
+        public long getTotalDocs() {
+            return super.getTotalDocs() + recording.totalDocsOffset;
+        }
+
+        @Override
+        public Recording getRecording() {
+            return recording;
+        }
+    }
+
+    /**
+     * Slice collector for deduped searches.  It records every window up to the
+     * point at which the serial deduping collector would stop, but it does not
+     * dedupe them itself: the deduping collector increments the count of the
+     * first window it kept, and the recorded windows are replayed into the
+     * merged deduping collector, which would count those duplicates again.
+     */
+    private static class RecordingSliceDedupingCollector extends ConcordanceWindowCollector implements Recorder {
+        private final Recording recording = new Recording(true);
+        private final Set<String> keys = new HashSet<>();
+        private final int maxWindows;
+
+        RecordingSliceDedupingCollector(int maxWindows) {
+            super(maxWindows);
+            this.maxWindows = maxWindows;
+        }
+
+        @Override
+        public void collect(ConcordanceWindow w) {
+            if (getHitMax()) {
+                return;
+            }
+            String key = w.getPre() + '\u0000' + w.getTarget() + '\u0000' + w.getPost();
+            if (!keys.contains(key)) {
+                if (maxWindows > -1 && keys.size() >= maxWindows) {
+                    setHitMax(true);
+                    return;
+                }
+                keys.add(key);
+            }
+            recording.record(w, super.getTotalDocs());
+        }
+
+        @Override
+        public Recording getRecording() {
+            return recording;
+        }
+    }
+}
@@ -46,7 +46,9 @@ public class CooccurConfig extends ConcordanceSearchConfig {
         public static CooccurConfig build(JsonElement concordance_search) {
 
             //TODO: fill in!!!
-            return new CooccurConfig();
+            CooccurConfig config = new CooccurConfig();
+            config.readBudget(concordance_search);
+            return config;
         }
     }
 
@@ -28,12 +28,16 @@
  */
 package org.rhapsode.lucene.search.variant;
 
+import org.rhapsode.lucene.search.SearchBudget;
+import org.rhapsode.lucene.search.concordance.ConcordanceSearchConfig;
 
 public class TargetRequest extends VariantTermRequest {
 
     private boolean normalizeTarget;
     private boolean allowTargetOverlaps;
     private int maxWindows;
+    private int maxSearchMillis = ConcordanceSearchConfig.DEFAULT_MAX_SEARCH_MILLIS;
+    private int maxDocsVisited = ConcordanceSearchConfig.DEFAULT_MAX_DOCS_VISITED;
 
     public boolean isNormalizeTarget() {
         return normalizeTarget;
@@ -59,4 +63,27 @@ public class TargetRequest extends VariantTermRequest {
     public void setMaxWindows(int maxWindows) {
         this.maxWindows = maxWindows;
     }
+
+    public int getMaxSearchMillis() {
+        return maxSearchMillis;
+    }
+
+    public void setMaxSearchMillis(int maxSearchMillis) {
+        this.maxSearchMillis = maxSearchMillis;
+    }
+
+    public int getMaxDocsVisited() {
+        return maxDocsVisited;
+    }
+
+    public void setMaxDocsVisited(int maxDocsVisited) {
+        this.maxDocsVisited = maxDocsVisited;
+    }
+
+    /**
+     * @return a new budget for this request; its clock starts now
+     */
+    public SearchBudget newSearchBudget() {
+        return new SearchBudget(maxSearchMillis, maxDocsVisited);
+    }
 }
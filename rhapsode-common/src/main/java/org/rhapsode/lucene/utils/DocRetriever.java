@@ -34,9 +34,18 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
@@ -44,6 +53,9 @@ import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,8 +63,23 @@ public class DocRetriever {
 
     private static final Logger LOG = LoggerFactory.getLogger(DocRetriever.class);
 
+    public static final String PARENT_MARKER_VALUE = "T";
+
     private static int MAX_EMBEDDED_DOCS = 10000;
 
+    //parent bitsets per segment core; these include deleted docs so
+    //that they are valid for every reader that shares the core.  A core's
+    //entry is removed when the core is closed.
+    private static final ConcurrentHashMap<IndexReader.CacheKey, ConcurrentHashMap<String, FixedBitSet>> PARENT_BITS =
+            new ConcurrentHashMap<>();
+    private static final IndexReader.ClosedListener PARENT_BITS_EVICTOR = new IndexReader.ClosedListener() {
+        @Override
+        public void onClose(IndexReader.CacheKey key) {
+            PARENT_BITS.remove(key);
+        }
+    };
+    private static final FixedBitSet NO_PARENTS = new FixedBitSet(0);
+
     public static List<Document> getAllDocsFromAnyDocId(int id, String fileIdField,
                                                         Sort sort, Set<String> fieldsToRetrieve, IndexSearcher searcher) throws IOException {
         Set<String> initialFieldsToRetrieve = new HashSet<>();
@@ -89,6 +116,50 @@ public class DocRetriever {
                                                     String fileId,
                                                     Sort sort, Set<String> fieldsToRetrieve,
                                                     IndexSearcher searcher) throws IOException {
+        List<Integer> docIds = getAllDocIdsByFileId(fileIdField, fileId, sort, searcher);
+        List<Document> ret = new ArrayList<>();
+        for (Integer docId : docIds) {
+            Document d = null;
+            if (fieldsToRetrieve == null) {
+                d = searcher.doc(docId);
+            } else {
+                d = searcher.doc(docId, fieldsToRetrieve);
+            }
+            ret.add(d);
+        }
+        return ret;
+    }
+
+    /**
+     * Same as {@link #getAllDocsFromAnyDocId(String, String, String, Sort, Set, IndexSearcher)},
+     * but this returns only the lucene doc ids so that callers can load the documents
+     * one at a time.  The ids are only valid for this searcher.
+     */
+    public static List<Integer> getAllDocIdsFromAnyDocId(String docId, String docIdField, String fileIdField,
+                                                         Sort sort, IndexSearcher searcher) throws IOException {
+        Query q = new TermQuery(new Term(docIdField, docId));
+        TopDocs topDocs = searcher.search(q, 2);
+        ScoreDoc[] sd = topDocs.scoreDocs;
+        if (sd == null || sd.length == 0) {
+            throw new IllegalArgumentException("Couldn't find doc with docId=" + docId + " in this field:" + docIdField);
+        }
+        if (sd.length == 2) {
+            throw new IllegalArgumentException("Found more than one document with docId=" + docId + " in this field:" + docIdField);
+        }
+        Set<String> initialFieldsToRetrieve = new HashSet<>();
+        initialFieldsToRetrieve.add(fileIdField);
+        Document doc = searcher.doc(sd[0].doc, initialFieldsToRetrieve);
+        return getAllDocIdsByFileId(fileIdField, doc.get(fileIdField), sort, searcher);
+    }
+
+    /**
+     * Same as {@link #getAllDocsByFileId(String, String, Sort, Set, IndexSearcher)},
+     * but this returns only the lucene doc ids.  The ids are only valid for this searcher.
+     */
+    public static List<Integer> getAllDocIdsByFileId(String fileIdField,
+                                                     String fileId,
+                                                     Sort sort,
+                                                     IndexSearcher searcher) throws IOException {
         if (fileIdField == null) {
             throw new IllegalArgumentException("fileIdField must not be null");
         }
@@ -107,21 +178,267 @@ public class DocRetriever {
             scoreDocs = topFieldDocs.scoreDocs;
         }
 
+        List<Integer> ret = new ArrayList<>();
         if (scoreDocs == null) {
             LOG.info("NO RESULTS for " + fileId + " in " + fileIdField);
-            return new ArrayList<>();
+            return ret;
+        }
+        for (ScoreDoc sd : scoreDocs) {
+            ret.add(sd.doc);
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves the container document and all of its attachments by walking
+     * the block of documents that the indexer wrote for the file.  The block
+     * starts at the document marked in <code>parentField</code> and ends
+     * just before the next marked document, so this requires neither a
+     * search nor a sort.  Documents are returned in the order they were
+     * indexed, which is the attachment order.
+     *
+     * @return the documents or <code>null</code> if the index doesn't have
+     * parent markers for this block (e.g. it was built by an older indexer),
+     * in which case the caller should use {@link #getAllDocsFromAnyDocId(int, String, Sort, Set, IndexSearcher)}
+     * @throws IOException
+     */
+    public static List<Document> getBlockFromAnyDocId(int id, String parentField, String fileIdField,
+                                                      Set<String> fieldsToRetrieve,
+                                                      IndexSearcher searcher) throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(id, leaves));
+        return getBlock(leaf, id - leaf.docBase, parentField, fileIdField, fieldsToRetrieve);
+    }
+
+    /**
+     * @return the documents or <code>null</code> if the file couldn't be
+     * retrieved as a block.
+     * @see #getBlockFromAnyDocId(int, String, String, Set, IndexSearcher)
+     */
+    public static List<Document> getBlockByFileId(String parentField, String fileIdField, String fileId,
+                                                  Set<String> fieldsToRetrieve,
+                                                  IndexSearcher searcher) throws IOException {
+        return getBlockByTerm(new Term(fileIdField, fileId), parentField, fileIdField,
+                fieldsToRetrieve, searcher);
+    }
+
+    /**
+     * @return the documents or <code>null</code> if the file couldn't be
+     * retrieved as a block.
+     * @see #getBlockFromAnyDocId(int, String, String, Set, IndexSearcher)
+     */
+    public static List<Document> getBlockFromAnyDocId(String docId, String docIdField,
+                                                      String parentField, String fileIdField,
+                                                      Set<String> fieldsToRetrieve,
+                                                      IndexSearcher searcher) throws IOException {
+        return getBlockByTerm(new Term(docIdField, docId), parentField, fileIdField,
+                fieldsToRetrieve, searcher);
+    }
+
+    /**
+     * Same as {@link #getBlockByFileId(String, String, String, Set, IndexSearcher)},
+     * but this returns only the lucene doc ids so that callers can load the documents
+     * one at a time.  The ids are only valid for this searcher.
+     *
+     * @return the doc ids or <code>null</code> if the file couldn't be
+     * retrieved as a block.
+     */
+    public static List<Integer> getBlockDocIdsByFileId(String parentField, String fileIdField, String fileId,
+                                                       IndexSearcher searcher) throws IOException {
+        return getBlockDocIdsByTerm(new Term(fileIdField, fileId), parentField, fileIdField, searcher);
+    }
+
+    /**
+     * @return the doc ids or <code>null</code> if the file couldn't be
+     * retrieved as a block.
+     * @see #getBlockDocIdsByFileId(String, String, String, IndexSearcher)
+     */
+    public static List<Integer> getBlockDocIdsFromAnyDocId(String docId, String docIdField,
+                                                           String parentField, String fileIdField,
+                                                           IndexSearcher searcher) throws IOException {
+        return getBlockDocIdsByTerm(new Term(docIdField, docId), parentField, fileIdField, searcher);
+    }
+
+    //finds the first live doc with this term and walks its block
+    private static List<Document> getBlockByTerm(Term term, String parentField, String fileIdField,
+                                                 Set<String> fieldsToRetrieve,
+                                                 IndexSearcher searcher) throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        int docId = getFirstLiveDoc(term, searcher);
+        if (docId < 0) {
+            return null;
         }
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        return getBlock(leaf, docId - leaf.docBase, parentField, fileIdField, fieldsToRetrieve);
+    }
 
+    private static List<Integer> getBlockDocIdsByTerm(Term term, String parentField, String fileIdField,
+                                                      IndexSearcher searcher) throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        int docId = getFirstLiveDoc(term, searcher);
+        if (docId < 0) {
+            return null;
+        }
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        int[] bounds = getBlockBounds(leaf, docId - leaf.docBase, parentField);
+        if (bounds == null) {
+            return null;
+        }
+        Set<String> fields = new HashSet<>();
+        fields.add(fileIdField);
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        String fileId = null;
+        List<Integer> ret = new ArrayList<>();
+        for (int i = bounds[0]; i < bounds[1] && ret.size() < MAX_EMBEDDED_DOCS; i++) {
+            if (liveDocs != null && !liveDocs.get(i)) {
+                continue;
+            }
+            String docFileId = leaf.reader().document(i, fields).get(fileIdField);
+            if (fileId == null) {
+                fileId = docFileId;
+            }
+            if (fileId == null || !fileId.equals(docFileId)) {
+                LOG.debug("block starting at " + (leaf.docBase + bounds[0]) + " isn't a single file");
+                return null;
+            }
+            ret.add(leaf.docBase + i);
+        }
+        return (ret.size() == 0) ? null : ret;
+    }
+
+    //returns the top level doc id of the first live doc with this term or -1
+    private static int getFirstLiveDoc(Term term, IndexSearcher searcher) throws IOException {
+        for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+            Terms terms = leaf.reader().terms(term.field());
+            if (terms == null) {
+                continue;
+            }
+            TermsEnum termsEnum = terms.iterator();
+            if (!termsEnum.seekExact(term.bytes())) {
+                continue;
+            }
+            Bits liveDocs = leaf.reader().getLiveDocs();
+            PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+                 doc = postings.nextDoc()) {
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    return leaf.docBase + doc;
+                }
+            }
+        }
+        return -1;
+    }
+
+    //returns the leaf doc ids of the block's parent (inclusive) and end (exclusive) or null
+    private static int[] getBlockBounds(LeafReaderContext leaf, int leafDocId,
+                                        String parentField) throws IOException {
+        FixedBitSet parents = getParentBits(leaf.reader(), parentField);
+        if (parents == null) {
+            return null;
+        }
+        int parent = parents.prevSetBit(leafDocId);
+        if (parent < 0) {
+            return null;
+        }
+        int maxDoc = leaf.reader().maxDoc();
+        int end = (parent + 1 < maxDoc) ? parents.nextSetBit(parent + 1) : DocIdSetIterator.NO_MORE_DOCS;
+        if (end == DocIdSetIterator.NO_MORE_DOCS) {
+            end = maxDoc;
+        }
+        return new int[]{parent, end};
+    }
+
+    private static List<Document> getBlock(LeafReaderContext leaf, int leafDocId,
+                                           String parentField, String fileIdField,
+                                           Set<String> fieldsToRetrieve) throws IOException {
+        int[] bounds = getBlockBounds(leaf, leafDocId, parentField);
+        if (bounds == null) {
+            return null;
+        }
+        int parent = bounds[0];
+        int end = bounds[1];
+
+        //need the file id to confirm that this really is one file's block;
+        //unmarked blocks from an older indexer can be merged into the same segment
+        Set<String> fields = fieldsToRetrieve;
+        boolean removeFileIdField = false;
+        if (fields != null && !fields.contains(fileIdField)) {
+            fields = new HashSet<>(fieldsToRetrieve);
+            fields.add(fileIdField);
+            removeFileIdField = true;
+        }
+        Bits liveDocs = leaf.reader().getLiveDocs();
+        String fileId = null;
         List<Document> ret = new ArrayList<>();
-        for (ScoreDoc sd : scoreDocs) {
-            Document d = null;
-            if (fieldsToRetrieve == null) {
-                d = searcher.doc(sd.doc);
-            } else {
-                d = searcher.doc(sd.doc, fieldsToRetrieve);
+        for (int i = parent; i < end && ret.size() < MAX_EMBEDDED_DOCS; i++) {
+            if (liveDocs != null && !liveDocs.get(i)) {
+                continue;
+            }
+            Document d = (fields == null) ? leaf.reader().document(i) : leaf.reader().document(i, fields);
+            String docFileId = d.get(fileIdField);
+            if (fileId == null) {
+                fileId = docFileId;
+            }
+            if (fileId == null || !fileId.equals(docFileId)) {
+                LOG.debug("block starting at " + (leaf.docBase + parent) + " isn't a single file");
+                return null;
+            }
+            if (removeFileIdField) {
+                d.removeField(fileIdField);
             }
             ret.add(d);
         }
-        return ret;
+        return (ret.size() == 0) ? null : ret;
+    }
+
+    private static FixedBitSet getParentBits(LeafReader leafReader, String parentField) throws IOException {
+        IndexReader.CacheHelper cacheHelper = leafReader.getCoreCacheHelper();
+        if (cacheHelper == null) {
+            //no way to know when to evict, so don't cache
+            return readParentBits(leafReader, parentField);
+        }
+        IndexReader.CacheKey key = cacheHelper.getKey();
+        ConcurrentHashMap<String, FixedBitSet> cached = PARENT_BITS.get(key);
+        FixedBitSet bits = (cached == null) ? null : cached.get(parentField);
+        if (bits != null) {
+            return (bits == NO_PARENTS) ? null : bits;
+        }
+        bits = readParentBits(leafReader, parentField);
+        if (cached == null) {
+            cached = new ConcurrentHashMap<>();
+            ConcurrentHashMap<String, FixedBitSet> prev = PARENT_BITS.putIfAbsent(key, cached);
+            if (prev == null) {
+                cacheHelper.addClosedListener(PARENT_BITS_EVICTOR);
+            } else {
+                cached = prev;
+            }
+        }
+        //ConcurrentHashMap doesn't allow null values
+        cached.put(parentField, (bits == null) ? NO_PARENTS : bits);
+        return bits;
+    }
+
+    //for testing
+    static boolean hasCachedParentBits(IndexReader.CacheKey key) {
+        return PARENT_BITS.containsKey(key);
+    }
+
+    private static FixedBitSet readParentBits(LeafReader leafReader, String parentField) throws IOException {
+        Terms terms = leafReader.terms(parentField);
+        if (terms == null) {
+            return null;
+        }
+        TermsEnum termsEnum = terms.iterator();
+        if (!termsEnum.seekExact(new BytesRef(PARENT_MARKER_VALUE))) {
+            return null;
+        }
+        FixedBitSet bits = new FixedBitSet(leafReader.maxDoc());
+        //deliberately ignore live docs
+        PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+             doc = postings.nextDoc()) {
+            bits.set(doc);
+        }
+        return bits;
     }
 }
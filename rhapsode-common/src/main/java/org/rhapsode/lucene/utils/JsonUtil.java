@@ -44,6 +44,17 @@ public class JsonUtil {
         return jVal.getAsInt();
     }
 
+    public static int getInt(JsonElement el, String key, int defaultValue) {
+        if (!el.isJsonObject()) {
+            throw new IllegalArgumentException("Parent of " + key + " should be a map object");
+        }
+        JsonElement jVal = ((JsonObject) el).get(key);
+        if (jVal == null) {
+            return defaultValue;
+        }
+        return jVal.getAsInt();
+    }
+
     public static String getString(JsonElement el, String key) {
         if (!el.isJsonObject()) {
             throw new IllegalArgumentException("Parent of " + key + " should be a map object");
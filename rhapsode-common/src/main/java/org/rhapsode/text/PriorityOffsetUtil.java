@@ -30,26 +30,23 @@
 package org.rhapsode.text;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class PriorityOffsetUtil {
 
     public static List<PriorityOffset> removeOverlapsAndSort(List<PriorityOffset> offsets) {
-        Set<Integer> seen = new HashSet<>();
         if (offsets == null || offsets.size() < 2)
             return offsets;
+        BitSet seen = new BitSet();
 
         Collections.sort(offsets, new PriorityOffsetLengthStartComparator());
         List<PriorityOffset> winnowed = new ArrayList<>();
         for (PriorityOffset offset : offsets) {
             if (!alreadySeen(offset, seen)) {
                 winnowed.add(offset);
-                for (int i = offset.startOffset(); i < offset.endOffset(); i++) {
-                    seen.add(i);
-                }
+                seen.set(offset.startOffset(), offset.endOffset());
             }
         }
         Collections.sort(winnowed, new OffsetStartComparator());
@@ -57,11 +54,8 @@ public class PriorityOffsetUtil {
 
     }
 
-    protected static boolean alreadySeen(PriorityOffset offset, Set<Integer> seen) {
-        for (int i = offset.startOffset(); i <= offset.endOffset(); i++) {
-            if (seen.contains(i))
-                return true;
-        }
-        return false;
+    protected static boolean alreadySeen(PriorityOffset offset, BitSet seen) {
+        int next = seen.nextSetBit(offset.startOffset());
+        return next > -1 && next <= offset.endOffset();
     }
 }
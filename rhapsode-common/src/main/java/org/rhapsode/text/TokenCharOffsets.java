@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.text;
+
+import java.util.Arrays;
+
+/**
+ * Character offsets keyed by token position.  This is a small open addressing
+ * map from position to offsets backed by int arrays so that highlighting
+ * doesn't have to box positions or allocate an {@link Offset} per token.
+ * Its size depends on how many positions are set, not on how far into
+ * the document they are.  Positions that haven't been set return -1.
+ * <p>
+ * Not thread safe; callers are expected to {@link #clear()} and reuse
+ * an instance per thread.  {@link #clear()} drops the arrays if they have
+ * grown past the retained capacity so that one large document doesn't pin
+ * memory for the life of the thread.
+ */
+public class TokenCharOffsets {
+
+    public static final int DEFAULT_MAX_RETAINED_CAPACITY = 1 << 14;
+
+    private static final int EMPTY = -1;
+
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+    private int[] positions;
+    private int[] starts;
+    private int[] ends;
+    private int size = 0;
+
+    public TokenCharOffsets() {
+        this(64);
+    }
+
+    public TokenCharOffsets(int initialSize) {
+        this(initialSize, DEFAULT_MAX_RETAINED_CAPACITY);
+    }
+
+    /**
+     * @param initialSize         number of positions to size the map for
+     * @param maxRetainedCapacity capacity above which {@link #clear()} releases the arrays
+     */
+    public TokenCharOffsets(int initialSize, int maxRetainedCapacity) {
+        this.initialCapacity = capacityFor(Math.max(1, initialSize));
+        this.maxRetainedCapacity = Math.max(initialCapacity, maxRetainedCapacity);
+        allocate(initialCapacity);
+    }
+
+    public void set(int position, int startOffset, int endOffset) {
+        if (position < 0) {
+            throw new IllegalArgumentException("position must be >= 0: " + position);
+        }
+        int slot = slot(position);
+        if (positions[slot] == EMPTY) {
+            if ((size + 1) * 2 > positions.length) {
+                rehash(positions.length * 2);
+                slot = slot(position);
+            }
+            positions[slot] = position;
+            size++;
+        }
+        starts[slot] = startOffset;
+        ends[slot] = endOffset;
+    }
+
+    public int getStart(int position) {
+        int slot = slot(position);
+        return (positions[slot] == EMPTY) ? -1 : starts[slot];
+    }
+
+    public int getEnd(int position) {
+        int slot = slot(position);
+        return (positions[slot] == EMPTY) ? -1 : ends[slot];
+    }
+
+    /**
+     * @return number of positions that are set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return current length of the backing arrays
+     */
+    int capacity() {
+        return positions.length;
+    }
+
+    /**
+     * Unsets all positions.  The arrays are kept for reuse unless they
+     * have grown past the retained capacity.
+     */
+    public void clear() {
+        if (positions.length > maxRetainedCapacity) {
+            allocate(initialCapacity);
+        } else if (size > 0) {
+            Arrays.fill(positions, EMPTY);
+        }
+        size = 0;
+    }
+
+    //the slot holding position, or the empty slot where it belongs
+    private int slot(int position) {
+        int mask = positions.length - 1;
+        int slot = mix(position) & mask;
+        while (positions[slot] != EMPTY && positions[slot] != position) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldPositions = positions;
+        int[] oldStarts = starts;
+        int[] oldEnds = ends;
+        allocate(newCapacity);
+        for (int i = 0; i < oldPositions.length; i++) {
+            if (oldPositions[i] != EMPTY) {
+                int slot = slot(oldPositions[i]);
+                positions[slot] = oldPositions[i];
+                starts[slot] = oldStarts[i];
+                ends[slot] = oldEnds[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        positions = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        Arrays.fill(positions, EMPTY);
+    }
+
+    //spans hit runs of adjacent positions; spread them over the table
+    private static int mix(int position) {
+        int h = position * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    //power of two with room for size entries at a load factor of 1/2
+    private static int capacityFor(int size) {
+        return Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+    }
+}
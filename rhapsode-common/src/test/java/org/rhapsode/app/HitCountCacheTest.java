@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+
+public class HitCountCacheTest {
+
+    private static final String CONTENT_FIELD = "c";
+    private static final AtomicInteger WEIGHTS_CREATED = new AtomicInteger(0);
+
+    @Test
+    public void testGenerations() throws Exception {
+        Directory dir = new ByteBuffersDirectory();
+        IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new StandardAnalyzer()));
+        addDocs(writer, "the quick brown fox", 10);
+        addDocs(writer, "the lazy dog", 5);
+        writer.commit();
+
+        Map<Integer, Query> queries = new HashMap<>();
+        queries.put(1, new CountingQuery("fox"));
+        queries.put(2, new CountingQuery("dog"));
+        queries.put(3, new CountingQuery("the"));
+
+        SearchExecutor executor = new SearchExecutor(2, 100);
+        HitCountCache cache = new HitCountCache(executor);
+        DirectoryReader reader = DirectoryReader.open(dir);
+        try {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            Map<Integer, Integer> counts = cache.getCounts(queries, searcher, 0, -1);
+            assertEquals(10, (int) counts.get(1));
+            assertEquals(5, (int) counts.get(2));
+            assertEquals(15, (int) counts.get(3));
+
+            //same reader and ignored version, nothing is recounted
+            assertEquals(3, WEIGHTS_CREATED.get());
+            counts = cache.getCounts(queries, searcher, 0, -1);
+            assertEquals(15, (int) counts.get(3));
+            assertEquals(3, WEIGHTS_CREATED.get());
+
+            //only the new query is counted
+            queries.put(4, new CountingQuery("quick"));
+            counts = cache.getCounts(queries, searcher, 0, -1);
+            assertEquals(10, (int) counts.get(4));
+            assertEquals(4, counts.size());
+            assertEquals(4, WEIGHTS_CREATED.get());
+
+            //ignored set changed, everything is recounted
+            counts = cache.getCounts(queries, searcher, 1, -1);
+            assertEquals(4, counts.size());
+            assertEquals(8, WEIGHTS_CREATED.get());
+
+            //new reader
+            addDocs(writer, "the brown dog", 3);
+            writer.commit();
+            DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+            reader.close();
+            reader = newReader;
+            counts = cache.getCounts(queries, new IndexSearcher(reader), 1, -1);
+            assertEquals(10, (int) counts.get(1));
+            assertEquals(8, (int) counts.get(2));
+            assertEquals(18, (int) counts.get(3));
+        } finally {
+            reader.close();
+            writer.close();
+            cache.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    private void addDocs(IndexWriter writer, String content, int n) throws Exception {
+        for (int i = 0; i < n; i++) {
+            Document d = new Document();
+            d.add(new TextField(CONTENT_FIELD, content, Field.Store.NO));
+            writer.addDocument(d);
+        }
+    }
+
+    private static class CountingQuery extends Query {
+        private final TermQuery termQuery;
+
+        CountingQuery(String term) {
+            termQuery = new TermQuery(new Term(CONTENT_FIELD, term));
+        }
+
+        @Override
+        public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+            WEIGHTS_CREATED.incrementAndGet();
+            return termQuery.createWeight(searcher, scoreMode, boost);
+        }
+
+        @Override
+        public String toString(String field) {
+            return "counting(" + termQuery.toString(field) + ")";
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return sameClassAs(other) && termQuery.equals(((CountingQuery) other).termQuery);
+        }
+
+        @Override
+        public int hashCode() {
+            return classHash() + termQuery.hashCode();
+        }
+    }
+}
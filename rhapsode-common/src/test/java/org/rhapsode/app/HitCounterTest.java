@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+
+public class HitCounterTest {
+
+    private static final String CONTENT_FIELD = "c";
+    private static final String ID_FIELD = "id";
+    private static final String[] WORDS = new String[]{
+            "the", "quick", "brown", "fox", "jumped", "over", "lazy", "dog"
+    };
+
+    @Test
+    public void testSameAsPerQueryCounts() throws Exception {
+        Random r = new Random(42);
+        Directory dir = new ByteBuffersDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+        config.setMaxBufferedDocs(50);//force several segments
+        IndexWriter writer = new IndexWriter(dir, config);
+        for (int i = 0; i < 500; i++) {
+            Document d = new Document();
+            d.add(new StringField(ID_FIELD, Integer.toString(i), Field.Store.YES));
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 10; j++) {
+                sb.append(WORDS[r.nextInt(WORDS.length)]).append(" ");
+            }
+            d.add(new TextField(CONTENT_FIELD, sb.toString(), Field.Store.NO));
+            writer.addDocument(d);
+        }
+        writer.commit();
+        //deletions in some segments but not others
+        for (int i = 0; i < 100; i += 3) {
+            writer.deleteDocuments(new Term(ID_FIELD, Integer.toString(i)));
+        }
+        writer.commit();
+        writer.close();
+
+        Map<Integer, Query> queries = new HashMap<>();
+        int id = 0;
+        for (String w : WORDS) {
+            queries.put(id++, new TermQuery(new Term(CONTENT_FIELD, w)));
+        }
+        //duplicate query should share a weight and still get its own count
+        queries.put(id++, new TermQuery(new Term(CONTENT_FIELD, "fox")));
+        queries.put(id++, new TermQuery(new Term(CONTENT_FIELD, "missing")));
+        queries.put(id++, new PhraseQuery(CONTENT_FIELD, "quick", "brown"));
+        queries.put(id++, new WildcardQuery(new Term(CONTENT_FIELD, "*o*")));
+        queries.put(id++, new MatchAllDocsQuery());
+        BooleanQuery.Builder b = new BooleanQuery.Builder();
+        b.add(new TermQuery(new Term(CONTENT_FIELD, "lazy")), BooleanClause.Occur.MUST);
+        b.add(new TermQuery(new Term(CONTENT_FIELD, "dog")), BooleanClause.Occur.MUST_NOT);
+        queries.put(id++, b.build());
+
+        SearchExecutor executor = new SearchExecutor(3, 100);
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            Map<Integer, Integer> counts = new HitCounter().count(queries, searcher, executor, -1);
+            assertEquals(queries.size(), counts.size());
+            for (Map.Entry<Integer, Query> e : queries.entrySet()) {
+                TotalHitCountCollector collector = new TotalHitCountCollector();
+                searcher.search(e.getValue(), collector);
+                assertEquals(collector.getTotalHits(), (int) counts.get(e.getKey()),
+                        e.getValue().toString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
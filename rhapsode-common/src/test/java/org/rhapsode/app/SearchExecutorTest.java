@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+public class SearchExecutorTest {
+
+    @Test
+    public void testInvokeAll() throws Exception {
+        SearchExecutor executor = new SearchExecutor(4, 100);
+        try {
+            List<Callable<Integer>> callables = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                final int v = i;
+                callables.add(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return v;
+                    }
+                });
+            }
+            List<Future<Integer>> futures = executor.invokeAll(callables, -1);
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i, (int) futures.get(i).get());
+            }
+            assertEquals(0, executor.getRejectedCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        SearchExecutor executor = new SearchExecutor(1, 100);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            List<Callable<Integer>> callables = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                callables.add(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        release.await();
+                        return 1;
+                    }
+                });
+            }
+            long start = System.currentTimeMillis();
+            List<Future<Integer>> futures = executor.invokeAll(callables, 100);
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            //the first is left running but is abandoned, the rest never start
+            for (Future<Integer> f : futures) {
+                assertTrue(f.isCancelled());
+            }
+            assertEquals(1, executor.getActiveCount());
+            release.countDown();
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallerRunsWhenFull() throws Exception {
+        SearchExecutor executor = new SearchExecutor(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            List<Callable<String>> callables = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                callables.add(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        if (Thread.currentThread().getName().startsWith("rhapsode-search")) {
+                            release.await();
+                        } else {
+                            release.countDown();
+                        }
+                        return Thread.currentThread().getName();
+                    }
+                });
+            }
+            List<Future<String>> futures = executor.invokeAll(callables, -1);
+            assertEquals(1, executor.getRejectedCount());
+            assertTrue(!futures.get(2).get().startsWith("rhapsode-search"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+}
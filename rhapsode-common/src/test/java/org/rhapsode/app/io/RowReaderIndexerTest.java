@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.app.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.rhapsode.RhapsodeCollection;
+import org.rhapsode.app.handlers.indexer.FieldTypePair;
+import org.rhapsode.indexer.FileIndexer;
+import org.rhapsode.indexer.RhapsodeIndexerConfig;
+import org.rhapsode.lucene.search.IndexManager;
+import org.rhapsode.lucene.search.SearcherLease;
+import org.rhapsode.util.PathUtils;
+
+public class RowReaderIndexerTest {
+
+    Path root;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("rhapsode-row-indexer");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        PathUtils.deleteDirectory(root);
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        int numRows = 1003;
+        for (int numThreads : new int[]{0, 3}) {
+            RhapsodeCollection rc = buildCollection("collection" + numThreads);
+            IndexManager indexManager = index(rc, numRows, numThreads, 7);
+            try (SearcherLease lease = indexManager.acquire()) {
+                IndexReader reader = lease.getIndexReader();
+                assertEquals(numRows, reader.numDocs());
+                Set<String> ids = new HashSet<>();
+                for (int i = 0; i < reader.maxDoc(); i++) {
+                    Document d = reader.document(i);
+                    ids.add(d.get(rc.getIndexSchema().getUniqueDocField()));
+                }
+                assertEquals(numRows, ids.size());
+                assertEquals(1, lease.getSearcher().count(new TermQuery(new Term("content", "row" + (numRows - 1)))));
+                assertEquals(numRows, lease.getSearcher().count(new TermQuery(new Term("content", "fox"))));
+            } finally {
+                indexManager.close();
+            }
+        }
+    }
+
+    private RhapsodeCollection buildCollection(String name) throws Exception {
+        Path schema = Paths.get(getClass().getResource("/test_index_schema.json").toURI());
+        return RhapsodeCollection.build(root, root.resolve(name), schema);
+    }
+
+    private IndexManager index(RhapsodeCollection rc, int numRows, int numThreads, int batchSize) throws Exception {
+        Path configFile = root.resolve("indexer_config.json");
+        Files.write(configFile, "{}".getBytes(StandardCharsets.UTF_8));
+        RhapsodeIndexerConfig config = RhapsodeIndexerConfig.load(rc, configFile);
+        IndexManager indexManager = IndexManager.openNearRealTime(rc, config.getNrtRefreshMillis());
+        FileIndexer fileIndexer = new FileIndexer(config, indexManager.getIndexWriter());
+
+        Map<String, FieldTypePair> fields = new LinkedHashMap<>();
+        fields.put("text", new FieldTypePair("X-TIKA:content", "text"));
+        fields.put("title", new FieldTypePair("dc:title", "text"));
+        try (RowReaderIndexer rowReaderIndexer = new RowReaderIndexer(fields, fileIndexer, numThreads, batchSize)) {
+            for (int i = 0; i < numRows; i++) {
+                Map<String, String> row = new HashMap<>();
+                row.put("text", "the quick brown fox row" + i);
+                row.put("title", "title " + i);
+                rowReaderIndexer.process(row);
+            }
+            rowReaderIndexer.finish();
+            assertEquals(numRows, rowReaderIndexer.getRowsRead());
+            assertEquals(numRows, rowReaderIndexer.getRowsIndexed());
+        }
+        indexManager.closeWriter();
+        return indexManager;
+    }
+}
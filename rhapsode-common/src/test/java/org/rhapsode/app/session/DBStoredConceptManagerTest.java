@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.app.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.jupiter.api.Test;
+import org.rhapsode.lucene.search.SCField;
+import org.rhapsode.lucene.search.StoredConcept;
+import org.rhapsode.lucene.search.StoredConceptBuilder;
+
+public class DBStoredConceptManagerTest {
+
+    @Test
+    public void testRewrite() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:concepts-rewrite")) {
+            DBStoredConceptManager m = DBStoredConceptManager.load(pool);
+            m.addConcept(concept("apples", "apple apples"));
+            m.addConcept(concept("fruits", "{apples} oranges"));
+            m.addConcept(concept("food", "{fruits} OR {apples}"));
+
+            assertEquals("a (apple apples) b", m.rewriteQuery("a {apples} b"));
+            assertEquals("a ((apple apples) oranges) b", m.rewriteQuery("a {fruits} b"));
+            assertEquals("(((apple apples) oranges) OR (apple apples))", m.rewriteQuery("{food}"));
+            //memoized
+            assertEquals("a ((apple apples) oranges) b", m.rewriteQuery("a {fruits} b"));
+            //regex ranges are left alone
+            assertEquals("a{2,3} (apple apples) b{,4}", m.rewriteQuery("a{2,3} {apples} b{,4}"));
+            assertEquals("no concepts", m.rewriteQuery("no concepts"));
+
+            try {
+                m.rewriteQuery("{bananas}");
+                assertTrue(false, "should have thrown a ParseException");
+            } catch (ParseException e) {
+                assertTrue(e.getMessage().contains("bananas"));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:concepts-invalidation")) {
+            DBStoredConceptManager m = DBStoredConceptManager.load(pool);
+            m.addConcept(concept("fruits", "{apples} oranges"));
+            //concepts can refer to concepts that don't exist yet
+            try {
+                m.rewriteQuery("{fruits}");
+                assertTrue(false, "should have thrown a ParseException");
+            } catch (ParseException e) {
+                assertTrue(e.getMessage().contains("apples"));
+            }
+            m.addConcept(concept("apples", "apple"));
+            assertEquals("((apple) oranges)", m.rewriteQuery("{fruits}"));
+
+            m.updateConcept("apples", "pinklady");
+            assertEquals("((pinklady) oranges)", m.rewriteQuery("{fruits}"));
+
+            m.deleteConcepts();
+            try {
+                m.rewriteQuery("{fruits}");
+                assertTrue(false, "should have thrown a ParseException");
+            } catch (ParseException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void testCycles() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:concepts-cycles")) {
+            DBStoredConceptManager m = DBStoredConceptManager.load(pool);
+            try {
+                m.addConcept(concept("a", "{a} x"));
+                assertTrue(false, "should have thrown an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+            m.addConcept(concept("a", "{b} x"));
+            m.addConcept(concept("b", "{c} y"));
+            try {
+                m.addConcept(concept("c", "{a} z"));
+                assertTrue(false, "should have thrown an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+            m.addConcept(concept("c", "z"));
+            try {
+                m.updateConcept("c", "{a}");
+                assertTrue(false, "should have thrown an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+            assertEquals("(((z) y) x)", m.rewriteQuery("{a}"));
+            assertEquals(3, m.getConceptMap().size());
+        }
+    }
+
+    private static StoredConcept concept(String name, String query) {
+        return new StoredConceptBuilder(name).add(SCField.CONCEPT_QUERY, query).build();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.app.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class DynamicParameterConfigTest {
+
+    @Test
+    public void testWriteThrough() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:dpc-write-through")) {
+            DynamicParameterConfig config = DynamicParameterConfig.load(pool);
+            assertEquals(1024, config.getInt(DynamicParameters.MAX_BOOLEAN_CLAUSES));
+            assertTrue(config.getBoolean(DynamicParameters.CONC_PARALLEL));
+
+            config.update(DynamicParameters.MAX_BOOLEAN_CLAUSES, "2048");
+            config.update(DynamicParameters.CONC_PARALLEL, "false");
+            config.update(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS,
+                    StringListDynamicParameter.valueToString(Arrays.asList("title", "content")));
+            assertEquals(2048, config.getInt(DynamicParameters.MAX_BOOLEAN_CLAUSES));
+            assertFalse(config.getBoolean(DynamicParameters.CONC_PARALLEL));
+
+            //callers may modify the list they get back
+            List<String> fields = config.getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS);
+            fields.add("author");
+            assertEquals(Arrays.asList("title", "content"),
+                    config.getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS));
+
+            //a fresh load sees what was written
+            DynamicParameterConfig reloaded = DynamicParameterConfig.load(pool);
+            assertEquals(2048, reloaded.getInt(DynamicParameters.MAX_BOOLEAN_CLAUSES));
+            assertFalse(reloaded.getBoolean(DynamicParameters.CONC_PARALLEL));
+            assertEquals(Arrays.asList("title", "content"),
+                    reloaded.getStringList(DynamicParameters.FILE_VIEWER_DISPLAY_FIELDS));
+        }
+    }
+
+    @Test
+    public void testUnparseableUpdate() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:dpc-unparseable")) {
+            DynamicParameterConfig config = DynamicParameterConfig.load(pool);
+            try {
+                config.update(DynamicParameters.MAX_BOOLEAN_CLAUSES, "not a number");
+                assertTrue(false, "should have thrown an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+            assertEquals(1024, config.getInt(DynamicParameters.MAX_BOOLEAN_CLAUSES));
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:dpc-concurrent")) {
+            final DynamicParameterConfig config = DynamicParameterConfig.load(pool);
+            final AtomicBoolean done = new AtomicBoolean(false);
+            ExecutorService ex = Executors.newFixedThreadPool(5);
+            try {
+                List<Future<Integer>> readers = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    readers.add(ex.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            int reads = 0;
+                            while (!done.get()) {
+                                int v = config.getInt(DynamicParameters.MAX_BOOLEAN_CLAUSES);
+                                if (v < 1024 || v > 2048) {
+                                    throw new IllegalStateException("unexpected value: " + v);
+                                }
+                                reads++;
+                            }
+                            return reads;
+                        }
+                    }));
+                }
+                Future<Integer> writer = ex.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws SQLException {
+                        try {
+                            for (int i = 1024; i <= 2048; i++) {
+                                config.update(DynamicParameters.MAX_BOOLEAN_CLAUSES, Integer.toString(i));
+                            }
+                        } finally {
+                            done.set(true);
+                        }
+                        return 0;
+                    }
+                });
+                writer.get();
+                for (Future<Integer> f : readers) {
+                    assertTrue(f.get() > 0);
+                }
+                assertEquals(2048, config.getInt(DynamicParameters.MAX_BOOLEAN_CLAUSES));
+            } finally {
+                ex.shutdownNow();
+            }
+        }
+    }
+}
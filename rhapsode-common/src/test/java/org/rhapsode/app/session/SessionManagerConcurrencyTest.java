@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.app.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.rhapsode.lucene.search.SCField;
+import org.rhapsode.lucene.search.SQField;
+import org.rhapsode.lucene.search.StoredConceptBuilder;
+import org.rhapsode.lucene.search.StoredQuery;
+import org.rhapsode.lucene.search.StoredQueryBuilder;
+
+public class SessionManagerConcurrencyTest {
+
+    private static final int NUM_CLIENTS = 50;
+    private static final int OPS_PER_CLIENT = 20;
+    private static final int MAX_CONNECTIONS = 8;
+
+    @Test
+    public void testConcurrentClients() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:session-stress",
+                MAX_CONNECTIONS, ConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS)) {
+            final SessionManager sessionManager = SessionManager.load(pool);
+            final CountDownLatch start = new CountDownLatch(1);
+            ExecutorService ex = Executors.newFixedThreadPool(NUM_CLIENTS);
+            try {
+                List<Future<Integer>> futures = new ArrayList<>();
+                for (int i = 0; i < NUM_CLIENTS; i++) {
+                    futures.add(ex.submit(new Client(i, sessionManager, start)));
+                }
+                start.countDown();
+                for (Future<Integer> f : futures) {
+                    f.get(5, TimeUnit.MINUTES);
+                }
+            } finally {
+                ex.shutdownNow();
+            }
+            assertTrue(pool.getOpenConnections() <= MAX_CONNECTIONS);
+
+            Map<Integer, StoredQuery> queries = sessionManager.getStoredQueryManager().getStoredQueryMap();
+            assertEquals(NUM_CLIENTS * OPS_PER_CLIENT, queries.size());
+            Set<String> names = new HashSet<>();
+            for (StoredQuery sq : queries.values()) {
+                names.add(sq.getQueryName());
+            }
+            assertEquals(NUM_CLIENTS * OPS_PER_CLIENT, names.size());
+            assertEquals(NUM_CLIENTS * OPS_PER_CLIENT,
+                    sessionManager.getStoredConceptManager().getConceptMap().size());
+            assertTrue(sessionManager.getCollectionsHistory().getPaths().size() >= 10);
+        }
+    }
+
+    private static class Client implements Callable<Integer> {
+        private final int clientId;
+        private final SessionManager sessionManager;
+        private final CountDownLatch start;
+
+        Client(int clientId, SessionManager sessionManager, CountDownLatch start) {
+            this.clientId = clientId;
+            this.sessionManager = sessionManager;
+            this.start = start;
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            start.await();
+            DBStoredQueryManager queryManager = sessionManager.getStoredQueryManager();
+            DBStoredConceptManager conceptManager = sessionManager.getStoredConceptManager();
+            int ops = 0;
+            for (int i = 0; i < OPS_PER_CLIENT; i++) {
+                String name = "c" + clientId + "_" + i;
+                String main = "main" + clientId + " " + i;
+
+                StoredQuery sq = new StoredQueryBuilder(StoredQuery.NOT_YET_LOADED, name)
+                        .add(SQField.MAIN_QUERY, main).build();
+                queryManager.addQuery(sq);
+                StoredQuery fetched = queryManager.getStoredQuery(sq.getId());
+                assertEquals(name, fetched.getQueryName());
+                assertEquals(main, fetched.getMainQueryString());
+                ops += 2;
+
+                conceptManager.addConcept(new StoredConceptBuilder(name)
+                        .add(SCField.CONCEPT_QUERY, main).build());
+                assertEquals("a (" + main + ") b", conceptManager.rewriteQuery("a {" + name + "} b"));
+                ops += 2;
+
+                sessionManager.getCollectionsHistory().addLoaded(Paths.get(name));
+                //trimming the history isn't atomic; only check that reads work
+                assertTrue(sessionManager.getCollectionsHistory().getPaths().size() > 0);
+                ops += 2;
+
+                if (i % 5 == 0) {
+                    queryManager.getStoredQueryMap();
+                    sessionManager.getDynamicParameterConfig().update(
+                            DynamicParameters.MAX_BOOLEAN_CLAUSES, Integer.toString(1024 + clientId));
+                    ops += 2;
+                }
+            }
+            return ops;
+        }
+    }
+}
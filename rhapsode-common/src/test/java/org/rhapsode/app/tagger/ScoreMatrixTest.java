@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.app.tagger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.rhapsode.util.PathUtils;
+
+public class ScoreMatrixTest {
+
+    private static final List<Integer> QUERY_IDS = Arrays.asList(3, 1, 2);
+    private static final List<String> QUERY_NAMES = Arrays.asList("three", "one", "two");
+
+    @Test
+    public void testReportOrder() throws Exception {
+        Path tmp = Files.createTempDirectory("score-matrix");
+        try (ScoreMatrix matrix = new ScoreMatrix(QUERY_IDS, QUERY_NAMES, Long.MAX_VALUE, tmp.resolve("spill"))) {
+            fill(matrix);
+            assertFalse(matrix.hasSpilled());
+            checkAll(matrix);
+            checkTopN(matrix);
+        } finally {
+            PathUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    public void testSpilled() throws Exception {
+        Path tmp = Files.createTempDirectory("score-matrix");
+        try (ScoreMatrix matrix = new ScoreMatrix(QUERY_IDS, QUERY_NAMES, 0, tmp.resolve("spill"))) {
+            fill(matrix);
+            assertTrue(matrix.hasSpilled());
+            checkAll(matrix);
+            checkTopN(matrix);
+        } finally {
+            PathUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    public void testSmallBlocks() throws Exception {
+        Path tmp = Files.createTempDirectory("score-matrix");
+        try (ScoreMatrix matrix = new ScoreMatrix(QUERY_IDS, QUERY_NAMES, 8, tmp.resolve("spill"))) {
+            fill(matrix);
+            assertTrue(matrix.hasSpilled());
+            for (int maxEntries : new int[]{1, 2, 3}) {
+                matrix.setMaxEntriesPerBlock(maxEntries);
+                checkAll(matrix);
+                checkTopN(matrix);
+            }
+        } finally {
+            PathUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    public void testConcurrentTotals() throws Exception {
+        int numQueries = 20;
+        int numFiles = 50000;
+        final List<Integer> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < numQueries; i++) {
+            ids.add(i);
+            names.add("q" + i);
+        }
+        Path tmp = Files.createTempDirectory("score-matrix");
+        ExecutorService es = Executors.newFixedThreadPool(8);
+        try (final ScoreMatrix matrix = new ScoreMatrix(ids, names, 1024 * 1024, tmp.resolve("spill"))) {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (final Integer id : ids) {
+                futures.add(es.submit(new java.util.concurrent.Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int[] ordinals = new int[numFiles];
+                        float[] weights = new float[numFiles];
+                        for (int i = 0; i < numFiles; i++) {
+                            ordinals[i] = matrix.getFileOrdinal("f" + i, "d" + i, "r" + i);
+                            weights[i] = 1.0f;
+                        }
+                        matrix.addColumn(id, ordinals, weights, numFiles);
+                        return 1;
+                    }
+                }));
+            }
+            for (Future<Integer> f : futures) {
+                f.get();
+            }
+            assertEquals(numFiles, matrix.getNumFiles());
+            double[] totals = matrix.getTotals();
+            for (int i = 0; i < numFiles; i++) {
+                assertEquals((double) numQueries, totals[i], 0.00001);
+            }
+            try (TaggerScores.ScoredFileCursor cursor = matrix.getScoredFiles(10)) {
+                ScoredFile f = cursor.next();
+                //all ties, so sorted by file id
+                assertEquals("f0", f.getFileId());
+                assertEquals(numQueries, f.getScores().size());
+                assertEquals("f1", cursor.next().getFileId());
+                assertEquals("f10", cursor.next().getFileId());
+            }
+        } finally {
+            es.shutdownNow();
+            PathUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    public void testTotalsDontDependOnAddOrder() throws Exception {
+        //float sums aren't associative: (1e17 + 1) - 1e17 == 0, but (1e17 - 1e17) + 1 == 1
+        List<Integer> ids = Arrays.asList(0, 1, 2);
+        List<String> names = Arrays.asList("big", "one", "negBig");
+        float[] weights = new float[]{1e17f, 1.0f, -1e17f};
+        Path tmp = Files.createTempDirectory("score-matrix");
+        try (ScoreMatrix inOrder = new ScoreMatrix(ids, names, Long.MAX_VALUE, tmp.resolve("spill1"));
+             ScoreMatrix outOfOrder = new ScoreMatrix(ids, names, 0, tmp.resolve("spill2"))) {
+            int a = inOrder.getFileOrdinal("a", "A", "a.txt");
+            for (int q : new int[]{0, 1, 2}) {
+                inOrder.addColumn(q, new int[]{a}, new float[]{weights[q]}, 1);
+            }
+            a = outOfOrder.getFileOrdinal("a", "A", "a.txt");
+            for (int q : new int[]{0, 2, 1}) {
+                outOfOrder.addColumn(q, new int[]{a}, new float[]{weights[q]}, 1);
+            }
+            double expected = ((double) weights[0] + weights[1]) + weights[2];
+            assertEquals(expected, inOrder.getTotals()[0], 0.0);
+            assertEquals(expected, outOfOrder.getTotals()[0], 0.0);
+        } finally {
+            PathUtils.deleteDirectory(tmp);
+        }
+    }
+
+    @Test
+    public void testWeights() {
+        assertEquals(1.0f, Tagger.calcWeight(TaggerRequest.NORM_TYPE.ONE, 10, 0.5f), 0.00001f);
+        assertEquals(0.25f, Tagger.calcWeight(TaggerRequest.NORM_TYPE.INVERSE_RANK, 4, 0.5f), 0.00001f);
+        assertEquals(0.5f, Tagger.calcWeight(TaggerRequest.NORM_TYPE.WEIGHTED_INVERSE_RANK, 4, 0.5f), 0.00001f);
+        assertEquals(0.5f, Tagger.calcWeight(TaggerRequest.NORM_TYPE.INVERSE_PRIORITY, 4, 0.5f), 0.00001f);
+        assertEquals(0.001f, Tagger.calcWeight(TaggerRequest.NORM_TYPE.INVERSE_RANK, 100000, 0.5f), 0.00001f);
+    }
+
+    private void fill(ScoreMatrix matrix) throws Exception {
+        int a = matrix.getFileOrdinal("a", "A", "a.txt");
+        int b = matrix.getFileOrdinal("b", "B", "b.txt");
+        int c = matrix.getFileOrdinal("c", "C", "c.txt");
+        int d = matrix.getFileOrdinal("d", "D", "d.txt");
+        //last display name wins
+        assertEquals(c, matrix.getFileOrdinal("c", "C2", "c.txt"));
+        matrix.addColumn(3, new int[]{c, a, b}, new float[]{1.0f, 0.5f, 0.25f}, 3);
+        matrix.addColumn(1, new int[]{b, d, -1}, new float[]{0.75f, 0.5f, 0.0f}, 2);
+        matrix.addColumn(2, new int[]{a}, new float[]{0.25f}, 1);
+    }
+
+    //totals: a=0.75, b=1.0, c=1.0, d=0.5
+    private void checkAll(ScoreMatrix matrix) throws Exception {
+        assertEquals(4, matrix.getNumFiles());
+        assertEquals(QUERY_IDS, matrix.getQueryIds());
+        try (TaggerScores.ScoredFileCursor cursor = matrix.getScoredFiles(-1)) {
+            ScoredFile f = cursor.next();
+            assertEquals("b", f.getFileId());
+            assertEquals(1.0f, f.getTotal(), 0.00001f);
+            assertEquals(2, f.getScores().size());
+            assertEquals(0.25f, f.getScores().get(3), 0.00001f);
+            assertEquals(0.75f, f.getScores().get(1), 0.00001f);
+
+            f = cursor.next();
+            assertEquals("c", f.getFileId());
+            assertEquals("C2", f.getDisplayName());
+            assertEquals(1, f.getScores().size());
+
+            f = cursor.next();
+            assertEquals("a", f.getFileId());
+            assertEquals(0.75f, f.getTotal(), 0.00001f);
+            assertNull(f.getScores().get(1));
+
+            f = cursor.next();
+            assertEquals("d", f.getFileId());
+            assertEquals("d.txt", f.getRelPath());
+            assertNull(cursor.next());
+        }
+    }
+
+    private void checkTopN(ScoreMatrix matrix) throws Exception {
+        try (TaggerScores.ScoredFileCursor cursor = matrix.getScoredFiles(2)) {
+            assertEquals("b", cursor.next().getFileId());
+            assertEquals("c", cursor.next().getFileId());
+            assertNull(cursor.next());
+        }
+        try (TaggerScores.ScoredFileCursor cursor = matrix.getScoredFiles(0)) {
+            assertNull(cursor.next());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.app.tasks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.rhapsode.app.handlers.admin.ReportRequest;
+import org.rhapsode.app.tagger.TaggerRequest;
+import org.rhapsode.lucene.search.MaxResultsQuery;
+
+public class ReportTaskManagerTest {
+
+    @Test
+    public void testConcurrencyLimitAndCancel() throws Exception {
+        ReportTaskManager manager = new ReportTaskManager(1);
+        try {
+            BlockingTask first = new BlockingTask("first");
+            int firstId = manager.submit(first);
+            assertTrue(first.started.await(10, TimeUnit.SECONDS));
+            assertEquals(Tasker.STATE.PROCESSING, manager.getStatus(firstId).getState());
+
+            try {
+                manager.submit(new BlockingTask("second"));
+                assertTrue(false, "should have rejected a second report");
+            } catch (RejectedExecutionException e) {
+                //expected
+            }
+            assertEquals(1, manager.getStatuses().size());
+
+            assertTrue(manager.cancel(firstId));
+            RhapsodeTaskStatus status = waitForCompletion(manager, firstId);
+            assertEquals(Tasker.REASON_FOR_COMPLETION.USER_INTERRUPTION, status.getReasonForCompletion());
+            assertEquals(Paths.get("reports", "first.xlsx"), ((TaggerTaskStatus) status).getReportFile());
+            assertFalse(manager.cancel(firstId));
+
+            //now there's room for another
+            BlockingTask second = new BlockingTask("second");
+            int secondId = manager.submit(second);
+            assertTrue(second.started.await(10, TimeUnit.SECONDS));
+            second.release.countDown();
+            status = waitForCompletion(manager, secondId);
+            assertEquals(Tasker.REASON_FOR_COMPLETION.SUCCESS, status.getReasonForCompletion());
+            assertEquals(2, manager.getStatuses().size());
+            assertEquals(0, manager.getRunningCount());
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testHighlightThreadsAreShared() throws Exception {
+        ReportTaskManager manager = new ReportTaskManager(2, 3);
+        try {
+            ExecutorService es = manager.getHighlightExecutor();
+            //room for each report's workers to run at the same time
+            final CountDownLatch allStarted = new CountDownLatch(6);
+            final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(es.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        threadNames.add(Thread.currentThread().getName());
+                        allStarted.countDown();
+                        try {
+                            allStarted.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(0, allStarted.getCount());
+            assertEquals(6, threadNames.size());
+
+            //a later report reuses the threads
+            final Set<String> laterNames = Collections.synchronizedSet(new HashSet<String>());
+            es.submit(new Runnable() {
+                @Override
+                public void run() {
+                    laterNames.add(Thread.currentThread().getName());
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertTrue(threadNames.containsAll(laterNames));
+            assertFalse(es.isShutdown());
+        } finally {
+            manager.shutdown();
+        }
+        assertTrue(manager.getHighlightExecutor().isShutdown());
+    }
+
+    private static RhapsodeTaskStatus waitForCompletion(ReportTaskManager manager, int id) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        RhapsodeTaskStatus status = manager.getStatus(id);
+        while (status.getState() != Tasker.STATE.COMPLETED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            status = manager.getStatus(id);
+        }
+        assertEquals(Tasker.STATE.COMPLETED, status.getState());
+        return status;
+    }
+
+    //stands in for the tagger; runs until it is released or asked to stop
+    private static class BlockingTask extends TaggerTask {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingTask(String reportName) {
+            super(new TaggerRequest(Collections.<Integer, MaxResultsQuery>emptyMap(), null, "rel_path",
+                    Paths.get("reports"), reportName, ReportRequest.REPORT_TYPE.NO_LINKS, -1,
+                    TaggerRequest.NORM_TYPE.ONE), null);
+        }
+
+        @Override
+        public RhapsodeTaskStatus getIntermediateResult() {
+            return new TaggerTaskStatus(Tasker.STATE.PROCESSING, Tasker.REASON_FOR_COMPLETION.NA,
+                    new Date(), "running", getRequest());
+        }
+
+        @Override
+        public RhapsodeTaskStatus call() throws Exception {
+            started.countDown();
+            while (!pleaseStop) {
+                if (release.await(10, TimeUnit.MILLISECONDS)) {
+                    return new TaggerTaskStatus(Tasker.STATE.COMPLETED, Tasker.REASON_FOR_COMPLETION.SUCCESS,
+                            new Date(), "done", getRequest());
+                }
+            }
+            return new TaggerTaskStatus(Tasker.STATE.COMPLETED, Tasker.REASON_FOR_COMPLETION.USER_INTERRUPTION,
+                    new Date(), "cancelled", getRequest());
+        }
+    }
+}
@@ -30,26 +30,59 @@
 package org.rhapsode.app.utils;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.memory.MemoryIndex;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.spans.SpanCollector;
 import org.apache.lucene.search.spans.SpanNearQuery;
 import org.apache.lucene.search.spans.SpanOrQuery;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
 import org.apache.tika.sax.ToHTMLContentHandler;
 
 import org.junit.jupiter.api.Test;
 import org.rhapsode.app.contants.H;
 import org.rhapsode.app.decorators.RhapsodeXHTMLHandler;
+import org.rhapsode.lucene.analysis.charoffsets.IndexedSpanWeights;
 import org.rhapsode.lucene.search.HighlightingQuery;
+import org.rhapsode.text.Offset;
+import org.rhapsode.text.PriorityOffset;
+import org.rhapsode.text.PriorityOffsetUtil;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
@@ -120,5 +153,261 @@ public class DocHighlighterTest {
         //We'd probably want to have a "joint" span of "quick brown fox as"
     }
 
-}
+    @Test
+    public void testReuse() throws Exception {
+        //buffers are reused across values on a thread; make sure nothing leaks from one value to the next
+        Set<HighlightingQuery> highlightingQueries = new HashSet<>();
+        highlightingQueries.add(new HighlightingQuery(new SpanTermQuery(new Term(field, "fox")), 1, "this-the-two"));
+        Analyzer analyzer = new WhitespaceAnalyzer();
+        String shortString = "a fox";
+        String expected = highlightReanalyzing(shortString, highlightingQueries, analyzer);
+        highlightReanalyzing("the quick brown fox as well as some other fox and quick", highlightingQueries, analyzer);
+        assertEquals(expected, highlightReanalyzing(shortString, highlightingQueries, analyzer));
+        assertTrue(expected.contains("a <span id=\"first\" class=\"this-the-two\">fox</span>"));
+    }
+
+    @Test
+    public void testIndexedOffsets() throws Exception {
+        String s = "the quick brown fox as well as some other fox and quick";
+        SpanQuery spanQuery = new SpanOrQuery(foxQuick, foxAs);
+        Set<HighlightingQuery> highlightingQueries = new HashSet<>();
+        highlightingQueries.add(new HighlightingQuery(spanQuery, 2, "this-the-one"));
+        highlightingQueries.add(new HighlightingQuery(new SpanTermQuery(new Term(field, "fox")), 1, "this-the-two"));
+        Analyzer analyzer = new WhitespaceAnalyzer();
+        String expected = highlightReanalyzing(s, highlightingQueries, analyzer);
+
+        for (FieldType fieldType : new FieldType[]{getPostingsOffsetsType(), getTermVectorOffsetsType()}) {
+            try (Directory dir = new ByteBuffersDirectory()) {
+                IndexSearcher searcher = buildIndex(dir, fieldType, s, analyzer);
+                try {
+                    assertEquals(expected, highlightFromIndex(s, highlightingQueries, searcher, 2));
+                } finally {
+                    searcher.getIndexReader().close();
+                }
+            }
+        }
+
+        //no offsets in the index
+        FieldType noOffsets = new FieldType(getPostingsOffsetsType());
+        noOffsets.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        try (Directory dir = new ByteBuffersDirectory()) {
+            IndexSearcher searcher = buildIndex(dir, noOffsets, s, analyzer);
+            try {
+                assertFalse(new DocHighlighter().highlightSingleFieldValueFromIndex(field, s, highlightingQueries,
+                        new IndexedSpanWeights(searcher), 2, new AtomicBoolean(false), initXHTML(new ToHTMLContentHandler())));
+            } finally {
+                searcher.getIndexReader().close();
+            }
+        }
+    }
+
+    @Test
+    public void testIndexedWeightsAreShared() throws Exception {
+        String s = "the quick brown fox as well as some other fox and quick";
+        SpanQuery spanQuery = new SpanOrQuery(foxQuick, foxAs);
+        Set<HighlightingQuery> highlightingQueries = new HashSet<>();
+        highlightingQueries.add(new HighlightingQuery(spanQuery, 2, "this-the-one"));
+        highlightingQueries.add(new HighlightingQuery(new SpanTermQuery(new Term(field, "fox")), 1, "this-the-two"));
+        Analyzer analyzer = new WhitespaceAnalyzer();
+
+        try (Directory dir = new ByteBuffersDirectory()) {
+            IndexSearcher searcher = buildIndex(dir, getPostingsOffsetsType(), s, analyzer);
+            try {
+                //one set of weights for every document, as in a report
+                IndexedSpanWeights weights = new IndexedSpanWeights(searcher);
+                for (int docId = 0; docId < searcher.getIndexReader().maxDoc(); docId++) {
+                    String v = searcher.doc(docId).get(field);
+                    assertEquals(highlightReanalyzing(v, highlightingQueries, analyzer),
+                            highlightFromIndex(v, highlightingQueries, weights, docId));
+                }
+                assertSame(weights.getWeight(spanQuery), weights.getWeight(spanQuery));
+            } finally {
+                searcher.getIndexReader().close();
+            }
+        }
+    }
+
+    @Test
+    public void testRandomizedSameAsFreshAnalysis() throws Exception {
+        //the reused per-thread buffers must give exactly the same output as
+        //analyzing each value into a fresh MemoryIndex and offsets map
+        Random r = new Random(20191018L);
+        String[] vocab = new String[]{"fox", "quick", "brown", "as", "the", "dog", "lazy", "and", "fox's"};
+        Analyzer[] analyzers = new Analyzer[]{new WhitespaceAnalyzer(), new StandardAnalyzer()};
+        for (int i = 0; i < 500; i++) {
+            //every so often, a value large enough that the buffers are released afterwards
+            int numWords = (i % 50 == 49) ? 20000 + r.nextInt(5000) : r.nextInt(60);
+            String s = randomValue(r, vocab, numWords);
+            Set<HighlightingQuery> highlightingQueries = new HashSet<>();
+            int numQueries = 1 + r.nextInt(4);
+            for (int q = 0; q < numQueries; q++) {
+                highlightingQueries.add(new HighlightingQuery(randomSpanQuery(r, vocab, 2),
+                        r.nextInt(3), "class-" + q));
+            }
+            Analyzer analyzer = analyzers[r.nextInt(analyzers.length)];
+            assertEquals(highlightFreshlyAnalyzed(s, highlightingQueries, analyzer),
+                    highlightReanalyzing(s, highlightingQueries, analyzer), s);
+        }
+    }
+
+    private String randomValue(Random r, String[] vocab, int numWords) {
+        String[] separators = new String[]{" ", " ", " ", "  ", ", ", ". ", "\n", "\r\n", "\t"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numWords; i++) {
+            sb.append(vocab[r.nextInt(vocab.length)]);
+            sb.append(separators[r.nextInt(separators.length)]);
+        }
+        return sb.toString();
+    }
 
+    private SpanQuery randomSpanQuery(Random r, String[] vocab, int depth) {
+        int type = (depth == 0) ? 0 : r.nextInt(3);
+        if (type == 0) {
+            return new SpanTermQuery(new Term(field, vocab[r.nextInt(vocab.length)]));
+        }
+        SpanQuery[] clauses = new SpanQuery[2 + r.nextInt(2)];
+        for (int i = 0; i < clauses.length; i++) {
+            clauses[i] = randomSpanQuery(r, vocab, depth - 1);
+        }
+        if (type == 1) {
+            return new SpanOrQuery(clauses);
+        }
+        return new SpanNearQuery(clauses, r.nextInt(4), r.nextBoolean());
+    }
+
+    //the highlighting as it was before the buffers were reused: a new
+    //MemoryIndex and a map of char offsets for every value
+    private String highlightFreshlyAnalyzed(String s, Set<HighlightingQuery> highlightingQueries,
+                                            Analyzer analyzer) throws IOException, SAXException {
+        ContentHandler handler = new ToHTMLContentHandler();
+        RhapsodeXHTMLHandler xhtml = initXHTML(handler);
+        List<PriorityOffset> tokenOffsets = new ArrayList<>();
+        final Map<Integer, Offset> charOffsets = new HashMap<>();
+        MemoryIndex index = new MemoryIndex(true);
+        index.addField(field, s, analyzer);
+        index.freeze();
+        IndexSearcher searcher = index.createSearcher();
+        IndexReader reader = searcher.getIndexReader();
+        SpanCollector collector = new SpanCollector() {
+            @Override
+            public void collectLeaf(PostingsEnum postingsEnum, int position, Term term) throws IOException {
+                charOffsets.put(position, new Offset(postingsEnum.startOffset(), postingsEnum.endOffset()));
+            }
+
+            @Override
+            public void reset() {
+            }
+        };
+        for (HighlightingQuery hq : highlightingQueries) {
+            SpanQuery sq = (SpanQuery) hq.getSpanQuery().rewrite(reader);
+            SpanWeight weight = sq.createWeight(searcher, ScoreMode.COMPLETE_NO_SCORES, 1.0f);
+            Spans spans = weight.getSpans(reader.leaves().get(0), SpanWeight.Postings.OFFSETS);
+            if (spans == null) {
+                continue;
+            }
+            while (spans.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+                    tokenOffsets.add(new PriorityOffset(spans.startPosition(), spans.endPosition(),
+                            hq.getPriority(), hq.getSpanClass()));
+                    spans.collect(collector);
+                }
+            }
+        }
+        boolean anythingHighlighted = false;
+        int last = 0;
+        for (PriorityOffset offset : PriorityOffsetUtil.removeOverlapsAndSort(tokenOffsets)) {
+            int start = charOffsets.get(offset.startOffset()).startOffset();
+            int end = charOffsets.get(offset.endOffset() - 1).endOffset();
+            writeWithNewLines(s.substring(last, start), xhtml);
+            if (!anythingHighlighted) {
+                xhtml.startElement(H.SPAN, H.ID, H.JUMP_TO_FIRST, H.CLASS, offset.getLabel());
+                anythingHighlighted = true;
+            } else {
+                xhtml.startElement(H.SPAN, H.CLASS, offset.getLabel());
+            }
+            writeWithNewLines(s.substring(start, end), xhtml);
+            xhtml.endElement(H.SPAN);
+            last = end;
+        }
+        writeWithNewLines(s.substring(last), xhtml);
+        xhtml.endElement(H.BODY);
+        xhtml.endDocument();
+        return handler.toString();
+    }
+
+    private void writeWithNewLines(String s, RhapsodeXHTMLHandler xhtml) throws SAXException {
+        Matcher m = Pattern.compile("(?:\r\n|[\n\r])").matcher(s);
+        int last = 0;
+        while (m.find()) {
+            xhtml.characters(s.substring(last, m.start()));
+            xhtml.br();
+            last = m.end();
+        }
+        xhtml.characters(s.substring(last));
+    }
+
+    private String highlightReanalyzing(String s, Set<HighlightingQuery> highlightingQueries,
+                                        Analyzer analyzer) throws IOException, SAXException {
+        ContentHandler handler = new ToHTMLContentHandler();
+        RhapsodeXHTMLHandler xhtml = initXHTML(handler);
+        new DocHighlighter().highlightSingleFieldValue(field, s, highlightingQueries, analyzer,
+                new AtomicBoolean(false), xhtml);
+        xhtml.endElement(H.BODY);
+        xhtml.endDocument();
+        return handler.toString();
+    }
+
+    private String highlightFromIndex(String s, Set<HighlightingQuery> highlightingQueries,
+                                      IndexSearcher searcher, int docId) throws IOException, SAXException {
+        return highlightFromIndex(s, highlightingQueries, new IndexedSpanWeights(searcher), docId);
+    }
+
+    private String highlightFromIndex(String s, Set<HighlightingQuery> highlightingQueries,
+                                      IndexedSpanWeights weights, int docId) throws IOException, SAXException {
+        ContentHandler handler = new ToHTMLContentHandler();
+        RhapsodeXHTMLHandler xhtml = initXHTML(handler);
+        assertTrue(new DocHighlighter().highlightSingleFieldValueFromIndex(field, s, highlightingQueries,
+                weights, docId, new AtomicBoolean(false), xhtml));
+        xhtml.endElement(H.BODY);
+        xhtml.endDocument();
+        return handler.toString();
+    }
+
+    private RhapsodeXHTMLHandler initXHTML(ContentHandler handler) throws SAXException {
+        RhapsodeXHTMLHandler xhtml = new RhapsodeXHTMLHandler(handler);
+        RhapsodeXHTMLHandler.simpleInit(xhtml);
+        return xhtml;
+    }
+
+    //target doc is at docId 2
+    private IndexSearcher buildIndex(Directory dir, FieldType fieldType, String s,
+                                     Analyzer analyzer) throws IOException {
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(analyzer))) {
+            for (String v : new String[]{"quick fox", "as fox as", s, "fox"}) {
+                Document d = new Document();
+                d.add(new Field(field, v, fieldType));
+                writer.addDocument(d);
+            }
+        }
+        return new IndexSearcher(DirectoryReader.open(dir));
+    }
+
+    private FieldType getPostingsOffsetsType() {
+        FieldType fieldType = new FieldType();
+        fieldType.setStored(true);
+        fieldType.setTokenized(true);
+        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        return fieldType;
+    }
+
+    private FieldType getTermVectorOffsetsType() {
+        FieldType fieldType = new FieldType();
+        fieldType.setStored(true);
+        fieldType.setTokenized(true);
+        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        fieldType.setStoreTermVectors(true);
+        fieldType.setStoreTermVectorPositions(true);
+        fieldType.setStoreTermVectorOffsets(true);
+        return fieldType;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+package org.rhapsode.indexer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.tika.batch.fs.FSProperties;
+import org.apache.tika.metadata.Metadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.rhapsode.RhapsodeCollection;
+import org.rhapsode.lucene.search.IndexManager;
+import org.rhapsode.lucene.search.SearcherLease;
+import org.rhapsode.util.PathUtils;
+
+public class FileIndexerTest {
+
+    Path root;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("rhapsode-file-indexer");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        PathUtils.deleteDirectory(root);
+    }
+
+    @Test
+    public void testIdenticalFilesWithDigestIds() throws Exception {
+        Path schema = Paths.get(getClass().getResource("/test_index_schema.json").toURI());
+        RhapsodeCollection rc = RhapsodeCollection.build(root, root.resolve("collection"), schema);
+        Path configFile = root.resolve("indexer_config.json");
+        Files.write(configFile, "{}".getBytes(StandardCharsets.UTF_8));
+        RhapsodeIndexerConfig config = RhapsodeIndexerConfig.load(rc, configFile);
+        config.setIdStrategy(RhapsodeIndexerConfig.ID_STRATEGY.DIGEST);
+
+        IndexManager indexManager = IndexManager.openNearRealTime(rc, config.getNrtRefreshMillis());
+        try {
+            FileIndexer fileIndexer = new FileIndexer(config, indexManager.getIndexWriter());
+            //byte-identical files at two paths
+            fileIndexer.writeDocument(file("a/copy.txt"));
+            fileIndexer.writeDocument(file("b/copy.txt"));
+            //reindexing one of them replaces only its own block
+            fileIndexer.writeDocument(file("a/copy.txt"));
+            indexManager.closeWriter();
+
+            try (SearcherLease lease = indexManager.acquire()) {
+                IndexReader reader = lease.getIndexReader();
+                assertEquals(2, reader.numDocs());
+                String fileIdField = rc.getIndexSchema().getUniqueFileField();
+                Set<String> fileIds = new HashSet<>();
+                for (ScoreDoc scoreDoc : lease.getSearcher().search(new MatchAllDocsQuery(), 10).scoreDocs) {
+                    Document d = lease.getSearcher().doc(scoreDoc.doc);
+                    fileIds.add(d.get(fileIdField));
+                }
+                assertEquals(2, fileIds.size());
+                assertTrue(!fileIds.contains(null));
+            }
+        } finally {
+            indexManager.close();
+        }
+    }
+
+    private List<Metadata> file(String relPath) {
+        Metadata m = new Metadata();
+        m.set(FSProperties.FS_REL_PATH, relPath);
+        m.set("X-TIKA:content", "the quick brown fox");
+        m.set("X-TIKA:digest:MD5", "d41d8cd98f00b204e9800998ecf8427e");
+        return Collections.singletonList(m);
+    }
+}
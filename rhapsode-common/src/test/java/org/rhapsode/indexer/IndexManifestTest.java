@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.indexer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.rhapsode.util.PathUtils;
+
+public class IndexManifestTest {
+
+    Path root;
+    Path docs;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("rhapsode-manifest");
+        docs = root.resolve("input");
+        Files.createDirectories(docs.resolve("sub"));
+        write("a.txt", "the quick brown fox");
+        write("sub/b.txt", "jumped over");
+        write("c.txt", "the lazy dog");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        PathUtils.deleteDirectory(root);
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        IndexManifest manifest = indexEverything();
+        assertEquals(3, manifest.size());
+        assertTrue(manifest.findChanges(docs).isEmpty());
+
+        //same content, new mtime -> unchanged
+        Files.setLastModifiedTime(docs.resolve("a.txt"), FileTime.fromMillis(1000));
+        //new content
+        write("sub/b.txt", "jumped over the");
+        Files.setLastModifiedTime(docs.resolve("sub/b.txt"), FileTime.fromMillis(2000));
+        Files.delete(docs.resolve("c.txt"));
+        write("d.txt", "new");
+
+        IndexManifest.Changes changes = manifest.findChanges(docs);
+        assertEquals(Collections.singletonList("d.txt"), changes.getAdded());
+        assertEquals(Collections.singletonList("sub/b.txt"), changes.getChanged());
+        assertEquals(Collections.singletonList("c.txt"), changes.getRemoved());
+        assertEquals(1000L, manifest.get("a.txt").mtime);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        IndexManifest manifest = indexEverything();
+        Path manifestPath = root.resolve("manifest.json");
+        manifest.save(manifestPath);
+        IndexManifest loaded = IndexManifest.load(manifestPath);
+        assertEquals(3, loaded.size());
+        assertEquals("id-sub/b.txt", loaded.get("sub/b.txt").getFileId());
+        assertNull(loaded.get("d.txt"));
+        assertTrue(loaded.findChanges(docs).isEmpty());
+    }
+
+    @Test
+    public void testUnpublishedJournal() throws Exception {
+        Path journalPath = root.resolve("journal.txt");
+        try (ManifestJournal journal = new ManifestJournal(journalPath)) {
+            journal.record("a.txt", "id-a.txt", IndexManifest.md5(docs.resolve("a.txt")));
+        }
+        //the index was never committed
+        assertFalse(Files.exists(journalPath));
+        assertFalse(Files.exists(ManifestJournal.getTmpPath(journalPath)));
+    }
+
+    private IndexManifest indexEverything() throws IOException {
+        IndexManifest manifest = new IndexManifest();
+        IndexManifest.Changes changes = manifest.findChanges(docs);
+        assertEquals(3, changes.getAdded().size());
+
+        Path journalPath = root.resolve("journal.txt");
+        try (ManifestJournal journal = new ManifestJournal(journalPath)) {
+            for (String rel : changes.getToIndex()) {
+                journal.record(rel, "id-" + rel, IndexManifest.md5(docs.resolve(rel)));
+            }
+            journal.publish();
+        }
+        manifest.applyJournal(journalPath, docs, changes.getMtimes());
+        Files.delete(journalPath);
+        return manifest;
+    }
+
+    private void write(String rel, String content) throws IOException {
+        Files.write(docs.resolve(rel), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+package org.rhapsode.indexer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.tika.metadata.Metadata;
+import org.junit.jupiter.api.Test;
+
+public class IndexingQueueTest {
+
+    @Test
+    public void testPutFailsWhenWorkersAreGone() throws Exception {
+        IndexingQueue queue = new IndexingQueue(1);
+        List<Metadata> list = Collections.singletonList(new Metadata());
+        queue.workerStarted();
+        queue.workerStarted();
+        assertTrue(queue.put(list));
+        queue.workerStopped();
+        assertTrue(queue.hasLiveWorkers());
+        queue.workerStopped();
+        assertFalse(queue.hasLiveWorkers());
+
+        //the queue is full and nobody is left to drain it
+        long start = System.currentTimeMillis();
+        assertFalse(queue.put(list));
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertEquals(1, queue.size());
+    }
+}
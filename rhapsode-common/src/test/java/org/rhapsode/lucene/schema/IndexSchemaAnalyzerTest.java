@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.schema;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.IndexOptions;
+import org.junit.jupiter.api.Test;
+
+public class IndexSchemaAnalyzerTest {
+
+    @Test
+    public void testShared() throws Exception {
+        IndexSchema schema = IndexSchema.load(this.getClass().getResourceAsStream("/default_table_index_schema.json"));
+        Analyzer index = schema.getIndexAnalyzer();
+        Analyzer offset = schema.getOffsetAnalyzer();
+        Analyzer query = schema.getQueryAnalyzer();
+        assertSame(index, schema.getIndexAnalyzer());
+        assertSame(offset, schema.getOffsetAnalyzer());
+        assertSame(query, schema.getQueryAnalyzer());
+
+        FieldType ft = new FieldType();
+        ft.setStored(true);
+        ft.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        ft.setTokenized(true);
+        FieldDef fieldDef = new FieldDef("new_content", false, ft);
+        fieldDef.setAnalyzers(new NamedAnalyzer("text", schema.getAnalyzerByName("text")), null, null, null);
+        schema.addField("new_content", fieldDef);
+
+        //rebuilt after the fields change
+        assertNotSame(index, schema.getIndexAnalyzer());
+        assertNotSame(offset, schema.getOffsetAnalyzer());
+        assertNotSame(query, schema.getQueryAnalyzer());
+        assertEquals(4, countTokens(schema.getOffsetAnalyzer(), "new_content", "the quick brown fox"));
+    }
+
+    private static int countTokens(Analyzer analyzer, String field, String text) throws IOException {
+        int tokens = 0;
+        try (TokenStream ts = analyzer.tokenStream(field, text)) {
+            ts.reset();
+            while (ts.incrementToken()) {
+                tokens++;
+            }
+            ts.end();
+        }
+        return tokens;
+    }
+}
@@ -133,6 +133,74 @@ public class IndexSchemaDeserializationTest {
         IndexSchema reloaded = IndexSchema.load(tmpFile);
     }
 
+    @Test
+    public void testOffsets() throws Exception {
+        IndexSchema schema = IndexSchema.load(this.getClass().getResourceAsStream("/default_table_index_schema.json"));
+        FieldType postings = new FieldType();
+        postings.setStored(true);
+        postings.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        postings.setTokenized(true);
+        FieldDef fieldDef = new FieldDef("content_postings", false, postings);
+        fieldDef.setAnalyzers(new NamedAnalyzer("text", schema.getAnalyzerByName("text")), null, null, null);
+        schema.addField("content_postings", fieldDef);
+
+        FieldType termVectors = new FieldType();
+        termVectors.setStored(true);
+        termVectors.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        termVectors.setStoreTermVectors(true);
+        termVectors.setStoreTermVectorPositions(true);
+        termVectors.setStoreTermVectorOffsets(true);
+        termVectors.setTokenized(true);
+        fieldDef = new FieldDef("content_tvs", false, termVectors);
+        fieldDef.setAnalyzers(new NamedAnalyzer("text", schema.getAnalyzerByName("text")), null, null, null);
+        schema.addField("content_tvs", fieldDef);
+
+        Path tmpFile = Files.createTempFile("test-schema", "");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmpFile)) {
+                IndexSchema.write(schema, os);
+                os.flush();
+            }
+            IndexSchema reloaded = IndexSchema.load(tmpFile);
+            assertEquals(FieldDef.OFFSETS.POSTINGS, reloaded.getFieldDef("content_postings").getOffsets());
+            assertEquals(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS,
+                    reloaded.getFieldDef("content_postings").getFieldType().indexOptions());
+            assertEquals(FieldDef.OFFSETS.TERM_VECTORS, reloaded.getFieldDef("content_tvs").getOffsets());
+            assertTrue(reloaded.getFieldDef("content_tvs").getFieldType().storeTermVectorPositions());
+        } finally {
+            Files.delete(tmpFile);
+        }
+    }
+
+    @Test
+    public void testOffsetAnalyzerMustMatchIndexAnalyzer() throws Exception {
+        IndexSchema schema = IndexSchema.load(this.getClass().getResourceAsStream("/default_table_index_schema.json"));
+        FieldType postings = new FieldType();
+        postings.setStored(true);
+        postings.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        postings.setTokenized(true);
+        FieldDef fieldDef = new FieldDef("content_postings", false, postings);
+        fieldDef.setAnalyzers(new NamedAnalyzer("text", schema.getAnalyzerByName("text")), null, null,
+                new NamedAnalyzer("string", schema.getAnalyzerByName("string")));
+        schema.addField("content_postings", fieldDef);
+
+        Path tmpFile = Files.createTempFile("test-schema", "");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmpFile)) {
+                IndexSchema.write(schema, os);
+                os.flush();
+            }
+            try {
+                IndexSchema.load(tmpFile);
+                assertTrue(false, "should have thrown an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        } finally {
+            Files.delete(tmpFile);
+        }
+    }
+
     @Test
     public void testUpdated() throws Exception {
         //use this to test modifications to the schema/turn this into a real test. :)
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+package org.rhapsode.lucene.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.rhapsode.lucene.queryparsers.ClassicQParserPlugin;
+import org.rhapsode.lucene.queryparsers.ParserPlugin;
+import org.rhapsode.lucene.schema.FieldDef;
+import org.rhapsode.lucene.schema.IndexSchema;
+import org.rhapsode.lucene.utils.StoredConceptManager;
+
+public class ComplexQueryCacheTest {
+
+    private IndexSchema schema;
+    private ConceptManager scm;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        schema = IndexSchema.load(this.getClass().getResourceAsStream("/test_index_schema.json"));
+        scm = new ConceptManager();
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        ComplexQueryCache cache = new ComplexQueryCache(10);
+        Query ignore = new MatchAllDocsQuery();
+        StoredQuery sq1 = buildStoredQuery(1, "quick AND {animal}");
+        StoredQuery sq2 = buildStoredQuery(2, "quick AND {animal}");
+
+        ComplexQuery cq1 = cache.get(sq1, new ClassicQParserPlugin(schema), scm, null, ignore, 0);
+        //a different stored query and parser instance with the same content
+        ComplexQuery cq2 = cache.get(sq2, new ClassicQParserPlugin(schema), scm, null, ignore, 0);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertSame(cq1.getRetrievalQuery(), cq2.getRetrievalQuery());
+        assertSame(cq1.getHighlightingQuery(), cq2.getHighlightingQuery());
+        assertNotSame(cq1, cq2);
+        assertSame(sq2, cq2.getStoredQuery());
+
+        //change to a concept the query refers to
+        scm.animal = "dog";
+        ComplexQuery cq3 = cache.get(sq1, new ClassicQParserPlugin(schema), scm, null, ignore, 0);
+        assertEquals(2, cache.getMisses());
+        assertTrue(cq3.getRetrievalQuery().toString().contains("dog"));
+
+        //new ignored set
+        cache.get(sq1, new ClassicQParserPlugin(schema), scm, null, ignore, 1);
+        assertEquals(3, cache.getMisses());
+        cache.get(sq1, new ClassicQParserPlugin(schema), scm, null, new MatchAllDocsQuery(), 1);
+        assertEquals(4, cache.getMisses());
+
+        //different rewrite method
+        cache.get(sq1, new ClassicQParserPlugin(schema, MultiTermQuery.SCORING_BOOLEAN_REWRITE),
+                scm, null, ignore, 1);
+        assertEquals(5, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testSchemaChange() throws Exception {
+        ComplexQueryCache cache = new ComplexQueryCache(10);
+        ParserPlugin parser = new ClassicQParserPlugin(schema);
+        StoredQuery sq = buildStoredQuery(1, "quick");
+        cache.get(sq, parser, scm, null, null, 0);
+        cache.get(sq, parser, scm, null, null, 0);
+        assertEquals(1, cache.getHits());
+
+        //the schema is edited in place, so the parser is equal to the old one
+        FieldDef content = schema.getFieldDef("content");
+        schema.addField("content", content);
+        cache.get(sq, parser, scm, null, null, 0);
+        assertEquals(2, cache.getMisses());
+        cache.get(sq, parser, scm, null, null, 0);
+        assertEquals(2, cache.getHits());
+
+        schema.clearUserFields();
+        schema.addField("content", content);
+        cache.get(sq, parser, scm, null, null, 0);
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ComplexQueryCache cache = new ComplexQueryCache(2);
+        ParserPlugin parser = new ClassicQParserPlugin(schema);
+        StoredQuery a = buildStoredQuery(1, "a");
+        StoredQuery b = buildStoredQuery(2, "b");
+        StoredQuery c = buildStoredQuery(3, "c");
+        cache.get(a, parser, scm, null, null, 0);
+        cache.get(b, parser, scm, null, null, 0);
+        //a is now the most recently used
+        cache.get(a, parser, scm, null, null, 0);
+        cache.get(c, parser, scm, null, null, 0);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+
+        cache.get(a, parser, scm, null, null, 0);
+        assertEquals(2, cache.getHits());
+        cache.get(b, parser, scm, null, null, 0);
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testParseExceptionNotCached() throws Exception {
+        ComplexQueryCache cache = new ComplexQueryCache(10);
+        ParserPlugin parser = new ClassicQParserPlugin(schema);
+        StoredQuery bad = buildStoredQuery(1, "quick AND (brown");
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get(bad, parser, scm, null, null, 0);
+                assertTrue(false, "should have thrown a ParseException");
+            } catch (ParseException e) {
+                //expected
+            }
+        }
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getMisses());
+    }
+
+    private StoredQuery buildStoredQuery(int id, String mainQuery) {
+        StoredQueryBuilder builder = new StoredQueryBuilder(id, "q" + id);
+        builder.add(SQField.DEFAULT_FIELD, "content");
+        builder.add(SQField.MAIN_QUERY, mainQuery);
+        return builder.build();
+    }
+
+    private static class ConceptManager implements StoredConceptManager {
+        private String animal = "fox";
+
+        @Override
+        public String rewriteQuery(String string) throws ParseException {
+            if (string == null) {
+                return null;
+            }
+            return string.replace("{animal}", animal);
+        }
+
+        @Override
+        public Map<String, StoredConcept> getConceptMap() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void deleteConcepts() {
+        }
+
+        @Override
+        public void addConcept(StoredConcept concept) {
+        }
+    }
+}
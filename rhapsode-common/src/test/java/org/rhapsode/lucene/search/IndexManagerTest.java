@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.Test;
+import org.rhapsode.RhapsodeCollection;
+import org.rhapsode.util.PathUtils;
+
+public class IndexManagerTest {
+
+    @Test
+    public void testNearRealTime() throws Exception {
+        Path indexPath = Files.createTempDirectory("index-manager-test");
+        IndexManager indexManager = new IndexManager();
+        try {
+            indexManager.openWriter(indexPath, new IndexWriterConfig(new StandardAnalyzer()), 50);
+            for (int i = 0; i < 10; i++) {
+                Document d = new Document();
+                d.add(new TextField("content", "the quick brown fox", Field.Store.YES));
+                indexManager.getIndexWriter().addDocument(d);
+            }
+            //searchable without a commit
+            long deadline = System.currentTimeMillis() + 10000;
+            int numDocs = 0;
+            while (numDocs < 10 && System.currentTimeMillis() < deadline) {
+                try (SearcherLease lease = indexManager.acquire()) {
+                    numDocs = lease.getIndexReader().numDocs();
+                }
+                Thread.sleep(20);
+            }
+            assertEquals(10, numDocs);
+            try (Directory dir = FSDirectory.open(indexPath)) {
+                assertFalse(DirectoryReader.indexExists(dir));
+            }
+
+            indexManager.closeWriter();
+            assertFalse(indexManager.hasWriter());
+            try (SearcherLease lease = indexManager.acquire()) {
+                assertEquals(10, lease.getIndexReader().numDocs());
+            }
+            try (Directory dir = FSDirectory.open(indexPath)) {
+                assertTrue(DirectoryReader.indexExists(dir));
+            }
+        } finally {
+            indexManager.close();
+            PathUtils.deleteDirectory(indexPath);
+        }
+    }
+
+    @Test
+    public void testNearRealTimeSearcherFactory() throws Exception {
+        Path root = Files.createTempDirectory("index-manager-test");
+        final AtomicInteger searchersCreated = new AtomicInteger(0);
+        SearcherFactory searcherFactory = new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+                searchersCreated.incrementAndGet();
+                return super.newSearcher(reader, previousReader);
+            }
+        };
+        IndexManager indexManager = null;
+        try {
+            Path schema = Paths.get(getClass().getResource("/test_index_schema.json").toURI());
+            RhapsodeCollection rc = RhapsodeCollection.build(root, root.resolve("collection"), schema);
+            indexManager = IndexManager.openNearRealTime(rc, 1000, searcherFactory);
+            assertTrue(searchersCreated.get() > 0);
+            int created = searchersCreated.get();
+            indexManager.closeWriter();
+            //the committed index is searched with the same factory
+            assertTrue(searchersCreated.get() > created);
+        } finally {
+            if (indexManager != null) {
+                indexManager.close();
+            }
+            PathUtils.deleteDirectory(root);
+        }
+    }
+
+    @Test
+    public void testLeases() throws Exception {
+        Path indexPath = Files.createTempDirectory("index-manager-test");
+        IndexManager indexManager = new IndexManager();
+        try {
+            indexManager.openWriter(indexPath, new IndexWriterConfig(new StandardAnalyzer()), 1000);
+            SearcherLease lease = indexManager.acquire();
+            assertEquals(1, indexManager.getOutstandingLeases().size());
+            assertEquals(1, indexManager.reportOutstandingLeases());
+            lease.close();
+            //closing twice is a no-op
+            lease.close();
+            assertTrue(lease.isClosed());
+            assertEquals(0, indexManager.getOutstandingLeases().size());
+        } finally {
+            indexManager.close();
+            PathUtils.deleteDirectory(indexPath);
+        }
+    }
+}
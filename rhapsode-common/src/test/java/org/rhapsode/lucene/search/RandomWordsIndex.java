@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.lucene.search;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+
+/**
+ * Test fixture for the parallel searchers: an in-memory index of short
+ * documents made of random words from a small vocabulary, flushed every
+ * <code>maxBufferedDocs</code> documents and never merged so that there
+ * are many small segments to slice, plus a small thread pool.
+ * <p>
+ * Override {@link #addFields(Document, int, Random)} to add test specific
+ * fields to each document.
+ */
+public class RandomWordsIndex implements Closeable {
+
+    public static final String CONTENT = "content";
+    public static final String[] WORDS = {"the", "quick", "brown", "fox", "jumped", "over", "lazy", "dog"};
+
+    private static final long SEED = 42;
+    private static final int NUM_THREADS = 4;
+
+    private final Directory directory;
+    private final IndexReader reader;
+    private final ExecutorService executor;
+
+    /**
+     * @param numDocs         number of documents to index
+     * @param maxBufferedDocs number of documents per segment
+     * @param analyzer        analyzer for the content field
+     * @param storeContent    whether to store the content field
+     * @throws IOException
+     */
+    public RandomWordsIndex(int numDocs, int maxBufferedDocs, Analyzer analyzer,
+                            Field.Store storeContent) throws IOException {
+        directory = new ByteBuffersDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setMaxBufferedDocs(maxBufferedDocs);
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        Random random = new Random(SEED);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            for (int i = 0; i < numDocs; i++) {
+                StringBuilder sb = new StringBuilder();
+                int len = 1 + random.nextInt(20);
+                for (int j = 0; j < len; j++) {
+                    sb.append(WORDS[random.nextInt(WORDS.length)]).append(" ");
+                }
+                Document d = new Document();
+                d.add(new TextField(CONTENT, sb.toString(), storeContent));
+                addFields(d, i, random);
+                writer.addDocument(d);
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        executor = Executors.newFixedThreadPool(NUM_THREADS);
+    }
+
+    /**
+     * Called for each document after the content field has been added.
+     *
+     * @param d      document to add to
+     * @param i      number of the document, from 0
+     * @param random the index's random, so that the index stays reproducible
+     */
+    protected void addFields(Document d, int i, Random random) {
+    }
+
+    public IndexReader getReader() {
+        return reader;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        reader.close();
+        directory.close();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.WildcardQuery;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class RhapsodeSearcherFactoryTest {
+
+    private static final String CONTENT = RandomWordsIndex.CONTENT;
+    private static final String SORT = "sort";
+
+    static RandomWordsIndex index;
+    static IndexReader reader;
+    static ExecutorService executor;
+
+    @BeforeAll
+    public static void init() throws Exception {
+        //1000 docs in segments of 37, each with a numeric field to sort on
+        index = new RandomWordsIndex(1000, 37, new StandardAnalyzer(), Field.Store.NO) {
+            @Override
+            protected void addFields(Document d, int i, Random random) {
+                d.add(new NumericDocValuesField(SORT, random.nextInt(10)));
+            }
+        };
+        reader = index.getReader();
+        executor = index.getExecutor();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        index.close();
+    }
+
+    @Test
+    public void testSlices() throws Exception {
+        List<LeafReaderContext> leaves = reader.leaves();
+        assertTrue(leaves.size() > 20);
+
+        List<List<LeafReaderContext>> groups = RhapsodeSearcherFactory.groupLeaves(leaves, 100, 5);
+        int next = 0;
+        for (List<LeafReaderContext> group : groups) {
+            assertTrue(group.size() <= 5);
+            long docs = 0;
+            for (LeafReaderContext ctx : group) {
+                //adjacent and in order
+                assertEquals(next++, ctx.ord);
+                docs += ctx.reader().maxDoc();
+            }
+            assertTrue(docs <= 100 || group.size() == 1);
+        }
+        assertEquals(leaves.size(), next);
+
+        //a segment larger than the limit gets its own slice
+        groups = RhapsodeSearcherFactory.groupLeaves(leaves, 10, 5);
+        assertEquals(leaves.size(), groups.size());
+
+        groups = RhapsodeSearcherFactory.groupLeaves(leaves, Integer.MAX_VALUE, 5);
+        assertEquals((leaves.size() + 4) / 5, groups.size());
+    }
+
+    @Test
+    public void testSameResults() throws Exception {
+        IndexSearcher single = new RhapsodeSearcherFactory(null).newSearcher(reader, null);
+        IndexSearcher sliced = new RhapsodeSearcherFactory(executor, 100, 3).newSearcher(reader, null);
+        assertTrue(sliced.getSlices().length > 1);
+
+        PhraseQuery.Builder phrase = new PhraseQuery.Builder();
+        phrase.add(new Term(CONTENT, "quick"));
+        phrase.add(new Term(CONTENT, "brown"));
+        BooleanQuery.Builder bq = new BooleanQuery.Builder();
+        bq.add(new TermQuery(new Term(CONTENT, "fox")), BooleanClause.Occur.SHOULD);
+        bq.add(new TermQuery(new Term(CONTENT, "dog")), BooleanClause.Occur.SHOULD);
+        Query[] queries = new Query[]{
+                new TermQuery(new Term(CONTENT, "fox")),
+                phrase.build(),
+                new WildcardQuery(new Term(CONTENT, "*o*")),
+                bq.build()
+        };
+        Sort sort = new Sort(new SortField(SORT, SortField.Type.INT));
+        for (Query q : queries) {
+            assertEquals(single.count(q), sliced.count(q), q.toString());
+            assertSame(single.search(q, 50), sliced.search(q, 50));
+            assertSame(single.search(q, 50, sort), sliced.search(q, 50, sort));
+        }
+    }
+
+    private static void assertSame(TopDocs expected, TopDocs actual) {
+        assertEquals(expected.totalHits, actual.totalHits);
+        assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+        for (int i = 0; i < expected.scoreDocs.length; i++) {
+            assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+            assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0.0001f);
+        }
+    }
+
+}
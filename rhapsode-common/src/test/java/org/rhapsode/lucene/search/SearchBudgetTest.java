@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class SearchBudgetTest {
+
+    static Directory directory;
+    static DirectoryReader reader;
+
+    @BeforeAll
+    public static void init() throws Exception {
+        directory = new ByteBuffersDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+        config.setMaxBufferedDocs(10);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            for (int i = 0; i < 100; i++) {
+                Document d = new Document();
+                d.add(new TextField("content", "the quick brown fox " + i, Field.Store.YES));
+                writer.addDocument(d);
+            }
+        }
+        reader = DirectoryReader.open(directory);
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void testMaxDocs() throws Exception {
+        SearchBudget budget = new SearchBudget(-1, 25);
+        int loaded = 0;
+        try (IndexReader budgeted = budget.wrap(reader)) {
+            IndexSearcher searcher = new IndexSearcher(budgeted);
+            TopDocs topDocs = searcher.search(new TermQuery(new Term("content", "fox")), 100);
+            try {
+                for (ScoreDoc sd : topDocs.scoreDocs) {
+                    searcher.doc(sd.doc);
+                    //loading the same document again doesn't count
+                    searcher.doc(sd.doc);
+                    loaded++;
+                }
+                assertTrue(false, "should have exceeded the budget");
+            } catch (SearchBudget.BudgetExceededException e) {
+                assertEquals(SearchBudget.LIMIT.DOCS, e.getLimit());
+            }
+        }
+        assertEquals(25, loaded);
+        assertEquals(25, budget.getDocsVisited());
+        assertEquals(SearchBudget.LIMIT.DOCS, budget.getExceeded());
+        //the original reader is still open and unbudgeted
+        assertEquals(100, reader.numDocs());
+        reader.document(0);
+    }
+
+    @Test
+    public void testMaxMillis() throws Exception {
+        SearchBudget budget = new SearchBudget(1, -1);
+        Thread.sleep(20);
+        try (IndexReader budgeted = budget.wrap(reader)) {
+            budgeted.document(0);
+            assertTrue(false, "should have exceeded the budget");
+        } catch (SearchBudget.BudgetExceededException e) {
+            assertEquals(SearchBudget.LIMIT.TIME, e.getLimit());
+        }
+        assertTrue(budget.isExceeded());
+        assertEquals(0, budget.getDocsVisited());
+    }
+
+    @Test
+    public void testMaxMillisWithoutLoadingDocs() throws Exception {
+        //count() never loads a stored document; the clock is checked
+        //while stepping through the postings
+        SearchBudget budget = new SearchBudget(1, -1);
+        Thread.sleep(20);
+        try (IndexReader budgeted = budget.wrap(reader)) {
+            IndexSearcher searcher = new IndexSearcher(budgeted);
+            BooleanQuery q = new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term("content", "quick")), BooleanClause.Occur.SHOULD)
+                    .add(new TermQuery(new Term("content", "fox")), BooleanClause.Occur.SHOULD)
+                    .build();
+            for (int i = 0; i < SearchBudget.TIME_CHECK_INTERVAL; i++) {
+                searcher.count(q);
+            }
+            assertTrue(false, "should have exceeded the budget");
+        } catch (SearchBudget.BudgetExceededException e) {
+            assertEquals(SearchBudget.LIMIT.TIME, e.getLimit());
+        }
+        assertEquals(0, budget.getDocsVisited());
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        SearchBudget budget = new SearchBudget(-1, -1);
+        try (IndexReader budgeted = budget.wrap(reader)) {
+            for (int i = 0; i < budgeted.maxDoc(); i++) {
+                budgeted.document(i);
+            }
+        }
+        assertFalse(budget.isExceeded());
+        assertNull(budget.getExceeded());
+        assertEquals(100, budget.getDocsVisited());
+    }
+}
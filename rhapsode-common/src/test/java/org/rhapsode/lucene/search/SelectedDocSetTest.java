@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+package org.rhapsode.lucene.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.rhapsode.util.PathUtils;
+
+public class SelectedDocSetTest {
+
+    private static final String ID_FIELD = "_did";
+
+    private Path dir;
+    private Directory directory;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("selected-doc-set-test");
+        directory = new ByteBuffersDirectory();
+        //three segments
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (int i = 0; i < 300; i++) {
+                Document d = new Document();
+                d.add(new StringField(ID_FIELD, "d" + i, Field.Store.NO));
+                writer.addDocument(d);
+                if (i % 100 == 99) {
+                    writer.commit();
+                }
+            }
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        directory.close();
+        PathUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        SelectedDocSet set = SelectedDocSet.load(dir.resolve("ignored.bin"), ID_FIELD);
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(3, reader.leaves().size());
+            IndexSearcher searcher = new IndexSearcher(reader);
+            assertEquals(0, searcher.count(set.getQuery()));
+
+            set.add(ids(5, 150, 299, "not-in-index"));
+            Query q = set.getQuery();
+            assertSame(q, set.getQuery());
+            assertEquals(3, searcher.count(q));
+            assertEquals(297, searcher.count(notIn(q)));
+
+            //rolled forward
+            set.add(ids(6, 151));
+            set.remove(ids(5));
+            assertTrue(!q.equals(set.getQuery()));
+            assertEquals(4, searcher.count(set.getQuery()));
+            assertEquals(296, searcher.count(notIn(set.getQuery())));
+
+            //nothing changed
+            long version = set.getVersion();
+            set.add(ids(6));
+            set.remove(ids(1000));
+            assertEquals(version, set.getVersion());
+        }
+    }
+
+    @Test
+    public void testQueryIsPinnedToItsVersion() throws Exception {
+        SelectedDocSet set = SelectedDocSet.load(null, ID_FIELD);
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            set.add(ids(5, 150));
+            Query q1 = set.getQuery();
+            assertEquals(2, searcher.count(q1));
+
+            set.add(ids(6, 299));
+            set.remove(ids(5));
+            Query q2 = set.getQuery();
+            //the cached bits are now at q2's version; q1 must be rolled back, not see them
+            assertEquals(3, searcher.count(q2));
+            assertEquals(2, searcher.count(q1));
+            assertEquals(298, searcher.count(notIn(q1)));
+            assertEquals(3, searcher.count(q2));
+
+            //a new reader has nothing cached, so q1's bits are rebuilt from the ids
+            try (DirectoryReader reader2 = DirectoryReader.open(directory)) {
+                assertEquals(2, new IndexSearcher(reader2).count(q1));
+            }
+
+            //too far behind to roll back, so q1's bits are rebuilt from its snapshot
+            for (int i = 0; i < 200; i++) {
+                set.add(ids(1000 + i));
+                assertEquals(3, searcher.count(set.getQuery()));
+            }
+            set.remove(ids(6));
+            assertEquals(2, searcher.count(q1));
+            assertEquals(298, searcher.count(notIn(q1)));
+            assertEquals(3, searcher.count(q2));
+            assertEquals(2, searcher.count(set.getQuery()));
+        }
+    }
+
+    @Test
+    public void testBitsAreCachedPerSegment() throws Exception {
+        SelectedDocSet set = SelectedDocSet.load(null, ID_FIELD);
+        set.add(ids(1, 2));
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+             DirectoryReader reader = DirectoryReader.open(writer)) {
+            FixedBitSet bits = set.getBits(reader.leaves().get(0).reader());
+            assertSame(bits, set.getBits(reader.leaves().get(0).reader()));
+
+            Document d = new Document();
+            d.add(new StringField(ID_FIELD, "d1000", Field.Store.NO));
+            writer.addDocument(d);
+            try (DirectoryReader reopened = DirectoryReader.openIfChanged(reader)) {
+                assertEquals(4, reopened.leaves().size());
+                //the unchanged segment's bits are reused
+                assertSame(bits, set.getBits(reopened.leaves().get(0).reader()));
+            }
+
+            //copied, not modified
+            set.add(ids(3));
+            FixedBitSet after = set.getBits(reader.leaves().get(0).reader());
+            assertNotSame(bits, after);
+            assertEquals(2, bits.cardinality());
+            assertEquals(3, after.cardinality());
+        }
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        Path log = dir.resolve("favorites.bin");
+        SelectedDocSet set = SelectedDocSet.load(log, ID_FIELD);
+        set.add(ids(1, 2, 3));
+        set.remove(ids(2));
+        set.add(ids(4));
+
+        SelectedDocSet reloaded = SelectedDocSet.load(log, ID_FIELD);
+        assertEquals(3, reloaded.size());
+        assertTrue(reloaded.contains("d1"));
+        assertTrue(!reloaded.contains("d2"));
+
+        //simulate a write that was cut short
+        long length = Files.size(log);
+        try (OutputStream os = Files.newOutputStream(log, StandardOpenOption.APPEND)) {
+            os.write(new byte[]{1, 0, 10, 'd'});
+        }
+        reloaded = SelectedDocSet.load(log, ID_FIELD);
+        assertEquals(3, reloaded.size());
+        assertTrue(Files.size(log) <= length);
+        reloaded.add(ids(5));
+        assertEquals(4, SelectedDocSet.load(log, ID_FIELD).size());
+    }
+
+    private static Query notIn(Query q) {
+        return new BooleanQuery.Builder()
+                .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+                .add(q, BooleanClause.Occur.MUST_NOT).build();
+    }
+
+    private static Set<String> ids(Object... ids) {
+        Set<String> ret = new HashSet<>();
+        for (Object id : Arrays.asList(ids)) {
+            ret.add(id instanceof Integer ? "d" + id : id.toString());
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.lucene.search.concordance;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.rhapsode.lucene.search.RandomWordsIndex;
+import org.tallison.lucene.search.concordance.classic.AbstractConcordanceWindowCollector;
+import org.tallison.lucene.search.concordance.classic.ConcordanceSearcher;
+import org.tallison.lucene.search.concordance.classic.ConcordanceSortOrder;
+import org.tallison.lucene.search.concordance.classic.ConcordanceWindow;
+import org.tallison.lucene.search.concordance.classic.WindowBuilder;
+import org.tallison.lucene.search.concordance.classic.impl.ConcordanceWindowCollector;
+import org.tallison.lucene.search.concordance.classic.impl.DedupingConcordanceWindowCollector;
+import org.tallison.lucene.search.concordance.classic.impl.DefaultSortKeyBuilder;
+import org.tallison.lucene.search.concordance.classic.impl.FieldBasedDocIdBuilder;
+import org.tallison.lucene.search.concordance.classic.impl.SimpleDocMetadataExtractor;
+
+public class ParallelConcordanceSearcherTest {
+
+    private static final String CONTENT = RandomWordsIndex.CONTENT;
+    private static final String ID = "_id";
+
+    static RandomWordsIndex index;
+    static IndexReader reader;
+    static ExecutorService executor;
+    static Analyzer analyzer;
+
+    @BeforeAll
+    public static void init() throws Exception {
+        //300 docs in segments of 17, with stored content for the windows
+        //and a stored id for the doc id builder
+        analyzer = new StandardAnalyzer();
+        index = new RandomWordsIndex(300, 17, analyzer, Field.Store.YES) {
+            @Override
+            protected void addFields(Document d, int i, Random random) {
+                d.add(new StringField(ID, "d" + i, Field.Store.YES));
+            }
+        };
+        reader = index.getReader();
+        executor = index.getExecutor();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        index.close();
+    }
+
+    @Test
+    public void testSameAsSequential() throws Exception {
+        assertTrue(reader.leaves().size() > 10);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        Query query = new TermQuery(new Term(CONTENT, "fox"));
+        ParallelConcordanceSearcher parallel = new ParallelConcordanceSearcher(executor, 50, 2);
+        //everything, then a cap that is hit partway through the slices
+        for (int maxWindows : new int[]{100000, 37, 1}) {
+            for (boolean ignoreDuplicates : new boolean[]{false, true}) {
+                AbstractConcordanceWindowCollector sequential = (ignoreDuplicates) ?
+                        new DedupingConcordanceWindowCollector(maxWindows) :
+                        new ConcordanceWindowCollector(maxWindows);
+                buildSearcher().search(searcher, CONTENT, query, null, analyzer, sequential);
+
+                AbstractConcordanceWindowCollector merged = parallel.search(
+                        new ParallelConcordanceSearcher.ConcordanceSearcherBuilder() {
+                            @Override
+                            public ConcordanceSearcher build() {
+                                return buildSearcher();
+                            }
+                        }, searcher, CONTENT, query, null, analyzer, ignoreDuplicates, maxWindows);
+                String msg = "maxWindows=" + maxWindows + " ignoreDuplicates=" + ignoreDuplicates;
+                assertTrue(sequential.getNumWindows() > 0, msg);
+                assertEquals(sequential.getHitMax(), merged.getHitMax(), msg);
+                assertEquals(sequential.getNumWindows(), merged.getNumWindows(), msg);
+                assertEquals(sequential.getTotalDocs(), merged.getTotalDocs(), msg);
+                assertEquals(windows(sequential, ignoreDuplicates), windows(merged, ignoreDuplicates), msg);
+            }
+        }
+    }
+
+    @Test
+    public void testNoSliceExecutor() throws Exception {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        Query query = new TermQuery(new Term(CONTENT, "lazy"));
+        AbstractConcordanceWindowCollector sequential = new ConcordanceWindowCollector(1000);
+        buildSearcher().search(searcher, CONTENT, query, null, analyzer, sequential);
+
+        AbstractConcordanceWindowCollector merged = new ParallelConcordanceSearcher(null, 50, 2).search(
+                new ParallelConcordanceSearcher.ConcordanceSearcherBuilder() {
+                    @Override
+                    public ConcordanceSearcher build() {
+                        return buildSearcher();
+                    }
+                }, searcher, CONTENT, query, null, analyzer, false, 1000);
+        assertEquals(sequential.getTotalDocs(), merged.getTotalDocs());
+        assertEquals(windows(sequential, false), windows(merged, false));
+    }
+
+    private static ConcordanceSearcher buildSearcher() {
+        return new ConcordanceSearcher(new WindowBuilder(2, 2, 100,
+                new DefaultSortKeyBuilder(ConcordanceSortOrder.PRE),
+                new SimpleDocMetadataExtractor(ID),
+                new FieldBasedDocIdBuilder(ID)));
+    }
+
+    //collection order for the plain collector; the deduping collector's order is its own
+    private static List<String> windows(AbstractConcordanceWindowCollector collector, boolean sort) {
+        List<String> ret = new ArrayList<>();
+        for (ConcordanceWindow w : collector.getWindows()) {
+            ret.add(w.getPre() + "|" + w.getTarget() + "|" + w.getPost() + "|" + w.getCount());
+        }
+        if (sort) {
+            Collections.sort(ret);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+
+package org.rhapsode.lucene.utils;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.rhapsode.util.PathUtils;
+
+/**
+ * Checks that walking the parent/attachment blocks written by the indexer
+ * returns the same documents as the search+sort retrieval.
+ */
+public class DocRetrieverBlockTest {
+
+    static final String DOC_ID_FIELD = "_did";
+    static final String FILE_ID_FIELD = "_fid";
+    static final String PARENT_FIELD = "_parent";
+    static final String SORT_ORDER_FIELD = "_so";
+    static final String CONTENT_FIELD = "c";
+
+    static Path luceneDirectoryPath = null;
+    static Directory luceneDirectory = null;
+    static IndexSearcher searcher;
+    static List<String> FILE_IDS = new ArrayList<>();
+    static List<String> DOC_IDS = new ArrayList<>();
+
+    @BeforeAll
+    public static void init() throws IOException {
+        luceneDirectoryPath = Files.createTempDirectory("doc-retriever-block-test");
+        luceneDirectory = FSDirectory.open(luceneDirectoryPath);
+        Random r = new Random(42);
+        try (IndexWriter writer = new IndexWriter(luceneDirectory,
+                new IndexWriterConfig(new KeywordAnalyzer()))) {
+            for (int i = 0; i < 50; i++) {
+                String fileId = UUID.randomUUID().toString();
+                FILE_IDS.add(fileId);
+                writer.addDocuments(buildBlock(fileId, r.nextInt(20)));
+                if (i % 10 == 0) {
+                    writer.commit();
+                }
+            }
+            //update a few to leave deleted docs in earlier segments
+            for (int i = 0; i < 50; i += 7) {
+                writer.updateDocuments(new Term(FILE_ID_FIELD, FILE_IDS.get(i)),
+                        buildBlock(FILE_IDS.get(i), r.nextInt(20)));
+            }
+            writer.commit();
+        }
+        searcher = new IndexSearcher(DirectoryReader.open(luceneDirectory));
+    }
+
+    private static List<Document> buildBlock(String fileId, int numAttachments) {
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i <= numAttachments; i++) {
+            Document d = new Document();
+            String docId = UUID.randomUUID().toString();
+            DOC_IDS.add(docId);
+            d.add(new StringField(FILE_ID_FIELD, fileId, Field.Store.YES));
+            d.add(new StringField(DOC_ID_FIELD, docId, Field.Store.YES));
+            d.add(new SortedNumericDocValuesField(SORT_ORDER_FIELD, i));
+            d.add(new TextField(CONTENT_FIELD, "attachment " + i, Field.Store.YES));
+            if (i == 0) {
+                d.add(new StringField(PARENT_FIELD, DocRetriever.PARENT_MARKER_VALUE, Field.Store.NO));
+            }
+            docs.add(d);
+        }
+        return docs;
+    }
+
+    @AfterAll
+    public static void cleanUp() throws IOException {
+        searcher.getIndexReader().close();
+        luceneDirectory.close();
+        PathUtils.deleteDirectory(luceneDirectoryPath);
+    }
+
+    @Test
+    public void testSameAsSearch() throws Exception {
+        Sort sort = getSort();
+        for (String fileId : FILE_IDS) {
+            List<Document> expected = DocRetriever.getAllDocsByFileId(FILE_ID_FIELD, fileId, sort, null, searcher);
+            List<Document> block = DocRetriever.getBlockByFileId(PARENT_FIELD, FILE_ID_FIELD, fileId, null, searcher);
+            assertSameDocs(expected, block);
+            for (Document d : expected) {
+                block = DocRetriever.getBlockFromAnyDocId(d.get(DOC_ID_FIELD), DOC_ID_FIELD,
+                        PARENT_FIELD, FILE_ID_FIELD, null, searcher);
+                assertSameDocs(expected, block);
+            }
+        }
+        for (int i = 0; i < searcher.getIndexReader().maxDoc(); i += 3) {
+            List<Document> expected = DocRetriever.getAllDocsFromAnyDocId(i, FILE_ID_FIELD, sort, null, searcher);
+            List<Document> block = DocRetriever.getBlockFromAnyDocId(i, PARENT_FIELD, FILE_ID_FIELD, null, searcher);
+            //the block walk returns null for a deleted doc so that the
+            //caller falls back to the current version of the file
+            if (block != null) {
+                assertSameDocs(expected, block);
+            }
+        }
+    }
+
+    @Test
+    public void testDocIds() throws Exception {
+        Sort sort = getSort();
+        for (String fileId : FILE_IDS) {
+            List<Document> expected = DocRetriever.getAllDocsByFileId(FILE_ID_FIELD, fileId, sort, null, searcher);
+            assertSameDocs(expected, load(DocRetriever.getAllDocIdsByFileId(FILE_ID_FIELD, fileId, sort, searcher)));
+            assertSameDocs(expected, load(DocRetriever.getBlockDocIdsByFileId(PARENT_FIELD, FILE_ID_FIELD,
+                    fileId, searcher)));
+            String docId = expected.get(expected.size() - 1).get(DOC_ID_FIELD);
+            assertSameDocs(expected, load(DocRetriever.getAllDocIdsFromAnyDocId(docId, DOC_ID_FIELD,
+                    FILE_ID_FIELD, sort, searcher)));
+            assertSameDocs(expected, load(DocRetriever.getBlockDocIdsFromAnyDocId(docId, DOC_ID_FIELD,
+                    PARENT_FIELD, FILE_ID_FIELD, searcher)));
+        }
+        assertNull(DocRetriever.getBlockDocIdsByFileId("no-such-field", FILE_ID_FIELD,
+                FILE_IDS.get(0), searcher));
+    }
+
+    private List<Document> load(List<Integer> docIds) throws IOException {
+        assertNotNull(docIds, "doc ids must not be null");
+        List<Document> docs = new ArrayList<>();
+        for (Integer docId : docIds) {
+            docs.add(searcher.doc(docId));
+        }
+        return docs;
+    }
+
+    @Test
+    public void testParentBitsEvictedOnClose() throws Exception {
+        List<IndexReader.CacheKey> keys = new ArrayList<>();
+        try (DirectoryReader reader = DirectoryReader.open(luceneDirectory)) {
+            IndexSearcher s = new IndexSearcher(reader);
+            for (String fileId : FILE_IDS) {
+                assertNotNull(DocRetriever.getBlockByFileId(PARENT_FIELD, FILE_ID_FIELD, fileId, null, s));
+            }
+            int cached = 0;
+            for (LeafReaderContext leaf : reader.leaves()) {
+                IndexReader.CacheKey key = leaf.reader().getCoreCacheHelper().getKey();
+                keys.add(key);
+                if (DocRetriever.hasCachedParentBits(key)) {
+                    cached++;
+                }
+            }
+            assertTrue(cached > 0);
+        }
+        for (IndexReader.CacheKey key : keys) {
+            assertFalse(DocRetriever.hasCachedParentBits(key));
+        }
+    }
+
+    @Test
+    public void testNoMarker() throws Exception {
+        assertNull(DocRetriever.getBlockByFileId("no-such-field", FILE_ID_FIELD,
+                FILE_IDS.get(0), null, searcher));
+        assertNull(DocRetriever.getBlockByFileId(PARENT_FIELD, FILE_ID_FIELD,
+                "no-such-file", null, searcher));
+    }
+
+    private static Sort getSort() {
+        SortField sortField = new SortedNumericSortField(SORT_ORDER_FIELD, SortField.Type.INT);
+        sortField.setMissingValue(0);
+        return new Sort(sortField);
+    }
+
+    private void assertSameDocs(List<Document> expected, List<Document> block) {
+        assertNotNull(block, "block must not be null");
+        assertEquals(expected.size(), block.size(), "sizes");
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).get(DOC_ID_FIELD), block.get(i).get(DOC_ID_FIELD));
+        }
+    }
+}
@@ -44,7 +44,7 @@ public class CollectionHistoryTest extends ServletSessionTestBase {
 
     @Test
     public void basicTest() throws Exception {
-        CollectionsHistory ch = CollectionsHistory.load(connection);
+        CollectionsHistory ch = CollectionsHistory.load(pool);
         for (int i = 0; i < 15; i++) {
             ch.addLoaded(Paths.get("collection_" + i));
             Thread.sleep(500);
@@ -34,18 +34,22 @@ import java.sql.DriverManager;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.rhapsode.app.session.ConnectionPool;
 
 
 public class ServletSessionTestBase {
     Connection connection;
+    ConnectionPool pool;
 
     @BeforeEach
     public void init() throws Exception {
         connection = DriverManager.getConnection("jdbc:h2:mem:dbtest1");
+        pool = new ConnectionPool("jdbc:h2:mem:dbtest1");
     }
 
     @AfterEach
     public void tearDown() throws Exception {
+        pool.close();
         connection.close();
     }
 
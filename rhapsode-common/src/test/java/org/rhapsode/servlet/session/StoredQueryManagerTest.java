@@ -35,12 +35,16 @@ import java.io.InputStream;
 import java.util.Map;
 
 import org.junit.jupiter.api.Test;
+import org.rhapsode.app.session.ConnectionLease;
+import org.rhapsode.app.session.ConnectionPool;
 import org.rhapsode.app.session.DBStoredConceptManager;
 import org.rhapsode.app.session.DBStoredQueryManager;
 import org.rhapsode.app.session.StoredQueryReader;
 import org.rhapsode.lucene.queryparsers.SQPParserPlugin;
 import org.rhapsode.lucene.schema.IndexSchema;
+import org.rhapsode.lucene.search.SQField;
 import org.rhapsode.lucene.search.StoredQuery;
+import org.rhapsode.lucene.search.StoredQueryBuilder;
 
 public class StoredQueryManagerTest extends ServletSessionTestBase {
     static final String DEFAULT_FIELD = "content";
@@ -87,12 +91,12 @@ public class StoredQueryManagerTest extends ServletSessionTestBase {
 
     @Test
     public void testLoadingXLSX() throws Exception {
-        DBStoredConceptManager storedConceptManager = DBStoredConceptManager.load(connection);
-        DBStoredQueryManager storedQueryManager = DBStoredQueryManager.load(connection);
+        DBStoredConceptManager storedConceptManager = DBStoredConceptManager.load(pool);
+        DBStoredQueryManager storedQueryManager = DBStoredQueryManager.load(pool);
         IndexSchema indexSchema = IndexSchema.load(this.getClass().getResourceAsStream("/test_index_data/index_schema.json"));
-        try (DBStoredQueryManager m = DBStoredQueryManager.load(connection)) {
+        try (DBStoredQueryManager m = DBStoredQueryManager.load(pool)) {
             StoredQueryReader reader = new StoredQueryReader(storedConceptManager,
-                    storedQueryManager, new SQPParserPlugin(indexSchema), indexSchema, connection);
+                    storedQueryManager, new SQPParserPlugin(indexSchema), indexSchema);
             try (InputStream is = getClass().getResourceAsStream("/test-docs/testQueries.xlsx")) {
                 reader.loadBoth(is);
             }
@@ -106,4 +110,47 @@ public class StoredQueryManagerTest extends ServletSessionTestBase {
         }
     }
 
+    @Test
+    public void testBatchCommit() throws Exception {
+        try (DBStoredQueryManager m = DBStoredQueryManager.load(pool)) {
+            m.deleteAllQueries();
+            //not committed before the lease is returned: rolled back
+            try (ConnectionLease lease = m.beginBatch()) {
+                m.addQueryNoCommit(query("a"), lease);
+                m.addQueryNoCommit(query("b"), lease);
+            }
+            assertEquals(0, m.getStoredQueryMap().size());
+
+            try (ConnectionLease lease = m.beginBatch()) {
+                m.addQueryNoCommit(query("a"), lease);
+                m.addQueryNoCommit(query("b"), lease);
+                //nothing is visible to other connections until the commit
+                assertEquals(0, m.getStoredQueryMap().size());
+                lease.commit();
+            }
+            assertEquals(2, m.getStoredQueryMap().size());
+        }
+    }
+
+    @Test
+    public void testBatchRolledBackWhenPoolClosesFirst() throws Exception {
+        try (DBStoredQueryManager m = DBStoredQueryManager.load(pool)) {
+            m.deleteAllQueries();
+            ConnectionLease lease = m.beginBatch();
+            m.addQueryNoCommit(query("a"), lease);
+            //the lease is still out when the pool closes
+            pool.close();
+            lease.close();
+        }
+        try (ConnectionPool reopened = new ConnectionPool("jdbc:h2:mem:dbtest1");
+             DBStoredQueryManager m = DBStoredQueryManager.load(reopened)) {
+            assertEquals(0, m.getStoredQueryMap().size());
+        }
+    }
+
+    private static StoredQuery query(String name) {
+        return new StoredQueryBuilder(StoredQuery.NOT_YET_LOADED, name)
+                .add(SQField.MAIN_QUERY, name).build();
+    }
+
 }
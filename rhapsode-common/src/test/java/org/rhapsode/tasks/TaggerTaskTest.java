@@ -42,6 +42,7 @@ import org.rhapsode.app.tagger.TaggerRequest;
 import org.rhapsode.app.tasks.TaggerTask;
 import org.rhapsode.app.tasks.Tasker;
 import org.rhapsode.lucene.search.MaxResultsQuery;
+import org.rhapsode.lucene.search.SearcherLease;
 
 public class TaggerTaskTest {
 
@@ -55,17 +56,19 @@ public class TaggerTaskTest {
         Map<Integer, MaxResultsQuery> queries = new HashMap<>();
         queries.put(0, new MaxResultsQuery("fox1", new WildcardQuery(new Term("content", "f*")), -1, -1));
         queries.put(1, new MaxResultsQuery("d_words", new WildcardQuery(new Term("content", "d*")), -1, -1));
-        IndexSearcher searcher = searcherApp.getRhapsodeCollection().getIndexManager().getSearcher();
-        Path outputPath = Paths.get("C:/data/tmp/");
-        TaggerRequest request = new TaggerRequest(queries, searcher, "", outputPath, "test_out",
-                ReportRequest.REPORT_TYPE.NO_LINKS, 100, TaggerRequest.NORM_TYPE.ONE);
-        TaggerTask tagger = new TaggerTask(request, searcherApp);
-        Tasker tasker = new Tasker(tagger, 3000);
-        tasker.start();
-        while (true) {
-            Thread.sleep(500);
-            if (tasker.getState().equals(Tasker.STATE.COMPLETED)) {
-                break;
+        try (SearcherLease lease = searcherApp.getRhapsodeCollection().getIndexManager().acquire()) {
+            IndexSearcher searcher = lease.getSearcher();
+            Path outputPath = Paths.get("C:/data/tmp/");
+            TaggerRequest request = new TaggerRequest(queries, searcher, "", outputPath, "test_out",
+                    ReportRequest.REPORT_TYPE.NO_LINKS, 100, TaggerRequest.NORM_TYPE.ONE);
+            TaggerTask tagger = new TaggerTask(request, searcherApp);
+            Tasker tasker = new Tasker(tagger, 3000, searcherApp.getSearchExecutor());
+            tasker.start();
+            while (true) {
+                Thread.sleep(500);
+                if (tasker.getState().equals(Tasker.STATE.COMPLETED)) {
+                    break;
+                }
             }
         }
     }
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * NOTICE
+
+ * This software was produced for the U.S. Government
+ * under Basic Contract No. W15P7T-13-C-A802,
+ * W15P7T-12-C-F600, and W15P7T-13-C-F600, and is
+ * subject to the Rights in Noncommercial Computer Software
+ * and Noncommercial Computer Software Documentation
+ * Clause 252.227-7014 (FEB 2012)
+ *
+ * (C) 2013-2017 The MITRE Corporation. All Rights Reserved.
+ *
+ */
+
+package org.rhapsode.text;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TokenCharOffsetsTest {
+
+    @Test
+    public void testBasic() {
+        TokenCharOffsets offsets = new TokenCharOffsets(4);
+        offsets.set(0, 0, 3);
+        offsets.set(2, 8, 12);
+        //far into a long document; this must not size anything by position
+        offsets.set(5_000_000, 100, 105);
+        assertEquals(3, offsets.size());
+        assertTrue(offsets.capacity() < 100);
+        assertEquals(0, offsets.getStart(0));
+        assertEquals(3, offsets.getEnd(0));
+        assertEquals(8, offsets.getStart(2));
+        assertEquals(12, offsets.getEnd(2));
+        assertEquals(100, offsets.getStart(5_000_000));
+        assertEquals(105, offsets.getEnd(5_000_000));
+        assertEquals(-1, offsets.getStart(1));
+        assertEquals(-1, offsets.getEnd(4_999_999));
+
+        //overwrite
+        offsets.set(2, 9, 13);
+        assertEquals(3, offsets.size());
+        assertEquals(9, offsets.getStart(2));
+        assertEquals(13, offsets.getEnd(2));
+
+        offsets.clear();
+        assertEquals(0, offsets.size());
+        assertEquals(-1, offsets.getStart(0));
+        assertEquals(-1, offsets.getStart(5_000_000));
+    }
+
+    @Test
+    public void testGrowAndRelease() {
+        TokenCharOffsets offsets = new TokenCharOffsets(4, 256);
+        int initialCapacity = offsets.capacity();
+        for (int i = 0; i < 1000; i++) {
+            offsets.set(i * 7, i, i + 1);
+        }
+        assertEquals(1000, offsets.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, offsets.getStart(i * 7));
+            assertEquals(i + 1, offsets.getEnd(i * 7));
+            assertEquals(-1, offsets.getStart(i * 7 + 1));
+        }
+        assertTrue(offsets.capacity() > 256);
+        offsets.clear();
+        //oversized arrays are dropped rather than retained
+        assertEquals(initialCapacity, offsets.capacity());
+        assertEquals(-1, offsets.getStart(7));
+
+        for (int i = 0; i < 10; i++) {
+            offsets.set(i, i, i + 1);
+        }
+        int capacity = offsets.capacity();
+        offsets.clear();
+        //small arrays are kept for reuse
+        assertEquals(capacity, offsets.capacity());
+        assertEquals(-1, offsets.getStart(3));
+    }
+}
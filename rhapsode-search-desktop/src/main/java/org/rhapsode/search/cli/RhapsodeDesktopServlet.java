@@ -57,6 +57,7 @@ import org.rhapsode.app.RhapsodeSearcherApp;
 import org.rhapsode.app.handlers.admin.CollectionHandler;
 import org.rhapsode.app.handlers.admin.ConceptHandler;
 import org.rhapsode.app.handlers.admin.ReportHandler;
+import org.rhapsode.app.handlers.admin.ReportStatusHandler;
 import org.rhapsode.app.handlers.admin.SelectedDocumentHandler;
 import org.rhapsode.app.handlers.admin.SettingsHandler;
 import org.rhapsode.app.handlers.admin.StoredQueryHandler;
@@ -195,6 +196,8 @@ public class RhapsodeDesktopServlet {
 
         AbstractHandler reportHandler = handlerWrapper.wrap(new ReportHandler(searchApp),
                 "/rhapsode/admin/reports", LOCAL_HOST);
+        AbstractHandler reportStatusHandler = handlerWrapper.wrap(new ReportStatusHandler(searchApp),
+                "/rhapsode/admin/report_status", LOCAL_HOST);
         AbstractHandler extractViewerHandler = handlerWrapper.wrap(new ExtractViewer(searchApp),
                 "/rhapsode/view_extract", LOCAL_HOST);
 
@@ -260,6 +263,7 @@ public class RhapsodeDesktopServlet {
                 wrappedResourceHandler,
                 wrappedHelloHandler,
                 reportHandler,
+                reportStatusHandler,
                 extractViewerHandler,
                 settingsHandler,
                 selectedHandler,
@@ -294,10 +298,11 @@ public class RhapsodeDesktopServlet {
         System.out.println("The server has successfully shut down.");
         server.destroy();
         System.out.println("The server has been completely turned off");
+        searchApp.shutdownSearchExecutor();
         try {
-            searchApp.getSessionManager().getConnection().close();
+            searchApp.getSessionManager().close();
             System.out.println("The session manager db has been closed");
-        } catch (SQLException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
         if (searchApp.getRhapsodeCollection() != null &&